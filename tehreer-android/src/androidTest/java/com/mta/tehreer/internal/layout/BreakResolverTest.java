@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.layout;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class BreakResolverTest {
+
+    private static final String TEXT = "First paragraph, with some words.\n"
+                                     + "\u0627\u0644\u0633\u0644\u0627\u0645 \u0639\u0644\u06CC\u06A9\u0645 one\u2029"
+                                     + "Third\r\n"
+                                     + "The last \u0628\u0633\u0645 \u0627\u0644\u0644\u0647";
+    private static final int[] PARAGRAPH_ENDS = { 34, 51, 58, TEXT.length() };
+
+    @Test
+    public void testParagraphRangesMatchWholeText() {
+        byte[] wholeBreaks = new byte[TEXT.length()];
+        byte[] rangeBreaks = new byte[TEXT.length()];
+
+        BreakResolver.fillBreaks(TEXT, wholeBreaks);
+
+        int paragraphStart = 0;
+
+        for (int paragraphEnd : PARAGRAPH_ENDS) {
+            BreakResolver.fillBreaks(TEXT, paragraphStart, paragraphEnd, rangeBreaks);
+            paragraphStart = paragraphEnd;
+        }
+
+        assertArrayEquals(wholeBreaks, rangeBreaks);
+    }
+
+    @Test
+    public void testSingleRangeMatchesWholeText() {
+        byte[] wholeBreaks = new byte[TEXT.length()];
+        BreakResolver.fillBreaks(TEXT, wholeBreaks);
+
+        int paragraphStart = 0;
+
+        for (int paragraphEnd : PARAGRAPH_ENDS) {
+            // The iterator of a single paragraph begins at its start rather than at zero.
+            byte[] rangeBreaks = new byte[TEXT.length()];
+            BreakResolver.fillBreaks(TEXT, paragraphStart, paragraphEnd, rangeBreaks);
+
+            assertArrayEquals(Arrays.copyOfRange(wholeBreaks, paragraphStart, paragraphEnd),
+                              Arrays.copyOfRange(rangeBreaks, paragraphStart, paragraphEnd));
+
+            paragraphStart = paragraphEnd;
+        }
+    }
+}
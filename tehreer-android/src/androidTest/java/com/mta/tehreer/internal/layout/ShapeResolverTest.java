@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.layout;
+
+import android.support.test.InstrumentationRegistry;
+import android.text.SpannableString;
+import android.text.Spanned;
+
+import com.mta.tehreer.graphics.Typeface;
+import com.mta.tehreer.layout.style.TypeSizeSpan;
+import com.mta.tehreer.layout.style.TypefaceSpan;
+import com.mta.tehreer.sfnt.SfntTag;
+import com.mta.tehreer.sfnt.ShapingEngine;
+import com.mta.tehreer.sfnt.ShapingResult;
+import com.mta.tehreer.sfnt.WritingDirection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShapeResolverTest {
+
+    private static final float TYPE_SIZE = 24.0f;
+
+    // An Arabic paragraph with English words, runs of spaces, and a shadda following a space.
+    private static final String SAMPLE = "\u0628\u0633\u0645 \u0627\u0644\u0644\u0647  "
+                                       + "\u0627\u0644\u0631\u062D\u0645\u0646 \u0651\u0627\u0644\u0631\u062D\u064A\u0645, "
+                                       + "with some English  words \u0641\u064A \u0627\u0644\u0648\u0633\u0637.";
+
+    // A text of the glyphs kerned against space in the test font.
+    private static final String KERNING_SAMPLE = "A A V  a AV A";
+
+    private Typeface typeface;
+    private Typeface kerningTypeface;
+
+    @Before
+    public void setUp() {
+        typeface = new Typeface(InstrumentationRegistry.getContext().getAssets(), "NafeesWeb.ttf");
+        // The test font draws its glyphs as boxes and kerns the letters `A' and `V' against space
+        // on both sides.
+        kerningTypeface = new Typeface(InstrumentationRegistry.getContext().getAssets(), "SpaceKerning.ttf");
+    }
+
+    private static List<IntrinsicRun> resolveRuns(String text, Typeface typeface) {
+        SpannableString spanned = new SpannableString(text);
+        spanned.setSpan(new TypefaceSpan(typeface), 0, text.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        spanned.setSpan(new TypeSizeSpan(TYPE_SIZE), 0, text.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+
+        byte[] breaks = new byte[text.length()];
+        List<IntrinsicParagraph> paragraphs = new ArrayList<>();
+        List<IntrinsicRun> runs = new ArrayList<>();
+
+        ShapeResolver.fillRuns(text, spanned, Collections.<Object>emptyList(), breaks, paragraphs, runs);
+
+        return runs;
+    }
+
+    private static void assertWholeRunsMatch(String text, Typeface typeface, List<IntrinsicRun> runs) {
+        ShapingEngine shapingEngine = new ShapingEngine();
+
+        try {
+            shapingEngine.setTypeface(typeface);
+            shapingEngine.setTypeSize(TYPE_SIZE);
+
+            for (IntrinsicRun run : runs) {
+                boolean isRTL = (run.writingDirection == WritingDirection.RIGHT_TO_LEFT);
+                shapingEngine.setScriptTag(SfntTag.make(isRTL ? "arab" : "latn"));
+                shapingEngine.setWritingDirection(run.writingDirection);
+
+                ShapingResult shapingResult = shapingEngine.shapeText(text, run.charStart, run.charEnd);
+
+                try {
+                    assertEquals(shapingResult.isBackward(), run.isBackward);
+                    assertArrayEquals(shapingResult.getGlyphIds().toArray(), run.glyphIds);
+                    assertArrayEquals(shapingResult.getGlyphOffsets().toArray(), run.glyphOffsets, 0.0f);
+                    assertArrayEquals(shapingResult.getGlyphAdvances().toArray(), run.glyphAdvances, 0.0f);
+                    assertArrayEquals(shapingResult.getClusterMap().toArray(), run.clusterMap);
+                } finally {
+                    shapingResult.dispose();
+                }
+            }
+        } finally {
+            shapingEngine.dispose();
+        }
+    }
+
+    @Test
+    public void testSegmentedRunsMatchWholeRuns() {
+        assertTrue(ShapingCache.getInstance().canSplitAtSpaces(typeface));
+        assertWholeRunsMatch(SAMPLE, typeface, resolveRuns(SAMPLE, typeface));
+    }
+
+    @Test
+    public void testCachedSegmentsMatchWholeRuns() {
+        resolveRuns(SAMPLE, typeface);
+        assertWholeRunsMatch(SAMPLE, typeface, resolveRuns(SAMPLE, typeface));
+    }
+
+    @Test
+    public void testKerningAgainstSpace() {
+        assertFalse(ShapingCache.getInstance().canSplitAtSpaces(kerningTypeface));
+
+        // Cache the words on their own first, so that splitting the runs would reuse them.
+        for (String word : KERNING_SAMPLE.split(" ")) {
+            resolveRuns(word + " ", kerningTypeface);
+        }
+
+        List<IntrinsicRun> runs = resolveRuns(KERNING_SAMPLE, kerningTypeface);
+        assertWholeRunsMatch(KERNING_SAMPLE, kerningTypeface, runs);
+
+        // Make sure that the font actually kerns the space after first letter.
+        IntrinsicRun run = runs.get(0);
+        float spaceAdvance = kerningTypeface.getGlyphAdvance(kerningTypeface.getGlyphId(' '), TYPE_SIZE, false);
+        assertTrue(run.glyphAdvances[0] + run.glyphAdvances[1]
+                   < kerningTypeface.getGlyphAdvance(run.glyphIds[0], TYPE_SIZE, false) + spaceAdvance);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.layout;
+
+import android.support.test.InstrumentationRegistry;
+import android.text.SpannableString;
+import android.text.Spanned;
+
+import com.mta.tehreer.graphics.Typeface;
+import com.mta.tehreer.internal.layout.IntrinsicParagraph;
+import com.mta.tehreer.internal.layout.IntrinsicRun;
+import com.mta.tehreer.internal.layout.ParagraphCollection;
+import com.mta.tehreer.internal.layout.RunCollection;
+import com.mta.tehreer.layout.style.TypeSizeSpan;
+import com.mta.tehreer.layout.style.TypefaceSpan;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+final class TypesetterAssert {
+
+    private static final String ARABIC_LINE = "\u0628\u0633\u0645 \u0627\u0644\u0644\u0647 "
+                                            + "\u0627\u0644\u0631\u062D\u0645\u0646 \u0627\u0644\u0631\u062D\u064A\u0645 "
+                                            + "(with English words) \u0661\u0662\u0663 \u0648 \u0664\u0665\u0666.";
+    private static final String ENGLISH_LINE = "The quick brown fox, "
+                                             + "\u0645\u0631\u062D\u0628\u0627 \u062F\u0646\u06CC\u0627, "
+                                             + "jumps over the 123 lazy dogs.";
+    private static final String MIXED_LINE = "\u0627\u0644\u0633\u0644\u0627\u0645 \u0639\u0644\u06CC\u06A9\u0645, "
+                                           + "hello there.";
+
+    private TypesetterAssert() {
+    }
+
+    static Typeface loadTypeface() {
+        return new Typeface(InstrumentationRegistry.getContext().getAssets(), "NafeesWeb.ttf");
+    }
+
+    /**
+     * Creates a spanned text set in the test typeface as a whole.
+     */
+    static SpannableString createSpanned(String text) {
+        int length = text.length();
+
+        SpannableString spanned = new SpannableString(text);
+        spanned.setSpan(new TypefaceSpan(loadTypeface()), 0, length, Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        spanned.setSpan(new TypeSizeSpan(20.0f), 0, length, Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+
+        return spanned;
+    }
+
+    /**
+     * Creates a bidi text of several paragraphs, separated in all common ways, along with typeface
+     * and size spans crossing the paragraphs.
+     */
+    static Spanned createSample() {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < 4; i++) {
+            builder.append(ARABIC_LINE).append('\n');
+            builder.append(ENGLISH_LINE).append("\r\n");
+            builder.append(MIXED_LINE).append('\u2029');
+        }
+        builder.append(ARABIC_LINE);
+
+        String text = builder.toString();
+        int length = text.length();
+
+        SpannableString spanned = createSpanned(text);
+        spanned.setSpan(new TypefaceSpan(loadTypeface()), length / 5, length / 2, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        spanned.setSpan(new TypeSizeSpan(28.0f), length / 3, (length * 3) / 4, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+
+        return spanned;
+    }
+
+    /**
+     * Asserts that the given typesetters have resolved the same paragraphs, runs and breaks. The
+     * typesetters must have been resolved completely.
+     */
+    static void assertTypesettersEqual(Typesetter expected, Typesetter actual) {
+        ParagraphCollection expectedParagraphs = expected.getParagraphs();
+        ParagraphCollection actualParagraphs = actual.getParagraphs();
+        assertEquals(expectedParagraphs.size(), actualParagraphs.size());
+
+        for (int i = 0; i < expectedParagraphs.size(); i++) {
+            IntrinsicParagraph expectedParagraph = expectedParagraphs.get(i);
+            IntrinsicParagraph actualParagraph = actualParagraphs.get(i);
+            String message = "Paragraph " + i;
+
+            assertEquals(message, expectedParagraph.charStart, actualParagraph.charStart);
+            assertEquals(message, expectedParagraph.charEnd, actualParagraph.charEnd);
+            assertEquals(message, expectedParagraph.baseLevel, actualParagraph.baseLevel);
+            assertArrayEquals(message, expectedParagraph.bidiParagraph.getCharLevels().toArray(),
+                              actualParagraph.bidiParagraph.getCharLevels().toArray());
+        }
+
+        RunCollection expectedRuns = expected.getRuns();
+        RunCollection actualRuns = actual.getRuns();
+        assertEquals(expectedRuns.size(), actualRuns.size());
+
+        for (int i = 0; i < expectedRuns.size(); i++) {
+            IntrinsicRun expectedRun = expectedRuns.get(i);
+            IntrinsicRun actualRun = actualRuns.get(i);
+            String message = "Run " + i;
+
+            assertEquals(message, expectedRun.charStart, actualRun.charStart);
+            assertEquals(message, expectedRun.charEnd, actualRun.charEnd);
+            assertEquals(message, expectedRun.isBackward, actualRun.isBackward);
+            assertEquals(message, expectedRun.bidiLevel, actualRun.bidiLevel);
+            assertEquals(message, expectedRun.typeface, actualRun.typeface);
+            assertEquals(message, expectedRun.typeSize, actualRun.typeSize, 0.0f);
+            assertArrayEquals(message, expectedRun.glyphIds, actualRun.glyphIds);
+            assertArrayEquals(message, expectedRun.glyphOffsets, actualRun.glyphOffsets, 0.0f);
+            assertArrayEquals(message, expectedRun.glyphAdvances, actualRun.glyphAdvances, 0.0f);
+            assertArrayEquals(message, expectedRun.clusterMap, actualRun.clusterMap);
+        }
+
+        assertArrayEquals(expected.getBreaks(), actual.getBreaks());
+    }
+
+    /**
+     * Asserts that the given lines cover the same chars with the same glyphs at the same
+     * positions.
+     */
+    static void assertLinesEqual(ComposedLine expected, ComposedLine actual) {
+        assertEquals(expected.getCharStart(), actual.getCharStart());
+        assertEquals(expected.getCharEnd(), actual.getCharEnd());
+        assertEquals(expected.getParagraphLevel(), actual.getParagraphLevel());
+        assertEquals(expected.getOriginX(), actual.getOriginX(), 0.0f);
+        assertEquals(expected.getOriginY(), actual.getOriginY(), 0.0f);
+        assertEquals(expected.getWidth(), actual.getWidth(), 0.0f);
+
+        List<GlyphRun> expectedRuns = expected.getRuns();
+        List<GlyphRun> actualRuns = actual.getRuns();
+        assertEquals(expectedRuns.size(), actualRuns.size());
+
+        for (int i = 0; i < expectedRuns.size(); i++) {
+            GlyphRun expectedRun = expectedRuns.get(i);
+            GlyphRun actualRun = actualRuns.get(i);
+            String message = "Run " + i;
+
+            assertEquals(message, expectedRun.getCharStart(), actualRun.getCharStart());
+            assertEquals(message, expectedRun.getCharEnd(), actualRun.getCharEnd());
+            assertEquals(message, expectedRun.getOriginX(), actualRun.getOriginX(), 0.0f);
+            assertArrayEquals(message, expectedRun.getGlyphIds().toArray(), actualRun.getGlyphIds().toArray());
+            assertArrayEquals(message, expectedRun.getGlyphAdvances().toArray(),
+                              actualRun.getGlyphAdvances().toArray(), 0.0f);
+        }
+    }
+
+    static void assertFramesEqual(ComposedFrame expected, ComposedFrame actual) {
+        assertEquals(expected.getCharStart(), actual.getCharStart());
+        assertEquals(expected.getCharEnd(), actual.getCharEnd());
+        assertEquals(expected.getWidth(), actual.getWidth(), 0.0f);
+        assertEquals(expected.getHeight(), actual.getHeight(), 0.0f);
+
+        List<ComposedLine> expectedLines = expected.getLines();
+        List<ComposedLine> actualLines = actual.getLines();
+        assertEquals(expectedLines.size(), actualLines.size());
+
+        for (int i = 0; i < expectedLines.size(); i++) {
+            assertLinesEqual(expectedLines.get(i), actualLines.get(i));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.layout;
+
+import android.graphics.RectF;
+import android.text.Spanned;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TypesetterEditTest {
+
+    private static final String ARABIC_WORD = "\u0633\u0644\u0627\u0645";
+
+    private Spanned sample;
+    private String text;
+
+    @Before
+    public void setUp() {
+        sample = TypesetterAssert.createSample();
+        text = sample.toString();
+    }
+
+    private Typesetter createTypesetter(TypesettingMode mode) {
+        return new Typesetter(sample, null, mode);
+    }
+
+    /**
+     * Edits the typesetter and asserts that it matches a typesetter created on the edited text.
+     */
+    private static void assertEdit(Typesetter typesetter, int charStart, int charEnd,
+                                   CharSequence replacement) {
+        typesetter.replace(charStart, charEnd, replacement);
+
+        Spanned spanned = typesetter.getSpanned();
+        typesetter.resolveParagraphs(spanned.length());
+
+        Typesetter expected = new Typesetter(spanned, null, TypesettingMode.SEQUENTIAL);
+        TypesetterAssert.assertTypesettersEqual(expected, typesetter);
+    }
+
+    @Test
+    public void testInsertion() {
+        int index = text.indexOf("quick");
+
+        assertEdit(createTypesetter(TypesettingMode.SEQUENTIAL), index, index, "very ");
+        assertEdit(createTypesetter(TypesettingMode.SEQUENTIAL), index, index, ARABIC_WORD + " ");
+    }
+
+    @Test
+    public void testDeletion() {
+        int index = text.indexOf("quick");
+
+        assertEdit(createTypesetter(TypesettingMode.SEQUENTIAL), index, index + 6, "");
+    }
+
+    @Test
+    public void testReplacementAcrossParagraphs() {
+        int charStart = text.indexOf("quick");
+        int charEnd = text.indexOf("hello", text.indexOf("hello") + 1);
+
+        assertEdit(createTypesetter(TypesettingMode.SEQUENTIAL), charStart, charEnd, "slow " + ARABIC_WORD);
+    }
+
+    @Test
+    public void testLineFeedInsertion() {
+        int index = text.indexOf("brown");
+
+        assertEdit(createTypesetter(TypesettingMode.SEQUENTIAL), index, index, "\n");
+    }
+
+    @Test
+    public void testLineFeedRemoval() {
+        int index = text.indexOf('\n');
+
+        assertEdit(createTypesetter(TypesettingMode.SEQUENTIAL), index, index + 1, "");
+    }
+
+    @Test
+    public void testCarriageReturnJoinsLineFeed() {
+        int index = text.indexOf("\r\n");
+        Typesetter typesetter = createTypesetter(TypesettingMode.SEQUENTIAL);
+
+        // Split the pair, then join it again at the edit point from either side.
+        assertEdit(typesetter, index + 1, index + 1, "split");
+        assertEdit(typesetter, index + 1, index + 6, "");
+        assertEdit(typesetter, index, index + 1, "");
+        assertEdit(typesetter, index, index, "\r");
+    }
+
+    @Test
+    public void testEditAtStart() {
+        Typesetter typesetter = createTypesetter(TypesettingMode.SEQUENTIAL);
+
+        assertEdit(typesetter, 0, 0, "Start ");
+        assertEdit(typesetter, 0, 9, "");
+        assertEdit(typesetter, 0, 0, "\n");
+    }
+
+    @Test
+    public void testEditAtEnd() {
+        Typesetter typesetter = createTypesetter(TypesettingMode.SEQUENTIAL);
+        int length = text.length();
+
+        assertEdit(typesetter, length, length, " end");
+        assertEdit(typesetter, length, length + 4, "");
+        assertEdit(typesetter, length, length, "\n");
+        assertEdit(typesetter, length + 1, length + 1, ARABIC_WORD);
+        assertEdit(typesetter, length - 5, length + 5, "");
+    }
+
+    @Test
+    public void testTyping() {
+        Typesetter typesetter = createTypesetter(TypesettingMode.SEQUENTIAL);
+        int index = text.indexOf("lazy");
+        String word = "sleepy ";
+
+        for (int i = 0; i < word.length(); i++) {
+            assertEdit(typesetter, index + i, index + i, word.substring(i, i + 1));
+        }
+        for (int i = word.length(); i > 0; i--) {
+            assertEdit(typesetter, index + i - 1, index + i, "");
+        }
+    }
+
+    @Test
+    public void testEditChangingScriptsOfCommonText() {
+        // The paragraphs of digits take the script of the closest letters before them, or after
+        // them if there are none.
+        String source = "123\nLatin words\n(456)\n789\nThe end";
+        Typesetter typesetter = new Typesetter(TypesetterAssert.createSpanned(source), null,
+                                               TypesettingMode.SEQUENTIAL);
+
+        int index = source.indexOf("Latin");
+        assertEdit(typesetter, index, index + 5, ARABIC_WORD);
+        assertEdit(typesetter, index, index + ARABIC_WORD.length() + 6, "");
+        assertEdit(typesetter, index, index, "Latin");
+    }
+
+    @Test
+    public void testLazyEdit() {
+        int length = text.length();
+        int index = text.indexOf("quick");
+
+        // Edit before and after the resolved part of the text.
+        Typesetter typesetter = createTypesetter(TypesettingMode.LAZY);
+        typesetter.createSimpleLine(0, index);
+
+        assertEdit(typesetter, index, index, "very ");
+
+        typesetter = createTypesetter(TypesettingMode.LAZY);
+        typesetter.createSimpleLine(0, index);
+
+        assertEdit(typesetter, length - 5, length, "\n" + ARABIC_WORD);
+    }
+
+    @Test
+    public void testFrameResolverFollowsEdits() {
+        Typesetter typesetter = createTypesetter(TypesettingMode.SEQUENTIAL);
+        RectF frameBounds = new RectF(0.0f, 0.0f, 240.0f, Float.POSITIVE_INFINITY);
+
+        FrameResolver resolver = new FrameResolver();
+        resolver.setTypesetter(typesetter);
+        resolver.setFrameBounds(frameBounds);
+        resolver.createFrame(0, text.length());
+
+        int index = text.indexOf("quick");
+        typesetter.replace(index, index + 6, "\n");
+
+        int length = typesetter.getSpanned().length();
+        FrameResolver expected = new FrameResolver();
+        expected.setTypesetter(new Typesetter(typesetter.getSpanned(), null, TypesettingMode.SEQUENTIAL));
+        expected.setFrameBounds(frameBounds);
+
+        TypesetterAssert.assertFramesEqual(expected.createFrame(0, length), resolver.createFrame(0, length));
+    }
+}
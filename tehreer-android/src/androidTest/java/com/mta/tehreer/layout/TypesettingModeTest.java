@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.layout;
+
+import android.graphics.RectF;
+import android.text.Spanned;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TypesettingModeTest {
+
+    private Spanned sample;
+    private Typesetter sequential;
+
+    @Before
+    public void setUp() {
+        sample = TypesetterAssert.createSample();
+        sequential = new Typesetter(sample, null, TypesettingMode.SEQUENTIAL);
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        Typesetter parallel = new Typesetter(sample, null, TypesettingMode.PARALLEL);
+
+        TypesetterAssert.assertTypesettersEqual(sequential, parallel);
+    }
+
+    private Typesetter createLazy() {
+        return new Typesetter(sample, null, TypesettingMode.LAZY);
+    }
+
+    private ComposedFrame createFrame(Typesetter typesetter, int charStart, int charEnd, float height) {
+        FrameResolver resolver = new FrameResolver();
+        resolver.setTypesetter(typesetter);
+        resolver.setFrameBounds(new RectF(0.0f, 0.0f, 240.0f, height));
+
+        return resolver.createFrame(charStart, charEnd);
+    }
+
+    @Test
+    public void testLazyMatchesSequential() {
+        Typesetter lazy = createLazy();
+        lazy.resolveParagraphs(sample.length());
+
+        TypesetterAssert.assertTypesettersEqual(sequential, lazy);
+    }
+
+    @Test
+    public void testLazyFrameOfWholeText() {
+        int length = sample.length();
+
+        TypesetterAssert.assertFramesEqual(createFrame(sequential, 0, length, Float.POSITIVE_INFINITY),
+                                           createFrame(createLazy(), 0, length, Float.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void testLazyFrameOfPartialText() {
+        int length = sample.length();
+        int charStart = length / 4;
+        int charEnd = (length * 3) / 4;
+
+        // The first frame stops at its height, leaving the rest of the text unresolved.
+        TypesetterAssert.assertFramesEqual(createFrame(sequential, 0, length, 120.0f),
+                                           createFrame(createLazy(), 0, length, 120.0f));
+        TypesetterAssert.assertFramesEqual(createFrame(sequential, charStart, charEnd, Float.POSITIVE_INFINITY),
+                                           createFrame(createLazy(), charStart, charEnd, Float.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void testLazyBreaksAcrossUnresolvedParagraphs() {
+        int length = sample.length();
+        float[] breakWidths = { 60.0f, 240.0f, Float.POSITIVE_INFINITY };
+
+        for (int charIndex = 0; charIndex < length; charIndex += 23) {
+            for (float breakWidth : breakWidths) {
+                for (BreakMode breakMode : BreakMode.values()) {
+                    String message = "Index: " + charIndex + ", Width: " + breakWidth + ", Mode: " + breakMode;
+
+                    // Each suggestion is made on a new typesetter, so that it starts from or ends
+                    // in a paragraph that has not been resolved yet.
+                    assertEquals(message,
+                                 sequential.suggestForwardBreak(charIndex, length, breakWidth, breakMode),
+                                 createLazy().suggestForwardBreak(charIndex, length, breakWidth, breakMode));
+                    assertEquals(message,
+                                 sequential.suggestBackwardBreak(0, charIndex + 1, breakWidth, breakMode),
+                                 createLazy().suggestBackwardBreak(0, charIndex + 1, breakWidth, breakMode));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLazyTruncatedLines() {
+        int length = sample.length();
+        int charStart = length / 3;
+
+        for (TruncationPlace truncationPlace : TruncationPlace.values()) {
+            for (BreakMode breakMode : BreakMode.values()) {
+                TypesetterAssert.assertLinesEqual(
+                        sequential.createTruncatedLine(charStart, length, 200.0f, breakMode, truncationPlace),
+                        createLazy().createTruncatedLine(charStart, length, 200.0f, breakMode, truncationPlace));
+            }
+        }
+    }
+}
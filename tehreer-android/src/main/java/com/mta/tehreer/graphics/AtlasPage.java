@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mta.tehreer.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Shader;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * A large alpha bitmap shared by the masks of many glyphs of a single strike. The space is
+ * allocated with shelf packing, i.e. the page is divided into horizontal shelves and each mask is
+ * placed next to the previous one on the shelf that wastes the least height.
+ * <p>
+ * A buffered page receives the masks from a glyph slab into a direct buffer and copies them into
+ * its bitmap only when the bitmap is requested for drawing.
+ */
+final class AtlasPage {
+    static final int SIZE = 256;
+    static final int MAX_GLYPH_EXTENT = SIZE / 4;
+
+    private static final int PADDING = 1;
+
+    private static class Shelf {
+        final int top;
+        final int height;
+        int left;
+
+        Shelf(int top, int height) {
+            this.top = top;
+            this.height = height;
+        }
+    }
+
+    private final ArrayList<Shelf> mShelves = new ArrayList<>();
+    private final Bitmap mBitmap;
+    private final Canvas mCanvas;
+    private final ByteBuffer mPixels;
+    private BitmapShader mShader;
+    private boolean mDirty;
+    private int mUsedHeight;
+    private volatile boolean mEvicted;
+
+    AtlasPage(boolean buffered) {
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ALPHA_8);
+
+        if (buffered) {
+            mCanvas = null;
+            mPixels = ByteBuffer.allocateDirect(SIZE * SIZE);
+        } else {
+            mCanvas = new Canvas(mBitmap);
+            mPixels = null;
+        }
+    }
+
+    static boolean canHold(Bitmap mask) {
+        return canHold(mask.getWidth(), mask.getHeight());
+    }
+
+    static boolean canHold(int width, int height) {
+        return width <= MAX_GLYPH_EXTENT && height <= MAX_GLYPH_EXTENT;
+    }
+
+    boolean isBuffered() {
+        return mPixels != null;
+    }
+
+    synchronized Bitmap bitmap() {
+        if (mDirty) {
+            mDirty = false;
+            mPixels.rewind();
+            mBitmap.copyPixelsFromBuffer(mPixels);
+        }
+
+        return mBitmap;
+    }
+
+    synchronized BitmapShader shader() {
+        if (mShader == null) {
+            mShader = new BitmapShader(bitmap(), Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        } else {
+            bitmap();
+        }
+
+        return mShader;
+    }
+
+    int byteCount() {
+        return (mPixels != null ? SIZE * SIZE * 2 : SIZE * SIZE);
+    }
+
+    boolean isEvicted() {
+        return mEvicted;
+    }
+
+    void evict() {
+        mEvicted = true;
+    }
+
+    /**
+     * Copies the given mask into a free area of this page.
+     *
+     * @return The region occupied by the mask, or null if there is not enough room for it.
+     */
+    synchronized AtlasRegion place(Bitmap mask) {
+        AtlasRegion region = allocate(mask.getWidth(), mask.getHeight());
+        if (region != null) {
+            mCanvas.drawBitmap(mask, region.x, region.y, null);
+        }
+
+        return region;
+    }
+
+    /**
+     * Copies the coverage of given glyph from the slab into a free area of this page.
+     *
+     * @return The region occupied by the coverage, or null if there is not enough room for it or
+     *         the coverage is no longer available in the slab.
+     */
+    synchronized AtlasRegion place(GlyphSlab slab, Glyph glyph) {
+        AtlasRegion region = allocate(glyph.width(), glyph.height());
+        if (region != null) {
+            if (!slab.copy(glyph, mPixels, (region.y * SIZE) + region.x, SIZE)) {
+                // The wasted space is reclaimed along with the page.
+                return null;
+            }
+            mDirty = true;
+        }
+
+        return region;
+    }
+
+    private AtlasRegion allocate(int maskWidth, int maskHeight) {
+        int width = maskWidth + PADDING;
+        int height = maskHeight + PADDING;
+
+        Shelf bestShelf = null;
+        int shelfCount = mShelves.size();
+
+        for (int i = 0; i < shelfCount; i++) {
+            Shelf shelf = mShelves.get(i);
+            if (shelf.height >= height && shelf.left + width <= SIZE
+                    && (bestShelf == null || shelf.height < bestShelf.height)) {
+                bestShelf = shelf;
+            }
+        }
+
+        if (bestShelf == null) {
+            if (mUsedHeight + height > SIZE) {
+                return null;
+            }
+
+            bestShelf = new Shelf(mUsedHeight, height);
+            mShelves.add(bestShelf);
+            mUsedHeight += height;
+        }
+
+        int x = bestShelf.left;
+        int y = bestShelf.top;
+        bestShelf.left += width;
+
+        return new AtlasRegion(this, x, y);
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2016 Muhammad Tayyab Akram
+ * Copyright (C) 2018 Muhammad Tayyab Akram
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -14,11 +14,17 @@
  * limitations under the License.
  */
 
-#ifndef _TEHREER__GLYPH_H
-#define _TEHREER__GLYPH_H
 
-#include <jni.h>
+package com.mta.tehreer.graphics;
 
-jint register_com_mta_tehreer_graphics_Glyph(JNIEnv *env);
+final class AtlasRegion {
+    public final AtlasPage page;
+    public final int x;
+    public final int y;
 
-#endif
+    AtlasRegion(AtlasPage page, int x, int y) {
+        this.page = page;
+        this.x = x;
+        this.y = y;
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.graphics;
+
+import java.util.Arrays;
+
+/**
+ * A single channel signed distance field of a glyph, computed from its outline at a reference
+ * size. Each value encodes the distance of a pixel center from the nearest edge, with 128 lying on
+ * the edge, larger values inside the glyph and smaller values outside, saturating at the spread.
+ * The left and top are the position of the field relative to the glyph origin with the y-axis
+ * pointing upwards, like the bearings of a glyph mask.
+ */
+final class DistanceField {
+
+    /**
+     * The number of pixels per em at which the fields are computed.
+     */
+    static final int REFERENCE_SIZE = 64;
+    /**
+     * The distance in pixels at the reference size beyond which the field saturates.
+     */
+    static final int SPREAD = 8;
+
+    private static final int CURVE_STEPS = 8;
+
+    final int left;
+    final int top;
+    final int width;
+    final int height;
+    final byte[] values;
+
+    private DistanceField(int left, int top, int width, int height, byte[] values) {
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+        this.values = values;
+    }
+
+    /**
+     * Computes the distance field of given outline after scaling its points by the given factor,
+     * or returns <code>null</code> if the outline is empty.
+     */
+    static DistanceField create(GlyphOutline outline, float scale) {
+        float[] lines = flatten(outline, scale);
+        int lineCount = lines.length / 4;
+        if (lineCount == 0) {
+            return null;
+        }
+
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < lines.length; i += 2) {
+            minX = Math.min(minX, lines[i]);
+            maxX = Math.max(maxX, lines[i]);
+            minY = Math.min(minY, lines[i + 1]);
+            maxY = Math.max(maxY, lines[i + 1]);
+        }
+
+        int left = (int) Math.floor(minX) - SPREAD;
+        int top = (int) Math.ceil(maxY) + SPREAD;
+        int width = (int) Math.ceil(maxX) + SPREAD - left;
+        int height = top - ((int) Math.floor(minY) - SPREAD);
+
+        float[] distances = new float[width * height];
+        Arrays.fill(distances, SPREAD * SPREAD);
+
+        for (int i = 0; i < lines.length; i += 4) {
+            applyLine(distances, left, top, width, height,
+                      lines[i], lines[i + 1], lines[i + 2], lines[i + 3]);
+        }
+
+        byte[] values = new byte[width * height];
+        float[] crossings = new float[16];
+        int[] windings = new int[16];
+
+        for (int row = 0; row < height; row++) {
+            float y = top - row - 0.5f;
+            int crossingCount = 0;
+
+            // Find where the edges cross the center line of this row, sorted from left to right.
+            for (int i = 0; i < lines.length; i += 4) {
+                float y0 = lines[i + 1];
+                float y1 = lines[i + 3];
+                int winding = (y1 > y0 ? 1 : -1);
+
+                if ((y0 <= y && y < y1) || (y1 <= y && y < y0)) {
+                    float x0 = lines[i];
+                    float x1 = lines[i + 2];
+                    float x = x0 + (y - y0) * (x1 - x0) / (y1 - y0);
+
+                    if (crossingCount == crossings.length) {
+                        crossings = Arrays.copyOf(crossings, crossingCount * 2);
+                        windings = Arrays.copyOf(windings, crossingCount * 2);
+                    }
+
+                    int index = crossingCount++;
+                    while (index > 0 && crossings[index - 1] > x) {
+                        crossings[index] = crossings[index - 1];
+                        windings[index] = windings[index - 1];
+                        index--;
+                    }
+                    crossings[index] = x;
+                    windings[index] = winding;
+                }
+            }
+
+            int winding = 0;
+            int next = 0;
+
+            for (int column = 0; column < width; column++) {
+                float x = left + column + 0.5f;
+                while (next < crossingCount && crossings[next] < x) {
+                    winding += windings[next++];
+                }
+
+                int index = row * width + column;
+                float distance = (float) Math.sqrt(distances[index]);
+                if (winding == 0) {
+                    distance = -distance;
+                }
+
+                int value = (int) (127.5f + (distance * 127.5f / SPREAD) + 0.5f);
+                values[index] = (byte) Math.max(0, Math.min(255, value));
+            }
+        }
+
+        return new DistanceField(left, top, width, height, values);
+    }
+
+    /**
+     * Updates the squared distances of the pixels within the spread of given line.
+     */
+    private static void applyLine(float[] distances, int left, int top, int width, int height,
+                                  float x0, float y0, float x1, float y1) {
+        int firstColumn = Math.max(0, (int) Math.floor(Math.min(x0, x1) - SPREAD - left));
+        int lastColumn = Math.min(width - 1, (int) Math.ceil(Math.max(x0, x1) + SPREAD - left));
+        int firstRow = Math.max(0, (int) Math.floor(top - Math.max(y0, y1) - SPREAD));
+        int lastRow = Math.min(height - 1, (int) Math.ceil(top - Math.min(y0, y1) + SPREAD));
+
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        float lengthSquared = (dx * dx) + (dy * dy);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            float py = top - row - 0.5f;
+
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                float px = left + column + 0.5f;
+                float t = 0.0f;
+
+                if (lengthSquared > 0.0f) {
+                    t = ((px - x0) * dx + (py - y0) * dy) / lengthSquared;
+                    t = Math.max(0.0f, Math.min(1.0f, t));
+                }
+
+                float ex = px - (x0 + t * dx);
+                float ey = py - (y0 + t * dy);
+                float distance = (ex * ex) + (ey * ey);
+
+                int index = row * width + column;
+                if (distance < distances[index]) {
+                    distances[index] = distance;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the outline approximated by lines, each stored as four consecutive coordinates.
+     */
+    private static float[] flatten(GlyphOutline outline, float scale) {
+        float[] points = outline.points;
+        float[] lines = new float[64];
+        int lineIndex = 0;
+        int pointIndex = 0;
+        float startX = 0.0f;
+        float startY = 0.0f;
+        float penX = 0.0f;
+        float penY = 0.0f;
+
+        for (byte verb : outline.verbs) {
+            int stepCount = 1;
+            float c1x = 0.0f, c1y = 0.0f, c2x = 0.0f, c2y = 0.0f, endX, endY;
+
+            switch (verb) {
+            case GlyphOutline.MOVE_TO:
+                // Close the previous contour.
+                if (penX != startX || penY != startY) {
+                    lines = addLine(lines, lineIndex, penX, penY, startX, startY);
+                    lineIndex += 4;
+                }
+                startX = penX = points[pointIndex] * scale;
+                startY = penY = points[pointIndex + 1] * scale;
+                pointIndex += 2;
+                continue;
+
+            case GlyphOutline.QUAD_TO:
+                c1x = points[pointIndex] * scale;
+                c1y = points[pointIndex + 1] * scale;
+                pointIndex += 2;
+                stepCount = CURVE_STEPS;
+                break;
+
+            case GlyphOutline.CUBIC_TO:
+                c1x = points[pointIndex] * scale;
+                c1y = points[pointIndex + 1] * scale;
+                c2x = points[pointIndex + 2] * scale;
+                c2y = points[pointIndex + 3] * scale;
+                pointIndex += 4;
+                stepCount = CURVE_STEPS;
+                break;
+            }
+
+            endX = points[pointIndex] * scale;
+            endY = points[pointIndex + 1] * scale;
+            pointIndex += 2;
+
+            float fromX = penX;
+            float fromY = penY;
+
+            for (int step = 1; step <= stepCount; step++) {
+                float t = (float) step / stepCount;
+                float u = 1.0f - t;
+                float x;
+                float y;
+
+                switch (verb) {
+                case GlyphOutline.QUAD_TO:
+                    x = (u * u * fromX) + (2 * u * t * c1x) + (t * t * endX);
+                    y = (u * u * fromY) + (2 * u * t * c1y) + (t * t * endY);
+                    break;
+
+                case GlyphOutline.CUBIC_TO:
+                    x = (u * u * u * fromX) + (3 * u * u * t * c1x) + (3 * u * t * t * c2x) + (t * t * t * endX);
+                    y = (u * u * u * fromY) + (3 * u * u * t * c1y) + (3 * u * t * t * c2y) + (t * t * t * endY);
+                    break;
+
+                default:
+                    x = endX;
+                    y = endY;
+                    break;
+                }
+
+                if (step == stepCount) {
+                    x = endX;
+                    y = endY;
+                }
+
+                lines = addLine(lines, lineIndex, penX, penY, x, y);
+                lineIndex += 4;
+                penX = x;
+                penY = y;
+            }
+        }
+
+        if (penX != startX || penY != startY) {
+            lines = addLine(lines, lineIndex, penX, penY, startX, startY);
+            lineIndex += 4;
+        }
+
+        return Arrays.copyOf(lines, lineIndex);
+    }
+
+    private static float[] addLine(float[] lines, int index, float x0, float y0, float x1, float y1) {
+        if (index + 4 > lines.length) {
+            lines = Arrays.copyOf(lines, lines.length * 2);
+        }
+
+        lines[index] = x0;
+        lines[index + 1] = y0;
+        lines[index + 2] = x1;
+        lines[index + 3] = y1;
+
+        return lines;
+    }
+}
@@ -17,25 +17,21 @@
 package com.mta.tehreer.graphics;
 
 import android.graphics.Bitmap;
-import android.graphics.Path;
 
-import com.mta.tehreer.internal.JniBridge;
 import com.mta.tehreer.internal.Sustain;
 
 class Glyph {
 
-    static {
-        JniBridge.loadLibrary();
-    }
-
     @Sustain
     private final int glyphId;
-    @Sustain
-    private long nativeOutline;
     private int mLeftSideBearing;
     private int mTopSideBearing;
+    private int mWidth;
+    private int mHeight;
+    private boolean mMaskLoaded;
+    private volatile int mSlabChunk = GlyphSlab.NO_CHUNK;
     private Bitmap mBitmap;
-    private Path mPath;
+    private AtlasRegion mAtlasRegion;
 
     public Glyph(int glyphId) {
         this.glyphId = glyphId;
@@ -54,27 +50,65 @@ class Glyph {
     }
 
     public int rightSideBearing() {
-        return mLeftSideBearing + (mBitmap != null ? mBitmap.getWidth() : 0);
+        return mLeftSideBearing + mWidth;
     }
 
     public int bottomSideBearing() {
-        return mTopSideBearing + (mBitmap != null ? mBitmap.getHeight() : 0);
+        return mTopSideBearing + mHeight;
+    }
+
+    public int width() {
+        return mWidth;
+    }
+
+    public int height() {
+        return mHeight;
     }
 
     public Bitmap bitmap() {
         return mBitmap;
     }
 
-    public Path path() {
-        return mPath;
+    public AtlasRegion atlasRegion() {
+        return mAtlasRegion;
+    }
+
+    private boolean isEmptyMask() {
+        return mMaskLoaded && (mWidth == 0 || mHeight == 0);
+    }
+
+    public boolean containsBitmap() {
+        return mBitmap != null || isEmptyMask();
+    }
+
+    /**
+     * Returns whether the coverage of this glyph is stored in a glyph slab, or the glyph has an
+     * empty mask.
+     */
+    public boolean containsCoverage() {
+        return mSlabChunk != GlyphSlab.NO_CHUNK || isEmptyMask();
+    }
+
+    int slabChunk() {
+        return mSlabChunk;
     }
 
-    public boolean containsOutline() {
-        return (nativeOutline != 0);
+    void setSlabChunk(int slabChunk) {
+        mSlabChunk = slabChunk;
+    }
+
+    public boolean containsAtlasMask() {
+        return (mAtlasRegion != null && !mAtlasRegion.page.isEvicted()) || isEmptyMask();
+    }
+
+    void moveToAtlas(AtlasRegion region) {
+        // The bitmap is not recycled as it might still be in use by a renderer.
+        mBitmap = null;
+        mAtlasRegion = region;
     }
 
     @Sustain
-    private void ownBitmap(Bitmap bitmap, int left, int top) {
+    void ownBitmap(Bitmap bitmap, int left, int top) {
         if (mBitmap != null && !mBitmap.isRecycled()) {
             mBitmap.recycle();
         }
@@ -82,33 +116,23 @@ class Glyph {
         mBitmap = bitmap;
         mLeftSideBearing = left;
         mTopSideBearing = top;
+        mWidth = (bitmap != null ? bitmap.getWidth() : 0);
+        mHeight = (bitmap != null ? bitmap.getHeight() : 0);
+        mMaskLoaded = true;
     }
 
     @Sustain
-    private void ownPath(Path path) {
-        mPath = path;
-    }
-
-    @Sustain
-    private void ownOutline(long nativeOutline) {
-        if (this.nativeOutline != 0) {
-            nativeDisposeOutline(this.nativeOutline);
+    void ownCoverage(int left, int top, int width, int height) {
+        // The coverage itself has been written into the scratch buffer of glyph slab.
+        if (mBitmap != null && !mBitmap.isRecycled()) {
+            mBitmap.recycle();
         }
 
-        this.nativeOutline = nativeOutline;
-    }
-
-    @Override
-    public void finalize() throws Throwable {
-        try {
-            if (nativeOutline != 0) {
-                nativeDisposeOutline(nativeOutline);
-                nativeOutline = 0;
-            }
-        } finally {
-            super.finalize();
-        }
+        mBitmap = null;
+        mLeftSideBearing = left;
+        mTopSideBearing = top;
+        mWidth = width;
+        mHeight = height;
+        mMaskLoaded = true;
     }
-
-    private static native void nativeDisposeOutline(long nativeOutline);
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mta.tehreer.graphics;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+
+/**
+ * Packs the masks of a single glyph strike into shared atlas pages. Pages are owned by the glyph
+ * cache which evicts them as a whole when they become least recently used.
+ */
+final class GlyphAtlas {
+    private final ArrayList<AtlasPage> mPages = new ArrayList<>();
+
+    private void removeEvictedPages() {
+        // Forget the pages which have been evicted by the cache.
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            if (mPages.get(i).isEvicted()) {
+                mPages.remove(i);
+            }
+        }
+    }
+
+    synchronized AtlasRegion place(Bitmap mask) {
+        removeEvictedPages();
+
+        // Try the most recent pages first as the older ones are usually full.
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            AtlasPage page = mPages.get(i);
+            if (!page.isBuffered()) {
+                AtlasRegion region = page.place(mask);
+                if (region != null) {
+                    return region;
+                }
+            }
+        }
+
+        AtlasPage newPage = new AtlasPage(false);
+        mPages.add(newPage);
+
+        return newPage.place(mask);
+    }
+
+    /**
+     * Copies the coverage of given glyph from the slab into a buffered page.
+     *
+     * @return The region occupied by the coverage, or null if the coverage is no longer available
+     *         in the slab.
+     */
+    synchronized AtlasRegion place(GlyphSlab slab, Glyph glyph) {
+        if (glyph.slabChunk() == GlyphSlab.NO_CHUNK) {
+            return null;
+        }
+
+        removeEvictedPages();
+
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            AtlasPage page = mPages.get(i);
+            if (page.isBuffered()) {
+                AtlasRegion region = page.place(slab, glyph);
+                if (region != null) {
+                    return region;
+                }
+            }
+        }
+
+        AtlasPage newPage = new AtlasPage(true);
+        mPages.add(newPage);
+
+        return newPage.place(slab, glyph);
+    }
+}
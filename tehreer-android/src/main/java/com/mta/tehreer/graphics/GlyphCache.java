@@ -19,54 +19,388 @@ package com.mta.tehreer.graphics;
 import android.graphics.Bitmap;
 import android.graphics.Path;
 
+import com.mta.tehreer.graphics.GlyphCacheStats.RasterizationKind;
+import com.mta.tehreer.internal.util.EvictionPolicy;
 import com.mta.tehreer.internal.util.LruCache;
 
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+/**
+ * The <code>GlyphCache</code> class keeps the rasterized glyphs of all renderers within a bounded
+ * amount of memory, evicting the least recently used glyphs when the limit is reached.
+ */
 class GlyphCache extends LruCache {
 
-    private static class Segment extends LruCache.Segment<Integer, Glyph> {
+    /**
+     * The glyphs of a single strike. A renderer may hold on to the segment of its strike as a
+     * handle, so that drawing a glyph neither hashes the strike nor boxes the glyph key, until
+     * the segment is detached from the cache.
+     */
+    static final class Segment extends LruCache.IntSegment<Glyph> {
 
         //
-        // HashMap:
-        //  - 1 pointer for map entry
-        //  - 3 pointers for key, value and next
-        //  - 1 integer for hash code
+        // IntSegment:
+        //  - 2 pointers for table slots at half load
+        //  - 1 integer for boxed key
         //
         // LruCache.Node:
         //  - 5 pointers for segment, key, value, previous and next
         //
         // Glyph:
-        //  - 3 pointers for outline, bitmap and path
-        //  - 3 integers for glyph id, glyph left and glyph top
+        //  - 2 pointers for bitmap and atlas region
+        //  - 6 integers for glyph id, left, top, width, height and slab chunk
+        //  - 1 boolean for loaded mask, padded to an integer
         //
         // Total:
-        //  - 12 pointers
-        //  - 4 integers
+        //  - 9 pointers
+        //  - 8 integers
         //
-        // Size: (12 * 4) + (4 * 4) = 64
+        // Size: (9 * 4) + (8 * 4) = 68
         //
-        private static final int ESTIMATED_OVERHEAD = 64;
+        private static final int ESTIMATED_OVERHEAD = 68;
 
+        //
+        // AtlasRegion:
+        //  - 1 pointer for page
+        //  - 2 integers for x and y
+        //
+        // Size: (1 * 4) + (2 * 4) = 12
+        //
+        private static final int ATLAS_REGION_OVERHEAD = 12;
+
+        public final GlyphStrike strike;
         public final GlyphRasterizer rasterizer;
+        public final GlyphAtlas atlas;
+        private volatile StrokeSegment[] strokeSegments = new StrokeSegment[0];
+        private volatile ShadowSegment[] shadowSegments = new ShadowSegment[0];
+        private volatile PathSegment pathSegment;
+        private volatile boolean detached;
 
-        public Segment(LruCache cache, GlyphRasterizer rasterizer) {
+        public Segment(LruCache cache, GlyphStrike strike) {
             super(cache);
-            this.rasterizer = rasterizer;
+            this.strike = strike;
+            this.rasterizer = new GlyphRasterizer(strike);
+            this.atlas = new GlyphAtlas();
         }
 
-        @Override
-        protected int sizeOf(Integer key, Glyph value) {
-            Bitmap maskBitmap = value.bitmap();
+        /**
+         * Returns true if this segment has been removed from the cache, after which the handles to
+         * it should be resolved again.
+         */
+        public boolean isDetached() {
+            return detached;
+        }
+
+        /**
+         * Returns true if neither this segment nor any of its stroke and shadow segments has a
+         * glyph in the cache.
+         */
+        public boolean isIdle() {
+            if (!isEmpty()) {
+                return false;
+            }
+            for (StrokeSegment segment : strokeSegments) {
+                if (!segment.isEmpty()) {
+                    return false;
+                }
+            }
+            for (ShadowSegment segment : shadowSegments) {
+                if (!segment.isEmpty()) {
+                    return false;
+                }
+            }
+
+            PathSegment currentPaths = pathSegment;
+            return currentPaths == null || currentPaths.isEmpty();
+        }
+
+        void checkIdle() {
+            if (isIdle()) {
+                // The segment cannot be disposed while holding the eviction lock, so leave it for
+                // the next lookup of a segment.
+                ((GlyphCache) cache).idleSegments.offer(this);
+            }
+        }
+
+        static int measure(Glyph glyph) {
+            Bitmap maskBitmap = glyph.bitmap();
             int innerSize = 0;
 
             if (maskBitmap != null) {
                 innerSize = maskBitmap.getWidth() * maskBitmap.getHeight();
             }
+            if (glyph.slabChunk() != GlyphSlab.NO_CHUNK) {
+                innerSize += GlyphSlab.chunkSize(glyph.width() * glyph.height());
+            }
+            if (glyph.atlasRegion() != null) {
+                // The pixels of the region are charged to its page.
+                innerSize += ATLAS_REGION_OVERHEAD;
+            }
 
             return innerSize + ESTIMATED_OVERHEAD;
         }
+
+        @Override
+        protected int sizeOf(Integer key, Glyph value) {
+            return measure(value);
+        }
+
+        @Override
+        protected void entryEvicted(Integer key, Glyph value) {
+            ((GlyphCache) cache).slab.release(value);
+            checkIdle();
+        }
+
+        public StrokeSegment getStrokeSegment(int lineRadius, int lineCap, int lineJoin, int miterLimit) {
+            // A strike is usually drawn with a single stroke configuration, so a linear search is
+            // cheaper than hashing a key object.
+            for (StrokeSegment segment : strokeSegments) {
+                if (segment.matches(lineRadius, lineCap, lineJoin, miterLimit)) {
+                    return segment;
+                }
+            }
+
+            synchronized (this) {
+                StrokeSegment[] currentSegments = strokeSegments;
+                for (StrokeSegment segment : currentSegments) {
+                    if (segment.matches(lineRadius, lineCap, lineJoin, miterLimit)) {
+                        return segment;
+                    }
+                }
+
+                StrokeSegment newSegment = new StrokeSegment(cache, this, lineRadius, lineCap, lineJoin, miterLimit);
+                StrokeSegment[] newSegments = Arrays.copyOf(currentSegments, currentSegments.length + 1);
+                newSegments[currentSegments.length] = newSegment;
+                strokeSegments = newSegments;
+
+                return newSegment;
+            }
+        }
+
+        /**
+         * Returns the segment of the shadows cast by the filled glyphs if the stroke segment is
+         * null, or by the stroked glyphs of the stroke segment otherwise.
+         */
+        public ShadowSegment getShadowSegment(StrokeSegment stroke, int boxRadius) {
+            for (ShadowSegment segment : shadowSegments) {
+                if (segment.matches(stroke, boxRadius)) {
+                    return segment;
+                }
+            }
+
+            synchronized (this) {
+                ShadowSegment[] currentSegments = shadowSegments;
+                for (ShadowSegment segment : currentSegments) {
+                    if (segment.matches(stroke, boxRadius)) {
+                        return segment;
+                    }
+                }
+
+                ShadowSegment newSegment = new ShadowSegment(cache, this, stroke, boxRadius);
+                ShadowSegment[] newSegments = Arrays.copyOf(currentSegments, currentSegments.length + 1);
+                newSegments[currentSegments.length] = newSegment;
+                shadowSegments = newSegments;
+
+                return newSegment;
+            }
+        }
+
+        public PathSegment getPathSegment() {
+            PathSegment segment = pathSegment;
+            if (segment == null) {
+                synchronized (this) {
+                    segment = pathSegment;
+                    if (segment == null) {
+                        segment = new PathSegment(((GlyphCache) cache).pathCache, this);
+                        pathSegment = segment;
+                    }
+                }
+            }
+
+            return segment;
+        }
+    }
+
+    private static class StrokeSegment extends LruCache.IntSegment<Glyph> {
+
+        public final Segment parent;
+        public final int lineRadius;
+        public final int lineCap;
+        public final int lineJoin;
+        public final int miterLimit;
+
+        public StrokeSegment(LruCache cache, Segment parent, int lineRadius, int lineCap, int lineJoin, int miterLimit) {
+            super(cache);
+            this.parent = parent;
+            this.lineRadius = lineRadius;
+            this.lineCap = lineCap;
+            this.lineJoin = lineJoin;
+            this.miterLimit = miterLimit;
+        }
+
+        public boolean matches(int lineRadius, int lineCap, int lineJoin, int miterLimit) {
+            return this.lineRadius == lineRadius && this.lineCap == lineCap
+                && this.lineJoin == lineJoin && this.miterLimit == miterLimit;
+        }
+
+        @Override
+        protected int sizeOf(Integer key, Glyph value) {
+            return Segment.measure(value);
+        }
+
+        @Override
+        protected void entryEvicted(Integer key, Glyph value) {
+            parent.checkIdle();
+        }
+    }
+
+    private static class ShadowSegment extends LruCache.IntSegment<Glyph> {
+
+        public final Segment parent;
+        public final StrokeSegment stroke;
+        public final int boxRadius;
+
+        public ShadowSegment(LruCache cache, Segment parent, StrokeSegment stroke, int boxRadius) {
+            super(cache);
+            this.parent = parent;
+            this.stroke = stroke;
+            this.boxRadius = boxRadius;
+        }
+
+        public boolean matches(StrokeSegment stroke, int boxRadius) {
+            return this.stroke == stroke && this.boxRadius == boxRadius;
+        }
+
+        @Override
+        protected int sizeOf(Integer key, Glyph value) {
+            return Segment.measure(value);
+        }
+
+        @Override
+        protected void entryEvicted(Integer key, Glyph value) {
+            parent.checkIdle();
+        }
+    }
+
+    private static class PathEntry {
+
+        public final Path path;
+        public final int byteCount;
+
+        public PathEntry(Path path, int byteCount) {
+            this.path = path;
+            this.byteCount = byteCount;
+        }
+    }
+
+    private static class PathSegment extends LruCache.IntSegment<PathEntry> {
+
+        //
+        // The path itself keeps its points and verbs in native memory, in roughly the same space
+        // as the outline it is generated from. The remaining overhead is taken to be the same as
+        // that of a glyph.
+        //
+        private static final int ESTIMATED_OVERHEAD = Segment.ESTIMATED_OVERHEAD;
+
+        public final Segment parent;
+
+        public PathSegment(LruCache cache, Segment parent) {
+            super(cache);
+            this.parent = parent;
+        }
+
+        @Override
+        protected int sizeOf(Integer key, PathEntry value) {
+            return value.byteCount;
+        }
+
+        @Override
+        protected void entryEvicted(Integer key, PathEntry value) {
+            parent.checkIdle();
+        }
+    }
+
+    private static class PathCache extends LruCache {
+
+        public PathCache(int capacity) {
+            super(capacity);
+        }
+    }
+
+    private static class OutlineSegment extends LruCache.IntSegment<GlyphOutline> {
+
+        public final Typeface typeface;
+
+        public OutlineSegment(LruCache cache, Typeface typeface) {
+            super(cache);
+            this.typeface = typeface;
+        }
+
+        @Override
+        protected int sizeOf(Integer key, GlyphOutline value) {
+            return value.byteCount();
+        }
+
+        @Override
+        protected void entryEvicted(Integer key, GlyphOutline value) {
+            if (isEmpty()) {
+                ((GlyphCache) cache).outlineSegments.remove(typeface, this);
+            }
+        }
+    }
+
+    private static class FieldSegment extends LruCache.IntSegment<Glyph> {
+
+        public final Typeface typeface;
+
+        public FieldSegment(LruCache cache, Typeface typeface) {
+            super(cache);
+            this.typeface = typeface;
+        }
+
+        @Override
+        protected int sizeOf(Integer key, Glyph value) {
+            return Segment.measure(value);
+        }
+
+        @Override
+        protected void entryEvicted(Integer key, Glyph value) {
+            if (isEmpty()) {
+                ((GlyphCache) cache).fieldSegments.remove(typeface, this);
+            }
+        }
+    }
+
+    private static class PageSegment extends LruCache.Segment<AtlasPage, AtlasPage> {
+
+        public PageSegment(LruCache cache) {
+            super(cache);
+        }
+
+        @Override
+        protected int sizeOf(AtlasPage key, AtlasPage value) {
+            return value.byteCount();
+        }
+
+        @Override
+        protected void entryEvicted(AtlasPage key, AtlasPage value) {
+            value.evict();
+        }
     }
 
     private static class Holder {
@@ -79,111 +413,1031 @@ class GlyphCache extends LruCache {
         }
     }
 
+    private static class MaskBatch {
+
+        private static final int GLYPH_COUNT = 64;
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        final int[] glyphIds = new int[GLYPH_COUNT];
+        final Glyph[] glyphs = new Glyph[GLYPH_COUNT];
+        final int[] metrics = new int[GLYPH_COUNT * GlyphRasterizer.MASK_METRIC_COUNT];
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        int glyphCount;
+
+        boolean isFull() {
+            return glyphCount == GLYPH_COUNT;
+        }
+
+        void add(Glyph glyph) {
+            glyphIds[glyphCount] = glyph.glyphId();
+            glyphs[glyphCount] = glyph;
+            glyphCount++;
+        }
+
+        void reset() {
+            Arrays.fill(glyphs, 0, glyphCount, null);
+            glyphCount = 0;
+        }
+    }
+
+    private static final ThreadLocal<MaskBatch> MASK_BATCH = new ThreadLocal<MaskBatch>() {
+        @Override
+        protected MaskBatch initialValue() {
+            return new MaskBatch();
+        }
+    };
+
+    private static class PrefetchHolder {
+
+        private static final ExecutorService EXECUTOR;
+
+        static {
+            // A single low priority thread keeps the prefetching from competing with the UI thread.
+            EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "GlyphPrefetch");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the glyph cache shared by all renderers.
+     *
+     * @return The shared instance of glyph cache.
+     */
     public static GlyphCache getInstance() {
         return Holder.INSTANCE;
     }
 
-    private HashMap<GlyphStrike, Segment> segments = new HashMap<>();
+    private static final int DEFAULT_MAX_RASTERIZER_COUNT = 16;
+
+    private final ConcurrentHashMap<GlyphStrike, Segment> segments = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Segment> idleSegments = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<Typeface, OutlineSegment> outlineSegments = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Typeface, FieldSegment> fieldSegments = new ConcurrentHashMap<>();
+    private final LinkedHashMap<GlyphRasterizer, GlyphRasterizer> liveRasterizers = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxRasterizerCount = DEFAULT_MAX_RASTERIZER_COUNT;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLongArray rasterizationCounts = new AtomicLongArray(RasterizationKind.values().length);
+    private final AtomicLongArray rasterizationTimes = new AtomicLongArray(RasterizationKind.values().length);
+    private final PageSegment pages = new PageSegment(this);
+    private final PathCache pathCache;
+    private final GlyphSlab slab = new GlyphSlab();
+    private volatile boolean slabStorageEnabled = false;
+    private volatile boolean frequencyAdmissionEnabled = false;
+    private volatile GlyphDiskCache diskCache;
 
-    public GlyphCache(int capacity) {
+    GlyphCache(int capacity) {
         super(capacity);
+        pathCache = new PathCache(Math.max(1, capacity / 4));
+    }
+
+    /**
+     * Returns the maximum number of bytes used by the paths of glyphs drawn at very large sizes.
+     *
+     * @return The capacity of the path budget in bytes.
+     */
+    public int getPathCapacity() {
+        return pathCache.capacity();
+    }
+
+    /**
+     * Sets the maximum number of bytes used by the paths of glyphs drawn at very large sizes. The
+     * paths are kept apart from the glyph masks so that a few large glyphs cannot evict the masks
+     * of body text, and the least recently used paths are evicted when this budget is exceeded.
+     * The default value is a quarter of the capacity of the cache.
+     *
+     * @param pathCapacity The capacity of the path budget in bytes.
+     *
+     * @throws IllegalArgumentException if <code>pathCapacity</code> is not positive.
+     */
+    public void setPathCapacity(int pathCapacity) {
+        pathCache.setCapacity(pathCapacity);
+    }
+
+    /**
+     * Returns whether the coverage of glyphs drawn from atlas pages is stored outside the Java
+     * heap. The default value is <code>false</code>.
+     *
+     * @return <code>true</code> if slab storage is enabled, <code>false</code> otherwise.
+     */
+    public boolean isSlabStorageEnabled() {
+        return slabStorageEnabled;
+    }
+
+    /**
+     * Enables or disables off-heap storage for the coverage of glyphs drawn from atlas pages. When
+     * enabled, the rasterizer writes the coverage of small glyphs into direct memory owned by this
+     * cache instead of creating a bitmap for each glyph, and the coverage is copied into the atlas
+     * pages only when they are built. This reduces the garbage collection pressure when a large
+     * number of glyphs is cycled through the cache. It only affects the glyphs rasterized after
+     * the change, and only for renderers which have the atlas enabled. The default value is
+     * <code>false</code>.
+     *
+     * @param slabStorageEnabled <code>true</code> to enable slab storage, <code>false</code> to
+     *                           disable it.
+     */
+    public void setSlabStorageEnabled(boolean slabStorageEnabled) {
+        this.slabStorageEnabled = slabStorageEnabled;
+    }
+
+    /**
+     * Returns <code>true</code> if this cache admits the glyphs based on their access frequency.
+     *
+     * @return <code>true</code> if frequency based admission is enabled, <code>false</code>
+     *         otherwise.
+     */
+    public boolean isFrequencyAdmissionEnabled() {
+        return frequencyAdmissionEnabled;
+    }
+
+    /**
+     * Enables or disables frequency based admission of glyphs. When enabled, a newly rasterized
+     * glyph is kept in a small recency window and replaces an older glyph only if it is estimated
+     * to be drawn more often. This prevents the frequently drawn glyphs of body text from being
+     * flushed by a one time pass over many distinct glyphs, such as scrolling through a glyph
+     * table or a font picker. When disabled, the least recently used glyph is always evicted. The
+     * cached glyphs are retained across the change. The default value is <code>false</code>.
+     *
+     * @param frequencyAdmissionEnabled <code>true</code> to enable frequency based admission,
+     *                                  <code>false</code> to disable it.
+     */
+    public synchronized void setFrequencyAdmissionEnabled(boolean frequencyAdmissionEnabled) {
+        if (this.frequencyAdmissionEnabled != frequencyAdmissionEnabled) {
+            this.frequencyAdmissionEnabled = frequencyAdmissionEnabled;
+            setEvictionPolicy(frequencyAdmissionEnabled ? EvictionPolicy.tinyLfu() : EvictionPolicy.lru());
+        }
+    }
+
+    /**
+     * Returns the maximum number of strikes whose native rasterizers are kept alive at a time.
+     *
+     * @return The maximum number of live rasterizers.
+     */
+    public int getMaxRasterizerCount() {
+        synchronized (liveRasterizers) {
+            return maxRasterizerCount;
+        }
+    }
+
+    /**
+     * Sets the maximum number of strikes whose native rasterizers are kept alive at a time. Each
+     * distinct combination of typeface, size and skew drawn by a renderer needs a native
+     * rasterizer holding its scaled font data. When the limit is exceeded, the rasterizer of the
+     * least recently rasterized strike is released, and created again if more glyphs of that
+     * strike need to be rasterized. The already cached glyphs of the strike remain usable. This
+     * keeps the native memory bounded when the text is drawn at a large number of sizes, for
+     * example while zooming or animating. The default value is 16.
+     *
+     * @param maxRasterizerCount The maximum number of live rasterizers.
+     *
+     * @throws IllegalArgumentException if <code>maxRasterizerCount</code> is less than one.
+     */
+    public void setMaxRasterizerCount(int maxRasterizerCount) {
+        if (maxRasterizerCount < 1) {
+            throw new IllegalArgumentException("Invalid rasterizer count: " + maxRasterizerCount);
+        }
+
+        ArrayList<GlyphRasterizer> evicted;
+
+        synchronized (liveRasterizers) {
+            this.maxRasterizerCount = maxRasterizerCount;
+            evicted = trimRasterizers();
+        }
+
+        releaseRasterizers(evicted);
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this cache. The counters are read without stopping
+     * the other threads, so they may be slightly inconsistent with each other if the cache is in
+     * use at the same time.
+     *
+     * @return A new snapshot of the statistics.
+     */
+    public GlyphCacheStats getStats() {
+        int kindCount = RasterizationKind.values().length;
+        long[] counts = new long[kindCount];
+        long[] times = new long[kindCount];
+
+        for (int i = 0; i < kindCount; i++) {
+            counts[i] = rasterizationCounts.get(i);
+            times[i] = rasterizationTimes.get(i);
+        }
+
+        ArrayList<GlyphCacheStats.StrikeStats> strikes = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            int glyphCount = segment.count();
+            long byteCount = segment.size();
+
+            for (StrokeSegment strokeSegment : segment.strokeSegments) {
+                glyphCount += strokeSegment.count();
+                byteCount += strokeSegment.size();
+            }
+            for (ShadowSegment shadowSegment : segment.shadowSegments) {
+                glyphCount += shadowSegment.count();
+                byteCount += shadowSegment.size();
+            }
+
+            if (glyphCount > 0) {
+                strikes.add(new GlyphCacheStats.StrikeStats(segment.strike, glyphCount, byteCount));
+            }
+        }
+
+        return new GlyphCacheStats(hitCount.get(), missCount.get(), evictionCount(),
+                                   counts, times, lockWaitTime(),
+                                   capacity(), size(), pages.size(),
+                                   pathCache.capacity(), pathCache.size(), strikes);
+    }
+
+    /**
+     * Resets all counters of the statistics of this cache to zero.
+     */
+    public void resetStats() {
+        hitCount.set(0);
+        missCount.set(0);
+
+        for (int i = 0; i < rasterizationCounts.length(); i++) {
+            rasterizationCounts.set(i, 0);
+            rasterizationTimes.set(i, 0);
+        }
+
+        resetStatistics();
+    }
+
+    private void recordRasterization(RasterizationKind kind, long startTime) {
+        recordRasterization(kind, startTime, 1);
+    }
+
+    private void recordRasterization(RasterizationKind kind, long startTime, int glyphCount) {
+        int index = kind.ordinal();
+        rasterizationCounts.addAndGet(index, glyphCount);
+        rasterizationTimes.addAndGet(index, System.nanoTime() - startTime);
+    }
+
+    private void recordLookup(boolean hit) {
+        if (hit) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Opens a persistent cache of glyph masks in the given file. The masks rasterized from now on
+     * are also written to the file, and a glyph missing from memory is loaded from the file before
+     * falling back to the rasterizer. So the glyphs drawn in a previous session of the application
+     * become available without rasterization as soon as the file is opened. The file is used as a
+     * circular log of fixed size, overwriting its oldest masks when it becomes full, and a file
+     * written by an incompatible version or found to be corrupted is reset. The masks of stroked
+     * glyphs are not persisted.
+     *
+     * @param file The file to keep the masks in. It is created if it does not exist.
+     * @param fileSize The size of the file in bytes.
+     *
+     * @throws IOException if an I/O error occurred while mapping the file.
+     * @throws IllegalArgumentException if <code>fileSize</code> is too small for the file.
+     */
+    public void openDiskCache(File file, int fileSize) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("File is null");
+        }
+
+        diskCache = GlyphDiskCache.open(file, fileSize);
+    }
+
+    /**
+     * Writes the pending masks of the persistent cache to its file and stops using it.
+     */
+    public void closeDiskCache() {
+        GlyphDiskCache currentCache = diskCache;
+        if (currentCache != null) {
+            diskCache = null;
+            currentCache.flush();
+        }
     }
 
     @Override
     public void clear() {
-        super.clear();
+        synchronized (segments) {
+            super.clear();
+            idleSegments.clear();
+
+            synchronized (liveRasterizers) {
+                liveRasterizers.clear();
+            }
 
-        // Dispose all glyph rasterizers.
-        for (Map.Entry<GlyphStrike, Segment> entry : segments.entrySet()) {
-            entry.getValue().rasterizer.dispose();
+            // Dispose all glyph rasterizers.
+            for (Map.Entry<GlyphStrike, Segment> entry : segments.entrySet()) {
+                Segment segment = entry.getValue();
+                segment.detached = true;
+                segment.rasterizer.dispose();
+            }
+            segments.clear();
+            outlineSegments.clear();
+            fieldSegments.clear();
+            pathCache.clear();
         }
-        segments.clear();
     }
 
-    private Segment unsafeGetSegment(GlyphStrike strike) {
+    /**
+     * Returns the segment of given strike, which can be used as a handle to the strike in the
+     * lookups of glyphs as long as it is not detached.
+     */
+    Segment getSegment(GlyphStrike strike) {
+        if (!idleSegments.isEmpty()) {
+            disposeIdleSegments();
+        }
+
         Segment segment = segments.get(strike);
         if (segment == null) {
-            GlyphRasterizer rasterizer = new GlyphRasterizer(strike);
-            segment = new Segment(this, rasterizer);
-            segments.put(strike.clone(), segment);
+            synchronized (segments) {
+                segment = segments.get(strike);
+                if (segment == null) {
+                    segment = new Segment(this, strike.clone());
+                    segments.put(segment.strike, segment);
+                }
+            }
         }
 
         return segment;
     }
 
-    public Glyph unsafeGetGlyph(Segment segment, int glyphId) {
-        Glyph glyph = segment.get(glyphId);
+    /**
+     * Removes the segments whose last glyph has been evicted and disposes their rasterizers. A
+     * thread still holding such a segment may keep using it safely, in which case its rasterizer
+     * is created again and tracked like any other live rasterizer.
+     */
+    private void disposeIdleSegments() {
+        synchronized (segments) {
+            Segment segment;
+            while ((segment = idleSegments.poll()) != null) {
+                if (segment.isIdle() && segments.remove(segment.strike, segment)) {
+                    segment.detached = true;
+                    synchronized (liveRasterizers) {
+                        liveRasterizers.remove(segment.rasterizer);
+                    }
+                    segment.rasterizer.dispose();
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the rasterizer of given segment as recently used, releasing the least recently used
+     * rasterizers beyond the limit. It must be called after using the rasterizer, and without
+     * holding the lock of any rasterizer.
+     */
+    private void touchRasterizer(Segment segment) {
+        ArrayList<GlyphRasterizer> evicted;
+
+        synchronized (liveRasterizers) {
+            liveRasterizers.put(segment.rasterizer, segment.rasterizer);
+            evicted = trimRasterizers();
+        }
+
+        releaseRasterizers(evicted);
+    }
+
+    private ArrayList<GlyphRasterizer> trimRasterizers() {
+        ArrayList<GlyphRasterizer> evicted = null;
+        int excessCount = liveRasterizers.size() - maxRasterizerCount;
+
+        if (excessCount > 0) {
+            evicted = new ArrayList<>(excessCount);
+
+            Iterator<GlyphRasterizer> iterator = liveRasterizers.keySet().iterator();
+            while (excessCount-- > 0) {
+                evicted.add(iterator.next());
+                iterator.remove();
+            }
+        }
+
+        return evicted;
+    }
+
+    private static void releaseRasterizers(ArrayList<GlyphRasterizer> rasterizers) {
+        if (rasterizers != null) {
+            for (GlyphRasterizer rasterizer : rasterizers) {
+                rasterizer.release();
+            }
+        }
+    }
+
+    static int glyphKey(int glyphId, int subpixelBin) {
+        // Glyph ids are 16-bit, so the bin can be stored in the upper half of the key.
+        return glyphId | (subpixelBin << 16);
+    }
+
+    static int glyphIdOf(int glyphKey) {
+        return glyphKey & 0xFFFF;
+    }
+
+    static int subpixelBinOf(int glyphKey) {
+        return glyphKey >>> 16;
+    }
+
+    /**
+     * Loads the glyphs of given prefetch on a background thread. The returned future can be used
+     * to cancel the remaining work.
+     */
+    Future<?> prefetch(GlyphPrefetch prefetch) {
+        return PrefetchHolder.EXECUTOR.submit(prefetch);
+    }
+
+    private static Glyph getGlyph(LruCache.IntSegment<Glyph> segment, int glyphKey, int glyphId) {
+        Glyph glyph = segment.get(glyphKey);
         if (glyph == null) {
-            glyph = new Glyph(glyphId);
+            // Publish an empty glyph so that concurrent requests for it share the same object and
+            // wait for a single rasterization.
+            Glyph newGlyph = new Glyph(glyphId);
+            glyph = segment.putIfAbsent(glyphKey, newGlyph);
+            if (glyph == null) {
+                glyph = newGlyph;
+            }
         }
 
         return glyph;
     }
 
+    private void loadBitmap(Segment segment, GlyphStrike strike, int glyphKey, Glyph glyph) {
+        GlyphDiskCache currentCache = diskCache;
+        if (currentCache == null || !currentCache.loadBitmap(strike, glyphKey, glyph)) {
+            long startTime = System.nanoTime();
+            segment.rasterizer.loadBitmap(glyph, subpixelBinOf(glyphKey));
+            recordRasterization(RasterizationKind.BITMAP, startTime);
+            touchRasterizer(segment);
+
+            if (currentCache != null) {
+                currentCache.storeBitmap(strike, glyphKey, glyph);
+            }
+        }
+    }
+
+    private void loadCoverage(Segment segment, GlyphStrike strike, int glyphKey, Glyph glyph) {
+        GlyphDiskCache currentCache = diskCache;
+        if (currentCache == null
+                || !currentCache.loadCoverage(strike, glyphKey, glyph, AtlasPage.MAX_GLYPH_EXTENT)) {
+            long startTime = System.nanoTime();
+            segment.rasterizer.loadCoverage(glyph, subpixelBinOf(glyphKey));
+            recordRasterization(RasterizationKind.BITMAP, startTime);
+            touchRasterizer(segment);
+
+            if (currentCache != null) {
+                if (glyph.bitmap() != null) {
+                    currentCache.storeBitmap(strike, glyphKey, glyph);
+                } else {
+                    currentCache.storeCoverage(strike, glyphKey, glyph);
+                }
+            }
+        }
+    }
+
+    private static boolean needsMask(Glyph glyph, boolean atlas) {
+        if (atlas) {
+            return !glyph.containsAtlasMask() && !glyph.containsBitmap() && !glyph.containsCoverage();
+        }
+
+        return !glyph.containsBitmap();
+    }
+
+    /**
+     * Loads the masks of given glyphs which are not cached yet. The missing glyphs are rasterized
+     * in batches so that the native rasterizer is entered once per batch rather than once per
+     * glyph. The masks of atlas glyphs are only loaded here; they are placed into the atlas when
+     * the glyphs are requested.
+     */
+    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+    void loadMasks(GlyphStrike strike, int[] glyphKeys, int count, boolean atlas) {
+        loadMasks(getSegment(strike), glyphKeys, count, atlas);
+    }
+
     @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
-    public Glyph getMaskGlyph(GlyphStrike strike, int glyphId) {
-        final Segment segment;
-        final Glyph glyph;
+    void loadMasks(Segment segment, int[] glyphKeys, int count, boolean atlas) {
+        GlyphStrike strike = segment.strike;
+        GlyphDiskCache currentCache = diskCache;
+        boolean coverage = (atlas && slabStorageEnabled);
+        MaskBatch batch = MASK_BATCH.get();
+
+        for (int bin = 0; bin < GlyphRasterizer.SUBPIXEL_BIN_COUNT; bin++) {
+            for (int i = 0; i < count; i++) {
+                int glyphKey = glyphKeys[i];
+                if (subpixelBinOf(glyphKey) != bin) {
+                    continue;
+                }
 
-        synchronized (this) {
-            segment = unsafeGetSegment(strike);
-            glyph = unsafeGetGlyph(segment, glyphId);
+                Glyph glyph = getGlyph(segment, glyphKey, glyphIdOf(glyphKey));
+                if (!needsMask(glyph, atlas)) {
+                    continue;
+                }
+
+                if (currentCache != null) {
+                    synchronized (glyph) {
+                        if (needsMask(glyph, atlas)
+                                && (coverage
+                                    ? currentCache.loadCoverage(strike, glyphKey, glyph, AtlasPage.MAX_GLYPH_EXTENT)
+                                    : currentCache.loadBitmap(strike, glyphKey, glyph))) {
+                            if (coverage && glyph.bitmap() == null && !glyph.containsCoverage()) {
+                                slab.store(glyph);
+                            }
+                            recordLookup(false);
+                            segment.put(glyphKey, glyph);
+                            continue;
+                        }
+                    }
+                }
+
+                batch.add(glyph);
+                if (batch.isFull()) {
+                    loadBatch(segment, strike, batch, bin, atlas, coverage);
+                }
+            }
+
+            if (batch.glyphCount > 0) {
+                loadBatch(segment, strike, batch, bin, atlas, coverage);
+            }
         }
+    }
+
+    private void loadBatch(Segment segment, GlyphStrike strike, MaskBatch batch,
+                           int subpixelBin, boolean atlas, boolean coverage) {
+        int maxExtent = (coverage ? AtlasPage.MAX_GLYPH_EXTENT : Integer.MAX_VALUE);
+        long startTime = System.nanoTime();
+        int loadedCount = 0;
+
+        while (loadedCount < batch.glyphCount) {
+            batch.buffer.clear();
+
+            int processedCount = segment.rasterizer.loadMasks(batch.glyphIds, loadedCount,
+                                                              batch.glyphCount - loadedCount,
+                                                              subpixelBin, batch.buffer, maxExtent,
+                                                              batch.metrics);
+            if (processedCount <= 0) {
+                // Leave the remaining glyphs to the regular path.
+                break;
+            }
+
+            for (int i = 0; i < processedCount; i++) {
+                Glyph glyph = batch.glyphs[loadedCount + i];
+                ownMask(segment, strike, glyphKey(glyph.glyphId(), subpixelBin), glyph,
+                        batch.buffer, batch.metrics, i * GlyphRasterizer.MASK_METRIC_COUNT,
+                        atlas, coverage);
+            }
+
+            loadedCount += processedCount;
+        }
+
+        recordRasterization(RasterizationKind.BITMAP, startTime, loadedCount);
+        touchRasterizer(segment);
+        batch.reset();
+    }
+
+    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+    private void ownMask(Segment segment, GlyphStrike strike, int glyphKey, Glyph glyph,
+                         ByteBuffer buffer, int[] metrics, int base,
+                         boolean atlas, boolean coverage) {
+        int offset = metrics[base + GlyphRasterizer.MASK_OFFSET];
+        if (offset < 0) {
+            return;
+        }
+
+        int left = metrics[base + GlyphRasterizer.MASK_LEFT];
+        int top = metrics[base + GlyphRasterizer.MASK_TOP];
+        int width = metrics[base + GlyphRasterizer.MASK_WIDTH];
+        int height = metrics[base + GlyphRasterizer.MASK_HEIGHT];
+        GlyphDiskCache currentCache = diskCache;
 
         synchronized (glyph) {
-            if (glyph.bitmap() == null) {
-                segment.remove(glyphId);
+            // Another thread might have loaded the glyph in the meantime.
+            if (!needsMask(glyph, atlas)) {
+                return;
+            }
+
+            if (coverage) {
+                // Go through the scratch buffer so that the coverage is stored like a single load.
+                ByteBuffer scratch = GlyphSlab.scratchBuffer();
+                ByteBuffer source = buffer.duplicate();
+                source.limit(offset + (width * height));
+                source.position(offset);
+                scratch.clear();
+                scratch.put(source);
+                scratch.clear();
+
+                glyph.ownCoverage(left, top, width, height);
+                if (currentCache != null) {
+                    currentCache.storeCoverage(strike, glyphKey, glyph);
+                }
+                if (!glyph.containsCoverage()) {
+                    slab.store(glyph);
+                }
+            } else {
+                Bitmap bitmap = null;
+                if (width > 0 && height > 0) {
+                    bitmap = createBitmap(buffer, offset, width, height);
+                }
+
+                glyph.ownBitmap(bitmap, bitmap != null ? left : 0, bitmap != null ? top : 0);
+                if (currentCache != null) {
+                    currentCache.storeBitmap(strike, glyphKey, glyph);
+                }
+            }
+
+            recordLookup(false);
+            segment.put(glyphKey, glyph);
+        }
+    }
+
+    private static Bitmap createBitmap(ByteBuffer buffer, int offset, int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        int rowBytes = bitmap.getRowBytes();
+        ByteBuffer source = buffer.duplicate();
+
+        if (rowBytes == width) {
+            source.limit(offset + (width * height));
+            source.position(offset);
+            bitmap.copyPixelsFromBuffer(source);
+        } else {
+            byte[] rows = new byte[rowBytes * height];
+            for (int i = 0; i < height; i++) {
+                source.position(offset + (i * width));
+                source.get(rows, i * rowBytes, width);
+            }
+            bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(rows));
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Returns the coverage of given mask bitmap with tightly packed rows.
+     */
+    private static byte[] readCoverage(Bitmap bitmap) {
+        Bitmap alphaBitmap = bitmap;
+        if (bitmap.getConfig() != Bitmap.Config.ALPHA_8) {
+            alphaBitmap = bitmap.extractAlpha();
+        }
+
+        int width = alphaBitmap.getWidth();
+        int height = alphaBitmap.getHeight();
+        int rowBytes = alphaBitmap.getRowBytes();
+        ByteBuffer rows = ByteBuffer.allocate(rowBytes * height);
+        alphaBitmap.copyPixelsToBuffer(rows);
+
+        if (alphaBitmap != bitmap) {
+            alphaBitmap.recycle();
+        }
+
+        byte[] coverage = new byte[width * height];
+        for (int i = 0; i < height; i++) {
+            rows.position(i * rowBytes);
+            rows.get(coverage, i * width, width);
+        }
+
+        return coverage;
+    }
+
+    /**
+     * Returns the glyph if its mask has already been loaded, or null otherwise.
+     */
+    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+    Glyph findMaskGlyph(Segment segment, int glyphId, int subpixelBin) {
+        Glyph glyph = segment.get(glyphKey(glyphId, subpixelBin));
+        if (glyph != null) {
+            synchronized (glyph) {
+                if (glyph.containsBitmap()) {
+                    recordLookup(true);
+                    return glyph;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the glyph if its mask is ready to be drawn either from the atlas or from its own
+     * bitmap, or null otherwise.
+     */
+    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+    Glyph findAtlasGlyph(Segment segment, int glyphId, int subpixelBin) {
+        Glyph glyph = segment.get(glyphKey(glyphId, subpixelBin));
+        if (glyph != null) {
+            synchronized (glyph) {
+                if (glyph.containsAtlasMask() || glyph.bitmap() != null) {
+                    recordLookup(true);
+                    return glyph;
+                }
+            }
+        }
+
+        return null;
+    }
 
-                segment.rasterizer.loadBitmap(glyph);
-                segment.put(glyphId, glyph);
+    /**
+     * Returns a glyph whose mask is rendered with a horizontal offset of the given subpixel bin.
+     */
+    Glyph getMaskGlyph(GlyphStrike strike, int glyphId, int subpixelBin) {
+        return getMaskGlyph(getSegment(strike), glyphId, subpixelBin);
+    }
+
+    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+    Glyph getMaskGlyph(Segment segment, int glyphId, int subpixelBin) {
+        GlyphStrike strike = segment.strike;
+        int glyphKey = glyphKey(glyphId, subpixelBin);
+        Glyph glyph = getGlyph(segment, glyphKey, glyphId);
+
+        synchronized (glyph) {
+            boolean loaded = glyph.containsBitmap();
+            if (!loaded) {
+                loadBitmap(segment, strike, glyphKey, glyph);
+                segment.put(glyphKey, glyph);
             }
+            recordLookup(loaded);
         }
 
         return glyph;
     }
 
+    /**
+     * Returns a glyph whose mask is stored in a shared atlas page of the strike. The masks which
+     * are too large for a page are kept in their own bitmaps.
+     */
+    Glyph getAtlasGlyph(GlyphStrike strike, int glyphId, int subpixelBin) {
+        return getAtlasGlyph(getSegment(strike), glyphId, subpixelBin);
+    }
+
     @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
-    public Glyph getMaskGlyph(GlyphStrike strike, int glyphId, int lineRadius,
-                              int lineCap, int lineJoin, int miterLimit) {
-        final Segment segment;
-        final Glyph glyph;
+    Glyph getAtlasGlyph(Segment segment, int glyphId, int subpixelBin) {
+        GlyphStrike strike = segment.strike;
+        int glyphKey = glyphKey(glyphId, subpixelBin);
+        Glyph glyph = getGlyph(segment, glyphKey, glyphId);
+        AtlasPage newPage = null;
+
+        synchronized (glyph) {
+            // Placing a glyph already loaded by a batch into the atlas does not count as a miss.
+            boolean missed = false;
+
+            if (!glyph.containsAtlasMask()) {
+                Bitmap maskBitmap = glyph.bitmap();
+                AtlasRegion region = null;
+
+                if (slabStorageEnabled && maskBitmap == null) {
+                    // The coverage is kept in the slab even after it has been copied into a page,
+                    // so that an evicted page can be rebuilt without rasterizing the glyph again.
+                    if (!glyph.containsCoverage() && !glyph.containsBitmap()) {
+                        missed = true;
+                        loadCoverage(segment, strike, glyphKey, glyph);
+                        if (glyph.bitmap() == null && !glyph.containsCoverage()) {
+                            slab.store(glyph);
+                        }
+                    }
+
+                    if (glyph.slabChunk() != GlyphSlab.NO_CHUNK) {
+                        region = segment.atlas.place(slab, glyph);
+                    }
+                } else {
+                    if (maskBitmap == null && !glyph.containsBitmap()) {
+                        missed = true;
+                        loadBitmap(segment, strike, glyphKey, glyph);
+                        maskBitmap = glyph.bitmap();
+                    }
+
+                    if (maskBitmap != null && AtlasPage.canHold(maskBitmap)) {
+                        region = segment.atlas.place(maskBitmap);
+                    }
+                }
 
-        synchronized (this) {
-            segment = unsafeGetSegment(strike);
-            glyph = unsafeGetGlyph(segment, glyphId);
+                if (region != null) {
+                    glyph.moveToAtlas(region);
+                    newPage = region.page;
+                }
+
+                segment.put(glyphKey, glyph);
+            }
+
+            recordLookup(!missed);
         }
 
-        synchronized(glyph) {
-            if (!glyph.containsOutline()) {
-                segment.remove(glyphId);
+        if (newPage != null) {
+            touchPage(newPage);
+        }
+
+        return glyph;
+    }
+
+    /**
+     * Marks the given atlas page as recently used, charging it to the cache if it is new. The
+     * renderer calls it once per drawn batch rather than once per glyph.
+     */
+    void touchPage(AtlasPage page) {
+        if (!page.isEvicted()) {
+            pages.putIfAbsent(page, page);
+        }
+    }
 
-                segment.rasterizer.loadOutline(glyph);
-                segment.put(glyphId, glyph);
+    /**
+     * Returns the unscaled outline of given glyph, loading it from the typeface only once for all
+     * of its strikes.
+     */
+    private GlyphOutline getGlyphOutline(Typeface typeface, int glyphId) {
+        OutlineSegment segment = outlineSegments.get(typeface);
+        if (segment == null) {
+            OutlineSegment newSegment = new OutlineSegment(this, typeface);
+            segment = outlineSegments.putIfAbsent(typeface, newSegment);
+            if (segment == null) {
+                segment = newSegment;
             }
         }
 
-        return segment.rasterizer.strokeGlyph(glyph, lineRadius, lineCap, lineJoin, miterLimit);
+        GlyphOutline outline = segment.get(glyphId);
+        if (outline == null) {
+            long startTime = System.nanoTime();
+            outline = typeface.loadGlyphOutline(glyphId);
+            recordRasterization(RasterizationKind.OUTLINE, startTime);
+
+            if (outline == null) {
+                // Remember the failure so that the typeface is not asked again for this glyph.
+                outline = new GlyphOutline(new byte[0], new float[0]);
+            }
+
+            segment.put(glyphId, outline);
+        }
+
+        return outline;
+    }
+
+    /**
+     * Returns the distance field of given glyph as an alpha bitmap computed at
+     * {@link DistanceField#REFERENCE_SIZE}, shared by all strikes of the typeface.
+     */
+    Glyph getFieldGlyph(Typeface typeface, int glyphId) {
+        FieldSegment segment = fieldSegments.get(typeface);
+        if (segment == null) {
+            FieldSegment newSegment = new FieldSegment(this, typeface);
+            segment = fieldSegments.putIfAbsent(typeface, newSegment);
+            if (segment == null) {
+                segment = newSegment;
+            }
+        }
+
+        Glyph glyph = segment.get(glyphId);
+        recordLookup(glyph != null);
+
+        if (glyph == null) {
+            GlyphOutline outline = getGlyphOutline(typeface, glyphId);
+            float scale = (float) DistanceField.REFERENCE_SIZE / typeface.getUnitsPerEm();
+
+            long startTime = System.nanoTime();
+            DistanceField field = DistanceField.create(outline, scale);
+            glyph = new Glyph(glyphId);
+
+            if (field != null) {
+                Bitmap bitmap = createBitmap(ByteBuffer.wrap(field.values), 0, field.width, field.height);
+                glyph.ownBitmap(bitmap, field.left, field.top);
+            } else {
+                glyph.ownBitmap(null, 0, 0);
+            }
+            recordRasterization(RasterizationKind.FIELD, startTime);
+
+            segment.put(glyphId, glyph);
+        }
+
+        return glyph;
+    }
+
+    Glyph getMaskGlyph(GlyphStrike strike, int glyphId, int lineRadius,
+                       int lineCap, int lineJoin, int miterLimit) {
+        return getMaskGlyph(getSegment(strike), glyphId, lineRadius, lineCap, lineJoin, miterLimit);
     }
 
     @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
-    public Path getGlyphPath(GlyphStrike strike, int glyphId) {
-        final Segment segment;
-        final Glyph glyph;
+    Glyph getMaskGlyph(Segment segment, int glyphId, int lineRadius,
+                       int lineCap, int lineJoin, int miterLimit) {
+        GlyphStrike strike = segment.strike;
+        StrokeSegment strokeSegment = segment.getStrokeSegment(lineRadius, lineCap, lineJoin, miterLimit);
+        Glyph strokeGlyph = getGlyph(strokeSegment, glyphId, glyphId);
+
+        // Concurrent misses wait on the published glyph so that the stroker runs only once.
+        synchronized (strokeGlyph) {
+            boolean loaded = strokeGlyph.containsBitmap();
+            if (!loaded) {
+                GlyphOutline outline = getGlyphOutline(strike.typeface, glyphId);
+                Glyph stroked = null;
+
+                if (!outline.isEmpty()) {
+                    long startTime = System.nanoTime();
+                    stroked = segment.rasterizer.strokeOutline(glyphId, outline, outline.transform(strike),
+                                                               lineRadius, lineCap, lineJoin, miterLimit);
+                    recordRasterization(RasterizationKind.STROKE, startTime);
+                    touchRasterizer(segment);
+                }
 
-        synchronized (this) {
-            segment = unsafeGetSegment(strike);
-            glyph = unsafeGetGlyph(segment, glyphId);
+                if (stroked != null) {
+                    strokeGlyph.ownBitmap(stroked.bitmap(), stroked.leftSideBearing(), stroked.topSideBearing());
+                } else {
+                    // Remember the failure so that the stroker is not run again for this glyph.
+                    strokeGlyph.ownBitmap(null, 0, 0);
+                }
+
+                strokeSegment.put(glyphId, strokeGlyph);
+            }
+            recordLookup(loaded);
         }
 
-        synchronized (glyph) {
-            if (glyph.path() == null) {
-                segment.remove(glyphId);
+        return strokeGlyph;
+    }
+
+    /**
+     * Returns the path of given glyph, charging it to the path budget rather than the capacity of
+     * this cache. The returned path is shared and must not be modified.
+     */
+    Path getGlyphPath(Segment strikeSegment, int glyphId) {
+        GlyphStrike strike = strikeSegment.strike;
+        PathSegment segment = strikeSegment.getPathSegment();
+        PathEntry entry = segment.get(glyphId);
+        recordLookup(entry != null);
+
+        if (entry == null) {
+            GlyphOutline outline = getGlyphOutline(strike.typeface, glyphId);
+
+            long startTime = System.nanoTime();
+            Path path = outline.toPath(strike);
+            recordRasterization(RasterizationKind.PATH, startTime);
+
+            entry = new PathEntry(path, outline.byteCount() + PathSegment.ESTIMATED_OVERHEAD);
+            segment.put(glyphId, entry);
+        }
+
+        return entry.path;
+    }
+
+    /**
+     * Returns a glyph holding the blurred mask of the shadow cast by the given filled glyph.
+     */
+    Glyph getShadowGlyph(Segment segment, int glyphId, int boxRadius) {
+        return getShadowGlyph(segment, segment.getShadowSegment(null, boxRadius), glyphId);
+    }
+
+    /**
+     * Returns a glyph holding the blurred mask of the shadow cast by the given stroked glyph.
+     */
+    Glyph getShadowGlyph(Segment segment, int glyphId, int boxRadius, int lineRadius,
+                         int lineCap, int lineJoin, int miterLimit) {
+        StrokeSegment strokeSegment = segment.getStrokeSegment(lineRadius, lineCap, lineJoin, miterLimit);
+        return getShadowGlyph(segment, segment.getShadowSegment(strokeSegment, boxRadius), glyphId);
+    }
+
+    private Glyph getShadowGlyph(Segment segment, ShadowSegment shadowSegment, int glyphId) {
+        Glyph shadowGlyph = shadowSegment.get(glyphId);
+        recordLookup(shadowGlyph != null);
+
+        if (shadowGlyph == null) {
+            StrokeSegment stroke = shadowSegment.stroke;
+            long startTime = System.nanoTime();
+            Glyph maskGlyph;
+
+            if (stroke == null) {
+                // Render a separate mask as the cached one may have been moved into the atlas.
+                maskGlyph = new Glyph(glyphId);
+                segment.rasterizer.loadBitmap(maskGlyph, 0);
+                touchRasterizer(segment);
+            } else {
+                maskGlyph = getMaskGlyph(segment, glyphId, stroke.lineRadius,
+                                         stroke.lineCap, stroke.lineJoin, stroke.miterLimit);
+            }
+
+            Bitmap maskBitmap = maskGlyph.bitmap();
+            ShadowMask shadow = null;
+            if (maskBitmap != null) {
+                shadow = ShadowMask.create(readCoverage(maskBitmap),
+                                           maskGlyph.leftSideBearing(), maskGlyph.topSideBearing(),
+                                           maskGlyph.width(), maskGlyph.height(),
+                                           shadowSegment.boxRadius);
+            }
+            if (stroke == null) {
+                // Recycle the separate mask.
+                maskGlyph.ownBitmap(null, 0, 0);
+            }
 
-                segment.rasterizer.loadPath(glyph);
-                segment.put(glyphId, glyph);
+            shadowGlyph = new Glyph(glyphId);
+            if (shadow != null) {
+                Bitmap bitmap = createBitmap(ByteBuffer.wrap(shadow.values), 0, shadow.width, shadow.height);
+                shadowGlyph.ownBitmap(bitmap, shadow.left, shadow.top);
+            } else {
+                shadowGlyph.ownBitmap(null, 0, 0);
             }
+            recordRasterization(RasterizationKind.SHADOW, startTime);
+
+            shadowSegment.put(glyphId, shadowGlyph);
         }
 
-        return glyph.path();
+        return shadowGlyph;
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.graphics;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The <code>GlyphCacheManager</code> class controls the glyph cache shared by all renderers. It
+ * exposes the options of the cache along with its statistics, while the cache itself remains an
+ * implementation detail of the renderers.
+ */
+public final class GlyphCacheManager {
+
+    private GlyphCacheManager() {
+    }
+
+    /**
+     * Returns the maximum number of bytes used by the paths of glyphs drawn at very large sizes.
+     *
+     * @return The capacity of the path budget in bytes.
+     */
+    public static int getPathCapacity() {
+        return GlyphCache.getInstance().getPathCapacity();
+    }
+
+    /**
+     * Sets the maximum number of bytes used by the paths of glyphs drawn at very large sizes. The
+     * paths are kept apart from the glyph masks so that a few large glyphs cannot evict the masks
+     * of body text, and the least recently used paths are evicted when this budget is exceeded.
+     * The default value is a quarter of the capacity of the cache.
+     *
+     * @param pathCapacity The capacity of the path budget in bytes.
+     *
+     * @throws IllegalArgumentException if <code>pathCapacity</code> is not positive.
+     */
+    public static void setPathCapacity(int pathCapacity) {
+        GlyphCache.getInstance().setPathCapacity(pathCapacity);
+    }
+
+    /**
+     * Returns whether the coverage of glyphs drawn from atlas pages is stored outside the Java
+     * heap. The default value is <code>false</code>.
+     *
+     * @return <code>true</code> if slab storage is enabled, <code>false</code> otherwise.
+     */
+    public static boolean isSlabStorageEnabled() {
+        return GlyphCache.getInstance().isSlabStorageEnabled();
+    }
+
+    /**
+     * Enables or disables off-heap storage for the coverage of glyphs drawn from atlas pages. When
+     * enabled, the coverage of small glyphs is kept in direct memory and copied into the atlas
+     * pages only when they are built, which reduces the garbage collection pressure when a large
+     * number of glyphs is cycled through the cache. It only affects the glyphs rasterized after
+     * the change, and only for renderers which have the atlas enabled. The default value is
+     * <code>false</code>.
+     *
+     * @param slabStorageEnabled <code>true</code> to enable slab storage, <code>false</code> to
+     *                           disable it.
+     */
+    public static void setSlabStorageEnabled(boolean slabStorageEnabled) {
+        GlyphCache.getInstance().setSlabStorageEnabled(slabStorageEnabled);
+    }
+
+    /**
+     * Returns <code>true</code> if the cache admits the glyphs based on their access frequency.
+     *
+     * @return <code>true</code> if frequency based admission is enabled, <code>false</code>
+     *         otherwise.
+     */
+    public static boolean isFrequencyAdmissionEnabled() {
+        return GlyphCache.getInstance().isFrequencyAdmissionEnabled();
+    }
+
+    /**
+     * Enables or disables frequency based admission of glyphs. When enabled, a newly rasterized
+     * glyph replaces an older glyph only if it is estimated to be drawn more often, so that a one
+     * time pass over many distinct glyphs, such as scrolling through a glyph table, does not flush
+     * the glyphs of body text. When disabled, the least recently used glyph is always evicted. The
+     * default value is <code>false</code>.
+     *
+     * @param frequencyAdmissionEnabled <code>true</code> to enable frequency based admission,
+     *                                  <code>false</code> to disable it.
+     */
+    public static void setFrequencyAdmissionEnabled(boolean frequencyAdmissionEnabled) {
+        GlyphCache.getInstance().setFrequencyAdmissionEnabled(frequencyAdmissionEnabled);
+    }
+
+    /**
+     * Returns the maximum number of strikes whose native rasterizers are kept alive at a time.
+     *
+     * @return The maximum number of live rasterizers.
+     */
+    public static int getMaxRasterizerCount() {
+        return GlyphCache.getInstance().getMaxRasterizerCount();
+    }
+
+    /**
+     * Sets the maximum number of strikes whose native rasterizers are kept alive at a time. When
+     * the limit is exceeded, the rasterizer of the least recently rasterized strike is released,
+     * and created again if more glyphs of that strike need to be rasterized. This keeps the native
+     * memory bounded when the text is drawn at a large number of sizes. The default value is 16.
+     *
+     * @param maxRasterizerCount The maximum number of live rasterizers.
+     *
+     * @throws IllegalArgumentException if <code>maxRasterizerCount</code> is less than one.
+     */
+    public static void setMaxRasterizerCount(int maxRasterizerCount) {
+        GlyphCache.getInstance().setMaxRasterizerCount(maxRasterizerCount);
+    }
+
+    /**
+     * Returns a snapshot of the statistics of the cache. The counters are read without stopping
+     * the other threads, so they may be slightly inconsistent with each other if the cache is in
+     * use at the same time.
+     *
+     * @return A new snapshot of the statistics.
+     */
+    public static GlyphCacheStats getStats() {
+        return GlyphCache.getInstance().getStats();
+    }
+
+    /**
+     * Resets all counters of the statistics of the cache to zero.
+     */
+    public static void resetStats() {
+        GlyphCache.getInstance().resetStats();
+    }
+
+    /**
+     * Opens a persistent cache of glyph masks in the given file. The masks rasterized from now on
+     * are also written to the file, and a glyph missing from memory is loaded from the file before
+     * falling back to the rasterizer. The file is used as a circular log of fixed size, and a file
+     * written by an incompatible version or found to be corrupted is reset.
+     *
+     * @param file The file to keep the masks in. It is created if it does not exist.
+     * @param fileSize The size of the file in bytes.
+     *
+     * @throws NullPointerException if <code>file</code> is null.
+     * @throws IOException if an I/O error occurred while mapping the file.
+     * @throws IllegalArgumentException if <code>fileSize</code> is too small for the file.
+     */
+    public static void openDiskCache(File file, int fileSize) throws IOException {
+        GlyphCache.getInstance().openDiskCache(file, fileSize);
+    }
+
+    /**
+     * Writes the pending masks of the persistent cache to its file and stops using it.
+     */
+    public static void closeDiskCache() {
+        GlyphCache.getInstance().closeDiskCache();
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.graphics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The <code>GlyphCacheStats</code> class represents a snapshot of the statistics of a glyph cache.
+ * The counters accumulate from the creation of the cache, or from the last call to
+ * {@link GlyphCacheManager#resetStats()}, while the sizes reflect the contents of the cache at the time of
+ * the snapshot.
+ */
+public final class GlyphCacheStats {
+
+    /**
+     * Specifies the kind of work done by a glyph rasterizer.
+     */
+    public enum RasterizationKind {
+        /**
+         * The rendering of a glyph mask, either as a bitmap or as coverage stored off-heap.
+         */
+        BITMAP,
+        /**
+         * The loading of an unscaled glyph outline, which is shared by all sizes of a typeface
+         * and precedes the generation of paths and stroked masks.
+         */
+        OUTLINE,
+        /**
+         * The conversion of a glyph outline into a path of specific size.
+         */
+        PATH,
+        /**
+         * The rendering of a stroked glyph mask.
+         */
+        STROKE,
+        /**
+         * The computation of a signed distance field from a glyph outline, which is shared by all
+         * sizes of a typeface.
+         */
+        FIELD,
+        /**
+         * The blurring of a glyph mask into the mask of its shadow.
+         */
+        SHADOW,
+    }
+
+    /**
+     * The <code>StrikeStats</code> class represents the usage of glyph cache by a single strike,
+     * i.e. a typeface drawn at a specific size and slant.
+     */
+    public static final class StrikeStats {
+
+        private final Typeface typeface;
+        private final float pixelWidth;
+        private final float pixelHeight;
+        private final float slantAngle;
+        private final int glyphCount;
+        private final long byteCount;
+
+        StrikeStats(GlyphStrike strike, int glyphCount, long byteCount) {
+            this.typeface = strike.typeface;
+            this.pixelWidth = strike.pixelWidth / 64.0f;
+            this.pixelHeight = strike.pixelHeight / 64.0f;
+            this.slantAngle = strike.skewX / 65536.0f;
+            this.glyphCount = glyphCount;
+            this.byteCount = byteCount;
+        }
+
+        /**
+         * Returns the typeface of this strike.
+         *
+         * @return The typeface of this strike.
+         */
+        public Typeface getTypeface() {
+            return typeface;
+        }
+
+        /**
+         * Returns the horizontal size of this strike in pixels.
+         *
+         * @return The horizontal size of this strike.
+         */
+        public float getPixelWidth() {
+            return pixelWidth;
+        }
+
+        /**
+         * Returns the vertical size of this strike in pixels.
+         *
+         * @return The vertical size of this strike.
+         */
+        public float getPixelHeight() {
+            return pixelHeight;
+        }
+
+        /**
+         * Returns the slant angle of this strike.
+         *
+         * @return The slant angle of this strike.
+         */
+        public float getSlantAngle() {
+            return slantAngle;
+        }
+
+        /**
+         * Returns the number of glyphs of this strike currently in the cache, including the
+         * stroked glyphs.
+         *
+         * @return The number of cached glyphs.
+         */
+        public int getGlyphCount() {
+            return glyphCount;
+        }
+
+        /**
+         * Returns the estimated number of bytes used by the cached glyphs of this strike. It does
+         * not include the atlas pages.
+         *
+         * @return The number of bytes used by this strike.
+         */
+        public long getByteCount() {
+            return byteCount;
+        }
+
+        @Override
+        public String toString() {
+            return "StrikeStats{typeface=" + typeface.getFullName()
+                    + ", pixelWidth=" + pixelWidth
+                    + ", pixelHeight=" + pixelHeight
+                    + ", slantAngle=" + slantAngle
+                    + ", glyphCount=" + glyphCount
+                    + ", byteCount=" + byteCount
+                    + "}";
+        }
+    }
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long[] rasterizationCounts;
+    private final long[] rasterizationTimes;
+    private final long lockWaitTime;
+    private final int capacity;
+    private final int size;
+    private final int atlasByteCount;
+    private final int pathCapacity;
+    private final int pathSize;
+    private final List<StrikeStats> strikes;
+
+    GlyphCacheStats(long hitCount, long missCount, long evictionCount,
+                    long[] rasterizationCounts, long[] rasterizationTimes, long lockWaitTime,
+                    int capacity, int size, int atlasByteCount,
+                    int pathCapacity, int pathSize, List<StrikeStats> strikes) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.rasterizationCounts = rasterizationCounts;
+        this.rasterizationTimes = rasterizationTimes;
+        this.lockWaitTime = lockWaitTime;
+        this.capacity = capacity;
+        this.size = size;
+        this.atlasByteCount = atlasByteCount;
+        this.pathCapacity = pathCapacity;
+        this.pathSize = pathSize;
+        this.strikes = Collections.unmodifiableList(strikes);
+    }
+
+    /**
+     * Returns the number of glyph requests which were served from the cache.
+     *
+     * @return The number of hits.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of glyph requests which required a glyph to be loaded, either from the
+     * persistent cache or from the rasterizer. The glyphs loaded ahead of drawing, by a prefetch
+     * or along with another missing glyph, are counted as misses when loaded and as hits when
+     * drawn.
+     *
+     * @return The number of misses.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the ratio of hits to all glyph requests, or zero if no glyph has been requested.
+     *
+     * @return The hit rate between zero and one.
+     */
+    public float getHitRate() {
+        long requestCount = hitCount + missCount;
+        return (requestCount > 0 ? (float) hitCount / requestCount : 0.0f);
+    }
+
+    /**
+     * Returns the number of entries evicted to make room for other entries.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of times the rasterizer did the given kind of work.
+     *
+     * @param kind The kind of rasterization.
+     * @return The number of rasterizations of given kind.
+     */
+    public long getRasterizationCount(RasterizationKind kind) {
+        return rasterizationCounts[kind.ordinal()];
+    }
+
+    /**
+     * Returns the total time in nanoseconds spent by the rasterizer on the given kind of work.
+     *
+     * @param kind The kind of rasterization.
+     * @return The rasterization time of given kind in nanoseconds.
+     */
+    public long getRasterizationTime(RasterizationKind kind) {
+        return rasterizationTimes[kind.ordinal()];
+    }
+
+    /**
+     * Returns the total time in nanoseconds for which the threads have been blocked on the lock of
+     * the cache.
+     *
+     * @return The lock wait time in nanoseconds.
+     */
+    public long getLockWaitTime() {
+        return lockWaitTime;
+    }
+
+    /**
+     * Returns the maximum number of bytes the cache can hold.
+     *
+     * @return The capacity of the cache in bytes.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the estimated number of bytes used by the cache, including the atlas pages.
+     *
+     * @return The size of the cache in bytes.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes used by the atlas pages.
+     *
+     * @return The size of the atlas pages in bytes.
+     */
+    public int getAtlasByteCount() {
+        return atlasByteCount;
+    }
+
+    /**
+     * Returns the maximum number of bytes the paths of large glyphs can use.
+     *
+     * @return The capacity of the path budget in bytes.
+     */
+    public int getPathCapacity() {
+        return pathCapacity;
+    }
+
+    /**
+     * Returns the estimated number of bytes used by the paths of large glyphs. It is not included
+     * in the size of the cache.
+     *
+     * @return The size of the cached paths in bytes.
+     */
+    public int getPathSize() {
+        return pathSize;
+    }
+
+    /**
+     * Returns the usage of each strike having glyphs in the cache.
+     *
+     * @return An unmodifiable list of strike statistics.
+     */
+    public List<StrikeStats> getStrikes() {
+        return strikes;
+    }
+
+    /**
+     * Returns the number of bytes used by the glyphs of each typeface, summed over all its strikes.
+     *
+     * @return A map from typeface to the number of bytes used by it.
+     */
+    public Map<Typeface, Long> getTypefaceByteCounts() {
+        Map<Typeface, Long> byteCounts = new HashMap<>();
+
+        for (StrikeStats strike : strikes) {
+            Long byteCount = byteCounts.get(strike.typeface);
+            long total = (byteCount != null ? byteCount : 0) + strike.byteCount;
+
+            byteCounts.put(strike.typeface, total);
+        }
+
+        return byteCounts;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("GlyphCacheStats{hitCount=").append(hitCount)
+               .append(", missCount=").append(missCount)
+               .append(", evictionCount=").append(evictionCount);
+
+        for (RasterizationKind kind : RasterizationKind.values()) {
+            String name = kind.name().toLowerCase(Locale.ROOT);
+            builder.append(", ").append(name).append("Count=").append(getRasterizationCount(kind))
+                   .append(", ").append(name).append("Time=").append(getRasterizationTime(kind));
+        }
+
+        builder.append(", lockWaitTime=").append(lockWaitTime)
+               .append(", capacity=").append(capacity)
+               .append(", size=").append(size)
+               .append(", atlasByteCount=").append(atlasByteCount)
+               .append(", pathCapacity=").append(pathCapacity)
+               .append(", pathSize=").append(pathSize)
+               .append(", strikeCount=").append(strikes.size())
+               .append("}");
+
+        return builder.toString();
+    }
+}
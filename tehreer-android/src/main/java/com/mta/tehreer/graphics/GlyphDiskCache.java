@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.graphics;
+
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent store of glyph masks, kept in a single memory mapped file so that the glyphs of a
+ * previous session can be drawn without rasterizing them again.
+ * <p>
+ * The file starts with a header, followed by a hash index of fixed size slots and a data area.
+ * The masks are appended to the data area as a circular log, so the oldest masks are evicted by
+ * overwriting them. A slot remains valid as long as the log has not wrapped over its mask. Each
+ * mask is stored with a checksum which is verified on loading, and a file with an unexpected
+ * header is reset completely.
+ */
+final class GlyphDiskCache {
+    private static final int MAGIC = 0x54474443;    // 'TGDC'
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_SLOT_COUNT = 8;
+    private static final int HEADER_DATA_SIZE = 12;
+    private static final int HEADER_CHECKSUM = 16;
+    private static final int HEADER_WRITE_POSITION = 24;
+
+    private static final int SLOT_SIZE = 48;
+    private static final int SLOT_TYPEFACE = 0;
+    private static final int SLOT_LOG_POSITION = 8;
+    private static final int SLOT_PIXEL_WIDTH = 16;
+    private static final int SLOT_PIXEL_HEIGHT = 20;
+    private static final int SLOT_SKEW_X = 24;
+    private static final int SLOT_GLYPH_KEY = 28;
+    private static final int SLOT_LEFT = 32;
+    private static final int SLOT_TOP = 34;
+    private static final int SLOT_WIDTH = 36;
+    private static final int SLOT_HEIGHT = 38;
+    private static final int SLOT_CHECKSUM = 40;
+
+    private static final int AVERAGE_MASK_SIZE = 512;
+    private static final int MIN_SLOT_COUNT = 64;
+    private static final int MAX_PROBE_COUNT = 8;
+
+    private final MappedByteBuffer mBuffer;
+    private final int mSlotCount;
+    private final int mDataStart;
+    private final int mDataSize;
+    private final CRC32 mChecksum = new CRC32();
+    private byte[] mBytes = new byte[GlyphSlab.MAX_CHUNK_SIZE];
+    private long mWritePosition;
+
+    private GlyphDiskCache(MappedByteBuffer buffer, int slotCount, int dataSize) {
+        mBuffer = buffer;
+        mSlotCount = slotCount;
+        mDataStart = HEADER_SIZE + (slotCount * SLOT_SIZE);
+        mDataSize = dataSize;
+    }
+
+    /**
+     * Opens the cache stored in given file, creating or resetting it if needed.
+     *
+     * @throws IOException if the file could not be mapped.
+     */
+    static GlyphDiskCache open(File file, int fileSize) throws IOException {
+        int slotCount = Integer.highestOneBit(Math.max(fileSize / (AVERAGE_MASK_SIZE + SLOT_SIZE), MIN_SLOT_COUNT));
+        int dataSize = fileSize - HEADER_SIZE - (slotCount * SLOT_SIZE);
+        if (dataSize <= 0) {
+            throw new IllegalArgumentException("File size is too small: " + fileSize);
+        }
+
+        MappedByteBuffer buffer;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(fileSize);
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        } finally {
+            // The mapping remains valid after the file has been closed.
+            randomAccessFile.close();
+        }
+
+        GlyphDiskCache diskCache = new GlyphDiskCache(buffer, slotCount, dataSize);
+        diskCache.validate();
+
+        return diskCache;
+    }
+
+    private int headerChecksum() {
+        mChecksum.reset();
+        for (int i = HEADER_MAGIC; i < HEADER_CHECKSUM; i++) {
+            mChecksum.update(mBuffer.get(i));
+        }
+
+        return (int) mChecksum.getValue();
+    }
+
+    private void validate() {
+        long writePosition = mBuffer.getLong(HEADER_WRITE_POSITION);
+
+        if (mBuffer.getInt(HEADER_MAGIC) != MAGIC
+                || mBuffer.getInt(HEADER_VERSION) != VERSION
+                || mBuffer.getInt(HEADER_SLOT_COUNT) != mSlotCount
+                || mBuffer.getInt(HEADER_DATA_SIZE) != mDataSize
+                || mBuffer.getInt(HEADER_CHECKSUM) != headerChecksum()
+                || writePosition < 0) {
+            reset();
+        } else {
+            mWritePosition = writePosition;
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < mDataStart; i += 8) {
+            mBuffer.putLong(i, 0);
+        }
+
+        mBuffer.putInt(HEADER_MAGIC, MAGIC);
+        mBuffer.putInt(HEADER_VERSION, VERSION);
+        mBuffer.putInt(HEADER_SLOT_COUNT, mSlotCount);
+        mBuffer.putInt(HEADER_DATA_SIZE, mDataSize);
+        mBuffer.putInt(HEADER_CHECKSUM, headerChecksum());
+        mBuffer.putLong(HEADER_WRITE_POSITION, 0);
+
+        mWritePosition = 0;
+    }
+
+    private static int hash(long typefaceId, GlyphStrike strike, int glyphKey) {
+        long hash = typefaceId;
+        hash = hash * 31 + strike.pixelWidth;
+        hash = hash * 31 + strike.pixelHeight;
+        hash = hash * 31 + strike.skewX;
+        hash = hash * 31 + glyphKey;
+        hash ^= (hash >>> 29);
+        hash *= 0xBF58476D1CE4E5B9L;
+
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private int slotOffset(int index) {
+        return HEADER_SIZE + ((index & (mSlotCount - 1)) * SLOT_SIZE);
+    }
+
+    private boolean matches(int slot, long typefaceId, GlyphStrike strike, int glyphKey) {
+        return mBuffer.getLong(slot + SLOT_TYPEFACE) == typefaceId
+            && mBuffer.getInt(slot + SLOT_GLYPH_KEY) == glyphKey
+            && mBuffer.getInt(slot + SLOT_PIXEL_WIDTH) == strike.pixelWidth
+            && mBuffer.getInt(slot + SLOT_PIXEL_HEIGHT) == strike.pixelHeight
+            && mBuffer.getInt(slot + SLOT_SKEW_X) == strike.skewX;
+    }
+
+    private boolean isLive(int slot) {
+        if (mBuffer.getLong(slot + SLOT_TYPEFACE) == 0) {
+            return false;
+        }
+
+        // A negative position can only come from a corrupt file.
+        long logPosition = mBuffer.getLong(slot + SLOT_LOG_POSITION);
+        if (logPosition < 0) {
+            mBuffer.putLong(slot + SLOT_TYPEFACE, 0);
+            return false;
+        }
+
+        // The mask is intact until the log wraps over it.
+        return logPosition <= mWritePosition && logPosition >= mWritePosition - mDataSize;
+    }
+
+    private int findSlot(long typefaceId, GlyphStrike strike, int glyphKey) {
+        int index = hash(typefaceId, strike, glyphKey);
+
+        for (int i = 0; i < MAX_PROBE_COUNT; i++) {
+            int slot = slotOffset(index + i);
+            if (matches(slot, typefaceId, strike, glyphKey)) {
+                return (isLive(slot) ? slot : -1);
+            }
+        }
+
+        return -1;
+    }
+
+    private int chooseSlot(long typefaceId, GlyphStrike strike, int glyphKey) {
+        int index = hash(typefaceId, strike, glyphKey);
+        int oldestSlot = -1;
+        long oldestPosition = Long.MAX_VALUE;
+
+        for (int i = 0; i < MAX_PROBE_COUNT; i++) {
+            int slot = slotOffset(index + i);
+            if (!isLive(slot) || matches(slot, typefaceId, strike, glyphKey)) {
+                return slot;
+            }
+
+            long logPosition = mBuffer.getLong(slot + SLOT_LOG_POSITION);
+            if (logPosition < oldestPosition) {
+                oldestPosition = logPosition;
+                oldestSlot = slot;
+            }
+        }
+
+        return oldestSlot;
+    }
+
+    /**
+     * Reads the mask of a slot into the byte buffer of this cache and verifies its checksum.
+     */
+    private boolean readMask(int slot, int width, int height) {
+        long logPosition = mBuffer.getLong(slot + SLOT_LOG_POSITION);
+        int dataOffset = (int) (logPosition % mDataSize);
+        int length = width * height;
+
+        if (logPosition < 0 || dataOffset < 0 || width < 0 || height < 0
+                || dataOffset + length > mDataSize) {
+            mBuffer.putLong(slot + SLOT_TYPEFACE, 0);
+            return false;
+        }
+
+        if (length > mBytes.length) {
+            mBytes = new byte[length];
+        }
+
+        int dataStart = mDataStart + dataOffset;
+        for (int i = 0; i < length; i++) {
+            mBytes[i] = mBuffer.get(dataStart + i);
+        }
+
+        mChecksum.reset();
+        mChecksum.update(mBytes, 0, length);
+
+        if ((int) mChecksum.getValue() != mBuffer.getInt(slot + SLOT_CHECKSUM)) {
+            mBuffer.putLong(slot + SLOT_TYPEFACE, 0);
+            return false;
+        }
+
+        return true;
+    }
+
+    private void writeMask(long typefaceId, GlyphStrike strike, int glyphKey, Glyph glyph) {
+        int width = glyph.width();
+        int height = glyph.height();
+        int length = width * height;
+
+        // Skip the masks which would evict a large part of the log at once.
+        if (length > mDataSize / 4 || width > Short.MAX_VALUE || height > Short.MAX_VALUE) {
+            return;
+        }
+
+        long logPosition = mWritePosition;
+        int dataOffset = (int) (logPosition % mDataSize);
+        if (dataOffset + length > mDataSize) {
+            logPosition += mDataSize - dataOffset;
+            dataOffset = 0;
+        }
+
+        int slot = chooseSlot(typefaceId, strike, glyphKey);
+        int dataStart = mDataStart + dataOffset;
+        for (int i = 0; i < length; i++) {
+            mBuffer.put(dataStart + i, mBytes[i]);
+        }
+
+        mChecksum.reset();
+        mChecksum.update(mBytes, 0, length);
+
+        mWritePosition = logPosition + length;
+        mBuffer.putLong(HEADER_WRITE_POSITION, mWritePosition);
+
+        mBuffer.putLong(slot + SLOT_TYPEFACE, typefaceId);
+        mBuffer.putLong(slot + SLOT_LOG_POSITION, logPosition);
+        mBuffer.putInt(slot + SLOT_PIXEL_WIDTH, strike.pixelWidth);
+        mBuffer.putInt(slot + SLOT_PIXEL_HEIGHT, strike.pixelHeight);
+        mBuffer.putInt(slot + SLOT_SKEW_X, strike.skewX);
+        mBuffer.putInt(slot + SLOT_GLYPH_KEY, glyphKey);
+        mBuffer.putShort(slot + SLOT_LEFT, (short) glyph.leftSideBearing());
+        mBuffer.putShort(slot + SLOT_TOP, (short) glyph.topSideBearing());
+        mBuffer.putShort(slot + SLOT_WIDTH, (short) width);
+        mBuffer.putShort(slot + SLOT_HEIGHT, (short) height);
+        mBuffer.putInt(slot + SLOT_CHECKSUM, (int) mChecksum.getValue());
+    }
+
+    private static Bitmap createBitmap(byte[] bytes, int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        int rowBytes = bitmap.getRowBytes();
+
+        if (rowBytes == width) {
+            bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(bytes, 0, width * height));
+        } else {
+            byte[] rows = new byte[rowBytes * height];
+            for (int i = 0; i < height; i++) {
+                System.arraycopy(bytes, i * width, rows, i * rowBytes, width);
+            }
+            bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(rows));
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Loads the mask of given glyph as a bitmap.
+     *
+     * @return false if the mask is not available in this cache.
+     */
+    synchronized boolean loadBitmap(GlyphStrike strike, int glyphKey, Glyph glyph) {
+        long typefaceId = strike.typeface.identity();
+        int slot = findSlot(typefaceId, strike, glyphKey);
+        if (slot < 0) {
+            return false;
+        }
+
+        int width = mBuffer.getShort(slot + SLOT_WIDTH);
+        int height = mBuffer.getShort(slot + SLOT_HEIGHT);
+        if (!readMask(slot, width, height)) {
+            return false;
+        }
+
+        Bitmap bitmap = (width > 0 && height > 0 ? createBitmap(mBytes, width, height) : null);
+        glyph.ownBitmap(bitmap,
+                        bitmap != null ? mBuffer.getShort(slot + SLOT_LEFT) : 0,
+                        bitmap != null ? mBuffer.getShort(slot + SLOT_TOP) : 0);
+
+        return true;
+    }
+
+    /**
+     * Loads the mask of given glyph into the scratch buffer of glyph slab, or as a bitmap if it is
+     * larger than the given extent.
+     *
+     * @return false if the mask is not available in this cache.
+     */
+    synchronized boolean loadCoverage(GlyphStrike strike, int glyphKey, Glyph glyph, int maxExtent) {
+        long typefaceId = strike.typeface.identity();
+        int slot = findSlot(typefaceId, strike, glyphKey);
+        if (slot < 0) {
+            return false;
+        }
+
+        int width = mBuffer.getShort(slot + SLOT_WIDTH);
+        int height = mBuffer.getShort(slot + SLOT_HEIGHT);
+        if (width > maxExtent || height > maxExtent) {
+            return loadBitmap(strike, glyphKey, glyph);
+        }
+
+        int length = width * height;
+        if (!readMask(slot, width, height)) {
+            return false;
+        }
+
+        ByteBuffer scratch = GlyphSlab.scratchBuffer();
+        scratch.clear();
+        scratch.put(mBytes, 0, length);
+        scratch.clear();
+
+        glyph.ownCoverage(mBuffer.getShort(slot + SLOT_LEFT), mBuffer.getShort(slot + SLOT_TOP),
+                          width, height);
+
+        return true;
+    }
+
+    /**
+     * Stores the bitmap of given glyph, which must have been loaded.
+     */
+    synchronized void storeBitmap(GlyphStrike strike, int glyphKey, Glyph glyph) {
+        Bitmap bitmap = glyph.bitmap();
+        if (bitmap != null) {
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            int rowBytes = bitmap.getRowBytes();
+            int byteCount = rowBytes * height;
+
+            if (byteCount > mBytes.length) {
+                mBytes = new byte[byteCount];
+            }
+            bitmap.copyPixelsToBuffer(ByteBuffer.wrap(mBytes, 0, byteCount));
+
+            if (rowBytes != width) {
+                for (int i = 1; i < height; i++) {
+                    System.arraycopy(mBytes, i * rowBytes, mBytes, i * width, width);
+                }
+            }
+        }
+
+        writeMask(strike.typeface.identity(), strike, glyphKey, glyph);
+    }
+
+    /**
+     * Stores the coverage of given glyph, which must be present in the scratch buffer of glyph
+     * slab.
+     */
+    synchronized void storeCoverage(GlyphStrike strike, int glyphKey, Glyph glyph) {
+        int length = glyph.width() * glyph.height();
+        if (length > mBytes.length) {
+            mBytes = new byte[length];
+        }
+
+        ByteBuffer scratch = GlyphSlab.scratchBuffer();
+        scratch.clear();
+        scratch.get(mBytes, 0, length);
+        scratch.clear();
+
+        writeMask(strike.typeface.identity(), strike, glyphKey, glyph);
+    }
+
+    /**
+     * Writes the pending changes to the file.
+     */
+    synchronized void flush() {
+        mBuffer.force();
+    }
+}
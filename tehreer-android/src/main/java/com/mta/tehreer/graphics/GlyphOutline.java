@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.graphics;
+
+import android.graphics.Path;
+
+import com.mta.tehreer.internal.Sustain;
+
+/**
+ * An unscaled glyph outline in font units, shared by all strikes of a typeface. Each verb consumes
+ * one point for a move or a line, two points for a quadratic curve and three points for a cubic
+ * curve. The y-axis points upwards as in the font.
+ */
+final class GlyphOutline {
+
+    static final byte MOVE_TO = 0;
+    static final byte LINE_TO = 1;
+    static final byte QUAD_TO = 2;
+    static final byte CUBIC_TO = 3;
+
+    //
+    // GlyphOutline:
+    //  - 2 pointers for verbs and points
+    //
+    // Arrays:
+    //  - 2 headers of 3 integers each
+    //
+    // Total:
+    //  - 2 pointers
+    //  - 6 integers
+    //
+    // Size: (2 * 4) + (6 * 4) = 32
+    //
+    private static final int ESTIMATED_OVERHEAD = 32;
+
+    final byte[] verbs;
+    final float[] points;
+
+    @Sustain
+    GlyphOutline(byte[] verbs, float[] points) {
+        this.verbs = verbs;
+        this.points = points;
+    }
+
+    boolean isEmpty() {
+        return verbs.length == 0;
+    }
+
+    int byteCount() {
+        return verbs.length + (points.length * 4) + ESTIMATED_OVERHEAD;
+    }
+
+    /**
+     * Returns the points of this outline scaled to the size of given strike and slanted by its
+     * skew, in pixels.
+     */
+    float[] transform(GlyphStrike strike) {
+        float unitsPerEm = strike.typeface.getUnitsPerEm();
+        float scaleX = strike.pixelWidth / (64.0f * unitsPerEm);
+        float scaleY = strike.pixelHeight / (64.0f * unitsPerEm);
+        // The rasterizer applies the skew as a negative shear of x along y.
+        float shear = -strike.skewX / 65536.0f;
+
+        float[] pixels = new float[points.length];
+
+        for (int i = 0; i < points.length; i += 2) {
+            float y = points[i + 1] * scaleY;
+            pixels[i] = (points[i] * scaleX) + (y * shear);
+            pixels[i + 1] = y;
+        }
+
+        return pixels;
+    }
+
+    /**
+     * Returns the path of this outline for the given strike.
+     */
+    Path toPath(GlyphStrike strike) {
+        float[] pixels = transform(strike);
+        Path path = new Path();
+        int index = 0;
+
+        for (byte verb : verbs) {
+            switch (verb) {
+            case MOVE_TO:
+                path.moveTo(pixels[index], pixels[index + 1]);
+                index += 2;
+                break;
+
+            case LINE_TO:
+                path.lineTo(pixels[index], pixels[index + 1]);
+                index += 2;
+                break;
+
+            case QUAD_TO:
+                path.quadTo(pixels[index], pixels[index + 1],
+                            pixels[index + 2], pixels[index + 3]);
+                index += 4;
+                break;
+
+            case CUBIC_TO:
+                path.cubicTo(pixels[index], pixels[index + 1],
+                             pixels[index + 2], pixels[index + 3],
+                             pixels[index + 4], pixels[index + 5]);
+                index += 6;
+                break;
+            }
+        }
+
+        return path;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.graphics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A list of glyphs to be loaded into the glyph cache ahead of drawing. The glyphs are collected on
+ * the calling thread and rasterized when the prefetch is run, usually on a background thread.
+ */
+final class GlyphPrefetch implements Runnable {
+
+    private static final int MODE_MASK = 0;
+    private static final int MODE_ATLAS = 1;
+    private static final int MODE_STROKE = 2;
+    private static final int MODE_FIELD = 3;
+
+    private static class Request {
+
+        final GlyphStrike strike;
+        final int mode;
+        final int lineRadius;
+        final int lineCap;
+        final int lineJoin;
+        final int miterLimit;
+        int[] glyphKeys = new int[32];
+        int glyphCount;
+
+        Request(GlyphStrike strike, int mode,
+                int lineRadius, int lineCap, int lineJoin, int miterLimit) {
+            this.strike = strike;
+            this.mode = mode;
+            this.lineRadius = lineRadius;
+            this.lineCap = lineCap;
+            this.lineJoin = lineJoin;
+            this.miterLimit = miterLimit;
+        }
+
+        boolean matches(GlyphStrike strike, int mode,
+                        int lineRadius, int lineCap, int lineJoin, int miterLimit) {
+            return this.mode == mode && this.strike.equals(strike)
+                && this.lineRadius == lineRadius && this.lineCap == lineCap
+                && this.lineJoin == lineJoin && this.miterLimit == miterLimit;
+        }
+
+        void add(int glyphKey) {
+            if (glyphCount == glyphKeys.length) {
+                glyphKeys = Arrays.copyOf(glyphKeys, glyphCount * 2);
+            }
+            glyphKeys[glyphCount++] = glyphKey;
+        }
+
+        void removeDuplicates() {
+            Arrays.sort(glyphKeys, 0, glyphCount);
+
+            int uniqueCount = 0;
+            for (int i = 0; i < glyphCount; i++) {
+                if (uniqueCount == 0 || glyphKeys[uniqueCount - 1] != glyphKeys[i]) {
+                    glyphKeys[uniqueCount++] = glyphKeys[i];
+                }
+            }
+            glyphCount = uniqueCount;
+        }
+    }
+
+    private final ArrayList<Request> requests = new ArrayList<>();
+    private Request current;
+
+    private void begin(GlyphStrike strike, int mode,
+                       int lineRadius, int lineCap, int lineJoin, int miterLimit) {
+        for (Request request : requests) {
+            if (request.matches(strike, mode, lineRadius, lineCap, lineJoin, miterLimit)) {
+                current = request;
+                return;
+            }
+        }
+
+        current = new Request(strike.clone(), mode, lineRadius, lineCap, lineJoin, miterLimit);
+        requests.add(current);
+    }
+
+    void beginMasks(GlyphStrike strike, boolean atlasEnabled) {
+        begin(strike, atlasEnabled ? MODE_ATLAS : MODE_MASK, 0, 0, 0, 0);
+    }
+
+    void beginStrokes(GlyphStrike strike, int lineRadius, int lineCap, int lineJoin, int miterLimit) {
+        begin(strike, MODE_STROKE, lineRadius, lineCap, lineJoin, miterLimit);
+    }
+
+    void beginFields(GlyphStrike strike) {
+        begin(strike, MODE_FIELD, 0, 0, 0, 0);
+    }
+
+    void addGlyph(int glyphId, int subpixelBin) {
+        current.add(GlyphCache.glyphKey(glyphId, subpixelBin));
+    }
+
+    @Override
+    public void run() {
+        GlyphCache cache = GlyphCache.getInstance();
+        Thread thread = Thread.currentThread();
+
+        for (Request request : requests) {
+            // The cache already shares a single rasterization between concurrent requests of a
+            // glyph, so only the duplicates within this prefetch need to be dropped.
+            request.removeDuplicates();
+
+            if (request.mode == MODE_MASK || request.mode == MODE_ATLAS) {
+                // Rasterize the missing masks together so that the loop below only finds them.
+                cache.loadMasks(request.strike, request.glyphKeys, request.glyphCount,
+                                request.mode == MODE_ATLAS);
+            }
+
+            for (int i = 0; i < request.glyphCount; i++) {
+                if (thread.isInterrupted()) {
+                    return;
+                }
+
+                int glyphKey = request.glyphKeys[i];
+                int glyphId = GlyphCache.glyphIdOf(glyphKey);
+                int subpixelBin = GlyphCache.subpixelBinOf(glyphKey);
+
+                switch (request.mode) {
+                case MODE_MASK:
+                    cache.getMaskGlyph(request.strike, glyphId, subpixelBin);
+                    break;
+
+                case MODE_ATLAS:
+                    cache.getAtlasGlyph(request.strike, glyphId, subpixelBin);
+                    break;
+
+                case MODE_STROKE:
+                    cache.getMaskGlyph(request.strike, glyphId, request.lineRadius,
+                                       request.lineCap, request.lineJoin, request.miterLimit);
+                    break;
+
+                case MODE_FIELD:
+                    cache.getFieldGlyph(request.strike.typeface, glyphId);
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -19,6 +19,8 @@ package com.mta.tehreer.graphics;
 import com.mta.tehreer.Disposable;
 import com.mta.tehreer.internal.JniBridge;
 
+import java.nio.ByteBuffer;
+
 final class GlyphRasterizer implements Disposable {
     static {
         JniBridge.loadLibrary();
@@ -34,44 +36,116 @@ final class GlyphRasterizer implements Disposable {
     public static final int LINEJOIN_MITER_FIXED = 3;
     public static final int LINEJOIN_MITER = LINEJOIN_MITER_VARIABLE;
 
-	long nativeRasterizer;
+    /**
+     * The number of horizontal subpixel positions for which separate glyph masks are rendered.
+     */
+    public static final int SUBPIXEL_BIN_COUNT = 4;
+
+    static final int MASK_LEFT = 0;
+    static final int MASK_TOP = 1;
+    static final int MASK_WIDTH = 2;
+    static final int MASK_HEIGHT = 3;
+    static final int MASK_OFFSET = 4;
+    static final int MASK_METRIC_COUNT = 5;
 
+    private final GlyphStrike strike;
+    private long nativeRasterizer;
+
+    /**
+     * Creates a rasterizer for the given strike. The native rasterizer is created on first use and
+     * can be released at any time to be created again when needed, so the strike must not be
+     * modified afterwards.
+     */
 	GlyphRasterizer(GlyphStrike strike) {
-	    nativeRasterizer = nCreate(strike.typeface.nativeTypeface,
-                                   strike.pixelWidth, strike.pixelHeight,
-                                   0x10000, -strike.skewX, 0, 0x10000);
+	    this.strike = strike;
 	}
 
-	void loadBitmap(Glyph glyph) {
-	    nLoadBitmap(nativeRasterizer, glyph);
-	}
+    private long nativeRasterizer() {
+        if (nativeRasterizer == 0) {
+            nativeRasterizer = nCreate(strike.typeface.nativeTypeface,
+                                       strike.pixelWidth, strike.pixelHeight,
+                                       0x10000, -strike.skewX, 0, 0x10000);
+        }
+
+        return nativeRasterizer;
+    }
+
+    synchronized void loadBitmap(Glyph glyph, int subpixelBin) {
+        nLoadBitmap(nativeRasterizer(), glyph, subpixelOffset(subpixelBin));
+    }
+
+    /**
+     * Writes the coverage of glyph into the scratch buffer of calling thread if it can be stored
+     * in a glyph slab, or creates a bitmap for it otherwise.
+     */
+    synchronized void loadCoverage(Glyph glyph, int subpixelBin) {
+        nLoadCoverage(nativeRasterizer(), glyph, subpixelOffset(subpixelBin),
+                      GlyphSlab.scratchBuffer(), AtlasPage.MAX_GLYPH_EXTENT);
+    }
+
+    /**
+     * Renders the masks of given glyphs one after another into the buffer, entering the native
+     * rasterizer only once. The rows of each mask are tightly packed and the left, top, width,
+     * height and buffer offset of each glyph are written into the metrics array. A negative offset
+     * means that the mask could not be written into the buffer, either because it is not a gray
+     * mask or because it exceeds the maximum extent, and has to be loaded on its own.
+     *
+     * @return The number of glyphs processed, which is less than the count if the buffer became
+     *         full.
+     */
+    synchronized int loadMasks(int[] glyphIds, int start, int count, int subpixelBin,
+                               ByteBuffer buffer, int maxExtent, int[] metrics) {
+        return nLoadMasks(nativeRasterizer(), glyphIds, start, count, subpixelOffset(subpixelBin),
+                          buffer, maxExtent, metrics);
+    }
+
+    private static int subpixelOffset(int subpixelBin) {
+        // Shift the outline by the bin's fraction of a pixel, in 26.6 format.
+        return (subpixelBin * 64) / SUBPIXEL_BIN_COUNT;
+    }
 
-    void loadOutline(Glyph glyph) {
-        nLoadOutline(nativeRasterizer, glyph);
+    /**
+     * Strokes the given outline, whose points have already been transformed to the strike, and
+     * returns a glyph holding the stroked mask.
+     */
+    synchronized Glyph strokeOutline(int glyphId, GlyphOutline outline, float[] points,
+                                     int lineRadius, int lineCap, int lineJoin, int miterLimit) {
+        return nStrokeOutline(nativeRasterizer(), glyphId, outline.verbs, points,
+                              lineRadius, lineCap, lineJoin, miterLimit);
     }
 
-    void loadPath(Glyph glyph) {
-        nLoadPath(nativeRasterizer, glyph);
+    /**
+     * Returns true if the native rasterizer currently exists.
+     */
+    synchronized boolean isLive() {
+        return nativeRasterizer != 0;
     }
 
-    Glyph strokeGlyph(Glyph glyph, int lineRadius,
-                      int lineCap, int lineJoin, int miterLimit) {
-        return nStrokeGlyph(nativeRasterizer, glyph, lineRadius, lineCap, lineJoin, miterLimit);
+    /**
+     * Releases the native rasterizer. It is created again if the rasterizer is used afterwards.
+     */
+    synchronized void release() {
+        if (nativeRasterizer != 0) {
+            nDispose(nativeRasterizer);
+            nativeRasterizer = 0;
+        }
     }
 
     @Override
     public void dispose() {
-        nDispose(nativeRasterizer);
+        release();
     }
 
 	private static native long nCreate(long nativeTypeface, int pixelWidth, int pixelHeight,
                                             int transformXX, int transformXY, int transformYX, int transformYY);
     private static native void nDispose(long nativeRasterizer);
 
-    private static native void nLoadBitmap(long nativeRasterizer, Glyph glyph);
-    private static native void nLoadOutline(long nativeRasterizer, Glyph glyph);
-    private static native void nLoadPath(long nativeRasterizer, Glyph glyph);
+    private static native void nLoadBitmap(long nativeRasterizer, Glyph glyph, int offsetX);
+    private static native void nLoadCoverage(long nativeRasterizer, Glyph glyph, int offsetX,
+                                             ByteBuffer buffer, int maxExtent);
+    private static native int nLoadMasks(long nativeRasterizer, int[] glyphIds, int start, int count,
+                                         int offsetX, ByteBuffer buffer, int maxExtent, int[] metrics);
 
-    private static native Glyph nStrokeGlyph(long nativeRasterizer, Glyph glyph, int lineRadius,
-                                             int lineCap, int lineJoin, int miterLimit);
+    private static native Glyph nStrokeOutline(long nativeRasterizer, int glyphId, byte[] verbs, float[] points,
+                                               int lineRadius, int lineCap, int lineJoin, int miterLimit);
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.graphics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Stores the coverage masks of glyphs outside the Java heap. The memory is taken from direct byte
+ * buffers in blocks of fixed size. Each block is divided into chunks of a single power of two
+ * size, so allocating and freeing a chunk never has to search or coalesce free space. A block is
+ * returned once all of its chunks become free.
+ * <p>
+ * A chunk is referred by an integer handle containing the index of its block in the upper half
+ * and its offset within the block in the lower half.
+ */
+final class GlyphSlab {
+    static final int NO_CHUNK = -1;
+    static final int MAX_CHUNK_SIZE = AtlasPage.MAX_GLYPH_EXTENT * AtlasPage.MAX_GLYPH_EXTENT;
+
+    private static final int BLOCK_SHIFT = 16;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int MIN_CHUNK_SHIFT = 6;
+    private static final int CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_CHUNK_SIZE) - MIN_CHUNK_SHIFT + 1;
+
+    private static final ThreadLocal<ByteBuffer> SCRATCH = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(MAX_CHUNK_SIZE);
+        }
+    };
+
+    private static class ChunkList {
+        int[] chunks = new int[64];
+        int count;
+
+        void push(int chunk) {
+            if (count == chunks.length) {
+                chunks = Arrays.copyOf(chunks, count * 2);
+            }
+            chunks[count++] = chunk;
+        }
+
+        int pop() {
+            return chunks[--count];
+        }
+
+        void removeBlock(int blockIndex) {
+            int keptCount = 0;
+            for (int i = 0; i < count; i++) {
+                if ((chunks[i] >>> BLOCK_SHIFT) != blockIndex) {
+                    chunks[keptCount++] = chunks[i];
+                }
+            }
+            count = keptCount;
+        }
+    }
+
+    private final ArrayList<ByteBuffer> mBlocks = new ArrayList<>();
+    private final ChunkList[] mFreeChunks = new ChunkList[CLASS_COUNT];
+    private int[] mBlockUsage = new int[16];
+    private int mBlockCount;
+
+    GlyphSlab() {
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            mFreeChunks[i] = new ChunkList();
+        }
+    }
+
+    /**
+     * Returns a direct buffer of the calling thread, large enough to receive the largest mask that
+     * can be stored in a slab.
+     */
+    static ByteBuffer scratchBuffer() {
+        return SCRATCH.get();
+    }
+
+    private static int sizeClass(int length) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(length, 1) - 1);
+        return Math.max(shift - MIN_CHUNK_SHIFT, 0);
+    }
+
+    /**
+     * Returns the number of bytes actually occupied by a mask of given length.
+     */
+    static int chunkSize(int length) {
+        return 1 << (sizeClass(length) + MIN_CHUNK_SHIFT);
+    }
+
+    private int allocate(int length) {
+        int sizeClass = sizeClass(length);
+        ChunkList freeList = mFreeChunks[sizeClass];
+
+        if (freeList.count == 0) {
+            int blockIndex = mBlocks.indexOf(null);
+            ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+
+            if (blockIndex < 0) {
+                blockIndex = mBlocks.size();
+                mBlocks.add(block);
+
+                if (blockIndex == mBlockUsage.length) {
+                    mBlockUsage = Arrays.copyOf(mBlockUsage, blockIndex * 2);
+                }
+            } else {
+                mBlocks.set(blockIndex, block);
+            }
+            mBlockCount++;
+
+            int chunkSize = chunkSize(length);
+            for (int offset = BLOCK_SIZE - chunkSize; offset >= 0; offset -= chunkSize) {
+                freeList.push((blockIndex << BLOCK_SHIFT) | offset);
+            }
+        }
+
+        int chunk = freeList.pop();
+        mBlockUsage[chunk >>> BLOCK_SHIFT]++;
+
+        return chunk;
+    }
+
+    private void free(int chunk, int length) {
+        int sizeClass = sizeClass(length);
+        int blockIndex = chunk >>> BLOCK_SHIFT;
+        ChunkList freeList = mFreeChunks[sizeClass];
+
+        freeList.push(chunk);
+
+        if (--mBlockUsage[blockIndex] == 0) {
+            // Keep a single empty block per size class to avoid churning on its boundary.
+            int chunksPerBlock = BLOCK_SIZE / chunkSize(length);
+            if (freeList.count > chunksPerBlock) {
+                freeList.removeBlock(blockIndex);
+                mBlocks.set(blockIndex, null);
+                mBlockCount--;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes reserved by this slab.
+     */
+    synchronized int reservedSize() {
+        return mBlockCount * BLOCK_SIZE;
+    }
+
+    /**
+     * Moves the coverage of given glyph from the scratch buffer of calling thread into this slab.
+     */
+    synchronized void store(Glyph glyph) {
+        int length = glyph.width() * glyph.height();
+        int chunk = allocate(length);
+
+        ByteBuffer source = SCRATCH.get();
+        source.limit(length);
+        source.position(0);
+
+        ByteBuffer block = mBlocks.get(chunk >>> BLOCK_SHIFT);
+        block.clear();
+        block.position(chunk & (BLOCK_SIZE - 1));
+        block.put(source);
+
+        source.clear();
+        glyph.setSlabChunk(chunk);
+    }
+
+    /**
+     * Frees the coverage of given glyph if it is stored in this slab.
+     */
+    synchronized void release(Glyph glyph) {
+        int chunk = glyph.slabChunk();
+        if (chunk != NO_CHUNK) {
+            glyph.setSlabChunk(NO_CHUNK);
+            free(chunk, glyph.width() * glyph.height());
+        }
+    }
+
+    /**
+     * Copies the coverage of given glyph into the target buffer, row by row.
+     *
+     * @return false if the coverage of the glyph is not stored in this slab.
+     */
+    synchronized boolean copy(Glyph glyph, ByteBuffer target, int targetOffset, int targetStride) {
+        int chunk = glyph.slabChunk();
+        if (chunk == NO_CHUNK) {
+            return false;
+        }
+
+        int width = glyph.width();
+        int height = glyph.height();
+        int offset = chunk & (BLOCK_SIZE - 1);
+        ByteBuffer block = mBlocks.get(chunk >>> BLOCK_SHIFT);
+
+        for (int i = 0; i < height; i++) {
+            int rowStart = offset + (i * width);
+
+            block.limit(rowStart + width);
+            block.position(rowStart);
+            target.position(targetOffset + (i * targetStride));
+            target.put(block);
+        }
+        block.clear();
+
+        return true;
+    }
+}
@@ -19,16 +19,27 @@ package com.mta.tehreer.graphics;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.Build;
 import android.util.Log;
 
 import com.mta.tehreer.collections.FloatList;
 import com.mta.tehreer.collections.IntList;
 import com.mta.tehreer.collections.PointList;
+import com.mta.tehreer.layout.ComposedFrame;
+import com.mta.tehreer.layout.ComposedLine;
+import com.mta.tehreer.layout.GlyphRun;
 import com.mta.tehreer.sfnt.WritingDirection;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
 /**
  * The <code>Renderer</code> class represents a generic glyph renderer. It can be used to generate
  * glyph paths, measure their bounding boxes and draw them on a <code>Canvas</code> object.
@@ -36,15 +47,100 @@ import com.mta.tehreer.sfnt.WritingDirection;
 public class Renderer {
     private static final String TAG = Renderer.class.getSimpleName();
 
+    // Hardware accelerated canvases support `drawVertices` since API level 29.
+    private static final int VERTICES_ACCELERATION_API = 29;
+
+    private static class AtlasBatch {
+        AtlasPage page;
+        int glyphCount;
+        float[] vertices = new float[64];
+        float[] textureCoords = new float[64];
+        short[] indices = new short[96];
+
+        void reset(AtlasPage page) {
+            this.page = page;
+            this.glyphCount = 0;
+        }
+
+        boolean isFull() {
+            // Vertex indices must fit in a short.
+            return (glyphCount + 1) * 4 > Short.MAX_VALUE;
+        }
+
+        void addGlyph(int left, int top, int width, int height, AtlasRegion region) {
+            int vertexIndex = glyphCount * 8;
+            int indexIndex = glyphCount * 6;
+
+            if (vertexIndex + 8 > vertices.length) {
+                int capacity = vertices.length * 2;
+                vertices = Arrays.copyOf(vertices, capacity);
+                textureCoords = Arrays.copyOf(textureCoords, capacity);
+                indices = Arrays.copyOf(indices, capacity / 8 * 6);
+            }
+
+            int right = left + width;
+            int bottom = top + height;
+            int regionRight = region.x + width;
+            int regionBottom = region.y + height;
+
+            vertices[vertexIndex] = left;
+            vertices[vertexIndex + 1] = top;
+            vertices[vertexIndex + 2] = right;
+            vertices[vertexIndex + 3] = top;
+            vertices[vertexIndex + 4] = right;
+            vertices[vertexIndex + 5] = bottom;
+            vertices[vertexIndex + 6] = left;
+            vertices[vertexIndex + 7] = bottom;
+
+            textureCoords[vertexIndex] = region.x;
+            textureCoords[vertexIndex + 1] = region.y;
+            textureCoords[vertexIndex + 2] = regionRight;
+            textureCoords[vertexIndex + 3] = region.y;
+            textureCoords[vertexIndex + 4] = regionRight;
+            textureCoords[vertexIndex + 5] = regionBottom;
+            textureCoords[vertexIndex + 6] = region.x;
+            textureCoords[vertexIndex + 7] = regionBottom;
+
+            short firstVertex = (short) (glyphCount * 4);
+            indices[indexIndex] = firstVertex;
+            indices[indexIndex + 1] = (short) (firstVertex + 1);
+            indices[indexIndex + 2] = (short) (firstVertex + 2);
+            indices[indexIndex + 3] = firstVertex;
+            indices[indexIndex + 4] = (short) (firstVertex + 2);
+            indices[indexIndex + 5] = (short) (firstVertex + 3);
+
+            glyphCount++;
+        }
+    }
+
     private GlyphStrike mGlyphStrike = new GlyphStrike();
+    private GlyphCache.Segment mStrikeSegment;
     private int mGlyphLineRadius;
     private int mGlyphLineCap;
     private int mGlyphLineJoin;
     private int mGlyphMiterLimit;
 
     private Paint mPaint = new Paint();
+    private ArrayList<AtlasBatch> mAtlasBatches = new ArrayList<>();
+    private int[] mMaskKeys = new int[0];
+    private int mAtlasBatchCount;
+    private Rect mAtlasSource;
+    private Rect mAtlasTarget;
+    private boolean mAtlasEnabled = false;
+    private boolean mSubpixelPositioningEnabled = false;
+    private boolean mDistanceFieldEnabled = false;
+    private Matrix mFieldMatrix;
+    private float[] mFieldValues;
+    private ColorMatrixColorFilter mFieldFilter;
+    private float mFieldFilterAlpha;
+    private float mFieldFilterRange;
+    private float mPathRenderingThreshold = 256.0f;
+    private boolean mPathMode = false;
+    private RectF mPathBounds;
     private boolean mShouldRender = false;
     private boolean mShadowLayerSynced = true;
+    private boolean mShadowLayerEnabled = false;
+    private int mGlyphShadowRadius;
 
     private int mFillColor = Color.BLACK;
     private RenderingStyle mRenderingStyle = RenderingStyle.FILL;
@@ -77,25 +173,217 @@ public class Renderer {
         setStrokeMiter(1.0f);
     }
 
-    private void updatePixelSizes() {
-        int pixelWidth = (int) ((mTypeSize * mScaleX * 64.0f) + 0.5f);
-        int pixelHeight = (int) ((mTypeSize * mScaleY * 64.0f) + 0.5f);
+    /**
+     * Constructs a renderer object having the same properties as the given renderer. As a
+     * renderer must not be used by multiple threads at the same time, a copy can be used to draw
+     * with the same style on another thread.
+     *
+     * @param renderer The renderer whose properties are copied.
+     *
+     * @throws NullPointerException if <code>renderer</code> is <code>null</code>.
+     */
+    public Renderer(Renderer renderer) {
+        this();
+
+        if (renderer == null) {
+            throw new NullPointerException("Renderer is null");
+        }
+
+        setAtlasEnabled(renderer.mAtlasEnabled);
+        setSubpixelPositioningEnabled(renderer.mSubpixelPositioningEnabled);
+        setDistanceFieldEnabled(renderer.mDistanceFieldEnabled);
+        setPathRenderingThreshold(renderer.mPathRenderingThreshold);
+        setFillColor(renderer.mFillColor);
+        setRenderingStyle(renderer.mRenderingStyle);
+        setWritingDirection(renderer.mWritingDirection);
+        setTypeface(renderer.mTypeface);
+        setTypeSize(renderer.mTypeSize);
+        setSlantAngle(renderer.mSlantAngle);
+        setScaleX(renderer.mScaleX);
+        setScaleY(renderer.mScaleY);
+        setStrokeColor(renderer.mStrokeColor);
+        setStrokeWidth(renderer.mStrokeWidth);
+        setStrokeCap(renderer.mStrokeCap);
+        setStrokeJoin(renderer.mStrokeJoin);
+        setStrokeMiter(renderer.mStrokeMiter);
+        setShadowRadius(renderer.mShadowRadius);
+        setShadowDx(renderer.mShadowDx);
+        setShadowDy(renderer.mShadowDy);
+        setShadowColor(renderer.mShadowColor);
+    }
+
+    private static int pixelSize(float typeSize, float scale) {
+        return (int) ((typeSize * scale * 64.0f) + 0.5f);
+    }
 
+    private static boolean isRenderable(int pixelWidth, int pixelHeight) {
         // Minimum size supported by Freetype is 64x64.
-        mShouldRender = (pixelWidth >= 64 && pixelHeight >= 64);
-        mGlyphStrike.pixelWidth = pixelWidth;
-        mGlyphStrike.pixelHeight = pixelHeight;
+        return (pixelWidth >= 64 && pixelHeight >= 64);
+    }
+
+    private boolean isPathMode(float typeSize, float scaleX, float scaleY) {
+        float pixelSize = typeSize * Math.max(scaleX, scaleY);
+        return (pixelSize > mPathRenderingThreshold);
+    }
+
+    private void updatePixelSizes() {
+        int pixelWidth = pixelSize(mTypeSize, mScaleX);
+        int pixelHeight = pixelSize(mTypeSize, mScaleY);
+
+        mShouldRender = isRenderable(pixelWidth, pixelHeight);
+
+        // Keep the resolved segment when the same strike is set again, e.g. by each drawn run.
+        if (pixelWidth != mGlyphStrike.pixelWidth || pixelHeight != mGlyphStrike.pixelHeight) {
+            mGlyphStrike.pixelWidth = pixelWidth;
+            mGlyphStrike.pixelHeight = pixelHeight;
+            mStrikeSegment = null;
+        }
+
+        updatePathMode();
+    }
+
+    private void updatePathMode() {
+        mPathMode = isPathMode(mTypeSize, mScaleX, mScaleY);
     }
 
     private void updateTransform() {
-        mGlyphStrike.skewX = (int) ((mSlantAngle * 0x10000) + 0.5f);
+        int skewX = (int) ((mSlantAngle * 0x10000) + 0.5f);
+        if (skewX != mGlyphStrike.skewX) {
+            mGlyphStrike.skewX = skewX;
+            mStrikeSegment = null;
+        }
+    }
+
+    /**
+     * Returns the cache segment of current strike, resolving it only after the strike has changed
+     * or the segment has been dropped by the cache.
+     */
+    private GlyphCache.Segment getStrikeSegment() {
+        GlyphCache.Segment segment = mStrikeSegment;
+        if (segment == null || segment.isDetached()) {
+            segment = GlyphCache.getInstance().getSegment(mGlyphStrike);
+            mStrikeSegment = segment;
+        }
+
+        return segment;
     }
 
     private void syncShadowLayer() {
-        if (!mShadowLayerSynced) {
+        // Only the paths are drawn with the shadow layer of paint, the masks draw cached shadows.
+        boolean layerEnabled = mPathMode;
+        if (!mShadowLayerSynced || layerEnabled != mShadowLayerEnabled) {
             mShadowLayerSynced = true;
-            mPaint.setShadowLayer(mShadowRadius, mShadowDx, mShadowDy, mShadowColor);
+            mShadowLayerEnabled = layerEnabled;
+
+            if (layerEnabled) {
+                mPaint.setShadowLayer(mShadowRadius, mShadowDx, mShadowDy, mShadowColor);
+            } else {
+                mPaint.clearShadowLayer();
+            }
+        }
+    }
+
+    /**
+     * Returns whether this renderer draws glyph masks from shared atlas pages. The default value is
+     * <code>false</code>.
+     *
+     * @return <code>true</code> if the atlas is enabled, <code>false</code> otherwise.
+     */
+    public boolean isAtlasEnabled() {
+        return mAtlasEnabled;
+    }
+
+    /**
+     * Enables or disables drawing of glyph masks from shared atlas pages. When enabled, the masks
+     * of small glyphs are packed into large pages of the glyph cache and all glyphs falling on a
+     * page are drawn with a single batched call, which greatly reduces the per-glyph overhead for
+     * small type sizes. The default value is <code>false</code>.
+     *
+     * @param atlasEnabled <code>true</code> to enable the atlas, <code>false</code> to disable it.
+     */
+    public void setAtlasEnabled(boolean atlasEnabled) {
+        mAtlasEnabled = atlasEnabled;
+    }
+
+    /**
+     * Returns whether this renderer positions glyph masks at subpixel precision horizontally. The
+     * default value is <code>false</code>.
+     *
+     * @return <code>true</code> if subpixel positioning is enabled, <code>false</code> otherwise.
+     */
+    public boolean isSubpixelPositioningEnabled() {
+        return mSubpixelPositioningEnabled;
+    }
+
+    /**
+     * Enables or disables subpixel positioning of glyph masks. When enabled, the fractional part of
+     * each glyph's horizontal position is quantized into one of four bins and a separate mask is
+     * rendered for each bin, so that the glyphs are no longer snapped to whole pixels. This
+     * improves the spacing of small text at the cost of caching up to four masks per glyph. Stroked glyphs are always snapped
+     * to whole pixels. The default value is <code>false</code>.
+     *
+     * @param subpixelPositioningEnabled <code>true</code> to enable subpixel positioning,
+     *                                   <code>false</code> to disable it.
+     */
+    public void setSubpixelPositioningEnabled(boolean subpixelPositioningEnabled) {
+        mSubpixelPositioningEnabled = subpixelPositioningEnabled;
+    }
+
+    /**
+     * Returns whether this renderer fills glyphs from signed distance fields. The default value is
+     * <code>false</code>.
+     *
+     * @return <code>true</code> if distance fields are enabled, <code>false</code> otherwise.
+     */
+    public boolean isDistanceFieldEnabled() {
+        return mDistanceFieldEnabled;
+    }
+
+    /**
+     * Enables or disables filling of glyphs from signed distance fields. When enabled, a single
+     * distance field of each glyph is computed at a fixed reference size and shared by all type
+     * sizes, scales and slants of the typeface, and the glyphs are drawn by scaling the field and
+     * thresholding it with a color filter. This avoids caching a separate mask for every size,
+     * which suits animated or zoomed text, at the cost of slightly softer edges and rounded
+     * corners. Stroked glyphs and glyphs drawn as paths are not affected. The default value is
+     * <code>false</code>.
+     *
+     * @param distanceFieldEnabled <code>true</code> to enable distance fields, <code>false</code>
+     *                             to disable them.
+     */
+    public void setDistanceFieldEnabled(boolean distanceFieldEnabled) {
+        mDistanceFieldEnabled = distanceFieldEnabled;
+    }
+
+    /**
+     * Returns the size in pixels above which this renderer draws glyphs as paths. The default value
+     * is 256.
+     *
+     * @return The path rendering threshold of this renderer in pixels.
+     */
+    public float getPathRenderingThreshold() {
+        return mPathRenderingThreshold;
+    }
+
+    /**
+     * Sets the size in pixels above which this renderer draws glyphs as paths. When the type size
+     * multiplied by the larger scale exceeds this threshold, the glyphs are drawn with
+     * <code>Canvas.drawPath</code> from paths charged to a separate budget of the glyph cache,
+     * and their masks never enter the cache. This keeps a few glyphs of display sizes from
+     * evicting the masks of body text, and avoids rasterizing very large masks. Pass
+     * <code>Float.POSITIVE_INFINITY</code> to always draw masks. The default value is 256.
+     *
+     * @param pathRenderingThreshold The path rendering threshold in pixels.
+     *
+     * @throws IllegalArgumentException if <code>pathRenderingThreshold</code> is negative.
+     */
+    public void setPathRenderingThreshold(float pathRenderingThreshold) {
+        if (!(pathRenderingThreshold >= 0.0f)) {
+            throw new IllegalArgumentException("Path rendering threshold is negative");
         }
+
+        mPathRenderingThreshold = pathRenderingThreshold;
+        updatePathMode();
     }
 
     /**
@@ -182,7 +470,10 @@ public class Renderer {
      */
     public void setTypeface(Typeface typeface) {
         mTypeface = typeface;
-        mGlyphStrike.typeface = typeface;
+        if (typeface != mGlyphStrike.typeface) {
+            mGlyphStrike.typeface = typeface;
+            mStrikeSegment = null;
+        }
     }
 
     /**
@@ -423,6 +714,7 @@ public class Renderer {
         }
 
         mShadowRadius = shadowRadius;
+        mGlyphShadowRadius = ShadowMask.boxRadius(shadowRadius);
         mShadowLayerSynced = false;
     }
 
@@ -484,7 +776,7 @@ public class Renderer {
     }
 
     private Path getGlyphPath(int glyphId) {
-        return GlyphCache.getInstance().getGlyphPath(mGlyphStrike, glyphId);
+        return GlyphCache.getInstance().getGlyphPath(getStrikeSegment(), glyphId);
     }
 
     /**
@@ -530,7 +822,26 @@ public class Renderer {
     }
 
     private void getBoundingBox(int glyphId, RectF boundingBox) {
-        Glyph glyph = GlyphCache.getInstance().getMaskGlyph(mGlyphStrike, glyphId);
+        if (mPathMode) {
+            if (mPathBounds == null) {
+                mPathBounds = new RectF();
+            }
+
+            // Measure the path instead of rasterizing a large mask, in the same terms as a mask.
+            getGlyphPath(glyphId).computeBounds(mPathBounds, true);
+            float left = (float) Math.floor(mPathBounds.left);
+            float right = (float) Math.ceil(mPathBounds.right);
+            float top = (float) Math.ceil(mPathBounds.bottom);
+            float height = top - (float) Math.floor(mPathBounds.top);
+
+            boundingBox.set(left, top, right, top + height);
+            return;
+        }
+
+        GlyphCache cache = GlyphCache.getInstance();
+        Glyph glyph = (mAtlasEnabled
+                       ? cache.getAtlasGlyph(getStrikeSegment(), glyphId, 0)
+                       : cache.getMaskGlyph(getStrikeSegment(), glyphId, 0));
         boundingBox.set(glyph.leftSideBearing(), glyph.topSideBearing(),
                         glyph.rightSideBearing(), glyph.bottomSideBearing());
     }
@@ -579,32 +890,497 @@ public class Renderer {
         return cumulativeBBox;
     }
 
+    private static int subpixelBin(float fraction) {
+        return (int) (fraction * GlyphRasterizer.SUBPIXEL_BIN_COUNT + 0.5f);
+    }
+
+    private void addPrefetchGlyphs(GlyphPrefetch prefetch, GlyphStrike strike,
+                                   WritingDirection writingDirection,
+                                   IntList glyphIds, PointList offsets, FloatList advances) {
+        boolean reverseMode = (writingDirection == WritingDirection.RIGHT_TO_LEFT);
+        int size = glyphIds.size();
+
+        if ((mRenderingStyle == RenderingStyle.FILL || mRenderingStyle == RenderingStyle.FILL_STROKE)
+                && mDistanceFieldEnabled) {
+            prefetch.beginFields(strike);
+
+            for (int i = 0; i < size; i++) {
+                prefetch.addGlyph(glyphIds.get(i), 0);
+            }
+        } else if (mRenderingStyle == RenderingStyle.FILL || mRenderingStyle == RenderingStyle.FILL_STROKE) {
+            prefetch.beginMasks(strike, mAtlasEnabled);
+            float penX = 0.0f;
+
+            for (int i = 0; i < size; i++) {
+                float advance = advances.get(i);
+                int subpixelBin = 0;
+
+                if (reverseMode) {
+                    penX -= advance;
+                }
+
+                if (mSubpixelPositioningEnabled) {
+                    float glyphX = penX + offsets.getX(i);
+                    subpixelBin = subpixelBin(glyphX - (float) Math.floor(glyphX));
+                    if (subpixelBin == GlyphRasterizer.SUBPIXEL_BIN_COUNT) {
+                        subpixelBin = 0;
+                    }
+                }
+
+                prefetch.addGlyph(glyphIds.get(i), subpixelBin);
+
+                if (!reverseMode) {
+                    penX += advance;
+                }
+            }
+        }
+
+        if (mRenderingStyle == RenderingStyle.STROKE || mRenderingStyle == RenderingStyle.FILL_STROKE) {
+            prefetch.beginStrokes(strike, mGlyphLineRadius,
+                                  mGlyphLineCap, mGlyphLineJoin, mGlyphMiterLimit);
+
+            for (int i = 0; i < size; i++) {
+                prefetch.addGlyph(glyphIds.get(i), 0);
+            }
+        }
+    }
+
+    private void loadMasks(IntList glyphIds, PointList offsets, FloatList advances,
+                           int start, float penX, boolean atlas) {
+        boolean reverseMode = (mWritingDirection == WritingDirection.RIGHT_TO_LEFT);
+        int size = glyphIds.size();
+        int count = size - start;
+
+        if (mMaskKeys.length < count) {
+            mMaskKeys = new int[count];
+        }
+
+        for (int i = start; i < size; i++) {
+            float advance = advances.get(i);
+            int subpixelBin = 0;
+
+            if (reverseMode) {
+                penX -= advance;
+            }
+
+            if (mSubpixelPositioningEnabled) {
+                float glyphX = penX + offsets.getX(i);
+                subpixelBin = subpixelBin(glyphX - (float) Math.floor(glyphX));
+                if (subpixelBin == GlyphRasterizer.SUBPIXEL_BIN_COUNT) {
+                    subpixelBin = 0;
+                }
+            }
+
+            mMaskKeys[i - start] = GlyphCache.glyphKey(glyphIds.get(i), subpixelBin);
+
+            if (!reverseMode) {
+                penX += advance;
+            }
+        }
+
+        GlyphCache.getInstance().loadMasks(getStrikeSegment(), mMaskKeys, count, atlas);
+    }
+
+    private AtlasBatch obtainAtlasBatch(AtlasPage page) {
+        for (int i = 0; i < mAtlasBatchCount; i++) {
+            AtlasBatch batch = mAtlasBatches.get(i);
+            if (batch.page == page) {
+                return batch;
+            }
+        }
+
+        AtlasBatch batch;
+        if (mAtlasBatchCount < mAtlasBatches.size()) {
+            batch = mAtlasBatches.get(mAtlasBatchCount);
+        } else {
+            batch = new AtlasBatch();
+            mAtlasBatches.add(batch);
+        }
+        batch.reset(page);
+        mAtlasBatchCount++;
+
+        return batch;
+    }
+
+    private void flushAtlasBatch(Canvas canvas, AtlasBatch batch) {
+        if (batch.glyphCount > 0) {
+            mPaint.setShader(batch.page.shader());
+            canvas.drawVertices(Canvas.VertexMode.TRIANGLES, batch.glyphCount * 8,
+                                batch.vertices, 0, batch.textureCoords, 0, null, 0,
+                                batch.indices, 0, batch.glyphCount * 6, mPaint);
+            mPaint.setShader(null);
+
+            batch.glyphCount = 0;
+        }
+    }
+
+    private void drawAtlasGlyphs(Canvas canvas,
+                                 IntList glyphIds, PointList offsets, FloatList advances) {
+        GlyphCache cache = GlyphCache.getInstance();
+        GlyphCache.Segment segment = getStrikeSegment();
+        boolean reverseMode = (mWritingDirection == WritingDirection.RIGHT_TO_LEFT);
+        boolean batchMode = (!canvas.isHardwareAccelerated()
+                             || Build.VERSION.SDK_INT >= VERTICES_ACCELERATION_API);
+        float penX = 0.0f;
+
+        if (!batchMode && mAtlasSource == null) {
+            mAtlasSource = new Rect();
+            mAtlasTarget = new Rect();
+        }
+
+        int size = glyphIds.size();
+        boolean masksLoaded = false;
+
+        for (int i = 0; i < size; i++) {
+            int glyphId = glyphIds.get(i);
+            float xOffset = offsets.getX(i);
+            float yOffset = offsets.getY(i);
+            float advance = advances.get(i);
+            float startX = penX;
+
+            if (reverseMode) {
+                penX -= advance;
+            }
+
+            float glyphX = penX + xOffset;
+            int subpixelBin = 0;
+
+            if (mSubpixelPositioningEnabled) {
+                float pixelX = (float) Math.floor(glyphX);
+                subpixelBin = subpixelBin(glyphX - pixelX);
+                if (subpixelBin == GlyphRasterizer.SUBPIXEL_BIN_COUNT) {
+                    pixelX += 1.0f;
+                    subpixelBin = 0;
+                }
+                glyphX = pixelX;
+            }
+
+            Glyph maskGlyph = cache.findAtlasGlyph(segment, glyphId, subpixelBin);
+            if (maskGlyph == null) {
+                // Rasterize the masks of all remaining glyphs at once on the first miss.
+                if (!masksLoaded) {
+                    loadMasks(glyphIds, offsets, advances, i, startX, true);
+                    masksLoaded = true;
+                }
+                maskGlyph = cache.getAtlasGlyph(segment, glyphId, subpixelBin);
+            }
+            AtlasRegion region = maskGlyph.atlasRegion();
+            Bitmap maskBitmap = maskGlyph.bitmap();
+
+            int left = (int) (glyphX + maskGlyph.leftSideBearing() + 0.5f);
+            int top = (int) (-yOffset - maskGlyph.topSideBearing() + 0.5f);
+
+            if (maskBitmap != null) {
+                canvas.drawBitmap(maskBitmap, left, top, mPaint);
+            } else if (region != null) {
+                int width = maskGlyph.width();
+                int height = maskGlyph.height();
+
+                if (batchMode) {
+                    AtlasBatch batch = obtainAtlasBatch(region.page);
+                    if (batch.isFull()) {
+                        flushAtlasBatch(canvas, batch);
+                    }
+                    batch.addGlyph(left, top, width, height, region);
+                } else {
+                    // The hardware renderer merges consecutive draws of the same bitmap into a
+                    // single call by itself.
+                    mAtlasSource.set(region.x, region.y, region.x + width, region.y + height);
+                    mAtlasTarget.set(left, top, left + width, top + height);
+                    canvas.drawBitmap(region.page.bitmap(), mAtlasSource, mAtlasTarget, mPaint);
+                    obtainAtlasBatch(region.page);
+                }
+            }
+
+            if (!reverseMode) {
+                penX += advance;
+            }
+        }
+
+        for (int i = 0; i < mAtlasBatchCount; i++) {
+            AtlasBatch batch = mAtlasBatches.get(i);
+            flushAtlasBatch(canvas, batch);
+            cache.touchPage(batch.page);
+            batch.reset(null);
+        }
+        mAtlasBatchCount = 0;
+    }
+
+    private static Paint.Cap paintCap(StrokeCap strokeCap) {
+        switch (strokeCap) {
+        case ROUND:
+            return Paint.Cap.ROUND;
+
+        case SQUARE:
+            return Paint.Cap.SQUARE;
+
+        default:
+            return Paint.Cap.BUTT;
+        }
+    }
+
+    private static Paint.Join paintJoin(StrokeJoin strokeJoin) {
+        switch (strokeJoin) {
+        case BEVEL:
+            return Paint.Join.BEVEL;
+
+        case MITER:
+            return Paint.Join.MITER;
+
+        default:
+            return Paint.Join.ROUND;
+        }
+    }
+
+    private void drawPaths(Canvas canvas,
+                           IntList glyphIds, PointList offsets, FloatList advances,
+                           boolean strokeMode) {
+        boolean reverseMode = (mWritingDirection == WritingDirection.RIGHT_TO_LEFT);
+        float penX = 0.0f;
+
+        if (strokeMode) {
+            mPaint.setStyle(Paint.Style.STROKE);
+            mPaint.setStrokeWidth(mStrokeWidth);
+            mPaint.setStrokeCap(paintCap(mStrokeCap));
+            mPaint.setStrokeJoin(paintJoin(mStrokeJoin));
+            mPaint.setStrokeMiter(mStrokeMiter);
+        }
+
+        int size = glyphIds.size();
+
+        for (int i = 0; i < size; i++) {
+            int glyphId = glyphIds.get(i);
+            float xOffset = offsets.getX(i);
+            float yOffset = offsets.getY(i);
+            float advance = advances.get(i);
+
+            if (reverseMode) {
+                penX -= advance;
+            }
+
+            // The glyph paths point upwards, so flip them onto the canvas.
+            int saveCount = canvas.save();
+            canvas.translate(penX + xOffset, -yOffset);
+            canvas.scale(1.0f, -1.0f);
+            canvas.drawPath(getGlyphPath(glyphId), mPaint);
+            canvas.restoreToCount(saveCount);
+
+            if (!reverseMode) {
+                penX += advance;
+            }
+        }
+
+        if (strokeMode) {
+            mPaint.setStyle(Paint.Style.FILL);
+        }
+    }
+
+    private void drawFieldGlyphs(Canvas canvas,
+                                 IntList glyphIds, PointList offsets, FloatList advances) {
+        if (mFieldMatrix == null) {
+            mFieldMatrix = new Matrix();
+            mFieldValues = new float[9];
+            mFieldValues[8] = 1.0f;
+        }
+
+        GlyphCache cache = GlyphCache.getInstance();
+        boolean reverseMode = (mWritingDirection == WritingDirection.RIGHT_TO_LEFT);
+        float penX = 0.0f;
+
+        float scaleX = mGlyphStrike.pixelWidth / (64.0f * DistanceField.REFERENCE_SIZE);
+        float scaleY = mGlyphStrike.pixelHeight / (64.0f * DistanceField.REFERENCE_SIZE);
+        float shear = mGlyphStrike.skewX / 65536.0f;
+
+        // The field spans twice the spread over its 256 levels, so stretch the levels around the
+        // edge in such a way that the coverage ramps up within a single pixel of the canvas, then
+        // apply the alpha of the color, which is drawn opaque.
+        int color = mPaint.getColor();
+        float alpha = Color.alpha(color) / 255.0f;
+        float range = DistanceField.SPREAD * (scaleX + scaleY);
+        boolean filterBitmap = mPaint.isFilterBitmap();
+
+        mPaint.setColor(color | 0xFF000000);
+        mPaint.setColorFilter(getFieldFilter(alpha, range));
+        mPaint.setFilterBitmap(true);
+
+        int size = glyphIds.size();
+
+        for (int i = 0; i < size; i++) {
+            int glyphId = glyphIds.get(i);
+            float xOffset = offsets.getX(i);
+            float yOffset = offsets.getY(i);
+            float advance = advances.get(i);
+
+            if (reverseMode) {
+                penX -= advance;
+            }
+
+            Glyph fieldGlyph = cache.getFieldGlyph(mTypeface, glyphId);
+            Bitmap fieldBitmap = fieldGlyph.bitmap();
+            if (fieldBitmap != null) {
+                // Map the field onto the canvas, flipping its upward bearings and slanting it in
+                // the same way as the rasterizer.
+                float left = fieldGlyph.leftSideBearing();
+                float top = fieldGlyph.topSideBearing();
+                float[] values = mFieldValues;
+                values[Matrix.MSCALE_X] = scaleX;
+                values[Matrix.MSKEW_X] = shear * scaleY;
+                values[Matrix.MTRANS_X] = penX + xOffset + (left * scaleX) - (shear * top * scaleY);
+                values[Matrix.MSKEW_Y] = 0.0f;
+                values[Matrix.MSCALE_Y] = scaleY;
+                values[Matrix.MTRANS_Y] = -yOffset - (top * scaleY);
+                mFieldMatrix.setValues(values);
+
+                canvas.drawBitmap(fieldBitmap, mFieldMatrix, mPaint);
+            }
+
+            if (!reverseMode) {
+                penX += advance;
+            }
+        }
+
+        mPaint.setColor(color);
+        mPaint.setColorFilter(null);
+        mPaint.setFilterBitmap(filterBitmap);
+    }
+
+    /**
+     * Returns the color filter which turns the distances of a field into coverage, creating it
+     * again only after the alpha of fill color or the scale of glyphs has changed.
+     */
+    private ColorMatrixColorFilter getFieldFilter(float alpha, float range) {
+        if (mFieldFilter == null || alpha != mFieldFilterAlpha || range != mFieldFilterRange) {
+            float[] colorMatrix = {
+                1.0f, 0.0f, 0.0f, 0.0f, 0.0f,
+                0.0f, 1.0f, 0.0f, 0.0f, 0.0f,
+                0.0f, 0.0f, 1.0f, 0.0f, 0.0f,
+                0.0f, 0.0f, 0.0f, alpha * range, alpha * 255.0f * (0.5f - (0.5f * range)),
+            };
+
+            mFieldFilter = new ColorMatrixColorFilter(colorMatrix);
+            mFieldFilterAlpha = alpha;
+            mFieldFilterRange = range;
+        }
+
+        return mFieldFilter;
+    }
+
+    private void drawShadows(Canvas canvas,
+                             IntList glyphIds, PointList offsets, FloatList advances,
+                             boolean strokeMode) {
+        GlyphCache cache = GlyphCache.getInstance();
+        GlyphCache.Segment segment = getStrikeSegment();
+        boolean reverseMode = (mWritingDirection == WritingDirection.RIGHT_TO_LEFT);
+        float penX = 0.0f;
+
+        int color = mPaint.getColor();
+        mPaint.setColor(mShadowColor);
+
+        int size = glyphIds.size();
+
+        for (int i = 0; i < size; i++) {
+            int glyphId = glyphIds.get(i);
+            float xOffset = offsets.getX(i);
+            float yOffset = offsets.getY(i);
+            float advance = advances.get(i);
+
+            if (reverseMode) {
+                penX -= advance;
+            }
+
+            Glyph shadowGlyph;
+            if (!strokeMode) {
+                shadowGlyph = cache.getShadowGlyph(segment, glyphId, mGlyphShadowRadius);
+            } else {
+                shadowGlyph = cache.getShadowGlyph(segment, glyphId, mGlyphShadowRadius,
+                                                   mGlyphLineRadius, mGlyphLineCap,
+                                                   mGlyphLineJoin, mGlyphMiterLimit);
+            }
+            Bitmap shadowBitmap = shadowGlyph.bitmap();
+            if (shadowBitmap != null) {
+                int left = (int) (penX + xOffset + mShadowDx + shadowGlyph.leftSideBearing() + 0.5f);
+                int top = (int) (-yOffset + mShadowDy - shadowGlyph.topSideBearing() + 0.5f);
+
+                canvas.drawBitmap(shadowBitmap, left, top, mPaint);
+            }
+
+            if (!reverseMode) {
+                penX += advance;
+            }
+        }
+
+        mPaint.setColor(color);
+    }
+
     private void drawGlyphs(Canvas canvas,
                             IntList glyphIds, PointList offsets, FloatList advances,
                             boolean strokeMode) {
+        if (mPathMode) {
+            drawPaths(canvas, glyphIds, offsets, advances, strokeMode);
+            return;
+        }
+        if (mGlyphShadowRadius > 0 && Color.alpha(mShadowColor) != 0) {
+            drawShadows(canvas, glyphIds, offsets, advances, strokeMode);
+        }
+        if (mDistanceFieldEnabled && !strokeMode) {
+            drawFieldGlyphs(canvas, glyphIds, offsets, advances);
+            return;
+        }
+        if (mAtlasEnabled && !strokeMode) {
+            drawAtlasGlyphs(canvas, glyphIds, offsets, advances);
+            return;
+        }
+
         GlyphCache cache = GlyphCache.getInstance();
+        GlyphCache.Segment segment = getStrikeSegment();
         boolean reverseMode = (mWritingDirection == WritingDirection.RIGHT_TO_LEFT);
         float penX = 0.0f;
 
         int size = glyphIds.size();
+        boolean masksLoaded = strokeMode;
 
         for (int i = 0; i < size; i++) {
             int glyphId = glyphIds.get(i);
             float xOffset = offsets.getX(i);
             float yOffset = offsets.getY(i);
             float advance = advances.get(i);
+            float startX = penX;
 
             if (reverseMode) {
                 penX -= advance;
             }
 
-            Glyph maskGlyph = (!strokeMode
-                               ? cache.getMaskGlyph(mGlyphStrike, glyphId)
-                               : cache.getMaskGlyph(mGlyphStrike, glyphId, mGlyphLineRadius,
-                                                    mGlyphLineCap, mGlyphLineJoin, mGlyphMiterLimit));
+            float glyphX = penX + xOffset;
+            int subpixelBin = 0;
+
+            if (mSubpixelPositioningEnabled && !strokeMode) {
+                float pixelX = (float) Math.floor(glyphX);
+                subpixelBin = subpixelBin(glyphX - pixelX);
+                if (subpixelBin == GlyphRasterizer.SUBPIXEL_BIN_COUNT) {
+                    pixelX += 1.0f;
+                    subpixelBin = 0;
+                }
+                glyphX = pixelX;
+            }
+
+            Glyph maskGlyph;
+            if (!strokeMode) {
+                maskGlyph = cache.findMaskGlyph(segment, glyphId, subpixelBin);
+                if (maskGlyph == null) {
+                    // Rasterize the masks of all remaining glyphs at once on the first miss.
+                    if (!masksLoaded) {
+                        loadMasks(glyphIds, offsets, advances, i, startX, false);
+                        masksLoaded = true;
+                    }
+                    maskGlyph = cache.getMaskGlyph(segment, glyphId, subpixelBin);
+                }
+            } else {
+                maskGlyph = cache.getMaskGlyph(segment, glyphId, mGlyphLineRadius,
+                                               mGlyphLineCap, mGlyphLineJoin, mGlyphMiterLimit);
+            }
             Bitmap maskBitmap = maskGlyph.bitmap();
             if (maskBitmap != null) {
-                int left = (int) (penX + xOffset + maskGlyph.leftSideBearing() + 0.5f);
+                int left = (int) (glyphX + maskGlyph.leftSideBearing() + 0.5f);
                 int top = (int) (-yOffset - maskGlyph.topSideBearing() + 0.5f);
 
                 canvas.drawBitmap(maskBitmap, left, top, mPaint);
@@ -617,8 +1393,10 @@ public class Renderer {
     }
 
     /**
-     * Draws specified glyphs onto the given canvas. The shadow will not be drawn if the canvas is
-     * hardware accelerated.
+     * Draws specified glyphs onto the given canvas. The shadows of the glyphs are blurred once
+     * into masks of the glyph cache and drawn like the glyphs themselves, so they are drawn on
+     * hardware accelerated canvases as well. However, the glyphs drawn as paths rely on the shadow
+     * layer of paint, so their shadows will not be drawn if the canvas is hardware accelerated.
      *
      * @param canvas The canvas onto which to draw the glyphs.
      * @param glyphIds The list containing the glyph IDs.
@@ -630,7 +1408,7 @@ public class Renderer {
         if (mShouldRender) {
             syncShadowLayer();
 
-            if (mShadowRadius > 0.0f && canvas.isHardwareAccelerated()) {
+            if (mPathMode && mShadowRadius > 0.0f && canvas.isHardwareAccelerated()) {
                 Log.e(TAG, "Canvas is hardware accelerated, shadow will not be rendered");
             }
 
@@ -645,4 +1423,65 @@ public class Renderer {
             }
         }
     }
+
+    /**
+     * Rasterizes specified glyphs into the glyph cache on a background thread, so that drawing
+     * them later with the current properties of this renderer does not have to wait for the
+     * rasterization. The glyphs already being rasterized by another thread are not rasterized
+     * again.
+     *
+     * @param glyphIds The list containing the glyph IDs.
+     * @param offsets The list containing the glyph offsets.
+     * @param advances The list containing the glyph advances.
+     * @return A future which can be used to wait for the prefetch or to cancel it.
+     */
+    public Future<?> prefetchGlyphs(IntList glyphIds, PointList offsets, FloatList advances) {
+        GlyphPrefetch prefetch = new GlyphPrefetch();
+
+        if (mShouldRender && mTypeface != null && !mPathMode) {
+            addPrefetchGlyphs(prefetch, mGlyphStrike, mWritingDirection, glyphIds, offsets, advances);
+        }
+
+        return GlyphCache.getInstance().prefetch(prefetch);
+    }
+
+    /**
+     * Rasterizes the glyphs of specified frame into the glyph cache on a background thread, so that
+     * drawing the frame later with this renderer does not have to wait for the rasterization. The
+     * typeface, type size, horizontal scale and writing direction of each run are taken from the
+     * run itself while the remaining properties are taken from this renderer, which is left
+     * unchanged. The glyphs already being rasterized by another thread are not rasterized again.
+     *
+     * @param frame The frame whose glyphs are to be prefetched.
+     * @return A future which can be used to wait for the prefetch or to cancel it.
+     */
+    public Future<?> prefetchGlyphs(ComposedFrame frame) {
+        GlyphPrefetch prefetch = new GlyphPrefetch();
+        GlyphStrike strike = new GlyphStrike();
+        strike.skewX = mGlyphStrike.skewX;
+
+        for (ComposedLine line : frame.getLines()) {
+            for (GlyphRun run : line.getRuns()) {
+                // Build the strike that the run will be drawn with, as in GlyphRun.draw().
+                float typeSize = run.getTypeSize();
+                float scaleX = run.getScaleX();
+                int pixelWidth = pixelSize(typeSize, scaleX);
+                int pixelHeight = pixelSize(typeSize, mScaleY);
+
+                if (run.getTypeface() == null || !isRenderable(pixelWidth, pixelHeight)
+                        || isPathMode(typeSize, scaleX, mScaleY)) {
+                    continue;
+                }
+
+                strike.typeface = run.getTypeface();
+                strike.pixelWidth = pixelWidth;
+                strike.pixelHeight = pixelHeight;
+
+                addPrefetchGlyphs(prefetch, strike, run.getWritingDirection(),
+                                  run.getGlyphIds(), run.getGlyphOffsets(), run.getGlyphAdvances());
+            }
+        }
+
+        return GlyphCache.getInstance().prefetch(prefetch);
+    }
 }
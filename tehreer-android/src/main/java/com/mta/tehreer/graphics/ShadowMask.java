@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.graphics;
+
+/**
+ * A blurred coverage mask of a glyph, used for drawing its shadow. The blur approximates a
+ * Gaussian by three successive passes of a box filter in each direction, so its cost does not
+ * depend on the radius. The mask is grown by the reach of the blur on every side, and its left and
+ * top are the position relative to the glyph origin with the y-axis pointing upwards, like the
+ * bearings of a glyph mask.
+ */
+final class ShadowMask {
+
+    private static final int PASS_COUNT = 3;
+
+    final int left;
+    final int top;
+    final int width;
+    final int height;
+    final byte[] values;
+
+    private ShadowMask(int left, int top, int width, int height, byte[] values) {
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+        this.values = values;
+    }
+
+    /**
+     * Returns the radius of the box filter approximating the blur of given shadow radius. As the
+     * masks only depend on this radius, the shadows of nearby radii share the same masks.
+     */
+    static int boxRadius(float shadowRadius) {
+        if (!(shadowRadius > 0.0f)) {
+            return 0;
+        }
+
+        // Convert the radius into deviation in the same way as the shadow layer of a paint.
+        float sigma = (0.57735f * shadowRadius) + 0.5f;
+        // Three passes of a box of width w have a variance of (w^2 - 1) / 4.
+        float boxWidth = (float) Math.sqrt((4.0f * sigma * sigma) + 1.0f);
+
+        return Math.max(1, (int) (((boxWidth - 1.0f) / 2.0f) + 0.5f));
+    }
+
+    /**
+     * Blurs the given coverage with a box filter of given radius, or returns <code>null</code> if
+     * the coverage is empty. The coverage is expected to have tightly packed rows.
+     */
+    static ShadowMask create(byte[] coverage, int left, int top, int width, int height,
+                             int boxRadius) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        int padding = boxRadius * PASS_COUNT;
+        int maskWidth = width + (2 * padding);
+        int maskHeight = height + (2 * padding);
+        int[] levels = new int[maskWidth * maskHeight];
+
+        for (int row = 0; row < height; row++) {
+            int sourceIndex = row * width;
+            int targetIndex = ((row + padding) * maskWidth) + padding;
+
+            for (int column = 0; column < width; column++) {
+                levels[targetIndex + column] = coverage[sourceIndex + column] & 0xFF;
+            }
+        }
+
+        if (boxRadius > 0) {
+            int[] line = new int[Math.max(maskWidth, maskHeight)];
+
+            // Only the rows holding the coverage need to be blurred horizontally.
+            for (int row = padding; row < padding + height; row++) {
+                for (int pass = 0; pass < PASS_COUNT; pass++) {
+                    blurLine(levels, row * maskWidth, 1, maskWidth, boxRadius, line);
+                }
+            }
+            for (int column = 0; column < maskWidth; column++) {
+                for (int pass = 0; pass < PASS_COUNT; pass++) {
+                    blurLine(levels, column, maskWidth, maskHeight, boxRadius, line);
+                }
+            }
+        }
+
+        byte[] values = new byte[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            values[i] = (byte) levels[i];
+        }
+
+        return new ShadowMask(left - padding, top + padding, maskWidth, maskHeight, values);
+    }
+
+    /**
+     * Replaces the levels of a single row or column with their running mean over the box,
+     * treating the levels beyond the line as zero.
+     */
+    private static void blurLine(int[] levels, int offset, int stride, int count, int radius,
+                                 int[] line) {
+        for (int i = 0; i < count; i++) {
+            line[i] = levels[offset + (i * stride)];
+        }
+
+        int boxWidth = (2 * radius) + 1;
+        int sum = 0;
+
+        for (int i = 0; i < radius && i < count; i++) {
+            sum += line[i];
+        }
+
+        for (int i = 0; i < count; i++) {
+            int entering = i + radius;
+            if (entering < count) {
+                sum += line[entering];
+            }
+
+            levels[offset + (i * stride)] = (sum + (boxWidth / 2)) / boxWidth;
+
+            int leaving = i - radius;
+            if (leaving >= 0) {
+                sum -= line[leaving];
+            }
+        }
+    }
+}
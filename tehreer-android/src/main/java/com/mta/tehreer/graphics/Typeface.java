@@ -22,11 +22,13 @@ import android.graphics.Path;
 import android.graphics.Rect;
 
 import com.mta.tehreer.internal.JniBridge;
+import com.mta.tehreer.internal.NativeReleaser;
 import com.mta.tehreer.internal.Sustain;
 import com.mta.tehreer.sfnt.SfntTag;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.zip.CRC32;
 
 /**
  * The <code>Typeface</code> class specifies the typeface and intrinsic style of a font. This is
@@ -38,22 +40,24 @@ public class Typeface {
         JniBridge.loadLibrary();
     }
 
-    private class Finalizable {
+    private static final class Release implements Runnable {
+        private final long nativeTypeface;
+
+        Release(long nativeTypeface) {
+            this.nativeTypeface = nativeTypeface;
+        }
 
         @Override
-        protected void finalize() throws Throwable {
-            try {
-                dispose();
-            } finally {
-                super.finalize();
-            }
+        public void run() {
+            nDispose(nativeTypeface);
         }
     }
 
     @Sustain
     long nativeTypeface;
-    private final Finalizable finalizable = new Finalizable();
+    private NativeReleaser.Registration registration;
     private TypefaceDescription description;
+    private volatile long identity;
     Object tag;
 
     /**
@@ -129,6 +133,7 @@ public class Typeface {
 
 	private void init(long nativeTypeface) {
 	    this.nativeTypeface = nativeTypeface;
+        this.registration = NativeReleaser.register(this, new Release(nativeTypeface));
         this.description = TypefaceDescription.deduce(this);
 	}
 
@@ -237,6 +242,32 @@ public class Typeface {
         return nGetLeading(nativeTypeface);
     }
 
+    /**
+     * Returns a value identifying the font data of this typeface across processes. The 'head'
+     * table contains the checksum adjustment of whole font file along with its revision and
+     * modification date, so it is unlikely to match for different fonts.
+     */
+    long identity() {
+        long value = identity;
+        if (value == 0) {
+            CRC32 checksum = new CRC32();
+            byte[] headTable = getTableData(SfntTag.make("head"));
+            if (headTable != null) {
+                checksum.update(headTable);
+            }
+
+            value = (checksum.getValue() << 32)
+                  | ((long) (getGlyphCount() & 0xFFFF) << 16)
+                  | (getUnitsPerEm() & 0xFFFF);
+            if (value == 0) {
+                value = 1;
+            }
+            identity = value;
+        }
+
+        return value;
+    }
+
     /**
      * Returns the number of glyphs in this typeface.
      *
@@ -287,6 +318,14 @@ public class Typeface {
         return nGetGlyphPath(nativeTypeface, glyphId, typeSize, values);
     }
 
+    /**
+     * Loads the unscaled outline of specified glyph, or returns <code>null</code> if the glyph has
+     * no outline.
+     */
+    GlyphOutline loadGlyphOutline(int glyphId) {
+        return nGetGlyphOutline(nativeTypeface, glyphId);
+    }
+
     /**
      * Returns the font bounding box expressed in font units. The box is large enough to contain any
      * glyph from the font.
@@ -319,7 +358,7 @@ public class Typeface {
 	}
 
     void dispose() {
-        nDispose(nativeTypeface);
+        registration.release();
     }
 
     @Override
@@ -357,6 +396,7 @@ public class Typeface {
     private static native int nGetGlyphId(long nativeTypeface, int codePoint);
     private static native float nGetGlyphAdvance(long nativeTypeface, int glyphId, float typeSize, boolean vertical);
     private static native Path nGetGlyphPath(long nativeTypeface, int glyphId, float typeSize, float[] matrix);
+    private static native GlyphOutline nGetGlyphOutline(long nativeTypeface, int glyphId);
 
 	private static native void nGetBoundingBox(long nativeTypeface, Rect boundingBox);
 
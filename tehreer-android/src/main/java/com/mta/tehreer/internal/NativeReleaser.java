@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal;
+
+import android.util.Log;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Releases the native memory of objects once they become unreachable, without relying on
+ * finalizers. Each object is tracked by a phantom reference holding a release action, and a single
+ * daemon thread runs the actions of the references enqueued by the garbage collector. An action
+ * must not refer to its object, otherwise the object never becomes unreachable.
+ */
+public final class NativeReleaser {
+
+    /**
+     * The registration of an object with the releaser.
+     */
+    public static final class Registration extends PhantomReference<Object> {
+
+        private Runnable action;
+
+        private Registration(Object referent, Runnable action) {
+            super(referent, QUEUE);
+            this.action = action;
+        }
+
+        /**
+         * Runs the release action if it has not been run yet. It can be called to release the
+         * native memory before the object becomes unreachable.
+         */
+        public void release() {
+            Runnable currentAction;
+
+            synchronized (REGISTRATIONS) {
+                currentAction = action;
+                if (currentAction == null) {
+                    return;
+                }
+
+                action = null;
+                REGISTRATIONS.remove(this);
+            }
+
+            clear();
+            currentAction.run();
+            RELEASED_COUNT.incrementAndGet();
+        }
+    }
+
+    private static final String TAG = NativeReleaser.class.getSimpleName();
+
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+    private static final HashSet<Registration> REGISTRATIONS = new HashSet<>();
+    private static final AtomicLong RELEASED_COUNT = new AtomicLong();
+
+    static {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    Reference<?> reference;
+                    try {
+                        reference = QUEUE.remove();
+                    } catch (InterruptedException ignored) {
+                        continue;
+                    }
+
+                    // A failing action must not stop the release of remaining objects.
+                    try {
+                        ((Registration) reference).release();
+                    } catch (Throwable t) {
+                        Log.e(TAG, "Failed to release native memory", t);
+                    }
+                }
+            }
+        }, "NativeReleaser");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Registers an action to release the native memory of given object once it becomes
+     * unreachable.
+     *
+     * @param referent The object owning the native memory.
+     * @param action The action releasing the native memory. It must not refer to the object.
+     * @return The registration which can be used to release the memory early.
+     */
+    public static Registration register(Object referent, Runnable action) {
+        if (referent == null) {
+            throw new NullPointerException("Referent is null");
+        }
+        if (action == null) {
+            throw new NullPointerException("Action is null");
+        }
+
+        Registration registration = new Registration(referent, action);
+        synchronized (REGISTRATIONS) {
+            // Keep the reference reachable until it is processed.
+            REGISTRATIONS.add(registration);
+        }
+
+        return registration;
+    }
+
+    /**
+     * Returns the number of registered objects whose native memory has not been released yet,
+     * whether they are still in use or waiting to be processed.
+     */
+    public static int pendingCount() {
+        synchronized (REGISTRATIONS) {
+            return REGISTRATIONS.size();
+        }
+    }
+
+    /**
+     * Returns the number of objects whose native memory has been released, either explicitly or
+     * after becoming unreachable.
+     */
+    public static long releasedCount() {
+        return RELEASED_COUNT.get();
+    }
+
+    private NativeReleaser() {
+    }
+}
@@ -20,6 +20,7 @@ import com.mta.tehreer.internal.util.StringUtils;
 import com.mta.tehreer.layout.BreakMode;
 
 import java.text.BreakIterator;
+import java.text.StringCharacterIterator;
 
 public class BreakResolver {
 
@@ -31,7 +32,7 @@ public class BreakResolver {
         return (byte) (forward ? type : type << 1);
     }
 
-    private static void fillBreaks(String text, byte[] breaks, byte type) {
+    private static void fillBreaks(String text, int start, int end, byte[] breaks, byte type) {
         BreakIterator iterator;
 
         switch (type) {
@@ -44,7 +45,8 @@ public class BreakResolver {
             break;
         }
 
-        iterator.setText(text);
+        // The iterator reports the indices relative to the whole text.
+        iterator.setText(new StringCharacterIterator(text, start, end, start));
         iterator.first();
 
         byte forwardType = typeMode(type, true);
@@ -64,8 +66,16 @@ public class BreakResolver {
     }
 
     public static void fillBreaks(String text, byte[] breaks) {
-        BreakResolver.fillBreaks(text, breaks, BreakResolver.LINE);
-        BreakResolver.fillBreaks(text, breaks, BreakResolver.CHARACTER);
+        fillBreaks(text, 0, text.length(), breaks);
+    }
+
+    /**
+     * Fills the line and character breaks of the given range only. The range should cover whole
+     * paragraphs, as no line or character boundary crosses a paragraph separator.
+     */
+    public static void fillBreaks(String text, int start, int end, byte[] breaks) {
+        BreakResolver.fillBreaks(text, start, end, breaks, BreakResolver.LINE);
+        BreakResolver.fillBreaks(text, start, end, breaks, BreakResolver.CHARACTER);
     }
 
     private static int findForwardBreak(CharSequence text, RunCollection runs, byte[] breaks,
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.layout;
+
+import com.mta.tehreer.unicode.BidiParagraph;
+
+/**
+ * A bidi paragraph placed in the source text. The bidi paragraph may have been resolved on a part
+ * of the text, or before an edit moved it, so its indices differ from those of the source text by
+ * <code>charOffset</code>.
+ */
+public class IntrinsicParagraph {
+    public final BidiParagraph bidiParagraph;
+    public final byte baseLevel;
+    /**
+     * The script of last char, which the leading common chars of next paragraph take on.
+     */
+    public final int lastScript;
+    public int charStart;
+    public int charEnd;
+    public int charOffset;
+
+    public IntrinsicParagraph(BidiParagraph bidiParagraph, int charOffset, int lastScript) {
+        this.bidiParagraph = bidiParagraph;
+        this.baseLevel = bidiParagraph.getBaseLevel();
+        this.lastScript = lastScript;
+        this.charStart = bidiParagraph.getCharStart() + charOffset;
+        this.charEnd = bidiParagraph.getCharEnd() + charOffset;
+        this.charOffset = charOffset;
+    }
+
+    /**
+     * Moves this paragraph by the given number of chars.
+     */
+    public void shift(int charOffset) {
+        this.charStart += charOffset;
+        this.charEnd += charOffset;
+        this.charOffset += charOffset;
+    }
+}
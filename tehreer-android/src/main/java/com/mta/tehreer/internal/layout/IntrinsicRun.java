@@ -21,8 +21,8 @@ import com.mta.tehreer.internal.util.Clusters;
 import com.mta.tehreer.sfnt.WritingDirection;
 
 public class IntrinsicRun {
-    public final int charStart;
-    public final int charEnd;
+    public int charStart;
+    public int charEnd;
     public final boolean isBackward;
     public final byte bidiLevel;
     public final WritingDirection writingDirection;
@@ -36,6 +36,8 @@ public class IntrinsicRun {
     public final float[] glyphAdvances;
     public final int[] clusterMap;
     public final float[] charExtents;
+    private final float[] glyphExtents;
+    private final int[] clusterLimits;
 
     public IntrinsicRun(int charStart, int charEnd, boolean isBackward, byte bidiLevel,
                         WritingDirection writingDirection, Typeface typeface, float typeSize,
@@ -56,6 +58,61 @@ public class IntrinsicRun {
         this.glyphAdvances = advances;
         this.clusterMap = clusterMap;
         this.charExtents = buildCharExtents();
+        this.glyphExtents = buildGlyphExtents();
+        this.clusterLimits = buildClusterLimits();
+    }
+
+    /**
+     * Moves this run by the given number of chars. All arrays are kept as they are relative to its
+     * first char.
+     */
+    public void shift(int charOffset) {
+        this.charStart += charOffset;
+        this.charEnd += charOffset;
+    }
+
+    private float[] buildGlyphExtents() {
+        int length = glyphAdvances.length;
+        float[] array = new float[length + 1];
+        float distance = 0.0f;
+
+        for (int i = 0; i < length; i++) {
+            distance += glyphAdvances[i];
+            array[i + 1] = distance;
+        }
+
+        return array;
+    }
+
+    /**
+     * Builds the index of the glyph following the cluster of each char in logical order, i.e. the
+     * end of cluster's glyphs for a forward run and the start of preceding cluster's glyphs for a
+     * backward run.
+     */
+    private int[] buildClusterLimits() {
+        int length = charEnd - charStart;
+        int[] array = new int[length];
+        if (length == 0) {
+            return array;
+        }
+
+        int glyphCount = glyphIds.length;
+
+        if (!isBackward) {
+            array[length - 1] = glyphCount;
+            for (int i = length - 2; i >= 0; i--) {
+                int next = clusterMap[i + 1];
+                array[i] = (next != clusterMap[i] ? next : array[i + 1]);
+            }
+        } else {
+            array[0] = glyphCount;
+            for (int i = 1; i < length; i++) {
+                int previous = clusterMap[i - 1];
+                array[i] = (previous != clusterMap[i] ? previous : array[i - 1]);
+            }
+        }
+
+        return array;
     }
 
     private float[] buildCharExtents() {
@@ -123,12 +180,26 @@ public class IntrinsicRun {
     }
 
     public float measureGlyphs(int glyphStart, int glyphEnd) {
-        float size = 0.0f;
+        return glyphExtents[glyphEnd] - glyphExtents[glyphStart];
+    }
 
-        for (int i = glyphStart; i < glyphEnd; i++) {
-            size += glyphAdvances[i];
+    /**
+     * Measures the glyphs of all clusters touched by the given range of chars in constant time.
+     */
+    public float measureChars(int startIndex, int endIndex) {
+        int arrayStart = startIndex - charStart;
+        int arrayEnd = endIndex - charStart;
+        int glyphStart;
+        int glyphEnd;
+
+        if (!isBackward) {
+            glyphStart = clusterMap[arrayStart];
+            glyphEnd = clusterLimits[arrayEnd - 1];
+        } else {
+            glyphStart = clusterMap[arrayEnd - 1];
+            glyphEnd = clusterLimits[arrayStart];
         }
 
-        return size;
+        return measureGlyphs(glyphStart, glyphEnd);
     }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.layout;
+
+import android.text.Spanned;
+
+import com.mta.tehreer.sfnt.ShapingEngine;
+import com.mta.tehreer.unicode.BidiAlgorithm;
+import com.mta.tehreer.unicode.ScriptClassifier;
+
+import java.util.List;
+
+/**
+ * Resolves and shapes the paragraphs of a text on demand. Each call extends the resolved prefix of
+ * the text by whole paragraphs, filling their breaks, paragraphs and runs exactly as
+ * <code>ShapeResolver.fillRuns</code> would have done for them. The native objects are kept alive
+ * between the calls and released as soon as the whole text is resolved.
+ */
+public final class LazyShapeResolver {
+
+    private final String text;
+    private final Spanned spanned;
+    private final List<Object> defaultSpans;
+    private final byte[] breaks;
+    private final List<IntrinsicParagraph> paragraphs;
+    private final List<IntrinsicRun> runs;
+
+    private BidiAlgorithm bidiAlgorithm;
+    private ShapingEngine shapingEngine;
+    private ScriptClassifier scriptClassifier;
+    private ShapingRunLocator locator;
+    private int bidiOffset;
+
+    private int resolvedEnd;
+
+    /**
+     * Constructs a resolver which appends to the given collections, assuming that the text before
+     * <code>resolvedEnd</code> has already been resolved into them.
+     */
+    public LazyShapeResolver(String text, Spanned spanned, List<Object> defaultSpans, byte[] breaks,
+                             List<IntrinsicParagraph> paragraphs, List<IntrinsicRun> runs, int resolvedEnd) {
+        this.text = text;
+        this.spanned = spanned;
+        this.defaultSpans = defaultSpans;
+        this.breaks = breaks;
+        this.paragraphs = paragraphs;
+        this.runs = runs;
+        this.resolvedEnd = resolvedEnd;
+    }
+
+    /**
+     * Returns the index after the last resolved char of the text.
+     */
+    public int getResolvedEnd() {
+        return resolvedEnd;
+    }
+
+    public boolean isComplete() {
+        return resolvedEnd == text.length();
+    }
+
+    /**
+     * Resolves the paragraphs until the one containing the char before <code>charEnd</code>. Does
+     * nothing if that char has already been resolved.
+     */
+    public void resolve(int charEnd) {
+        if (charEnd <= resolvedEnd) {
+            return;
+        }
+
+        if (bidiAlgorithm == null) {
+            // The bidi levels of resolved paragraphs are final, so leave them out of the algorithm.
+            bidiOffset = resolvedEnd;
+
+            // The objects may be left unreleased if the text is never resolved completely.
+            bidiAlgorithm = BidiAlgorithm.finalizable(new BidiAlgorithm(text.substring(bidiOffset)));
+            shapingEngine = ShapingEngine.finalizable(new ShapingEngine());
+            scriptClassifier = new ScriptClassifier(text);
+            locator = new ShapingRunLocator(spanned, defaultSpans);
+        }
+
+        int suggestedEnd = text.length();
+
+        while (resolvedEnd < charEnd) {
+            IntrinsicParagraph paragraph = ShapeResolver.resolveParagraph(bidiAlgorithm, bidiOffset,
+                                                                          scriptClassifier, 0,
+                                                                          resolvedEnd, suggestedEnd, breaks);
+            int paragraphEnd = paragraph.charEnd;
+
+            BreakResolver.fillBreaks(text, resolvedEnd, paragraphEnd, breaks);
+            ShapeResolver.shapeParagraph(text, spanned, paragraph, scriptClassifier, 0,
+                                         locator, shapingEngine, runs);
+            paragraphs.add(paragraph);
+
+            resolvedEnd = paragraphEnd;
+        }
+
+        if (isComplete()) {
+            shapingEngine.dispose();
+            bidiAlgorithm.dispose();
+
+            shapingEngine = null;
+            bidiAlgorithm = null;
+            scriptClassifier = null;
+            locator = null;
+        }
+    }
+}
@@ -17,13 +17,12 @@
 package com.mta.tehreer.internal.layout;
 
 import com.mta.tehreer.unicode.BidiLine;
-import com.mta.tehreer.unicode.BidiParagraph;
 import com.mta.tehreer.unicode.BidiRun;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class ParagraphCollection extends ArrayList<BidiParagraph> {
+public class ParagraphCollection extends ArrayList<IntrinsicParagraph> {
 
     public int binarySearch(int charIndex) {
         int low = 0;
@@ -31,11 +30,11 @@ public class ParagraphCollection extends ArrayList<BidiParagraph> {
 
         while (low <= high) {
             int mid = (low + high) >>> 1;
-            BidiParagraph value = get(mid);
+            IntrinsicParagraph value = get(mid);
 
-            if (charIndex >= value.getCharEnd()) {
+            if (charIndex >= value.charEnd) {
                 low = mid + 1;
-            } else if (charIndex < value.getCharStart()) {
+            } else if (charIndex < value.charStart) {
                 high = mid - 1;
             } else {
                 return mid;
@@ -47,9 +46,9 @@ public class ParagraphCollection extends ArrayList<BidiParagraph> {
 
     public byte charLevel(int charIndex) {
         int paragraphIndex = binarySearch(charIndex);
-        BidiParagraph charParagraph = get(paragraphIndex);
+        IntrinsicParagraph charParagraph = get(paragraphIndex);
 
-        return charParagraph.getBaseLevel();
+        return charParagraph.baseLevel;
     }
 
     public interface RunConsumer {
@@ -62,16 +61,22 @@ public class ParagraphCollection extends ArrayList<BidiParagraph> {
         int feasibleEnd;
 
         do {
-            BidiParagraph bidiParagraph = get(paragraphIndex);
-            feasibleStart = Math.max(bidiParagraph.getCharStart(), lineStart);
-            feasibleEnd = Math.min(bidiParagraph.getCharEnd(), lineEnd);
+            IntrinsicParagraph paragraph = get(paragraphIndex);
+            feasibleStart = Math.max(paragraph.charStart, lineStart);
+            feasibleEnd = Math.min(paragraph.charEnd, lineEnd);
 
-            BidiLine bidiLine = bidiParagraph.createLine(feasibleStart, feasibleEnd);
+            int charOffset = paragraph.charOffset;
+            BidiLine bidiLine = paragraph.bidiParagraph.createLine(feasibleStart - charOffset,
+                                                                   feasibleEnd - charOffset);
             List<BidiRun> bidiRuns = bidiLine.getVisualRuns();
 
             int runCount = bidiRuns.size();
             for (int i = 0; i < runCount; i++) {
-                runConsumer.accept(bidiRuns.get(i));
+                BidiRun bidiRun = bidiRuns.get(i);
+                bidiRun.charStart += charOffset;
+                bidiRun.charEnd += charOffset;
+
+                runConsumer.accept(bidiRun);
             }
 
             bidiLine.dispose();
@@ -79,17 +84,4 @@ public class ParagraphCollection extends ArrayList<BidiParagraph> {
             paragraphIndex++;
         } while (feasibleEnd != lineEnd);
     }
-
-    @Override
-    protected void finalize() throws Throwable {
-        try {
-            int size = size();
-            for (int i = 0; i < size; i++) {
-                BidiParagraph paragraph = get(i);
-                paragraph.dispose();
-            }
-        } finally {
-            super.finalize();
-        }
-    }
 }
@@ -44,14 +44,12 @@ public class RunCollection extends ArrayList<IntrinsicRun> {
 
         if (charEnd > charStart) {
             int runIndex = binarySearch(charStart);
-            int[] glyphRange = new int[2];
 
             do {
                 IntrinsicRun intrinsicRun = get(runIndex);
                 int segmentEnd = Math.min(charEnd, intrinsicRun.charEnd);
 
-                intrinsicRun.loadGlyphRange(charStart, segmentEnd, glyphRange);
-                extent += intrinsicRun.measureGlyphs(glyphRange[0], glyphRange[1]);
+                extent += intrinsicRun.measureChars(charStart, segmentEnd);
 
                 charStart = segmentEnd;
                 runIndex++;
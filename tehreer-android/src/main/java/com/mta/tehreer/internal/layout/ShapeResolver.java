@@ -20,7 +20,9 @@ import android.graphics.Paint;
 import android.text.Spanned;
 import android.text.style.ReplacementSpan;
 
+import com.mta.tehreer.collections.IntList;
 import com.mta.tehreer.graphics.Typeface;
+import com.mta.tehreer.internal.util.Parallel;
 import com.mta.tehreer.sfnt.SfntTag;
 import com.mta.tehreer.sfnt.ShapingEngine;
 import com.mta.tehreer.sfnt.ShapingResult;
@@ -33,12 +35,16 @@ import com.mta.tehreer.unicode.Script;
 import com.mta.tehreer.unicode.ScriptClassifier;
 import com.mta.tehreer.unicode.ScriptRun;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class ShapeResolver {
 
+    private static final int GROUPS_PER_THREAD = 4;
+
     public static void fillRuns(String text, Spanned spanned, List<Object> defaultSpans, byte[] breaks,
-                                List<BidiParagraph> paragraphs, List<IntrinsicRun> runs) {
+                                List<IntrinsicParagraph> paragraphs, List<IntrinsicRun> runs) {
         BidiAlgorithm bidiAlgorithm = null;
         ShapingEngine shapingEngine = null;
 
@@ -49,55 +55,362 @@ public class ShapeResolver {
             ScriptClassifier scriptClassifier = new ScriptClassifier(text);
             ShapingRunLocator locator = new ShapingRunLocator(spanned, defaultSpans);
 
-            BaseDirection baseDirection = BaseDirection.DEFAULT_LEFT_TO_RIGHT;
-            byte forwardType = BreakResolver.typeMode(BreakResolver.PARAGRAPH, true);
-            byte backwardType = BreakResolver.typeMode(BreakResolver.PARAGRAPH, false);
+            int paragraphStart = 0;
+            int suggestedEnd = text.length();
+
+            while (paragraphStart != suggestedEnd) {
+                IntrinsicParagraph paragraph = resolveParagraph(bidiAlgorithm, 0, scriptClassifier, 0,
+                                                                paragraphStart, suggestedEnd, breaks);
+                shapeParagraph(text, spanned, paragraph, scriptClassifier, 0, locator, shapingEngine, runs);
+                paragraphs.add(paragraph);
+
+                paragraphStart = paragraph.charEnd;
+            }
+        } finally {
+            if (shapingEngine != null) {
+                shapingEngine.dispose();
+            }
+            if (bidiAlgorithm != null) {
+                bidiAlgorithm.dispose();
+            }
+        }
+    }
 
+    /**
+     * Fills the runs in the same way as <code>fillRuns</code> but shapes the paragraphs on
+     * multiple threads. The paragraphs are resolved first, then split into consecutive groups of
+     * similar length, each of which is shaped with a separate engine and locator. The runs of the
+     * groups are collected in order, so the result is identical to shaping on a single thread.
+     */
+    public static void fillRunsInParallel(final String text, final Spanned spanned,
+                                          final List<Object> defaultSpans, byte[] breaks,
+                                          final List<IntrinsicParagraph> paragraphs, List<IntrinsicRun> runs) {
+        BidiAlgorithm bidiAlgorithm = null;
+
+        try {
+            bidiAlgorithm = new BidiAlgorithm(text);
+
+            final ScriptClassifier scriptClassifier = new ScriptClassifier(text);
             int paragraphStart = 0;
             int suggestedEnd = text.length();
 
             while (paragraphStart != suggestedEnd) {
-                BidiParagraph paragraph = bidiAlgorithm.createParagraph(paragraphStart, suggestedEnd, baseDirection);
-                for (BidiRun bidiRun : paragraph.getLogicalRuns()) {
-                    for (ScriptRun scriptRun : scriptClassifier.getScriptRuns(bidiRun.charStart, bidiRun.charEnd)) {
-                        int scriptTag = Script.getOpenTypeTag(scriptRun.script);
-                        WritingDirection writingDirection = ShapingEngine.getScriptDirection(scriptTag);
-
-                        boolean isOddLevel = ((bidiRun.embeddingLevel & 1) == 1);
-                        boolean isBackward = (isOddLevel && writingDirection == WritingDirection.LEFT_TO_RIGHT)
-                                           | (!isOddLevel && writingDirection == WritingDirection.RIGHT_TO_LEFT);
-
-                        // FIXME: Add support for backward mode and disable overriding.
-                        if (isBackward) {
-                            scriptTag = SfntTag.make(isOddLevel ? "arab" : "latn");
-                            writingDirection = (isOddLevel ? WritingDirection.RIGHT_TO_LEFT : WritingDirection.LEFT_TO_RIGHT);
-                        }
+                IntrinsicParagraph paragraph = resolveParagraph(bidiAlgorithm, 0, scriptClassifier, 0,
+                                                                paragraphStart, suggestedEnd, breaks);
+                paragraphs.add(paragraph);
+
+                paragraphStart = paragraph.charEnd;
+            }
 
-                        locator.reset(scriptRun.charStart, scriptRun.charEnd);
+            int paragraphCount = paragraphs.size();
+            int groupCount = Math.min(paragraphCount, Parallel.threadCount() * GROUPS_PER_THREAD);
+            int groupLength = (text.length() + groupCount - 1) / groupCount;
 
-                        shapingEngine.setScriptTag(scriptTag);
-                        shapingEngine.setWritingDirection(writingDirection);
+            final List<List<IntrinsicRun>> groupRuns = new ArrayList<>(groupCount);
+            List<Runnable> tasks = new ArrayList<>(groupCount);
+            int groupStart = 0;
 
-                        resolveTypefaces(text, spanned, runs, locator, shapingEngine, bidiRun.embeddingLevel);
-                    }
+            while (groupStart < paragraphCount) {
+                // Take whole paragraphs until the group reaches its share of the text.
+                int groupEnd = groupStart + 1;
+                int charLimit = paragraphs.get(groupStart).charStart + groupLength;
+                while (groupEnd < paragraphCount && paragraphs.get(groupEnd - 1).charEnd < charLimit) {
+                    groupEnd++;
                 }
-                paragraphs.add(paragraph);
 
-                breaks[paragraph.getCharStart()] |= backwardType;
-                breaks[paragraph.getCharEnd() - 1] |= forwardType;
+                final int firstParagraph = groupStart;
+                final int lastParagraph = groupEnd;
+                final List<IntrinsicRun> shapedRuns = new ArrayList<>();
+                groupRuns.add(shapedRuns);
+
+                tasks.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        ShapingEngine shapingEngine = new ShapingEngine();
+                        ShapingRunLocator locator = new ShapingRunLocator(spanned, defaultSpans);
+
+                        try {
+                            for (int i = firstParagraph; i < lastParagraph; i++) {
+                                shapeParagraph(text, spanned, paragraphs.get(i),
+                                               scriptClassifier, 0, locator, shapingEngine, shapedRuns);
+                            }
+                        } finally {
+                            shapingEngine.dispose();
+                        }
+                    }
+                });
 
-                paragraphStart = paragraph.getCharEnd();
+                groupStart = groupEnd;
             }
-        } finally {
-            if (shapingEngine != null) {
-                shapingEngine.dispose();
+
+            Parallel.invokeAll(tasks.toArray(new Runnable[tasks.size()]));
+
+            for (List<IntrinsicRun> shapedRuns : groupRuns) {
+                runs.addAll(shapedRuns);
             }
+        } finally {
             if (bidiAlgorithm != null) {
                 bidiAlgorithm.dispose();
             }
         }
     }
 
+    private static boolean isParagraphSeparator(char ch) {
+        switch (ch) {
+        case '\n':
+        case '\r':
+        case '\u001C':
+        case '\u001D':
+        case '\u001E':
+        case '\u0085':
+        case '\u2029':
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the index of first paragraph which needs to be resolved again after an edit starting
+     * at given index. The paragraph before the edit is included if the edit may extend it, i.e. if
+     * it is not terminated by a separator, or is terminated by a carriage return which can join a
+     * line feed at the start of the edit. The returned index equals the number of paragraphs if
+     * none of them is affected.
+     */
+    public static int findEditedParagraph(String text, ParagraphCollection paragraphs, int editStart) {
+        int paragraphIndex = paragraphs.binarySearch(editStart);
+        if (paragraphIndex < 0) {
+            paragraphIndex = -(paragraphIndex + 1);
+        }
+
+        if (paragraphIndex > 0 && paragraphs.get(paragraphIndex - 1).charEnd == editStart) {
+            char lastChar = text.charAt(editStart - 1);
+            if (lastChar == '\r' || !isParagraphSeparator(lastChar)) {
+                paragraphIndex--;
+            }
+        }
+
+        return paragraphIndex;
+    }
+
+    /**
+     * Removes the paragraphs and runs starting from given paragraph index and returns the index of
+     * first char that is no longer resolved.
+     */
+    public static int truncateRuns(ParagraphCollection paragraphs, RunCollection runs, int paragraphIndex) {
+        int paragraphCount = paragraphs.size();
+        if (paragraphIndex == paragraphCount) {
+            return (paragraphCount > 0 ? paragraphs.get(paragraphCount - 1).charEnd : 0);
+        }
+
+        int charStart = paragraphs.get(paragraphIndex).charStart;
+        int runIndex = runs.binarySearch(charStart);
+
+        paragraphs.subList(paragraphIndex, paragraphCount).clear();
+        runs.subList(runIndex, runs.size()).clear();
+
+        return charStart;
+    }
+
+    /**
+     * Updates the breaks, paragraphs and runs of a text whose range <code>[editStart..oldEnd)</code>
+     * has been replaced, so that it now ends at <code>newEnd</code>. The paragraphs are resolved
+     * and shaped again from the first one touched by the edit until the first one ending after it.
+     * The bidi levels and scripts are resolved on this window of the text alone, whereas the
+     * following paragraphs, runs and breaks are kept in place and only moved by the difference in
+     * length.
+     * <p>
+     * The leading common chars of a paragraph take the script of preceding text, so the scripts
+     * are classified from a paragraph before the window, and the window is widened until the
+     * scripts at its boundaries agree with the paragraphs around it.
+     *
+     * @return The breaks of the new text.
+     */
+    public static byte[] refillRuns(String text, Spanned spanned, List<Object> defaultSpans,
+                                    byte[] oldBreaks, ParagraphCollection paragraphs, RunCollection runs,
+                                    int editStart, int oldEnd, int newEnd) {
+        int textLength = text.length();
+        int shift = newEnd - oldEnd;
+        int paragraphCount = paragraphs.size();
+
+        // Find the first edited paragraph, and the first one ending after the edit.
+        int firstIndex = findEditedParagraph(text, paragraphs, editStart);
+        int lastIndex = firstIndex;
+        while (lastIndex < paragraphCount && paragraphs.get(lastIndex).charEnd <= oldEnd) {
+            lastIndex++;
+        }
+
+        int contextIndex = Math.max(firstIndex - 1, 0);
+        ScriptClassifier scriptClassifier;
+        int contextStart;
+        int resolveStart;
+        int windowEnd;
+
+        while (true) {
+            contextStart = paragraphs.get(contextIndex).charStart;
+            resolveStart = (firstIndex < paragraphCount
+                            ? paragraphs.get(firstIndex).charStart
+                            : paragraphs.get(paragraphCount - 1).charEnd);
+            windowEnd = (lastIndex < paragraphCount
+                         ? paragraphs.get(lastIndex).charEnd + shift
+                         : textLength);
+
+            scriptClassifier = new ScriptClassifier(text.substring(contextStart, windowEnd));
+            IntList charScripts = scriptClassifier.getCharScripts();
+
+            if (firstIndex > 0) {
+                int entryScript = charScripts.get(resolveStart - contextStart - 1);
+                if (entryScript != paragraphs.get(firstIndex - 1).lastScript) {
+                    if (contextIndex > 0) {
+                        // The context has no strong char, so look further back.
+                        contextIndex--;
+                    } else {
+                        // The edit changes the scripts of preceding common chars.
+                        firstIndex = 0;
+                    }
+                    continue;
+                }
+            }
+            if (lastIndex < paragraphCount - 1) {
+                int exitScript = charScripts.get(windowEnd - contextStart - 1);
+                if (exitScript != paragraphs.get(lastIndex).lastScript) {
+                    // The edit changes the scripts of following common chars.
+                    lastIndex++;
+                    continue;
+                }
+            }
+
+            break;
+        }
+
+        byte[] breaks = new byte[textLength];
+        System.arraycopy(oldBreaks, 0, breaks, 0, resolveStart);
+
+        List<IntrinsicParagraph> newParagraphs = new ArrayList<>();
+        List<IntrinsicRun> newRuns = new ArrayList<>();
+
+        if (resolveStart != windowEnd) {
+            BidiAlgorithm bidiAlgorithm = null;
+            ShapingEngine shapingEngine = null;
+
+            try {
+                bidiAlgorithm = new BidiAlgorithm(text.substring(resolveStart, windowEnd));
+                shapingEngine = new ShapingEngine();
+
+                ShapingRunLocator locator = new ShapingRunLocator(spanned, defaultSpans);
+                int paragraphStart = resolveStart;
+
+                while (paragraphStart != windowEnd) {
+                    IntrinsicParagraph paragraph = resolveParagraph(bidiAlgorithm, resolveStart,
+                                                                    scriptClassifier, contextStart,
+                                                                    paragraphStart, windowEnd, breaks);
+                    int paragraphEnd = paragraph.charEnd;
+
+                    BreakResolver.fillBreaks(text, paragraphStart, paragraphEnd, breaks);
+                    shapeParagraph(text, spanned, paragraph, scriptClassifier, contextStart,
+                                   locator, shapingEngine, newRuns);
+                    newParagraphs.add(paragraph);
+
+                    paragraphStart = paragraphEnd;
+                }
+            } finally {
+                if (shapingEngine != null) {
+                    shapingEngine.dispose();
+                }
+                if (bidiAlgorithm != null) {
+                    bidiAlgorithm.dispose();
+                }
+            }
+        }
+
+        int tailIndex = Math.min(lastIndex + 1, paragraphCount);
+        int runCount = runs.size();
+        int firstRun = (firstIndex < paragraphCount ? runs.binarySearch(resolveStart) : runCount);
+        int tailRun = runCount;
+
+        // Move the untouched paragraphs along with their runs and breaks.
+        if (tailIndex < paragraphCount) {
+            int tailStart = paragraphs.get(tailIndex).charStart;
+            tailRun = runs.binarySearch(tailStart);
+
+            for (int i = tailIndex; i < paragraphCount; i++) {
+                paragraphs.get(i).shift(shift);
+            }
+            for (int i = tailRun; i < runCount; i++) {
+                runs.get(i).shift(shift);
+            }
+            System.arraycopy(oldBreaks, tailStart, breaks, tailStart + shift, oldBreaks.length - tailStart);
+        }
+
+        paragraphs.subList(firstIndex, tailIndex).clear();
+        paragraphs.addAll(firstIndex, newParagraphs);
+        runs.subList(firstRun, tailRun).clear();
+        runs.addAll(firstRun, newRuns);
+
+        return breaks;
+    }
+
+    /**
+     * Resolves the paragraph starting at given index of the text. The indices of bidi algorithm
+     * and script classifier are relative to the parts of text they were created on, which begin at
+     * <code>bidiOffset</code> and <code>scriptOffset</code> respectively.
+     */
+    static IntrinsicParagraph resolveParagraph(BidiAlgorithm bidiAlgorithm, int bidiOffset,
+                                               ScriptClassifier scriptClassifier, int scriptOffset,
+                                               int paragraphStart, int suggestedEnd, byte[] breaks) {
+        byte forwardType = BreakResolver.typeMode(BreakResolver.PARAGRAPH, true);
+        byte backwardType = BreakResolver.typeMode(BreakResolver.PARAGRAPH, false);
+
+        // The paragraphs outlive the resolver, so their native memory is released when the
+        // collection becomes unreachable.
+        BidiParagraph bidiParagraph = BidiParagraph.finalizable(
+                bidiAlgorithm.createParagraph(paragraphStart - bidiOffset, suggestedEnd - bidiOffset,
+                                              BaseDirection.DEFAULT_LEFT_TO_RIGHT));
+        int paragraphEnd = bidiParagraph.getCharEnd() + bidiOffset;
+        int lastScript = scriptClassifier.getCharScripts().get(paragraphEnd - scriptOffset - 1);
+
+        IntrinsicParagraph paragraph = new IntrinsicParagraph(bidiParagraph, bidiOffset, lastScript);
+
+        breaks[paragraph.charStart] |= backwardType;
+        breaks[paragraph.charEnd - 1] |= forwardType;
+
+        return paragraph;
+    }
+
+    static void shapeParagraph(String text, Spanned spanned, IntrinsicParagraph paragraph,
+                               ScriptClassifier scriptClassifier, int scriptOffset,
+                               ShapingRunLocator locator, ShapingEngine shapingEngine,
+                               List<IntrinsicRun> runs) {
+        int charOffset = paragraph.charOffset - scriptOffset;
+
+        for (BidiRun bidiRun : paragraph.bidiParagraph.getLogicalRuns()) {
+            int runStart = bidiRun.charStart + charOffset;
+            int runEnd = bidiRun.charEnd + charOffset;
+
+            for (ScriptRun scriptRun : scriptClassifier.getScriptRuns(runStart, runEnd)) {
+                int scriptTag = Script.getOpenTypeTag(scriptRun.script);
+                WritingDirection writingDirection = ShapingEngine.getScriptDirection(scriptTag);
+
+                boolean isOddLevel = ((bidiRun.embeddingLevel & 1) == 1);
+                boolean isBackward = (isOddLevel && writingDirection == WritingDirection.LEFT_TO_RIGHT)
+                                   | (!isOddLevel && writingDirection == WritingDirection.RIGHT_TO_LEFT);
+
+                // FIXME: Add support for backward mode and disable overriding.
+                if (isBackward) {
+                    scriptTag = SfntTag.make(isOddLevel ? "arab" : "latn");
+                    writingDirection = (isOddLevel ? WritingDirection.RIGHT_TO_LEFT : WritingDirection.LEFT_TO_RIGHT);
+                }
+
+                locator.reset(scriptRun.charStart + scriptOffset, scriptRun.charEnd + scriptOffset);
+
+                shapingEngine.setScriptTag(scriptTag);
+                shapingEngine.setWritingDirection(writingDirection);
+
+                resolveTypefaces(text, spanned, runs, locator, shapingEngine, bidiRun.embeddingLevel);
+            }
+        }
+    }
+
     private static void resolveTypefaces(String text, Spanned spanned, List<IntrinsicRun> runs,
                                          ShapingRunLocator locator, ShapingEngine engine, byte bidiLevel) {
         Paint.FontMetricsInt metrics = null;
@@ -125,42 +438,32 @@ public class ShapeResolver {
                 engine.setTypeface(typeface);
                 engine.setTypeSize(typeSize);
 
-                ShapingResult shapingResult = null;
-
-                try {
-                    shapingResult = engine.shapeText(text, runStart, runEnd);
-
-                    WritingDirection writingDirection = engine.getWritingDirection();
-                    boolean isBackward = shapingResult.isBackward();
-                    int[] glyphIds = shapingResult.getGlyphIds().toArray();
-                    float[] offsets = shapingResult.getGlyphOffsets().toArray();
-                    float[] advances = shapingResult.getGlyphAdvances().toArray();
-                    int[] clusterMap = shapingResult.getClusterMap().toArray();
-
-                    float scaleX = locator.getScaleX();
-                    if (Float.compare(scaleX, 1.0f) != 0) {
-                        for (int i = 0; i < glyphIds.length; i++) {
-                            offsets[i * 2] *= scaleX;
-                            advances[i] *= scaleX;
-                        }
-                    }
-
-                    float baselineShift = locator.getBaselineShift();
-                    if (Float.compare(baselineShift, 0.0f) != 0) {
-                        for (int i = 0; i < glyphIds.length; i++) {
-                            offsets[(i * 2) + 1] += baselineShift;
-                        }
+                WritingDirection writingDirection = engine.getWritingDirection();
+                ShapingCache.Entry shapedRun = shapeRun(text, runStart, runEnd, engine,
+                                                        typeface, typeSize, writingDirection);
+                int[] glyphIds = shapedRun.glyphIds;
+                float[] offsets = shapedRun.glyphOffsets;
+                float[] advances = shapedRun.glyphAdvances;
+
+                float scaleX = locator.getScaleX();
+                if (Float.compare(scaleX, 1.0f) != 0) {
+                    for (int i = 0; i < glyphIds.length; i++) {
+                        offsets[i * 2] *= scaleX;
+                        advances[i] *= scaleX;
                     }
+                }
 
-                    intrinsicRun = new IntrinsicRun(runStart, runEnd, isBackward, bidiLevel,
-                                                    writingDirection, typeface, typeSize,
-                                                    ascent, descent, leading,
-                                                    glyphIds, offsets, advances, clusterMap);
-                } finally {
-                    if (shapingResult != null) {
-                        shapingResult.dispose();
+                float baselineShift = locator.getBaselineShift();
+                if (Float.compare(baselineShift, 0.0f) != 0) {
+                    for (int i = 0; i < glyphIds.length; i++) {
+                        offsets[(i * 2) + 1] += baselineShift;
                     }
                 }
+
+                intrinsicRun = new IntrinsicRun(runStart, runEnd, shapedRun.isBackward, bidiLevel,
+                                                writingDirection, typeface, typeSize,
+                                                ascent, descent, leading,
+                                                glyphIds, offsets, advances, shapedRun.clusterMap);
             } else {
                 if (metrics == null) {
                     metrics = new Paint.FontMetricsInt();
@@ -188,4 +491,107 @@ public class ShapeResolver {
             runs.add(intrinsicRun);
         }
     }
+
+    private static ShapingCache.Entry shapeText(String text, int start, int end, ShapingEngine engine) {
+        ShapingResult shapingResult = null;
+
+        try {
+            shapingResult = engine.shapeText(text, start, end);
+
+            return new ShapingCache.Entry(shapingResult.isBackward(),
+                                          shapingResult.getGlyphIds().toArray(),
+                                          shapingResult.getGlyphOffsets().toArray(),
+                                          shapingResult.getGlyphAdvances().toArray(),
+                                          shapingResult.getClusterMap().toArray());
+        } finally {
+            if (shapingResult != null) {
+                shapingResult.dispose();
+            }
+        }
+    }
+
+    private static boolean isCombiningMark(int codePoint) {
+        switch (Character.getType(codePoint)) {
+        case Character.NON_SPACING_MARK:
+        case Character.ENCLOSING_MARK:
+        case Character.COMBINING_SPACING_MARK:
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the index after the word starting at given index along with its trailing spaces.
+     * The joining of scripts does not act across spaces, nor do the lookups of a font whose runs
+     * are split, so the words can be shaped on their own. A space followed by a combining mark
+     * forms a cluster with it, so the segment goes on up to the next space.
+     */
+    private static int findSegmentEnd(String text, int start, int end) {
+        int index = start;
+
+        do {
+            while (index < end && text.charAt(index) != ' ') {
+                index++;
+            }
+            while (index < end && text.charAt(index) == ' ') {
+                index++;
+            }
+        } while (index < end && isCombiningMark(text.codePointAt(index)));
+
+        return index;
+    }
+
+    /**
+     * Shapes the given run segment by segment, taking the short segments from the shaping cache.
+     * The run is kept as a single segment if its typeface has lookups involving the space glyph.
+     * The arrays of returned result are owned by the caller.
+     */
+    private static ShapingCache.Entry shapeRun(String text, int runStart, int runEnd,
+                                               ShapingEngine engine, Typeface typeface,
+                                               float typeSize, WritingDirection writingDirection) {
+        ShapingCache cache = ShapingCache.getInstance();
+        int scriptTag = engine.getScriptTag();
+        int languageTag = engine.getLanguageTag();
+        boolean splittable = cache.canSplitAtSpaces(typeface);
+
+        ShapingCache.Entry[] segments = new ShapingCache.Entry[4];
+        int segmentCount = 0;
+        boolean shared = false;
+        int segmentStart = runStart;
+
+        while (segmentStart < runEnd) {
+            int segmentEnd = (splittable ? findSegmentEnd(text, segmentStart, runEnd) : runEnd);
+            ShapingCache.Entry segment;
+
+            if (segmentEnd - segmentStart <= ShapingCache.MAX_SEGMENT_LENGTH) {
+                segment = cache.get(text, segmentStart, segmentEnd, typeface, typeSize,
+                                    scriptTag, languageTag, writingDirection);
+                if (segment == null) {
+                    segment = shapeText(text, segmentStart, segmentEnd, engine);
+                    cache.put(text, segmentStart, segmentEnd, typeface, typeSize,
+                              scriptTag, languageTag, writingDirection, segment);
+                }
+                shared = true;
+            } else {
+                segment = shapeText(text, segmentStart, segmentEnd, engine);
+            }
+
+            if (segmentCount == segments.length) {
+                segments = Arrays.copyOf(segments, segmentCount * 2);
+            }
+            segments[segmentCount++] = segment;
+            segmentStart = segmentEnd;
+        }
+
+        if (segmentCount == 0) {
+            return shapeText(text, runStart, runEnd, engine);
+        }
+        if (segmentCount == 1 && !shared) {
+            return segments[0];
+        }
+
+        // Joining copies the arrays, so the cached segments stay untouched.
+        return ShapingCache.join(segments, segmentCount);
+    }
 }
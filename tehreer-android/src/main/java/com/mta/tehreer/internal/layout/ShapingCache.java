@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.layout;
+
+import com.mta.tehreer.graphics.Typeface;
+import com.mta.tehreer.internal.sfnt.LayoutLookups;
+import com.mta.tehreer.internal.util.LruCache;
+import com.mta.tehreer.sfnt.WritingDirection;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the shaping results of short text segments, usually words with their trailing spaces, so
+ * that the same words are not shaped again by every typesetter. The results are stored before
+ * applying the horizontal scale and baseline shift of spans, so the segments are shared across
+ * them. The cache is bounded by the estimated memory of its entries and is safe to use from
+ * multiple threads.
+ * <p>
+ * Each segment is shaped without the text around it. This matches the shaping of whole run only if
+ * no lookup of the font, such as a kerning pair or a contextual substitution, involves the space
+ * glyph. The runs of other fonts are not split at spaces, so only the short runs as a whole are
+ * cached for them.
+ */
+public class ShapingCache extends LruCache {
+
+    /**
+     * The maximum number of chars of a segment which is cached.
+     */
+    public static final int MAX_SEGMENT_LENGTH = 32;
+
+    private static final int DEFAULT_CAPACITY = 1024 * 1024;
+
+    /**
+     * The shaping result of a text segment, kept in compact arrays. The cluster map is relative to
+     * the glyphs of the entry. The arrays are shared and must not be modified.
+     */
+    public static final class Entry {
+
+        //
+        // Key:
+        //  - 4 pointers for text, typeface, direction and string contents
+        //  - 4 integers for type size, script tag, language tag and hash
+        //
+        // Entry:
+        //  - 4 pointers for arrays
+        //  - 4 integers for array lengths
+        //  - 1 integer for direction flag
+        //
+        // LruCache.Node:
+        //  - 5 pointers for segment, key, value, previous and next
+        //
+        // Total:
+        //  - 13 pointers
+        //  - 9 integers
+        //
+        // Size: (13 * 4) + (9 * 4) = 88
+        //
+        private static final int ESTIMATED_OVERHEAD = 88;
+
+        public final boolean isBackward;
+        public final int[] glyphIds;
+        public final float[] glyphOffsets;
+        public final float[] glyphAdvances;
+        public final int[] clusterMap;
+
+        public Entry(boolean isBackward, int[] glyphIds, float[] offsets, float[] advances,
+                     int[] clusterMap) {
+            this.isBackward = isBackward;
+            this.glyphIds = glyphIds;
+            this.glyphOffsets = offsets;
+            this.glyphAdvances = advances;
+            this.clusterMap = clusterMap;
+        }
+
+        int byteCount() {
+            int glyphCount = glyphIds.length;
+            int charCount = clusterMap.length;
+
+            // Glyph ids, two offsets and advance per glyph; cluster map and string contents per char.
+            return (glyphCount * 16) + (charCount * 6) + ESTIMATED_OVERHEAD;
+        }
+    }
+
+    private static final class Key {
+
+        final String text;
+        final Typeface typeface;
+        final float typeSize;
+        final int scriptTag;
+        final int languageTag;
+        final WritingDirection writingDirection;
+        final int hash;
+
+        Key(String text, Typeface typeface, float typeSize,
+            int scriptTag, int languageTag, WritingDirection writingDirection) {
+            this.text = text;
+            this.typeface = typeface;
+            this.typeSize = typeSize;
+            this.scriptTag = scriptTag;
+            this.languageTag = languageTag;
+            this.writingDirection = writingDirection;
+
+            int result = text.hashCode();
+            result = 31 * result + System.identityHashCode(typeface);
+            result = 31 * result + Float.floatToIntBits(typeSize);
+            result = 31 * result + scriptTag;
+            result = 31 * result + languageTag;
+            result = 31 * result + writingDirection.hashCode();
+            this.hash = result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+
+            return hash == other.hash
+                && typeface == other.typeface
+                && Float.compare(typeSize, other.typeSize) == 0
+                && scriptTag == other.scriptTag
+                && languageTag == other.languageTag
+                && writingDirection == other.writingDirection
+                && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class EntrySegment extends LruCache.Segment<Key, Entry> {
+
+        public EntrySegment(LruCache cache) {
+            super(cache);
+        }
+
+        @Override
+        protected int sizeOf(Key key, Entry value) {
+            return value.byteCount();
+        }
+    }
+
+    private static class Holder {
+
+        private static final ShapingCache INSTANCE = new ShapingCache(DEFAULT_CAPACITY);
+    }
+
+    public static ShapingCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private final EntrySegment entries = new EntrySegment(this);
+    private final Map<Typeface, Boolean> spaceSplits =
+            Collections.synchronizedMap(new WeakHashMap<Typeface, Boolean>());
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    ShapingCache(int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * Returns true if the runs of given typeface can be shaped in segments ending after spaces,
+     * i.e. no lookup of the typeface involves the space glyph. The layout tables are inspected
+     * only once for each typeface.
+     */
+    public boolean canSplitAtSpaces(Typeface typeface) {
+        Boolean splittable = spaceSplits.get(typeface);
+        if (splittable == null) {
+            splittable = LayoutLookups.isContextFree(typeface, typeface.getGlyphId(' '));
+            spaceSplits.put(typeface, splittable);
+        }
+
+        return splittable;
+    }
+
+    /**
+     * Returns the cached result of given text segment, or null if it has not been cached.
+     */
+    public Entry get(String text, int start, int end, Typeface typeface, float typeSize,
+                     int scriptTag, int languageTag, WritingDirection writingDirection) {
+        Key key = new Key(text.substring(start, end), typeface, typeSize,
+                          scriptTag, languageTag, writingDirection);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+
+        return entry;
+    }
+
+    public void put(String text, int start, int end, Typeface typeface, float typeSize,
+                    int scriptTag, int languageTag, WritingDirection writingDirection, Entry entry) {
+        Key key = new Key(text.substring(start, end), typeface, typeSize,
+                          scriptTag, languageTag, writingDirection);
+        entries.putIfAbsent(key, entry);
+    }
+
+    /**
+     * Returns the number of lookups which found a cached segment since this cache was created or
+     * its statistics were reset.
+     */
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of lookups which did not find a cached segment since this cache was
+     * created or its statistics were reset.
+     */
+    public long missCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the ratio of lookups which found a cached segment, or zero if there has not been any
+     * lookup.
+     */
+    public float hitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+
+        return (total > 0 ? (float) hits / total : 0.0f);
+    }
+
+    @Override
+    public void resetStatistics() {
+        super.resetStatistics();
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    /**
+     * Joins the results of consecutive segments of a run, given in logical order, into the result
+     * of the whole run. The glyphs of backward segments are placed in reverse order of segments.
+     */
+    public static Entry join(Entry[] segments, int count) {
+        boolean isBackward = segments[0].isBackward;
+        int glyphCount = 0;
+        int charCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            glyphCount += segments[i].glyphIds.length;
+            charCount += segments[i].clusterMap.length;
+        }
+
+        int[] glyphIds = new int[glyphCount];
+        float[] offsets = new float[glyphCount * 2];
+        float[] advances = new float[glyphCount];
+        int[] clusterMap = new int[charCount];
+
+        int glyphIndex = 0;
+        int charIndex = 0;
+
+        for (int i = 0; i < count; i++) {
+            Entry segment = segments[isBackward ? count - i - 1 : i];
+            int segmentGlyphs = segment.glyphIds.length;
+
+            System.arraycopy(segment.glyphIds, 0, glyphIds, glyphIndex, segmentGlyphs);
+            System.arraycopy(segment.glyphOffsets, 0, offsets, glyphIndex * 2, segmentGlyphs * 2);
+            System.arraycopy(segment.glyphAdvances, 0, advances, glyphIndex, segmentGlyphs);
+
+            glyphIndex += segmentGlyphs;
+        }
+
+        // Offset the cluster maps by the glyphs placed before each segment.
+        int glyphOffset = (isBackward ? glyphCount : 0);
+
+        for (int i = 0; i < count; i++) {
+            Entry segment = segments[i];
+            int[] segmentMap = segment.clusterMap;
+
+            if (isBackward) {
+                glyphOffset -= segment.glyphIds.length;
+            }
+
+            for (int j = 0; j < segmentMap.length; j++) {
+                clusterMap[charIndex++] = segmentMap[j] + glyphOffset;
+            }
+
+            if (!isBackward) {
+                glyphOffset += segment.glyphIds.length;
+            }
+        }
+
+        return new Entry(isBackward, glyphIds, offsets, advances, clusterMap);
+    }
+}
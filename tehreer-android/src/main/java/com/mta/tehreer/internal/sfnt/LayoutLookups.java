@@ -0,0 +1,500 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.sfnt;
+
+import com.mta.tehreer.graphics.Typeface;
+import com.mta.tehreer.sfnt.SfntTag;
+
+/**
+ * Inspects the layout tables of a font to find out whether a glyph is always shaped on its own,
+ * i.e. no lookup matches a sequence of glyphs containing it or skips over it. The text on either
+ * side of such a glyph can then be shaped separately with the same result.
+ * <p>
+ * The lookups acting on a single glyph are not considered as they do not depend on neighbouring
+ * glyphs. Any table which cannot be inspected, such as an AAT table or a malformed one, is
+ * assumed to involve the glyph.
+ */
+public final class LayoutLookups {
+
+    private static final int TAG_GDEF = SfntTag.make("GDEF");
+    private static final int TAG_GSUB = SfntTag.make("GSUB");
+    private static final int TAG_GPOS = SfntTag.make("GPOS");
+    private static final int TAG_KERN = SfntTag.make("kern");
+    private static final int TAG_KERX = SfntTag.make("kerx");
+    private static final int TAG_MORT = SfntTag.make("mort");
+    private static final int TAG_MORX = SfntTag.make("morx");
+
+    private static final int CLASS_BASE = 1;
+    private static final int CLASS_LIGATURE = 2;
+    private static final int CLASS_MARK = 3;
+
+    private static final int IGNORE_BASE_GLYPHS = 0x0002;
+    private static final int IGNORE_LIGATURES = 0x0004;
+
+    private LayoutLookups() {
+    }
+
+    private static SfntTable loadTable(Typeface typeface, int tableTag) {
+        byte[] data = typeface.getTableData(tableTag);
+        return (data != null ? new DataTable(data) : null);
+    }
+
+    /**
+     * Returns true if the given glyph of the typeface is shaped on its own by every lookup.
+     */
+    public static boolean isContextFree(Typeface typeface, int glyphId) {
+        if (typeface.getTableData(TAG_MORX) != null || typeface.getTableData(TAG_MORT) != null
+                || typeface.getTableData(TAG_KERX) != null) {
+            return false;
+        }
+
+        return isContextFree(loadTable(typeface, TAG_GDEF), loadTable(typeface, TAG_GSUB),
+                             loadTable(typeface, TAG_GPOS), loadTable(typeface, TAG_KERN), glyphId);
+    }
+
+    static boolean isContextFree(SfntTable gdef, SfntTable gsub, SfntTable gpos, SfntTable kern,
+                                 int glyphId) {
+        try {
+            int glyphClass = (gdef != null ? classOf(gdef, gdef.readUInt16(4), glyphId) : 0);
+            if (glyphClass == CLASS_MARK) {
+                // Most lookups skip the marks, so they act across the glyph.
+                return false;
+            }
+
+            return (gsub == null || !scanLookups(gsub, false, glyphId, glyphClass))
+                && (gpos == null || !scanLookups(gpos, true, glyphId, glyphClass))
+                && (kern == null || !scanKern(kern, glyphId));
+        } catch (RuntimeException e) {
+            // The table is malformed or uses an unknown format.
+            return false;
+        }
+    }
+
+    private static boolean coverageContains(SfntTable table, int offset, int glyphId) {
+        int format = table.readUInt16(offset);
+        int count = table.readUInt16(offset + 2);
+
+        switch (format) {
+        case 1:
+            for (int i = 0; i < count; i++) {
+                if (table.readUInt16(offset + 4 + (i * 2)) == glyphId) {
+                    return true;
+                }
+            }
+            return false;
+
+        case 2:
+            for (int i = 0; i < count; i++) {
+                int record = offset + 4 + (i * 6);
+                if (glyphId >= table.readUInt16(record) && glyphId <= table.readUInt16(record + 2)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    private static boolean anyCoverageContains(SfntTable table, int subtable, int array, int count,
+                                               int glyphId) {
+        for (int i = 0; i < count; i++) {
+            if (coverageContains(table, subtable + table.readUInt16(array + (i * 2)), glyphId)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static int classOf(SfntTable table, int offset, int glyphId) {
+        if (offset == 0) {
+            return 0;
+        }
+
+        int format = table.readUInt16(offset);
+
+        switch (format) {
+        case 1: {
+            int startGlyph = table.readUInt16(offset + 2);
+            int glyphCount = table.readUInt16(offset + 4);
+            int index = glyphId - startGlyph;
+            if (index >= 0 && index < glyphCount) {
+                return table.readUInt16(offset + 6 + (index * 2));
+            }
+            return 0;
+        }
+
+        case 2: {
+            int rangeCount = table.readUInt16(offset + 2);
+            for (int i = 0; i < rangeCount; i++) {
+                int record = offset + 4 + (i * 6);
+                if (glyphId >= table.readUInt16(record) && glyphId <= table.readUInt16(record + 2)) {
+                    return table.readUInt16(record + 4);
+                }
+            }
+            return 0;
+        }
+        }
+
+        throw new IllegalArgumentException("Unsupported class format: " + format);
+    }
+
+    private static boolean arrayContains(SfntTable table, int array, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (table.readUInt16(array + (i * 2)) == value) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean scanLookups(SfntTable table, boolean positioning,
+                                       int glyphId, int glyphClass) {
+        int lookupList = table.readUInt16(8);
+        int lookupCount = table.readUInt16(lookupList);
+
+        for (int i = 0; i < lookupCount; i++) {
+            int lookup = lookupList + table.readUInt16(lookupList + 2 + (i * 2));
+            int lookupType = table.readUInt16(lookup);
+            int lookupFlag = table.readUInt16(lookup + 2);
+            int subtableCount = table.readUInt16(lookup + 4);
+
+            boolean skipsGlyph = (glyphClass == CLASS_BASE && (lookupFlag & IGNORE_BASE_GLYPHS) != 0)
+                              || (glyphClass == CLASS_LIGATURE && (lookupFlag & IGNORE_LIGATURES) != 0);
+
+            for (int j = 0; j < subtableCount; j++) {
+                int subtable = lookup + table.readUInt16(lookup + 6 + (j * 2));
+                int subtableType = lookupType;
+
+                if ((positioning && lookupType == 9) || (!positioning && lookupType == 7)) {
+                    subtableType = table.readUInt16(subtable + 2);
+                    subtable += (int) table.readUInt32(subtable + 4);
+                }
+
+                boolean involved = (positioning
+                                    ? scanPositioning(table, subtableType, subtable, glyphId)
+                                    : scanSubstitution(table, subtableType, subtable, glyphId));
+                if (involved) {
+                    return true;
+                }
+                if (skipsGlyph && isSequential(positioning, subtableType)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isSequential(boolean positioning, int lookupType) {
+        if (positioning) {
+            return lookupType != 1;
+        }
+
+        return lookupType >= 4;
+    }
+
+    private static boolean scanSubstitution(SfntTable table, int lookupType, int subtable, int glyphId) {
+        switch (lookupType) {
+        case 1:
+        case 2:
+        case 3:
+            // A single glyph is replaced regardless of its neighbours.
+            return false;
+
+        case 4:
+            return scanLigatures(table, subtable, glyphId);
+
+        case 5:
+            return scanContext(table, subtable, glyphId);
+
+        case 6:
+            return scanChainContext(table, subtable, glyphId);
+
+        case 8: {
+            int backtrackCount = table.readUInt16(subtable + 4);
+            int lookaheadArray = subtable + 6 + (backtrackCount * 2);
+            int lookaheadCount = table.readUInt16(lookaheadArray);
+
+            return coverageContains(table, subtable + table.readUInt16(subtable + 2), glyphId)
+                || anyCoverageContains(table, subtable, subtable + 6, backtrackCount, glyphId)
+                || anyCoverageContains(table, subtable, lookaheadArray + 2, lookaheadCount, glyphId);
+        }
+        }
+
+        return true;
+    }
+
+    private static boolean scanPositioning(SfntTable table, int lookupType, int subtable, int glyphId) {
+        switch (lookupType) {
+        case 1:
+            // A single glyph is adjusted regardless of its neighbours.
+            return false;
+
+        case 2:
+            return scanPairs(table, subtable, glyphId);
+
+        case 3:
+            return coverageContains(table, subtable + table.readUInt16(subtable + 2), glyphId);
+
+        case 4:
+        case 5:
+        case 6:
+            return coverageContains(table, subtable + table.readUInt16(subtable + 2), glyphId)
+                || coverageContains(table, subtable + table.readUInt16(subtable + 4), glyphId);
+
+        case 7:
+            return scanContext(table, subtable, glyphId);
+
+        case 8:
+            return scanChainContext(table, subtable, glyphId);
+        }
+
+        return true;
+    }
+
+    private static boolean scanLigatures(SfntTable table, int subtable, int glyphId) {
+        if (coverageContains(table, subtable + table.readUInt16(subtable + 2), glyphId)) {
+            return true;
+        }
+
+        int setCount = table.readUInt16(subtable + 4);
+
+        for (int i = 0; i < setCount; i++) {
+            int ligatureSet = subtable + table.readUInt16(subtable + 6 + (i * 2));
+            int ligatureCount = table.readUInt16(ligatureSet);
+
+            for (int j = 0; j < ligatureCount; j++) {
+                int ligature = ligatureSet + table.readUInt16(ligatureSet + 2 + (j * 2));
+                int componentCount = table.readUInt16(ligature + 2);
+
+                if (arrayContains(table, ligature + 4, componentCount - 1, glyphId)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean scanContext(SfntTable table, int subtable, int glyphId) {
+        int format = table.readUInt16(subtable);
+
+        switch (format) {
+        case 1:
+        case 2: {
+            if (coverageContains(table, subtable + table.readUInt16(subtable + 2), glyphId)) {
+                return true;
+            }
+
+            // The rules of first format match glyphs while those of second format match classes.
+            int value = glyphId;
+            int setArray = subtable + 6;
+            if (format == 2) {
+                value = classOf(table, offsetOf(table, subtable, 4), glyphId);
+                setArray = subtable + 8;
+            }
+
+            int setCount = table.readUInt16(setArray - 2);
+
+            for (int i = 0; i < setCount; i++) {
+                int setOffset = table.readUInt16(setArray + (i * 2));
+                if (setOffset == 0) {
+                    continue;
+                }
+
+                int ruleSet = subtable + setOffset;
+                int ruleCount = table.readUInt16(ruleSet);
+
+                for (int j = 0; j < ruleCount; j++) {
+                    int rule = ruleSet + table.readUInt16(ruleSet + 2 + (j * 2));
+                    int glyphCount = table.readUInt16(rule);
+
+                    if (arrayContains(table, rule + 4, glyphCount - 1, value)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        case 3: {
+            int glyphCount = table.readUInt16(subtable + 2);
+            return anyCoverageContains(table, subtable, subtable + 6, glyphCount, glyphId);
+        }
+        }
+
+        return true;
+    }
+
+    private static boolean scanChainContext(SfntTable table, int subtable, int glyphId) {
+        int format = table.readUInt16(subtable);
+
+        switch (format) {
+        case 1:
+        case 2: {
+            if (coverageContains(table, subtable + table.readUInt16(subtable + 2), glyphId)) {
+                return true;
+            }
+
+            int backtrackValue = glyphId;
+            int inputValue = glyphId;
+            int lookaheadValue = glyphId;
+            int setArray = subtable + 6;
+            if (format == 2) {
+                backtrackValue = classOf(table, offsetOf(table, subtable, 4), glyphId);
+                inputValue = classOf(table, offsetOf(table, subtable, 6), glyphId);
+                lookaheadValue = classOf(table, offsetOf(table, subtable, 8), glyphId);
+                setArray = subtable + 12;
+            }
+
+            int setCount = table.readUInt16(setArray - 2);
+
+            for (int i = 0; i < setCount; i++) {
+                int setOffset = table.readUInt16(setArray + (i * 2));
+                if (setOffset == 0) {
+                    continue;
+                }
+
+                int ruleSet = subtable + setOffset;
+                int ruleCount = table.readUInt16(ruleSet);
+
+                for (int j = 0; j < ruleCount; j++) {
+                    int rule = ruleSet + table.readUInt16(ruleSet + 2 + (j * 2));
+                    int backtrackCount = table.readUInt16(rule);
+                    int inputArray = rule + 2 + (backtrackCount * 2);
+                    int inputCount = table.readUInt16(inputArray);
+                    int lookaheadArray = inputArray + (inputCount * 2);
+                    int lookaheadCount = table.readUInt16(lookaheadArray);
+
+                    if (arrayContains(table, rule + 2, backtrackCount, backtrackValue)
+                            || arrayContains(table, inputArray + 2, inputCount - 1, inputValue)
+                            || arrayContains(table, lookaheadArray + 2, lookaheadCount, lookaheadValue)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        case 3: {
+            int backtrackCount = table.readUInt16(subtable + 2);
+            int inputArray = subtable + 4 + (backtrackCount * 2);
+            int inputCount = table.readUInt16(inputArray);
+            int lookaheadArray = inputArray + 2 + (inputCount * 2);
+            int lookaheadCount = table.readUInt16(lookaheadArray);
+
+            return anyCoverageContains(table, subtable, subtable + 4, backtrackCount, glyphId)
+                || anyCoverageContains(table, subtable, inputArray + 2, inputCount, glyphId)
+                || anyCoverageContains(table, subtable, lookaheadArray + 2, lookaheadCount, glyphId);
+        }
+        }
+
+        return true;
+    }
+
+    private static int offsetOf(SfntTable table, int subtable, int field) {
+        int offset = table.readUInt16(subtable + field);
+        return (offset != 0 ? subtable + offset : 0);
+    }
+
+    private static boolean scanPairs(SfntTable table, int subtable, int glyphId) {
+        if (coverageContains(table, subtable + table.readUInt16(subtable + 2), glyphId)) {
+            return true;
+        }
+
+        int format = table.readUInt16(subtable);
+        int valueSize1 = Integer.bitCount(table.readUInt16(subtable + 4)) * 2;
+        int valueSize2 = Integer.bitCount(table.readUInt16(subtable + 6)) * 2;
+        int recordSize = valueSize1 + valueSize2;
+
+        switch (format) {
+        case 1: {
+            int setCount = table.readUInt16(subtable + 8);
+
+            for (int i = 0; i < setCount; i++) {
+                int pairSet = subtable + table.readUInt16(subtable + 10 + (i * 2));
+                int pairCount = table.readUInt16(pairSet);
+
+                for (int j = 0; j < pairCount; j++) {
+                    if (table.readUInt16(pairSet + 2 + (j * (recordSize + 2))) == glyphId) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        case 2: {
+            int class2 = classOf(table, offsetOf(table, subtable, 10), glyphId);
+            int class1Count = table.readUInt16(subtable + 12);
+            int class2Count = table.readUInt16(subtable + 14);
+            if (class2 >= class2Count) {
+                return true;
+            }
+
+            // The glyph is the second one of a pair if any record of its class adjusts something.
+            for (int i = 0; i < class1Count; i++) {
+                int record = subtable + 16 + (((i * class2Count) + class2) * recordSize);
+
+                for (int j = 0; j < recordSize; j += 2) {
+                    if (table.readUInt16(record + j) != 0) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        }
+
+        return true;
+    }
+
+    private static boolean scanKern(SfntTable table, int glyphId) {
+        if (table.readUInt16(0) != 0) {
+            // Only the original version of the table is inspected.
+            return true;
+        }
+
+        int tableCount = table.readUInt16(2);
+        int subtable = 4;
+
+        for (int i = 0; i < tableCount; i++) {
+            int length = table.readUInt16(subtable + 2);
+            int format = table.readUInt16(subtable + 4) >>> 8;
+            if (format != 0) {
+                return true;
+            }
+
+            int pairCount = table.readUInt16(subtable + 6);
+
+            for (int j = 0; j < pairCount; j++) {
+                int pair = subtable + 14 + (j * 6);
+                if ((table.readUInt16(pair) == glyphId || table.readUInt16(pair + 2) == glyphId)
+                        && table.readInt16(pair + 4) != 0) {
+                    return true;
+                }
+            }
+
+            subtable += length;
+        }
+
+        return false;
+    }
+}
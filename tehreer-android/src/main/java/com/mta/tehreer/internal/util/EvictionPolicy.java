@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.util;
+
+import java.util.ArrayList;
+
+/**
+ * Decides the order in which the entries of an <code>LruCache</code> are evicted. All methods are
+ * invoked while holding the eviction lock of the cache, so a policy does not need to be thread
+ * safe, but an instance must not be shared between caches.
+ */
+@SuppressWarnings("rawtypes")
+public abstract class EvictionPolicy {
+
+    /**
+     * Returns a new policy evicting the least recently used entry first.
+     */
+    public static EvictionPolicy lru() {
+        return new Lru();
+    }
+
+    /**
+     * Returns a new policy which admits an entry into the main part of the cache only if it is
+     * accessed more frequently than the entry it would replace. The new entries are kept in a small
+     * recency window at first, so that bursts of accesses still hit, while a scan over a large
+     * number of rarely used entries cannot flush the frequently used ones.
+     */
+    public static EvictionPolicy tinyLfu() {
+        return new TinyLfuPolicy();
+    }
+
+    EvictionPolicy() {
+    }
+
+    abstract void attach(int capacity);
+
+    abstract void recordInsertion(LruCache.Node node);
+
+    abstract void recordAccess(LruCache.Node node);
+
+    abstract void recordResize(LruCache.Node node, int oldSize);
+
+    abstract void recordRemoval(LruCache.Node node);
+
+    /**
+     * Returns the entry to be evicted next, or null if there is no entry at all.
+     */
+    abstract LruCache.Node selectVictim();
+
+    /**
+     * Appends all entries to the given list, roughly from the least valuable to the most valuable.
+     */
+    abstract void collect(ArrayList<LruCache.Node> nodes);
+
+    abstract void clear();
+
+    private static class Lru extends EvictionPolicy {
+
+        private final LruCache.List list = new LruCache.List();
+
+        @Override
+        void attach(int capacity) {
+        }
+
+        @Override
+        void recordInsertion(LruCache.Node node) {
+            list.addFirst(node);
+        }
+
+        @Override
+        void recordAccess(LruCache.Node node) {
+            list.makeFirst(node);
+        }
+
+        @Override
+        void recordResize(LruCache.Node node, int oldSize) {
+        }
+
+        @Override
+        void recordRemoval(LruCache.Node node) {
+            list.remove(node);
+        }
+
+        @Override
+        LruCache.Node selectVictim() {
+            return (list.isEmpty() ? null : list.last());
+        }
+
+        @Override
+        void collect(ArrayList<LruCache.Node> nodes) {
+            list.collect(nodes);
+        }
+
+        @Override
+        void clear() {
+            list.clear();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.util;
+
+/**
+ * Estimates how often a key has been accessed recently with a count-min sketch of four bit
+ * counters. Each key is mapped to one counter in each of four rows and its frequency is the
+ * minimum of them. All counters are halved periodically so that the old accesses fade away.
+ */
+final class FrequencySketch {
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int[] SEEDS = {
+        0x97CB3127, 0xB4B82E1D, 0x3C6EF372, 0x1B873593
+    };
+
+    private long[] table = new long[0];
+    private int tableMask;
+    private int sampleSize;
+    private int additions;
+
+    /**
+     * Makes sure that the sketch is large enough for the given number of distinct keys.
+     */
+    void ensureCapacity(int maximumSize) {
+        int tableSize = Integer.highestOneBit(Math.max(maximumSize, 16) - 1) << 1;
+        if (tableSize <= table.length) {
+            return;
+        }
+
+        table = new long[tableSize];
+        tableMask = tableSize - 1;
+        sampleSize = tableSize * 10;
+        additions = 0;
+    }
+
+    private int indexOf(int hash, int row) {
+        long value = (hash + (long) SEEDS[row]) * SEEDS[row];
+        value += (value >>> 32);
+
+        return ((int) value) & tableMask;
+    }
+
+    int frequency(int hash) {
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int offset = (start + i) << 2;
+            int count = (int) ((table[index] >>> offset) & 0xF);
+
+            frequency = Math.min(frequency, count);
+        }
+
+        return frequency;
+    }
+
+    void increment(int hash) {
+        int start = (hash & 3) << 2;
+        boolean added = false;
+
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int offset = (start + i) << 2;
+            long mask = 0xFL << offset;
+
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+}
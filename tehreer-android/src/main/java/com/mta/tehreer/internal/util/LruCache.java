@@ -16,16 +16,34 @@
 
 package com.mta.tehreer.internal.util;
 
-import java.util.HashMap;
-
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A size bounded cache whose entries are distributed among multiple segments. Lookups do not take
+ * any lock. Instead, each hit is recorded in a striped read buffer and the eviction policy is
+ * informed about the hits in batches whenever the buffers fill up or an entry is added.
+ * Insertions, removals and evictions are serialized by a single eviction lock so that the
+ * capacity is always enforced. The entries are evicted in least recently used order unless
+ * another policy is specified.
+ */
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public abstract class LruCache {
 
-    private static class Node<K, V> {
+    private static final int READ_BUFFER_COUNT = 4;
+    private static final int READ_BUFFER_SIZE = 64;
+
+    static class Node<K, V> {
 
         public final Segment<K, V> segment;
         public final K key;
-        public V value;
+        public final int hash;
+        public volatile V value;
+        public int size;
+        public int queue;
         public Node<K, V> previous;
         public Node<K, V> next;
 
@@ -33,10 +51,25 @@ public abstract class LruCache {
             this.segment = segment;
             this.key = key;
             this.value = value;
+            this.hash = (key != null ? spread((segment.hashCode() * 31) + key.hashCode()) : 0);
+        }
+
+        private static int spread(int hash) {
+            hash ^= (hash >>> 17);
+            hash *= 0xED5AD4BB;
+            hash ^= (hash >>> 11);
+            hash *= 0xAC4C1B51;
+            hash ^= (hash >>> 15);
+
+            return hash;
+        }
+
+        public boolean isLinked() {
+            return (next != null);
         }
     }
 
-    private static class List {
+    static class List {
 
         Node header;
 
@@ -45,6 +78,14 @@ public abstract class LruCache {
             header.previous = header.next = header;
         }
 
+        public boolean isEmpty() {
+            return header.next == header;
+        }
+
+        public Node first() {
+            return header.next;
+        }
+
         public Node last() {
             return header.previous;
         }
@@ -67,109 +108,592 @@ public abstract class LruCache {
             node.next = node.previous = null;
         }
 
+        /**
+         * Appends the nodes of this list to the given one, from the least recently used to the
+         * most recently used.
+         */
+        public void collect(ArrayList<Node> nodes) {
+            Node node = header.previous;
+            while (node != header) {
+                nodes.add(node);
+                node = node.previous;
+            }
+        }
+
         public void clear() {
+            Node node = header.next;
+            while (node != header) {
+                Node next = node.next;
+                node.next = node.previous = null;
+                node = next;
+            }
+
             header.previous = header.next = header;
         }
     }
 
+    private static class ReadBuffer {
+
+        final AtomicReferenceArray<Node> nodes = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * Records the node and returns true if the buffer is full and needs to be drained. A
+         * recording may be lost under heavy contention which is acceptable since the recency
+         * order only needs to be approximate.
+         */
+        boolean record(Node node) {
+            int index = count.getAndIncrement();
+            if (index < READ_BUFFER_SIZE) {
+                nodes.lazySet(index, node);
+                return (index == READ_BUFFER_SIZE - 1);
+            }
+
+            return true;
+        }
+    }
+
     protected static class Segment<K, V> {
 
         protected final LruCache cache;
-        private HashMap<K, Node<K, V>> map;
+        private final ConcurrentHashMap<K, Node<K, V>> map;
+        private volatile int size;
 
         public Segment(LruCache cache) {
+            this(cache, new ConcurrentHashMap<K, Node<K, V>>());
+        }
+
+        private Segment(LruCache cache, ConcurrentHashMap<K, Node<K, V>> map) {
             if (cache == null) {
                 throw new NullPointerException();
             }
 
             this.cache = cache;
-            this.map = new HashMap<>();
+            this.map = map;
+        }
+
+        Node<K, V> findNode(K key) {
+            return map.get(key);
+        }
+
+        /**
+         * Adds a node whose key is not present yet. It is invoked while holding the eviction lock.
+         */
+        void addNode(Node<K, V> node) {
+            map.put(node.key, node);
+        }
+
+        /**
+         * Removes the node if it is still mapped to its key. It is invoked while holding the
+         * eviction lock.
+         */
+        boolean removeNode(Node<K, V> node) {
+            return map.remove(node.key, node);
+        }
+
+        int nodeCount() {
+            return map.size();
         }
 
         protected int sizeOf(K key, V value) {
             return 1;
         }
 
+        /**
+         * Called when an entry of this segment has been evicted to make room for other entries, or
+         * has been dropped by clearing the cache. It is invoked while holding the eviction lock,
+         * so it must return quickly and must not access the cache.
+         */
+        protected void entryEvicted(K key, V value) {
+        }
+
+        /**
+         * Returns true if none of the entries of this segment is currently in the cache.
+         */
+        public final boolean isEmpty() {
+            return nodeCount() == 0;
+        }
+
+        /**
+         * Returns the number of entries of this segment which are currently in the cache.
+         */
+        public final int count() {
+            return nodeCount();
+        }
+
+        /**
+         * Returns the sum of the sizes of the entries of this segment.
+         */
+        public final int size() {
+            return size;
+        }
+
         public final V get(K key) {
-            synchronized (cache) {
-                Node<K, V> node = map.get(key);
+            Node<K, V> node = findNode(key);
+            if (node != null) {
+                cache.afterRead(node);
+                return node.value;
+            }
+
+            return null;
+        }
+
+        /**
+         * Associates the value with the key if no other value is associated with it.
+         *
+         * @return The existing value if the key was already present, null otherwise.
+         */
+        public final V putIfAbsent(K key, V value) {
+            Node<K, V> node = findNode(key);
+            if (node != null) {
+                cache.afterRead(node);
+                return node.value;
+            }
+
+            V current;
+
+            cache.acquireLock();
+            try {
+                cache.drainReadBuffers();
+
+                node = findNode(key);
                 if (node != null) {
-                    cache.list.makeFirst(node);
-                    return node.value;
+                    current = node.value;
+                } else {
+                    cache.unsafeAdd(this, key, value);
+                    current = null;
                 }
+            } finally {
+                cache.lock.unlock();
             }
 
-            return null;
+            cache.trimToSize(cache.capacity);
+
+            return current;
         }
 
+        /**
+         * Associates the value with the key, replacing an existing value if any. The size of the
+         * entry is measured again so this method should also be called after the contents of a
+         * cached value have changed.
+         */
         public final void put(K key, V value) {
-            synchronized (cache) {
-                Node<K, V> newNode = new Node<>(this, key, value);
-                Node<K, V> oldNode = map.put(key, newNode);
-                if (oldNode != null) {
-                    throw new IllegalArgumentException("An entry with same key has already been added");
-                }
+            cache.acquireLock();
+            try {
+                cache.drainReadBuffers();
+
+                Node<K, V> node = findNode(key);
+                if (node != null) {
+                    int newSize = sizeOf(key, value);
 
-                cache.size += sizeOf(key, value);
-                cache.list.addFirst(newNode);
+                    int oldSize = node.size;
+
+                    cache.size += newSize - oldSize;
+                    size += newSize - oldSize;
+                    node.size = newSize;
+                    node.value = value;
+
+                    if (node.isLinked()) {
+                        cache.policy.recordResize(node, oldSize);
+                        cache.policy.recordAccess(node);
+                    }
+                } else {
+                    cache.unsafeAdd(this, key, value);
+                }
+            } finally {
+                cache.lock.unlock();
             }
 
             cache.trimToSize(cache.capacity);
         }
 
         public final void remove(K key) {
-            synchronized (cache) {
-                Node<K, V> node = map.remove(key);
+            cache.acquireLock();
+            try {
+                Node<K, V> node = findNode(key);
                 if (node != null) {
-                    cache.size -= sizeOf(key, node.value);
-                    cache.list.remove(node);
+                    cache.unsafeRemove(node);
+                }
+            } finally {
+                cache.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * A segment keyed by primitive integers. Its lookups neither box the key nor allocate. The
+     * nodes are kept in an open addressed table which is only modified while holding the eviction
+     * lock, and which is replaced as a whole when it grows, so the lookups do not take any lock.
+     */
+    protected static class IntSegment<V> extends Segment<Integer, V> {
+
+        private static final int MIN_CAPACITY = 16;
+        private static final Node REMOVED = new Node(null, null, null);
+
+        private volatile AtomicReferenceArray<Node<Integer, V>> table = new AtomicReferenceArray<>(MIN_CAPACITY);
+        private volatile int nodeCount;
+        private int usedCount;
+
+        public IntSegment(LruCache cache) {
+            super(cache, null);
+        }
+
+        private static int indexOf(int key, int mask) {
+            int hash = key * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+
+        private static <V> Node<Integer, V> findNode(AtomicReferenceArray<Node<Integer, V>> table, int key) {
+            int mask = table.length() - 1;
+            int index = indexOf(key, mask);
+
+            while (true) {
+                Node<Integer, V> node = table.get(index);
+                if (node == null) {
+                    return null;
+                }
+                if (node != REMOVED && node.key == key) {
+                    return node;
+                }
+
+                index = (index + 1) & mask;
+            }
+        }
+
+        /**
+         * Stores the node in the first free slot of its probe sequence and returns true if the
+         * slot has never been used before.
+         */
+        private static <V> boolean insertNode(AtomicReferenceArray<Node<Integer, V>> table, Node<Integer, V> node) {
+            int mask = table.length() - 1;
+            int index = indexOf(node.key, mask);
+
+            while (true) {
+                Node<Integer, V> current = table.get(index);
+                if (current == null || current == REMOVED) {
+                    table.set(index, node);
+                    return current == null;
+                }
+
+                index = (index + 1) & mask;
+            }
+        }
+
+        /**
+         * Copies the live nodes into a new table at most half full. The old table is left intact
+         * for the lookups still going through it.
+         */
+        private void rehash() {
+            AtomicReferenceArray<Node<Integer, V>> oldTable = table;
+            int capacity = MIN_CAPACITY;
+            while (capacity < (nodeCount + 1) * 2) {
+                capacity *= 2;
+            }
+
+            AtomicReferenceArray<Node<Integer, V>> newTable = new AtomicReferenceArray<>(capacity);
+            int length = oldTable.length();
+
+            for (int i = 0; i < length; i++) {
+                Node<Integer, V> node = oldTable.get(i);
+                if (node != null && node != REMOVED) {
+                    insertNode(newTable, node);
+                }
+            }
+
+            usedCount = nodeCount;
+            table = newTable;
+        }
+
+        @Override
+        Node<Integer, V> findNode(Integer key) {
+            return findNode(table, key);
+        }
+
+        @Override
+        void addNode(Node<Integer, V> node) {
+            // Keep at least a quarter of the slots empty so that every probe terminates.
+            if ((usedCount + 1) * 4 > table.length() * 3) {
+                rehash();
+            }
+
+            if (insertNode(table, node)) {
+                usedCount++;
+            }
+            nodeCount++;
+        }
+
+        @Override
+        boolean removeNode(Node<Integer, V> node) {
+            AtomicReferenceArray<Node<Integer, V>> currentTable = table;
+            int mask = currentTable.length() - 1;
+            int index = indexOf(node.key, mask);
+
+            while (true) {
+                Node<Integer, V> current = currentTable.get(index);
+                if (current == null) {
+                    return false;
+                }
+                if (current == node) {
+                    currentTable.set(index, REMOVED);
+                    nodeCount--;
+                    return true;
                 }
+
+                index = (index + 1) & mask;
+            }
+        }
+
+        @Override
+        int nodeCount() {
+            return nodeCount;
+        }
+
+        public final V get(int key) {
+            Node<Integer, V> node = findNode(table, key);
+            if (node != null) {
+                cache.afterRead(node);
+                return node.value;
             }
+
+            return null;
+        }
+
+        public final V putIfAbsent(int key, V value) {
+            return putIfAbsent(Integer.valueOf(key), value);
+        }
+
+        public final void put(int key, V value) {
+            put(Integer.valueOf(key), value);
+        }
+
+        public final void remove(int key) {
+            remove(Integer.valueOf(key));
         }
     }
 
-    private List list;
-    private int capacity;
-    private int size;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReadBuffer[] readBuffers;
+    private EvictionPolicy policy;
+    private volatile int capacity;
+    private volatile int size;
+    private volatile long evictionCount;
+    private volatile long lockWaitTime;
 
     public LruCache(int capacity) {
+        this(capacity, EvictionPolicy.lru());
+    }
+
+    public LruCache(int capacity, EvictionPolicy policy) {
         if (capacity <= 0) {
             throw new IllegalArgumentException("Invalid Capacity: " + capacity);
         }
+        if (policy == null) {
+            throw new NullPointerException("Policy is null");
+        }
 
-        this.list = new List();
+        this.readBuffers = new ReadBuffer[READ_BUFFER_COUNT];
+        for (int i = 0; i < READ_BUFFER_COUNT; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+
+        this.policy = policy;
         this.capacity = capacity;
         this.size = 0;
+
+        policy.attach(capacity);
     }
 
-    public synchronized final int capacity() {
+    public final int capacity() {
         return capacity;
     }
 
-    public synchronized final int size() {
+    public final int size() {
         return size;
     }
 
-    public synchronized void clear() {
-        list.clear();
+    /**
+     * Changes the capacity of this cache, evicting the entries beyond the new capacity.
+     *
+     * @param capacity The new capacity of this cache.
+     */
+    public final void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid Capacity: " + capacity);
+        }
+
+        acquireLock();
+        try {
+            this.capacity = capacity;
+            policy.attach(capacity);
+        } finally {
+            lock.unlock();
+        }
+
+        trimToSize(capacity);
+    }
+
+    /**
+     * Returns the number of entries evicted to make room for other entries since this cache was
+     * created or its statistics were reset.
+     */
+    public final long evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the total time in nanoseconds for which the threads have been blocked on the lock of
+     * this cache since it was created or its statistics were reset.
+     */
+    public final long lockWaitTime() {
+        return lockWaitTime;
+    }
+
+    public void resetStatistics() {
+        acquireLock();
+        try {
+            evictionCount = 0;
+            lockWaitTime = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acquireLock() {
+        if (!lock.tryLock()) {
+            // Only a contended acquisition is timed so that the common case stays cheap.
+            long startTime = System.nanoTime();
+            lock.lock();
+            lockWaitTime += System.nanoTime() - startTime;
+        }
+    }
+
+    /**
+     * Replaces the eviction policy of this cache. The existing entries are handed over to the new
+     * policy in their current order.
+     *
+     * @param policy A new policy which has not been used by any other cache.
+     */
+    public final void setEvictionPolicy(EvictionPolicy policy) {
+        if (policy == null) {
+            throw new NullPointerException("Policy is null");
+        }
+
+        acquireLock();
+        try {
+            drainReadBuffers();
+
+            ArrayList<Node> nodes = new ArrayList<>();
+            this.policy.collect(nodes);
+            this.policy.clear();
+            this.policy = policy;
+
+            policy.attach(capacity);
+            for (Node node : nodes) {
+                policy.recordInsertion(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        trimToSize(capacity);
+    }
+
+    public void clear() {
+        acquireLock();
+        try {
+            drainReadBuffers();
+
+            ArrayList<Node> nodes = new ArrayList<>();
+            policy.collect(nodes);
+            policy.clear();
+
+            for (Node node : nodes) {
+                if (node.segment.removeNode(node)) {
+                    node.segment.size -= node.size;
+                    node.segment.entryEvicted(node.key, node.value);
+                }
+            }
+
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void trimToSize(int maxSize) {
-        while (true) {
-            synchronized (this) {
-                if (size <= maxSize) {
+        if (size <= maxSize) {
+            return;
+        }
+
+        acquireLock();
+        try {
+            drainReadBuffers();
+
+            while (size > maxSize) {
+                Node toEvict = policy.selectVictim();
+                if (toEvict == null) {
                     break;
                 }
 
-                Node toEvict = list.last();
-                if (toEvict == list.header) {
-                    break;
+                if (unsafeRemove(toEvict)) {
+                    evictionCount++;
+                    toEvict.segment.entryEvicted(toEvict.key, toEvict.value);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void afterRead(Node node) {
+        int stripe = (int) (Thread.currentThread().getId() & (READ_BUFFER_COUNT - 1));
+        ReadBuffer buffer = readBuffers[stripe];
+
+        if (buffer.record(node) && lock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void drainReadBuffers() {
+        for (ReadBuffer buffer : readBuffers) {
+            int count = Math.min(buffer.count.get(), READ_BUFFER_SIZE);
+
+            for (int i = 0; i < count; i++) {
+                Node node = buffer.nodes.getAndSet(i, null);
+                if (node != null && node.isLinked()) {
+                    policy.recordAccess(node);
                 }
+            }
+
+            buffer.count.set(0);
+        }
+    }
 
-                Segment segment = toEvict.segment;
-                Object key = toEvict.key;
-                segment.remove(key);
+    private void unsafeAdd(Segment segment, Object key, Object value) {
+        Node node = new Node(segment, key, value);
+        node.size = segment.sizeOf(key, value);
+
+        segment.addNode(node);
+        policy.recordInsertion(node);
+        size += node.size;
+        segment.size += node.size;
+    }
+
+    private boolean unsafeRemove(Node node) {
+        if (node.segment.removeNode(node)) {
+            if (node.isLinked()) {
+                policy.recordRemoval(node);
             }
+            size -= node.size;
+            node.segment.size -= node.size;
+
+            return true;
         }
+
+        return false;
     }
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs independent tasks on a shared pool of worker threads, one per available processor. The
+ * calling thread takes part in running the tasks, so a call never waits for a task that has not
+ * been started, and the calls can be nested or made from the workers themselves.
+ */
+public final class Parallel {
+
+    private static final int THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static class Holder {
+
+        private static final ExecutorService EXECUTOR;
+
+        static {
+            EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Parallel-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the number of threads which can run the tasks at the same time, including the
+     * calling thread.
+     */
+    public static int threadCount() {
+        return THREAD_COUNT;
+    }
+
+    /**
+     * Runs the given tasks in parallel and waits for all of them to finish. If any task throws an
+     * exception, the remaining tasks are not started and the first exception is rethrown after
+     * the running tasks have finished.
+     *
+     * @param tasks The tasks to run.
+     */
+    public static void invokeAll(final Runnable[] tasks) {
+        final int taskCount = tasks.length;
+        final AtomicInteger nextTask = new AtomicInteger();
+        final CountDownLatch finishedTasks = new CountDownLatch(taskCount);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = nextTask.getAndIncrement()) < taskCount) {
+                    try {
+                        if (failure.get() == null) {
+                            tasks[index].run();
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        finishedTasks.countDown();
+                    }
+                }
+            }
+        };
+
+        int helperCount = Math.min(taskCount, THREAD_COUNT) - 1;
+        for (int i = 0; i < helperCount; i++) {
+            Holder.EXECUTOR.execute(worker);
+        }
+
+        worker.run();
+
+        // Every task has been claimed by now, so only the running ones are waited for.
+        boolean interrupted = false;
+        while (true) {
+            try {
+                finishedTasks.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable e = failure.get();
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        if (e != null) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Parallel() {
+    }
+}
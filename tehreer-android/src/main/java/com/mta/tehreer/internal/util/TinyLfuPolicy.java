@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.util;
+
+import java.util.ArrayList;
+
+/**
+ * A window TinyLFU policy. The new entries are placed in a small LRU window. An entry leaving the
+ * window is admitted into the main area only if the frequency sketch estimates it to be used more
+ * often than the entry which would be evicted from the main area in its place. The main area is a
+ * segmented LRU whose probation queue holds the entries seen once and whose protected queue holds
+ * the entries accessed again after admission.
+ */
+@SuppressWarnings("rawtypes")
+final class TinyLfuPolicy extends EvictionPolicy {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final int WINDOW_PERCENTAGE = 1;
+    private static final int PROTECTED_PERCENTAGE = 80;
+    private static final int MIN_SKETCH_SIZE = 64;
+
+    private final LruCache.List window = new LruCache.List();
+    private final LruCache.List probation = new LruCache.List();
+    private final LruCache.List protectedQueue = new LruCache.List();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private int windowMaxSize;
+    private int mainMaxSize;
+    private int protectedMaxSize;
+    private int windowSize;
+    private int probationSize;
+    private int protectedSize;
+    private int nodeCount;
+
+    @Override
+    void attach(int capacity) {
+        windowMaxSize = Math.max(1, (int) ((long) capacity * WINDOW_PERCENTAGE / 100));
+        mainMaxSize = capacity - windowMaxSize;
+        protectedMaxSize = (int) ((long) mainMaxSize * PROTECTED_PERCENTAGE / 100);
+        sketch.ensureCapacity(MIN_SKETCH_SIZE);
+    }
+
+    @Override
+    void recordInsertion(LruCache.Node node) {
+        node.queue = WINDOW;
+        window.addFirst(node);
+        windowSize += node.size;
+        nodeCount++;
+
+        sketch.ensureCapacity(nodeCount);
+        sketch.increment(node.hash);
+    }
+
+    @Override
+    void recordAccess(LruCache.Node node) {
+        sketch.increment(node.hash);
+
+        switch (node.queue) {
+        case WINDOW:
+            window.makeFirst(node);
+            break;
+
+        case PROBATION:
+            probation.remove(node);
+            probationSize -= node.size;
+            node.queue = PROTECTED;
+            protectedQueue.addFirst(node);
+            protectedSize += node.size;
+            demoteProtected();
+            break;
+
+        case PROTECTED:
+            protectedQueue.makeFirst(node);
+            break;
+        }
+    }
+
+    private void demoteProtected() {
+        while (protectedSize > protectedMaxSize) {
+            LruCache.Node last = protectedQueue.last();
+            if (last == protectedQueue.first()) {
+                break;
+            }
+
+            protectedQueue.remove(last);
+            protectedSize -= last.size;
+            last.queue = PROBATION;
+            probation.addFirst(last);
+            probationSize += last.size;
+        }
+    }
+
+    @Override
+    void recordResize(LruCache.Node node, int oldSize) {
+        int delta = node.size - oldSize;
+
+        switch (node.queue) {
+        case WINDOW:
+            windowSize += delta;
+            break;
+
+        case PROBATION:
+            probationSize += delta;
+            break;
+
+        case PROTECTED:
+            protectedSize += delta;
+            break;
+        }
+    }
+
+    @Override
+    void recordRemoval(LruCache.Node node) {
+        switch (node.queue) {
+        case WINDOW:
+            window.remove(node);
+            windowSize -= node.size;
+            break;
+
+        case PROBATION:
+            probation.remove(node);
+            probationSize -= node.size;
+            break;
+
+        case PROTECTED:
+            protectedQueue.remove(node);
+            protectedSize -= node.size;
+            break;
+        }
+
+        nodeCount--;
+    }
+
+    private void moveToProbation(LruCache.Node node) {
+        window.remove(node);
+        windowSize -= node.size;
+        node.queue = PROBATION;
+        probation.addFirst(node);
+        probationSize += node.size;
+    }
+
+    @Override
+    LruCache.Node selectVictim() {
+        // Move the overflow of the window into the main area as long as it has free space.
+        while (windowSize > windowMaxSize && !window.isEmpty()) {
+            LruCache.Node candidate = window.last();
+            if (probationSize + protectedSize + candidate.size > mainMaxSize) {
+                break;
+            }
+
+            moveToProbation(candidate);
+        }
+
+        if (windowSize > windowMaxSize && !window.isEmpty()) {
+            LruCache.Node candidate = window.last();
+            LruCache.Node victim = null;
+
+            if (!probation.isEmpty()) {
+                victim = probation.last();
+            } else if (!protectedQueue.isEmpty()) {
+                victim = protectedQueue.last();
+            }
+
+            if (victim == null) {
+                return candidate;
+            }
+
+            moveToProbation(candidate);
+
+            // Admit the candidate only if it is more popular than the victim.
+            if (sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) {
+                return victim;
+            }
+
+            return candidate;
+        }
+
+        if (!probation.isEmpty()) {
+            return probation.last();
+        }
+        if (!protectedQueue.isEmpty()) {
+            return protectedQueue.last();
+        }
+        if (!window.isEmpty()) {
+            return window.last();
+        }
+
+        return null;
+    }
+
+    @Override
+    void collect(ArrayList<LruCache.Node> nodes) {
+        probation.collect(nodes);
+        window.collect(nodes);
+        protectedQueue.collect(nodes);
+    }
+
+    @Override
+    void clear() {
+        window.clear();
+        probation.clear();
+        protectedQueue.clear();
+        windowSize = 0;
+        probationSize = 0;
+        protectedSize = 0;
+        nodeCount = 0;
+    }
+}
@@ -16,9 +16,11 @@
 
 package com.mta.tehreer.layout;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.Rect;
 import android.text.Layout;
 import android.text.Spanned;
 import android.text.style.LeadingMarginSpan;
@@ -26,6 +28,7 @@ import android.text.style.LineBackgroundSpan;
 
 import com.mta.tehreer.graphics.Renderer;
 import com.mta.tehreer.internal.Description;
+import com.mta.tehreer.internal.util.Parallel;
 
 import java.util.Collections;
 import java.util.List;
@@ -36,6 +39,8 @@ import java.util.List;
  */
 public class ComposedFrame {
 
+    private static final int MIN_TILE_HEIGHT = 64;
+
     private final CharSequence source;
     private final int frameStart;
     private final int frameEnd;
@@ -47,6 +52,10 @@ public class ComposedFrame {
     private float mHeight;
 
     private Paint paint;
+    private Rect clipBounds;
+    private float[] lineTops;
+    private RenderList backgroundList;
+    private RenderList contentList;
 
     ComposedFrame(CharSequence source, int charStart, int charEnd, List<ComposedLine> lineList) {
         this.source = source;
@@ -70,6 +79,51 @@ public class ComposedFrame {
         return paint;
     }
 
+    private Rect lazyClipBounds() {
+        if (clipBounds == null) {
+            clipBounds = new Rect();
+        }
+
+        return clipBounds;
+    }
+
+    private float[] lazyLineTops() {
+        if (lineTops == null) {
+            int lineCount = lineList.size();
+            float[] tops = new float[lineCount];
+
+            for (int i = 0; i < lineCount; i++) {
+                tops[i] = lineList.get(i).getTop();
+            }
+
+            lineTops = tops;
+        }
+
+        return lineTops;
+    }
+
+    /**
+     * Returns the index of the last line starting at or above the given y- coordinate, or zero if
+     * all lines start below it.
+     */
+    private int getLineIndexForTop(float y) {
+        float[] tops = lazyLineTops();
+        int low = 0;
+        int high = tops.length - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+
+            if (tops[mid] <= y) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return Math.max(high, 0);
+    }
+
     /**
      * Returns the index to the first character of this frame in source text.
      *
@@ -290,44 +344,104 @@ public class ComposedFrame {
         return selectionPath;
     }
 
-    private void drawBackground(Canvas canvas) {
+    private void addBackgrounds(RenderList list, ComposedLine composedLine, int lineIndex) {
         int frameLeft = 0;
         int frameRight = (int) (getWidth() + 0.5f);
+        Object[] lineSpans = composedLine.getSpans();
+
+        for (Object style : lineSpans) {
+            if (style instanceof LineBackgroundSpan) {
+                LineBackgroundSpan span = (LineBackgroundSpan) style;
+
+                Spanned sourceText = (Spanned) source;
+                int spanStart = sourceText.getSpanStart(span);
+                int spanEnd = sourceText.getSpanEnd(span);
+
+                int lineStart = composedLine.getCharStart();
+                int lineEnd = composedLine.getCharEnd();
+                if (lineStart >= spanEnd || lineEnd <= spanStart) {
+                    continue;
+                }
+
+                int lineTop = (int) (composedLine.getTop() + 0.5f);
+                int lineBaseline = (int) (composedLine.getOriginY() + 0.5f);
+                int lineBottom = (int) (composedLine.getTop() + composedLine.getHeight() + 0.5f);
+
+                list.addLineBackground(span, frameLeft, frameRight,
+                                       lineTop, lineBaseline, lineBottom,
+                                       sourceText, lineStart, lineEnd, lineIndex);
+            }
+        }
+    }
+
+    private void addLeadingMargins(RenderList list, ComposedLine composedLine) {
+        Object[] lineSpans = composedLine.getSpans();
+
+        int lineLeft = 0;
+        int lineRight = (int) (getWidth() + 0.5f);
+
+        for (Object style : lineSpans) {
+            if (style instanceof LeadingMarginSpan) {
+                LeadingMarginSpan span = (LeadingMarginSpan) style;
+
+                byte paragraphLevel = composedLine.getParagraphLevel();
+                boolean isLTR = (paragraphLevel & 1) == 0;
+
+                int margin = (isLTR ? lineLeft : lineRight);
+                int direction = (isLTR ? Layout.DIR_LEFT_TO_RIGHT : Layout.DIR_RIGHT_TO_LEFT);
+                int lineTop = (int) (composedLine.getTop() + 0.5f);
+                int lineBaseline = (int) (composedLine.getOriginY() + 0.5f);
+                int lineBottom = (int) (composedLine.getTop() + composedLine.getHeight() + 0.5f);
+                Spanned sourceText = (Spanned) source;
+                int lineStart = composedLine.getCharStart();
+                int lineEnd = composedLine.getCharEnd();
+                boolean isFirst = composedLine.isFirst();
+
+                list.addLeadingMargin(span, margin, direction,
+                                      lineTop, lineBaseline, lineBottom,
+                                      sourceText, lineStart, lineEnd, isFirst);
+
+                if (isLTR) {
+                    lineLeft += span.getLeadingMargin(isFirst);
+                } else {
+                    lineRight -= span.getLeadingMargin(isFirst);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the backgrounds, leading margins and runs of all lines once, so that drawing this
+     * frame again only replays them.
+     */
+    private void compileRenderLists() {
+        RenderList backgrounds = new RenderList();
+        RenderList contents = new RenderList();
 
         int lineCount = lineList.size();
         for (int i = 0; i < lineCount; i++) {
             ComposedLine composedLine = lineList.get(i);
-            Object[] lineSpans = composedLine.getSpans();
-
-            for (Object style : lineSpans) {
-                if (style instanceof LineBackgroundSpan) {
-                    LineBackgroundSpan span = (LineBackgroundSpan) style;
-
-                    Spanned sourceText = (Spanned) source;
-                    int spanStart = sourceText.getSpanStart(span);
-                    int spanEnd = sourceText.getSpanEnd(span);
-
-                    int lineStart = composedLine.getCharStart();
-                    int lineEnd = composedLine.getCharEnd();
-                    if (lineStart >= spanEnd || lineEnd <= spanStart) {
-                        continue;
-                    }
-
-                    Paint paint = lazyPaint();
-                    int lineTop = (int) (composedLine.getTop() + 0.5f);
-                    int lineBaseline = (int) (composedLine.getOriginY() + 0.5f);
-                    int lineBottom = (int) (composedLine.getTop() + composedLine.getHeight() + 0.5f);
-
-                    span.drawBackground(canvas, paint, frameLeft, frameRight,
-                                        lineTop, lineBaseline, lineBottom,
-                                        sourceText, lineStart, lineEnd, i);
-                }
-            }
+
+            backgrounds.beginLine();
+            addBackgrounds(backgrounds, composedLine, i);
+
+            contents.beginLine();
+            addLeadingMargins(contents, composedLine);
+            composedLine.addTo(contents, composedLine.getOriginX(), composedLine.getOriginY());
         }
+
+        backgroundList = backgrounds;
+        contentList = contents;
     }
 
     /**
      * Draws this frame onto the given <code>canvas</code> using the given <code>renderer</code>.
+     * Only the lines intersecting the clip bounds of the canvas are drawn, so the cost of drawing
+     * a tall frame within a small viewport depends on the viewport rather than the frame.
+     * <p>
+     * The spans and clusters of the lines are resolved on the first draw and recorded into a
+     * render list, which is replayed by the subsequent draws. The style of the renderer is read on
+     * every draw, so it can be changed freely between the draws.
      *
      * @param renderer The renderer to use for drawing this frame.
      * @param canvas The canvas onto which to draw this frame.
@@ -335,52 +449,105 @@ public class ComposedFrame {
      * @param y The y- position at which to draw this frame.
      */
     public void draw(Renderer renderer, Canvas canvas, float x, float y) {
-        canvas.translate(x, y);
+        drawLines(renderer, canvas, x, y, lazyClipBounds(), lazyPaint());
+    }
 
-        drawBackground(canvas);
+    /**
+     * Draws this frame into the given <code>bitmap</code> using the given <code>renderer</code>.
+     * The bitmap is split into horizontal tiles which are drawn in parallel, each on a separate
+     * canvas with a copy of the renderer, so that a tall frame is rasterized in a fraction of the
+     * time taken by a single canvas on devices with multiple cores. As the tiles do not overlap
+     * and each one draws all the lines reaching into it, the result is the same as drawing the
+     * frame on a single canvas of the bitmap.
+     * <p>
+     * The glyphs are shared across the threads through the glyph cache. However, the spans
+     * attached to the text, such as replacement, leading margin and line background spans, are
+     * drawn from multiple threads at the same time, so they must not modify any shared state while
+     * drawing. The renderer must not be modified until this method returns.
+     *
+     * @param renderer The renderer whose style is used for drawing this frame.
+     * @param bitmap The bitmap into which to draw this frame.
+     * @param x The x- position at which to draw this frame.
+     * @param y The y- position at which to draw this frame.
+     *
+     * @throws NullPointerException if <code>renderer</code> is <code>null</code>, or
+     *         <code>bitmap</code> is <code>null</code>.
+     * @throws IllegalArgumentException if <code>bitmap</code> is not mutable.
+     */
+    public void draw(Renderer renderer, final Bitmap bitmap, final float x, final float y) {
+        if (renderer == null) {
+            throw new NullPointerException("Renderer is null");
+        }
+        if (bitmap == null) {
+            throw new NullPointerException("Bitmap is null");
+        }
+        if (!bitmap.isMutable()) {
+            throw new IllegalArgumentException("Bitmap is not mutable");
+        }
 
-        int lineCount = lineList.size();
-        for (int i = 0; i < lineCount; i++) {
-            ComposedLine composedLine = lineList.get(i);
-            Object[] lineSpans = composedLine.getSpans();
-
-            int lineLeft = 0;
-            int lineRight = (int) (getWidth() + 0.5f);
-
-            // Draw leading margins of this line.
-            for (Object style : lineSpans) {
-                if (style instanceof LeadingMarginSpan) {
-                    LeadingMarginSpan span = (LeadingMarginSpan) style;
-
-                    byte paragraphLevel = composedLine.getParagraphLevel();
-                    boolean isLTR = (paragraphLevel & 1) == 0;
-
-                    Paint paint = lazyPaint();
-                    int margin = (isLTR ? lineLeft : lineRight);
-                    int direction = (isLTR ? Layout.DIR_LEFT_TO_RIGHT : Layout.DIR_RIGHT_TO_LEFT);
-                    int lineTop = (int) (composedLine.getTop() + 0.5f);
-                    int lineBaseline = (int) (composedLine.getOriginY() + 0.5f);
-                    int lineBottom = (int) (composedLine.getTop() + composedLine.getHeight() + 0.5f);
-                    Spanned sourceText = (Spanned) source;
-                    int lineStart = composedLine.getCharStart();
-                    int lineEnd = composedLine.getCharEnd();
-                    boolean isFirst = composedLine.isFirst();
-
-                    span.drawLeadingMargin(canvas, paint, margin, direction,
-                                           lineTop, lineBaseline, lineBottom,
-                                           sourceText, lineStart, lineEnd, isFirst, null);
-
-                    if (isLTR) {
-                        lineLeft += span.getLeadingMargin(isFirst);
-                    } else {
-                        lineRight -= span.getLeadingMargin(isFirst);
-                    }
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        if (lineList.isEmpty() || width == 0 || height == 0) {
+            return;
+        }
+
+        // Resolve the lazy state up front so that the tiles only read it.
+        lazyLineTops();
+        if (contentList == null) {
+            compileRenderLists();
+        }
+
+        // Make more tiles than threads to balance the lines of uneven cost.
+        int tileCount = Math.min(Parallel.threadCount() * 2, (height + MIN_TILE_HEIGHT - 1) / MIN_TILE_HEIGHT);
+        final int tileHeight = (height + tileCount - 1) / tileCount;
+        tileCount = (height + tileHeight - 1) / tileHeight;
+
+        Runnable[] tiles = new Runnable[tileCount];
+        for (int i = 0; i < tileCount; i++) {
+            final int tileTop = i * tileHeight;
+            final int tileBottom = Math.min(tileTop + tileHeight, height);
+            final Renderer tileRenderer = new Renderer(renderer);
+
+            tiles[i] = new Runnable() {
+                @Override
+                public void run() {
+                    Canvas canvas = new Canvas(bitmap);
+                    canvas.clipRect(0, tileTop, width, tileBottom);
+
+                    drawLines(tileRenderer, canvas, x, y, new Rect(), new Paint());
                 }
-            }
+            };
+        }
+
+        Parallel.invokeAll(tiles);
+    }
+
+    private void drawLines(Renderer renderer, Canvas canvas, float x, float y,
+                           Rect clipBounds, Paint paint) {
+        int lineCount = lineList.size();
+        if (lineCount == 0) {
+            return;
+        }
+
+        canvas.translate(x, y);
 
-            composedLine.draw(renderer, canvas, composedLine.getOriginX(), composedLine.getOriginY());
+        if (!canvas.getClipBounds(clipBounds)) {
+            // Nothing can be drawn within an empty clip.
+            canvas.translate(-x, -y);
+            return;
         }
 
+        // Include one more line on each side as the glyphs may overflow their lines.
+        int firstIndex = Math.max(getLineIndexForTop(clipBounds.top) - 1, 0);
+        int lastIndex = Math.min(getLineIndexForTop(clipBounds.bottom) + 1, lineCount - 1);
+
+        if (contentList == null) {
+            compileRenderLists();
+        }
+
+        backgroundList.draw(renderer, canvas, paint, firstIndex, lastIndex);
+        contentList.draw(renderer, canvas, paint, firstIndex, lastIndex);
+
         canvas.translate(-x, -y);
     }
 
@@ -392,6 +392,15 @@ public class ComposedLine {
         }
     }
 
+    /**
+     * Records the drawing of this line at the given position into a render list.
+     */
+    void addTo(RenderList list, float x, float y) {
+        for (GlyphRun glyphRun : runList) {
+            glyphRun.addTo(list, x + glyphRun.getOriginX(), y + glyphRun.getOriginY());
+        }
+    }
+
     @Override
     public String toString() {
         return "ComposedLine{charStart=" + getCharStart()
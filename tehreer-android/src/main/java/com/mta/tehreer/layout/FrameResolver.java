@@ -27,9 +27,9 @@ import android.text.style.LineHeightSpan;
 import android.text.style.ParagraphStyle;
 
 import com.mta.tehreer.internal.layout.BreakResolver;
+import com.mta.tehreer.internal.layout.IntrinsicParagraph;
 import com.mta.tehreer.internal.layout.ParagraphCollection;
 import com.mta.tehreer.internal.layout.RunCollection;
-import com.mta.tehreer.unicode.BidiParagraph;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -83,10 +83,15 @@ public class FrameResolver {
         }
 
         mTypesetter = typesetter;
-        mSpanned = typesetter.getSpanned();
-        mParagraphs = typesetter.getParagraphs();
-        mRuns = typesetter.getRuns();
-        mBreaks = typesetter.getBreaks();
+    }
+
+    private void loadTypesetter() {
+        // The typesetter may have been edited since the last frame, which replaces its text, spans
+        // and breaks.
+        mSpanned = mTypesetter.getSpanned();
+        mParagraphs = mTypesetter.getParagraphs();
+        mRuns = mTypesetter.getRuns();
+        mBreaks = mTypesetter.getBreaks();
         mLineResolver.reset(mSpanned, mParagraphs, mRuns);
     }
 
@@ -391,6 +396,8 @@ public class FrameResolver {
      *         <code>charStart</code> is greater than or equal to <code>charEnd</code>.
      */
     public ComposedFrame createFrame(int charStart, int charEnd) {
+        loadTypesetter();
+
         if (charStart < 0) {
             throw new IllegalArgumentException("Char Start: " + charStart);
         }
@@ -402,20 +409,23 @@ public class FrameResolver {
         }
 
         FrameFiller frameFiller = new FrameFiller();
+        mTypesetter.resolveParagraphs(charStart + 1);
         int paragraphIndex = mParagraphs.binarySearch(charStart);
 
         int segmentStart = charStart;
         int segmentEnd;
 
-        // Iterate over all paragraphs in provided range.
+        // Iterate over all paragraphs in provided range, resolving them only as the frame needs.
         do {
-            BidiParagraph paragraph = mParagraphs.get(paragraphIndex);
-            segmentEnd = Math.min(charEnd, paragraph.getCharEnd());
+            mTypesetter.resolveParagraphs(segmentStart + 1);
+
+            IntrinsicParagraph paragraph = mParagraphs.get(paragraphIndex);
+            segmentEnd = Math.min(charEnd, paragraph.charEnd);
 
             // Setup the frame filler and add the lines.
             frameFiller.charStart = segmentStart;
             frameFiller.charEnd = segmentEnd;
-            frameFiller.baseLevel = paragraph.getBaseLevel();
+            frameFiller.baseLevel = paragraph.baseLevel;
             frameFiller.addParagraphLines();
 
             if (frameFiller.filled) {
@@ -220,6 +220,25 @@ public class GlyphRun {
         return typeSize;
     }
 
+    /**
+     * Returns the horizontal scale applied to the glyphs of this run while drawing, as specified
+     * by its <code>ScaleXSpan</code>.
+     *
+     * @return The horizontal scale of this run, or <code>1.0</code> if it has no
+     *         <code>ScaleXSpan</code>.
+     */
+    public float getScaleX() {
+        float scaleX = 1.0f;
+
+        for (Object span : spans) {
+            if (span instanceof ScaleXSpan) {
+                scaleX = ((ScaleXSpan) span).getScaleX();
+            }
+        }
+
+        return scaleX;
+    }
+
     /**
      * Returns the writing direction of this run.
      *
@@ -654,17 +673,115 @@ public class GlyphRun {
         canvas.restore();
     }
 
+    private void addEdgeCluster(RenderList list, float x, float y, ClusterRange cluster,
+                                float scaleX, boolean hasFillColor, int fillColor) {
+        float clipLeft = Float.NEGATIVE_INFINITY;
+        float clipRight = Float.POSITIVE_INFINITY;
+
+        if (!caretEdges.reversed()) {
+            if (cluster.actualStart < charStart) {
+                clipLeft = getCaretEdge(charStart);
+            }
+            if (cluster.actualEnd > charEnd) {
+                clipRight = getCaretEdge(charEnd);
+            }
+        } else {
+            if (cluster.actualStart < charStart) {
+                clipRight = getCaretEdge(charStart);
+            }
+            if (cluster.actualEnd > charEnd) {
+                clipLeft = getCaretEdge(charEnd);
+            }
+        }
+
+        float clusterX = getCaretEdge(cluster.actualStart);
+
+        list.addClippedGlyphs(this, x + clusterX, y, clipLeft - clusterX, clipRight - clusterX,
+                              scaleX, hasFillColor, fillColor,
+                              cluster.glyphStart, cluster.glyphEnd);
+    }
+
+    /**
+     * Records the drawing of this run at the given position into a render list, resolving its
+     * spans and partially visible clusters.
+     */
+    void addTo(RenderList list, float x, float y) {
+        // Leave a margin of the run height around its typographic bounds for overflowing glyphs.
+        float margin = ascent + descent;
+        list.setRunBounds(x - margin, y - ascent - margin, x + getWidth() + margin, y + descent + margin);
+
+        float scaleX = getScaleX();
+        boolean hasFillColor = false;
+        int fillColor = 0;
+        ReplacementSpan replacement = null;
+
+        for (Object span : spans) {
+            if (span instanceof ForegroundColorSpan) {
+                hasFillColor = true;
+                fillColor = ((ForegroundColorSpan) span).getForegroundColor();
+            } else if (span instanceof ReplacementSpan) {
+                replacement = (ReplacementSpan) span;
+            }
+        }
+
+        if (replacement == null) {
+            ClusterRange firstCluster = null;
+            ClusterRange lastCluster = null;
+
+            if (startExtraLength > 0) {
+                firstCluster = getClusterRange(charStart, null);
+            }
+            if (endExtraLength > 0) {
+                lastCluster = getClusterRange(charEnd - 1, firstCluster);
+            }
+
+            int glyphStart = 0;
+            int glyphEnd = glyphIds.size();
+
+            int chunkStart = charStart;
+
+            if (firstCluster != null) {
+                addEdgeCluster(list, x, y, firstCluster, scaleX, hasFillColor, fillColor);
+                chunkStart = firstCluster.actualEnd;
+                glyphStart = firstCluster.glyphEnd;
+            }
+            if (lastCluster != null) {
+                glyphEnd = lastCluster.glyphStart;
+            }
+
+            list.addGlyphs(this, x + getCaretEdge(chunkStart), y,
+                           scaleX, hasFillColor, fillColor, glyphStart, glyphEnd);
+
+            if (lastCluster != null) {
+                addEdgeCluster(list, x, y, lastCluster, scaleX, hasFillColor, fillColor);
+            }
+        } else {
+            int top = (int) -(ascent + 0.5f);
+            int bottom = (int) (descent + 0.5f);
+
+            list.addReplacement(replacement, x, y, charStart, charEnd, top, bottom);
+        }
+    }
+
     /**
      * Draws this run completely onto the given <code>canvas</code> using the given
-     * <code>renderer</code>.
+     * <code>renderer</code>. Nothing is drawn if the run lies outside the clip bounds of the
+     * canvas.
      *
      * @param renderer The renderer to use for drawing this run.
      * @param canvas The canvas onto which to draw this run.
      */
 	public void draw(Renderer renderer, Canvas canvas) {
+        // Leave a margin of the run height around its typographic bounds for overflowing glyphs.
+        float margin = ascent + descent;
+        if (canvas.quickReject(-margin, -ascent - margin, getWidth() + margin, descent + margin,
+                               Canvas.EdgeType.AA)) {
+            return;
+        }
+
 	    renderer.setTypeface(typeface);
         renderer.setTypeSize(typeSize);
-        renderer.setScaleX(1.0f);
+        renderer.setScaleX(getScaleX());
         renderer.setWritingDirection(writingDirection);
 
         int defaultFillColor = renderer.getFillColor();
@@ -675,8 +792,6 @@ public class GlyphRun {
                 renderer.setFillColor(((ForegroundColorSpan) span).getForegroundColor());
             } else if (span instanceof ReplacementSpan) {
                 replacement = (ReplacementSpan) span;
-            } else if (span instanceof ScaleXSpan) {
-                renderer.setScaleX(((ScaleXSpan) span).getScaleX());
             }
         }
 
@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.layout;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.Spanned;
+import android.text.style.LeadingMarginSpan;
+import android.text.style.LineBackgroundSpan;
+import android.text.style.ReplacementSpan;
+
+import com.mta.tehreer.collections.FloatList;
+import com.mta.tehreer.collections.IntList;
+import com.mta.tehreer.collections.PointList;
+import com.mta.tehreer.graphics.Renderer;
+import com.mta.tehreer.graphics.Typeface;
+import com.mta.tehreer.sfnt.WritingDirection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A list of drawing operations recorded from the lines of a frame. The spans, clusters and caret
+ * edges are resolved while recording, so that replaying the list neither looks up any span nor
+ * allocates. The operations are grouped by line so that only the visible lines can be replayed.
+ * <p>
+ * The list only records what is derived from the text. The style of the renderer, including the
+ * fill color of glyphs without a color span, is read at the time of replay, so a list never goes
+ * stale when the renderer is changed.
+ */
+final class RenderList {
+
+    private static abstract class Item {
+        abstract void draw(Renderer renderer, Canvas canvas, Paint paint, int fillColor);
+    }
+
+    /**
+     * An item covering a run, which is skipped if the bounds of the run are outside the clip.
+     */
+    private static abstract class RunItem extends Item {
+
+        final float boundsLeft;
+        final float boundsTop;
+        final float boundsRight;
+        final float boundsBottom;
+
+        RunItem(RenderList list) {
+            this.boundsLeft = list.runLeft;
+            this.boundsTop = list.runTop;
+            this.boundsRight = list.runRight;
+            this.boundsBottom = list.runBottom;
+        }
+
+        boolean isRejected(Canvas canvas) {
+            return canvas.quickReject(boundsLeft, boundsTop, boundsRight, boundsBottom,
+                                      Canvas.EdgeType.AA);
+        }
+    }
+
+    private static final class GlyphItem extends RunItem {
+
+        final float x;
+        final float y;
+        final boolean clipped;
+        final float clipLeft;
+        final float clipRight;
+        final Typeface typeface;
+        final float typeSize;
+        final float scaleX;
+        final WritingDirection writingDirection;
+        final boolean hasFillColor;
+        final int fillColor;
+        final IntList glyphIds;
+        final PointList glyphOffsets;
+        final FloatList glyphAdvances;
+
+        GlyphItem(RenderList list, GlyphRun run, float x, float y,
+                  boolean clipped, float clipLeft, float clipRight,
+                  float scaleX, boolean hasFillColor, int fillColor, int glyphStart, int glyphEnd) {
+            super(list);
+            this.x = x;
+            this.y = y;
+            this.clipped = clipped;
+            this.clipLeft = clipLeft;
+            this.clipRight = clipRight;
+            this.typeface = run.getTypeface();
+            this.typeSize = run.getTypeSize();
+            this.scaleX = scaleX;
+            this.writingDirection = run.getWritingDirection();
+            this.hasFillColor = hasFillColor;
+            this.fillColor = fillColor;
+            this.glyphIds = run.getGlyphIds().subList(glyphStart, glyphEnd);
+            this.glyphOffsets = run.getGlyphOffsets().subList(glyphStart, glyphEnd);
+            this.glyphAdvances = run.getGlyphAdvances().subList(glyphStart, glyphEnd);
+        }
+
+        @Override
+        void draw(Renderer renderer, Canvas canvas, Paint paint, int fillColor) {
+            if (isRejected(canvas)) {
+                return;
+            }
+
+            renderer.setTypeface(typeface);
+            renderer.setTypeSize(typeSize);
+            renderer.setScaleX(scaleX);
+            renderer.setWritingDirection(writingDirection);
+            renderer.setFillColor(hasFillColor ? this.fillColor : fillColor);
+
+            int saveCount = canvas.save();
+            canvas.translate(x, y);
+            if (clipped) {
+                canvas.clipRect(clipLeft, Float.NEGATIVE_INFINITY, clipRight, Float.POSITIVE_INFINITY);
+            }
+            renderer.drawGlyphs(canvas, glyphIds, glyphOffsets, glyphAdvances);
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    private static final class ReplacementItem extends RunItem {
+
+        final ReplacementSpan span;
+        final float x;
+        final float y;
+        final int charStart;
+        final int charEnd;
+        final int top;
+        final int bottom;
+
+        ReplacementItem(RenderList list, ReplacementSpan span, float x, float y,
+                        int charStart, int charEnd, int top, int bottom) {
+            super(list);
+            this.span = span;
+            this.x = x;
+            this.y = y;
+            this.charStart = charStart;
+            this.charEnd = charEnd;
+            this.top = top;
+            this.bottom = bottom;
+        }
+
+        @Override
+        void draw(Renderer renderer, Canvas canvas, Paint paint, int fillColor) {
+            if (isRejected(canvas)) {
+                return;
+            }
+
+            canvas.translate(x, y);
+            span.draw(canvas, null, charStart, charEnd, 0, top, 0, bottom, null);
+            canvas.translate(-x, -y);
+        }
+    }
+
+    private static final class MarginItem extends Item {
+
+        final LeadingMarginSpan span;
+        final int margin;
+        final int direction;
+        final int top;
+        final int baseline;
+        final int bottom;
+        final Spanned text;
+        final int start;
+        final int end;
+        final boolean first;
+
+        MarginItem(LeadingMarginSpan span, int margin, int direction,
+                   int top, int baseline, int bottom,
+                   Spanned text, int start, int end, boolean first) {
+            this.span = span;
+            this.margin = margin;
+            this.direction = direction;
+            this.top = top;
+            this.baseline = baseline;
+            this.bottom = bottom;
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.first = first;
+        }
+
+        @Override
+        void draw(Renderer renderer, Canvas canvas, Paint paint, int fillColor) {
+            span.drawLeadingMargin(canvas, paint, margin, direction, top, baseline, bottom,
+                                   text, start, end, first, null);
+        }
+    }
+
+    private static final class BackgroundItem extends Item {
+
+        final LineBackgroundSpan span;
+        final int left;
+        final int right;
+        final int top;
+        final int baseline;
+        final int bottom;
+        final Spanned text;
+        final int start;
+        final int end;
+        final int lineNumber;
+
+        BackgroundItem(LineBackgroundSpan span, int left, int right,
+                       int top, int baseline, int bottom,
+                       Spanned text, int start, int end, int lineNumber) {
+            this.span = span;
+            this.left = left;
+            this.right = right;
+            this.top = top;
+            this.baseline = baseline;
+            this.bottom = bottom;
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.lineNumber = lineNumber;
+        }
+
+        @Override
+        void draw(Renderer renderer, Canvas canvas, Paint paint, int fillColor) {
+            span.drawBackground(canvas, paint, left, right, top, baseline, bottom,
+                                text, start, end, lineNumber);
+        }
+    }
+
+    private final ArrayList<Item> items = new ArrayList<>();
+    private int[] lineStarts = new int[16];
+    private int lineCount;
+    private float runLeft;
+    private float runTop;
+    private float runRight;
+    private float runBottom;
+
+    /**
+     * Starts recording the operations of the next line.
+     */
+    void beginLine() {
+        if (lineCount + 1 >= lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+        }
+
+        lineStarts[lineCount++] = items.size();
+        lineStarts[lineCount] = items.size();
+    }
+
+    private void add(Item item) {
+        items.add(item);
+        lineStarts[lineCount] = items.size();
+    }
+
+    /**
+     * Sets the bounds of the run whose items are recorded next.
+     */
+    void setRunBounds(float left, float top, float right, float bottom) {
+        runLeft = left;
+        runTop = top;
+        runRight = right;
+        runBottom = bottom;
+    }
+
+    void addGlyphs(GlyphRun run, float x, float y, float scaleX, boolean hasFillColor, int fillColor,
+                   int glyphStart, int glyphEnd) {
+        add(new GlyphItem(this, run, x, y, false, 0.0f, 0.0f, scaleX, hasFillColor, fillColor,
+                          glyphStart, glyphEnd));
+    }
+
+    void addClippedGlyphs(GlyphRun run, float x, float y, float clipLeft, float clipRight,
+                          float scaleX, boolean hasFillColor, int fillColor,
+                          int glyphStart, int glyphEnd) {
+        add(new GlyphItem(this, run, x, y, true, clipLeft, clipRight, scaleX, hasFillColor, fillColor,
+                          glyphStart, glyphEnd));
+    }
+
+    void addReplacement(ReplacementSpan span, float x, float y,
+                        int charStart, int charEnd, int top, int bottom) {
+        add(new ReplacementItem(this, span, x, y, charStart, charEnd, top, bottom));
+    }
+
+    void addLeadingMargin(LeadingMarginSpan span, int margin, int direction,
+                          int top, int baseline, int bottom,
+                          Spanned text, int start, int end, boolean first) {
+        add(new MarginItem(span, margin, direction, top, baseline, bottom, text, start, end, first));
+    }
+
+    void addLineBackground(LineBackgroundSpan span, int left, int right,
+                           int top, int baseline, int bottom,
+                           Spanned text, int start, int end, int lineNumber) {
+        add(new BackgroundItem(span, left, right, top, baseline, bottom, text, start, end, lineNumber));
+    }
+
+    /**
+     * Replays the operations of given range of lines. The fill color of the renderer is used for
+     * the glyphs without a color span and is restored afterwards.
+     */
+    void draw(Renderer renderer, Canvas canvas, Paint paint, int firstLine, int lastLine) {
+        int fillColor = renderer.getFillColor();
+        int itemStart = lineStarts[firstLine];
+        int itemEnd = lineStarts[lastLine + 1];
+
+        for (int i = itemStart; i < itemEnd; i++) {
+            items.get(i).draw(renderer, canvas, paint, fillColor);
+        }
+
+        renderer.setFillColor(fillColor);
+    }
+
+    /**
+     * Replays all recorded operations.
+     */
+    void draw(Renderer renderer, Canvas canvas, Paint paint) {
+        if (lineCount > 0) {
+            draw(renderer, canvas, paint, 0, lineCount - 1);
+        }
+    }
+}
@@ -18,10 +18,12 @@ package com.mta.tehreer.layout;
 
 import android.graphics.RectF;
 import android.text.SpannableString;
+import android.text.SpannableStringBuilder;
 import android.text.Spanned;
 
 import com.mta.tehreer.graphics.Typeface;
 import com.mta.tehreer.internal.layout.BreakResolver;
+import com.mta.tehreer.internal.layout.LazyShapeResolver;
 import com.mta.tehreer.internal.layout.ParagraphCollection;
 import com.mta.tehreer.internal.layout.RunCollection;
 import com.mta.tehreer.internal.layout.ShapeResolver;
@@ -41,9 +43,11 @@ public class Typesetter {
 
     private String mText;
     private Spanned mSpanned;
+    private List<Object> mDefaultSpans;
     private byte[] mBreakRecord;
     private ParagraphCollection mBidiParagraphs;
     private RunCollection mIntrinsicRuns;
+    private LazyShapeResolver mLazyResolver;
 
     /**
      * Constructs the typesetter object using given text, typeface and type size.
@@ -70,7 +74,7 @@ public class Typesetter {
         spanned.setSpan(new TypefaceSpan(typeface), 0, text.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
         spanned.setSpan(new TypeSizeSpan(typeSize), 0, text.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
 
-        init(text, spanned, null);
+        init(text, spanned, null, TypesettingMode.SEQUENTIAL);
 	}
 
     /**
@@ -86,17 +90,35 @@ public class Typesetter {
     }
 
     public Typesetter(Spanned spanned, List<Object> defaultSpans) {
+        this(spanned, defaultSpans, TypesettingMode.SEQUENTIAL);
+    }
+
+    /**
+     * Constructs the typesetter object using a spanned text, resolving it in the given mode.
+     *
+     * @param spanned The spanned text to typeset.
+     * @param defaultSpans The spans to apply to the whole text before the spans of
+     *                     <code>spanned</code>, or <code>null</code>.
+     * @param mode The mode in which to resolve and shape the text.
+     *
+     * @throws NullPointerException if <code>spanned</code> is null, or <code>mode</code> is null.
+     * @throws IllegalArgumentException if <code>spanned</code> is empty.
+     */
+    public Typesetter(Spanned spanned, List<Object> defaultSpans, TypesettingMode mode) {
         if (spanned == null) {
             throw new NullPointerException("Spanned text is null");
         }
+        if (mode == null) {
+            throw new NullPointerException("Typesetting mode is null");
+        }
         if (spanned.length() == 0) {
             throw new IllegalArgumentException("Spanned text is empty");
         }
 
-        init(StringUtils.copyString(spanned), spanned, defaultSpans);
+        init(StringUtils.copyString(spanned), spanned, defaultSpans, mode);
     }
 
-    private void init(String text, Spanned spanned, List<Object> defaultSpans) {
+    private void init(String text, Spanned spanned, List<Object> defaultSpans, TypesettingMode mode) {
         mText = text;
         mSpanned = spanned;
         mBreakRecord = new byte[text.length()];
@@ -106,21 +128,116 @@ public class Typesetter {
         if (defaultSpans == null) {
             defaultSpans = Collections.EMPTY_LIST;
         }
+        mDefaultSpans = defaultSpans;
+
+        switch (mode) {
+        case LAZY:
+            mLazyResolver = new LazyShapeResolver(mText, mSpanned, defaultSpans, mBreakRecord,
+                                                  mBidiParagraphs, mIntrinsicRuns, 0);
+            break;
 
-        BreakResolver.fillBreaks(mText, mBreakRecord);
-        ShapeResolver.fillRuns(mText, mSpanned, defaultSpans, mBreakRecord,
-                               mBidiParagraphs, mIntrinsicRuns);
+        case PARALLEL:
+            BreakResolver.fillBreaks(mText, mBreakRecord);
+            ShapeResolver.fillRunsInParallel(mText, mSpanned, defaultSpans, mBreakRecord,
+                                             mBidiParagraphs, mIntrinsicRuns);
+            break;
+
+        default:
+            BreakResolver.fillBreaks(mText, mBreakRecord);
+            ShapeResolver.fillRuns(mText, mSpanned, defaultSpans, mBreakRecord,
+                                   mBidiParagraphs, mIntrinsicRuns);
+            break;
+        }
     }
 
     /**
-     * Returns the spanned source text for which this typesetter object was created.
+     * Returns the spanned source text for which this typesetter object was created, or its edited
+     * copy if the text has been replaced afterwards.
      *
-     * @return The spanned source text for which this typesetter object was created.
+     * @return The spanned source text of this typesetter object.
      */
     public Spanned getSpanned() {
         return mSpanned;
     }
 
+    /**
+     * Replaces the specified range of source text with the given text, and typesets again only the
+     * paragraphs touched by the edit. The spans of source text are adjusted in the same way as
+     * {@link SpannableStringBuilder#replace(int, int, CharSequence)} does, and the spans of given
+     * text are copied into the replaced range. The lines and frames created before the edit are not
+     * affected.
+     * <p>
+     * In lazy mode, the paragraphs following the edit are resolved again on demand.
+     *
+     * @param charStart The index to the first character of the range to replace.
+     * @param charEnd The index after the last character of the range to replace.
+     * @param text The text to put in place of the range.
+     *
+     * @throws NullPointerException if <code>text</code> is null.
+     * @throws IllegalArgumentException if any of the following is true:
+     *         <ul>
+     *             <li><code>charStart</code> is negative</li>
+     *             <li><code>charEnd</code> is greater than the length of source text</li>
+     *             <li><code>charStart</code> is greater than <code>charEnd</code></li>
+     *             <li>the source text would become empty</li>
+     *         </ul>
+     */
+    public void replace(int charStart, int charEnd, CharSequence text) {
+        if (text == null) {
+            throw new NullPointerException("Text is null");
+        }
+        if (charStart < 0) {
+            throw new IllegalArgumentException("Char Start: " + charStart);
+        }
+        if (charEnd > mText.length()) {
+            throw new IllegalArgumentException("Char End: " + charEnd + ", Text Length: " + mText.length());
+        }
+        if (charStart > charEnd) {
+            throw new IllegalArgumentException("Bad Range: [" + charStart + ".." + charEnd + ")");
+        }
+        if (mText.length() - (charEnd - charStart) + text.length() == 0) {
+            throw new IllegalArgumentException("Text would become empty");
+        }
+
+        SpannableStringBuilder spanned = new SpannableStringBuilder(mSpanned);
+        spanned.replace(charStart, charEnd, text);
+
+        String newText = StringUtils.copyString(spanned);
+        byte[] newBreaks;
+
+        if (mLazyResolver != null) {
+            int paragraphIndex = ShapeResolver.findEditedParagraph(newText, mBidiParagraphs, charStart);
+            int resolvedEnd = ShapeResolver.truncateRuns(mBidiParagraphs, mIntrinsicRuns, paragraphIndex);
+
+            newBreaks = new byte[newText.length()];
+            System.arraycopy(mBreakRecord, 0, newBreaks, 0, resolvedEnd);
+
+            mLazyResolver = new LazyShapeResolver(newText, spanned, mDefaultSpans, newBreaks,
+                                                  mBidiParagraphs, mIntrinsicRuns, resolvedEnd);
+        } else {
+            newBreaks = ShapeResolver.refillRuns(newText, spanned, mDefaultSpans, mBreakRecord,
+                                                 mBidiParagraphs, mIntrinsicRuns,
+                                                 charStart, charEnd, charStart + text.length());
+        }
+
+        mText = newText;
+        mSpanned = spanned;
+        mBreakRecord = newBreaks;
+    }
+
+    /**
+     * Makes sure that all paragraphs up to the given char have been resolved. It has no effect
+     * unless the typesetter was created in lazy mode.
+     */
+    void resolveParagraphs(int charEnd) {
+        if (mLazyResolver != null) {
+            mLazyResolver.resolve(charEnd);
+            if (mLazyResolver.isComplete()) {
+                mLazyResolver = null;
+            }
+        }
+    }
+
     ParagraphCollection getParagraphs() {
         return mBidiParagraphs;
     }
@@ -172,6 +289,8 @@ public class Typesetter {
             throw new IllegalArgumentException(rangeError);
         }
 
+        resolveParagraphs(charEnd);
+
         switch (breakMode) {
         case CHARACTER:
             return BreakResolver.suggestForwardCharBreak(mText, mIntrinsicRuns, mBreakRecord,
@@ -210,6 +329,8 @@ public class Typesetter {
             throw new IllegalArgumentException(rangeError);
         }
 
+        resolveParagraphs(charEnd);
+
         switch (breakMode) {
         case CHARACTER:
             return BreakResolver.suggestBackwardCharBreak(mText, mIntrinsicRuns, mBreakRecord,
@@ -240,6 +361,8 @@ public class Typesetter {
             throw new IllegalArgumentException(rangeError);
         }
 
+        resolveParagraphs(charEnd);
+
         LineResolver resolver = new LineResolver();
         resolver.reset(mSpanned, mBidiParagraphs, mIntrinsicRuns);
 
@@ -279,6 +402,8 @@ public class Typesetter {
             throw new IllegalArgumentException(rangeError);
         }
 
+        resolveParagraphs(charEnd);
+
         LineResolver resolver = new LineResolver();
         resolver.reset(mSpanned, mBidiParagraphs, mIntrinsicRuns);
 
@@ -326,6 +451,8 @@ public class Typesetter {
             throw new IllegalArgumentException("Truncation token is empty");
         }
 
+        resolveParagraphs(charEnd);
+
         LineResolver resolver = new LineResolver();
         resolver.reset(mSpanned, mBidiParagraphs, mIntrinsicRuns);
 
@@ -370,6 +497,8 @@ public class Typesetter {
             throw new IllegalArgumentException(rangeError);
         }
 
+        resolveParagraphs(charEnd);
+
         LineResolver resolver = new LineResolver();
         resolver.reset(mSpanned, mBidiParagraphs, mIntrinsicRuns);
 
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.layout;
+
+/**
+ * Specifies how a typesetter resolves and shapes its text.
+ */
+public enum TypesettingMode {
+    /**
+     * Shapes the paragraphs one after another on the calling thread.
+     */
+    SEQUENTIAL,
+    /**
+     * Shapes the paragraphs on multiple threads, one group of consecutive paragraphs per task,
+     * while the calling thread waits for them. The result is identical to sequential mode. It
+     * suits long texts having many paragraphs, such as chapters of a book.
+     */
+    PARALLEL,
+    /**
+     * Defers the resolution and shaping of each paragraph until a line, a frame or a break
+     * suggestion first touches its range, so the time taken to display the beginning of a long
+     * text does not depend on its total length. The lines are identical to sequential mode. A lazy
+     * typesetter keeps changing after construction and must not be used from multiple threads at
+     * the same time.
+     */
+    LAZY
+}
@@ -19,6 +19,7 @@ package com.mta.tehreer.sfnt;
 import com.mta.tehreer.graphics.Typeface;
 import com.mta.tehreer.internal.Constants;
 import com.mta.tehreer.internal.JniBridge;
+import com.mta.tehreer.internal.NativeReleaser;
 import com.mta.tehreer.Disposable;
 
 /**
@@ -30,31 +31,38 @@ public class ShapingEngine implements Disposable {
     }
 
     private static class Finalizable extends ShapingEngine {
+        private final NativeReleaser.Registration registration;
+
         Finalizable(ShapingEngine parent) {
             super(parent);
+            registration = NativeReleaser.register(this, new Release(nativeEngine));
         }
 
         @Override
         public void dispose() {
-            throw new UnsupportedOperationException(Constants.EXCEPTION_FINALIZABLE_OBJECT);
+            registration.release();
+        }
+    }
+
+    private static final class Release implements Runnable {
+        private final long nativeEngine;
+
+        Release(long nativeEngine) {
+            this.nativeEngine = nativeEngine;
         }
 
         @Override
-        protected void finalize() throws Throwable {
-            try {
-                super.dispose();
-            } finally {
-                super.finalize();
-            }
+        public void run() {
+            nDispose(nativeEngine);
         }
     }
 
     /**
-     * Wraps a shaping engine object into a finalizable instance which is guaranteed to be disposed
-     * automatically by the GC when no longer in use. After calling this method,
-     * <code>dispose()</code> should not be called on either original object or returned object.
-     * Calling <code>dispose()</code> on returned object will throw an
-     * <code>UnsupportedOperationException</code>.
+     * Wraps a shaping engine object into a finalizable instance whose native memory is released
+     * automatically by a background thread when it is no longer in use. After calling this method,
+     * <code>dispose()</code> should not be called on the original object. Calling
+     * <code>dispose()</code> on returned object releases the native memory early, and calling it
+     * again has no effect.
      * <p>
      * <strong>Note:</strong> The behavior is undefined if the passed-in object is already disposed
      * or wrapped into another finalizable instance.
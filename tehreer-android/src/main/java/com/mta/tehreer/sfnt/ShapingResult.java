@@ -22,6 +22,7 @@ import com.mta.tehreer.collections.IntList;
 import com.mta.tehreer.collections.PointList;
 import com.mta.tehreer.internal.Constants;
 import com.mta.tehreer.internal.JniBridge;
+import com.mta.tehreer.internal.NativeReleaser;
 import com.mta.tehreer.internal.collections.Int32BufferFloatList;
 import com.mta.tehreer.internal.collections.Int32BufferPointList;
 import com.mta.tehreer.internal.collections.UInt16BufferIntList;
@@ -38,31 +39,38 @@ public class ShapingResult implements Disposable {
     }
 
     private static final class Finalizable extends ShapingResult {
+        private final NativeReleaser.Registration registration;
+
         Finalizable(ShapingResult parent) {
             super(parent);
+            registration = NativeReleaser.register(this, new Release(nativeResult));
         }
 
         @Override
         public void dispose() {
-            throw new UnsupportedOperationException(Constants.EXCEPTION_FINALIZABLE_OBJECT);
+            registration.release();
+        }
+    }
+
+    private static final class Release implements Runnable {
+        private final long nativeResult;
+
+        Release(long nativeResult) {
+            this.nativeResult = nativeResult;
         }
 
         @Override
-        protected void finalize() throws Throwable {
-            try {
-                super.dispose();
-            } finally {
-                super.finalize();
-            }
+        public void run() {
+            nDispose(nativeResult);
         }
     }
 
     /**
-     * Wraps a shaping result object into a finalizable instance which is guaranteed to be
-     * disposed automatically by the GC when no longer in use. After calling this method,
-     * <code>dispose()</code> should not be called on either original object or returned object.
-     * Calling <code>dispose()</code> on returned object will throw an
-     * <code>UnsupportedOperationException</code>.
+     * Wraps a shaping result object into a finalizable instance whose native memory is released
+     * automatically by a background thread when it is no longer in use. After calling this method,
+     * <code>dispose()</code> should not be called on the original object. Calling
+     * <code>dispose()</code> on returned object releases the native memory early, and calling it
+     * again has no effect.
      * <p>
      * <strong>Note:</strong> The behavior is undefined if the passed-in object is already disposed
      * or wrapped into another finalizable instance.
@@ -20,6 +20,7 @@ import com.mta.tehreer.Disposable;
 import com.mta.tehreer.collections.IntList;
 import com.mta.tehreer.internal.Constants;
 import com.mta.tehreer.internal.JniBridge;
+import com.mta.tehreer.internal.NativeReleaser;
 import com.mta.tehreer.internal.collections.UInt8BufferIntList;
 
 /**
@@ -42,31 +43,41 @@ public class BidiAlgorithm implements Disposable {
     public static final byte MAX_LEVEL = 125;
 
     private static final class Finalizable extends BidiAlgorithm {
+        private final NativeReleaser.Registration registration;
+
         Finalizable(BidiAlgorithm parent) {
             super(parent);
+            registration = NativeReleaser.register(this, new Release(nativeBuffer, nativeAlgorithm));
         }
 
         @Override
         public void dispose() {
-            throw new UnsupportedOperationException(Constants.EXCEPTION_FINALIZABLE_OBJECT);
+            registration.release();
+        }
+    }
+
+    private static final class Release implements Runnable {
+        private final long nativeBuffer;
+        private final long nativeAlgorithm;
+
+        Release(long nativeBuffer, long nativeAlgorithm) {
+            this.nativeBuffer = nativeBuffer;
+            this.nativeAlgorithm = nativeAlgorithm;
         }
 
         @Override
-        protected void finalize() throws Throwable {
-            try {
-                super.dispose();
-            } finally {
-                super.finalize();
-            }
+        public void run() {
+            nDispose(nativeAlgorithm);
+            BidiBuffer.release(nativeBuffer);
         }
     }
 
     /**
-     * Wraps a bidi algorithm object into a finalizable instance which is guaranteed to be disposed
-     * automatically by the GC when no longer in use. After calling this method,
-     * <code>dispose()</code> should not be called on either original object or returned object.
-     * Calling <code>dispose()</code> on returned object will throw an
-     * <code>UnsupportedOperationException</code>.
+     * Wraps a bidi algorithm object into a finalizable instance whose native memory is released
+     * automatically by a background thread when it is no longer in use. After calling this method,
+     * <code>dispose()</code> should not be called on the original object. Calling
+     * <code>dispose()</code> on returned object releases the native memory early, and calling it
+     * again has no effect.
      * <p>
      * <strong>Note:</strong> The behavior is undefined if the passed-in object is already disposed
      * or wrapped into another finalizable instance.
@@ -20,6 +20,7 @@ import com.mta.tehreer.Disposable;
 import com.mta.tehreer.internal.Constants;
 import com.mta.tehreer.internal.Description;
 import com.mta.tehreer.internal.JniBridge;
+import com.mta.tehreer.internal.NativeReleaser;
 
 import java.util.AbstractList;
 import java.util.Iterator;
@@ -38,31 +39,41 @@ public class BidiLine implements Disposable {
     }
 
     private static class Finalizable extends BidiLine {
+        private final NativeReleaser.Registration registration;
+
         Finalizable(BidiLine parent) {
             super(parent);
+            registration = NativeReleaser.register(this, new Release(nativeBuffer, nativeLine));
         }
 
         @Override
         public void dispose() {
-            throw new UnsupportedOperationException(Constants.EXCEPTION_FINALIZABLE_OBJECT);
+            registration.release();
+        }
+    }
+
+    private static final class Release implements Runnable {
+        private final long nativeBuffer;
+        private final long nativeLine;
+
+        Release(long nativeBuffer, long nativeLine) {
+            this.nativeBuffer = nativeBuffer;
+            this.nativeLine = nativeLine;
         }
 
         @Override
-        protected void finalize() throws Throwable {
-            try {
-                super.dispose();
-            } finally {
-                super.finalize();
-            }
+        public void run() {
+            nDispose(nativeLine);
+            BidiBuffer.release(nativeBuffer);
         }
     }
 
     /**
-     * Wraps a bidi line object into a finalizable instance which is guaranteed to be disposed
-     * automatically by the GC when no longer in use. After calling this method,
-     * <code>dispose()</code> should not be called on either original object or returned object.
-     * Calling <code>dispose()</code> on returned object will throw an
-     * <code>UnsupportedOperationException</code>.
+     * Wraps a bidi line object into a finalizable instance whose native memory is released
+     * automatically by a background thread when it is no longer in use. After calling this method,
+     * <code>dispose()</code> should not be called on the original object. Calling
+     * <code>dispose()</code> on returned object releases the native memory early, and calling it
+     * again has no effect.
      * <p>
      * <strong>Note:</strong> The behavior is undefined if the passed-in object is already disposed
      * or wrapped into another finalizable instance.
@@ -200,6 +211,7 @@ public class BidiLine implements Disposable {
 
         MirrorIterator() {
             locator = new BidiMirrorLocator();
+            NativeReleaser.register(this, new LocatorRelease(locator));
             locator.loadLine(BidiLine.this);
 
             pair = locator.nextPair();
@@ -225,14 +237,18 @@ public class BidiLine implements Disposable {
         public void remove() {
             throw new UnsupportedOperationException();
         }
+    }
+
+    private static final class LocatorRelease implements Runnable {
+        private final BidiMirrorLocator locator;
+
+        LocatorRelease(BidiMirrorLocator locator) {
+            this.locator = locator;
+        }
 
         @Override
-        protected void finalize() throws Throwable {
-            try {
-                locator.dispose();
-            } finally {
-                super.finalize();
-            }
+        public void run() {
+            locator.dispose();
         }
     }
 
@@ -21,6 +21,7 @@ import com.mta.tehreer.collections.ByteList;
 import com.mta.tehreer.internal.Constants;
 import com.mta.tehreer.internal.Description;
 import com.mta.tehreer.internal.JniBridge;
+import com.mta.tehreer.internal.NativeReleaser;
 import com.mta.tehreer.internal.collections.Int8BufferByteList;
 
 import java.util.Iterator;
@@ -37,31 +38,41 @@ public class BidiParagraph implements Disposable {
     }
 
     private static class Finalizable extends BidiParagraph {
+        private final NativeReleaser.Registration registration;
+
         Finalizable(BidiParagraph parent) {
             super(parent);
+            registration = NativeReleaser.register(this, new Release(nativeBuffer, nativeParagraph));
         }
 
         @Override
         public void dispose() {
-            throw new UnsupportedOperationException(Constants.EXCEPTION_FINALIZABLE_OBJECT);
+            registration.release();
+        }
+    }
+
+    private static final class Release implements Runnable {
+        private final long nativeBuffer;
+        private final long nativeParagraph;
+
+        Release(long nativeBuffer, long nativeParagraph) {
+            this.nativeBuffer = nativeBuffer;
+            this.nativeParagraph = nativeParagraph;
         }
 
         @Override
-        protected void finalize() throws Throwable {
-            try {
-                super.dispose();
-            } finally {
-                super.finalize();
-            }
+        public void run() {
+            nDispose(nativeParagraph);
+            BidiBuffer.release(nativeBuffer);
         }
     }
 
     /**
-     * Wraps a bidi paragraph object into a finalizable instance which is guaranteed to be disposed
-     * automatically by the GC when no longer in use. After calling this method,
-     * <code>dispose()</code> should not be called on either original object or returned object.
-     * Calling <code>dispose()</code> on returned object will throw an
-     * <code>UnsupportedOperationException</code>.
+     * Wraps a bidi paragraph object into a finalizable instance whose native memory is released
+     * automatically by a background thread when it is no longer in use. After calling this method,
+     * <code>dispose()</code> should not be called on the original object. Calling
+     * <code>dispose()</code> on returned object releases the native memory early, and calling it
+     * again has no effect.
      * <p>
      * <strong>Note:</strong> The behavior is undefined if the passed-in object is already disposed
      * or wrapped into another finalizable instance.
@@ -171,7 +171,6 @@ FILE_LIST := \
     BidiMirrorLocator.cpp \
     BidiParagraph.cpp \
     FreeType.cpp \
-    Glyph.cpp \
     GlyphRasterizer.cpp \
     JavaBridge.cpp \
     PatternCache.cpp \
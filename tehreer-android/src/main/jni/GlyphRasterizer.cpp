@@ -25,6 +25,9 @@ extern "C" {
 #include FT_TYPES_H
 }
 
+#include <cstdint>
+#include <cstdlib>
+#include <cstring>
 #include <jni.h>
 
 #include "FreeType.h"
@@ -64,10 +67,12 @@ GlyphRasterizer::~GlyphRasterizer()
     }
 }
 
-void GlyphRasterizer::unsafeActivate(FT_Face ftFace)
+void GlyphRasterizer::unsafeActivate(FT_Face ftFace, FT_Pos offsetX)
 {
+    FT_Vector delta = { offsetX, 0 };
+
     FT_Activate_Size(m_size);
-    FT_Set_Transform(ftFace, &m_transform, nullptr);
+    FT_Set_Transform(ftFace, &m_transform, offsetX ? &delta : nullptr);
 }
 
 jobject GlyphRasterizer::unsafeCreateBitmap(const JavaBridge bridge, const FT_Bitmap *bitmap)
@@ -93,7 +98,7 @@ jobject GlyphRasterizer::unsafeCreateBitmap(const JavaBridge bridge, const FT_Bi
     return glyphBitmap;
 }
 
-void GlyphRasterizer::loadBitmap(const JavaBridge bridge, jobject glyph)
+void GlyphRasterizer::loadBitmap(const JavaBridge bridge, jobject glyph, FT_Pos offsetX)
 {
     FT_UInt glyphID = static_cast<FT_UInt>(bridge.Glyph_getGlyphID(glyph));
     jobject glyphBitmap = nullptr;
@@ -103,7 +108,7 @@ void GlyphRasterizer::loadBitmap(const JavaBridge bridge, jobject glyph)
     m_typeface.lock();
 
     FT_Face baseFace = m_typeface.ftFace();
-    unsafeActivate(baseFace);
+    unsafeActivate(baseFace, offsetX);
 
     FT_Error error = FT_Load_Glyph(baseFace, glyphID, FT_LOAD_RENDER);
     if (error == FT_Err_Ok) {
@@ -121,82 +126,314 @@ void GlyphRasterizer::loadBitmap(const JavaBridge bridge, jobject glyph)
     bridge.Glyph_ownBitmap(glyph, glyphBitmap, leftSideBearing, topSideBearing);
 }
 
-void GlyphRasterizer::loadOutline(const JavaBridge bridge, jobject glyph)
+void GlyphRasterizer::loadCoverage(const JavaBridge bridge, jobject glyph, FT_Pos offsetX, jobject buffer, jint maxExtent)
 {
     FT_UInt glyphID = static_cast<FT_UInt>(bridge.Glyph_getGlyphID(glyph));
+    JNIEnv *env = bridge.env();
+    uint8_t *target = static_cast<uint8_t *>(env->GetDirectBufferAddress(buffer));
+    jlong capacity = env->GetDirectBufferCapacity(buffer);
+    jobject glyphBitmap = nullptr;
+    bool isCoverage = false;
+    jint leftSideBearing = 0;
+    jint topSideBearing = 0;
+    jint width = 0;
+    jint height = 0;
 
     m_typeface.lock();
 
     FT_Face baseFace = m_typeface.ftFace();
-    unsafeActivate(baseFace);
+    unsafeActivate(baseFace, offsetX);
 
-    FT_Glyph outline = nullptr;
-    FT_Error error = FT_Load_Glyph(baseFace, glyphID, FT_LOAD_NO_BITMAP);
+    FT_Error error = FT_Load_Glyph(baseFace, glyphID, FT_LOAD_RENDER);
     if (error == FT_Err_Ok) {
-        FT_Get_Glyph(baseFace->glyph, &outline);
+        FT_GlyphSlot glyphSlot = baseFace->glyph;
+        FT_Bitmap *bitmap = &glyphSlot->bitmap;
+
+        width = static_cast<jint>(bitmap->width);
+        height = static_cast<jint>(bitmap->rows);
+        leftSideBearing = glyphSlot->bitmap_left;
+        topSideBearing = glyphSlot->bitmap_top;
+
+        if (bitmap->pixel_mode == FT_PIXEL_MODE_GRAY && target
+            && width <= maxExtent && height <= maxExtent
+            && static_cast<jlong>(width) * height <= capacity) {
+            /*
+             * Write the rows tightly packed so that the buffer can be copied into the slab as it
+             * is. The pitch of a FreeType bitmap can be larger than its width.
+             */
+            const uint8_t *source = bitmap->buffer;
+            for (jint row = 0; row < height; row++) {
+                memcpy(target + (row * width), source + (row * bitmap->pitch), width);
+            }
+            isCoverage = true;
+        } else {
+            glyphBitmap = unsafeCreateBitmap(bridge, bitmap);
+            if (!glyphBitmap) {
+                leftSideBearing = 0;
+                topSideBearing = 0;
+            }
+        }
     }
 
     m_typeface.unlock();
 
-    bridge.Glyph_ownOutline(glyph, outline ? reinterpret_cast<jlong>(outline) : 0);
+    if (isCoverage) {
+        bridge.Glyph_ownCoverage(glyph, leftSideBearing, topSideBearing, width, height);
+    } else {
+        bridge.Glyph_ownBitmap(glyph, glyphBitmap, leftSideBearing, topSideBearing);
+    }
 }
 
-void GlyphRasterizer::loadPath(const JavaBridge bridge, jobject glyph)
+jint GlyphRasterizer::loadMasks(const jint *glyphIDs, jint glyphCount, FT_Pos offsetX,
+    uint8_t *buffer, jlong capacity, jint maxExtent, jint *metrics)
 {
-    FT_UInt glyphID = static_cast<FT_UInt>(bridge.Glyph_getGlyphID(glyph));
+    jlong offset = 0;
+    jint index;
 
     m_typeface.lock();
 
     FT_Face baseFace = m_typeface.ftFace();
-    unsafeActivate(baseFace);
+    unsafeActivate(baseFace, offsetX);
+
+    for (index = 0; index < glyphCount; index++) {
+        FT_UInt glyphID = static_cast<FT_UInt>(glyphIDs[index]);
+        jint *glyphMetrics = metrics + (index * MaskMetricCount);
+
+        glyphMetrics[MaskLeft] = 0;
+        glyphMetrics[MaskTop] = 0;
+        glyphMetrics[MaskWidth] = 0;
+        glyphMetrics[MaskHeight] = 0;
+        glyphMetrics[MaskOffset] = static_cast<jint>(offset);
+
+        FT_Error error = FT_Load_Glyph(baseFace, glyphID, FT_LOAD_RENDER);
+        if (error != FT_Err_Ok) {
+            /* Leave an empty mask like the single glyph loads do. */
+            continue;
+        }
+
+        FT_GlyphSlot glyphSlot = baseFace->glyph;
+        FT_Bitmap *bitmap = &glyphSlot->bitmap;
+        jint width = static_cast<jint>(bitmap->width);
+        jint height = static_cast<jint>(bitmap->rows);
+        jlong length = static_cast<jlong>(width) * height;
+
+        if (bitmap->pixel_mode != FT_PIXEL_MODE_GRAY
+            || width > maxExtent || height > maxExtent || length > capacity) {
+            glyphMetrics[MaskOffset] = -1;
+            continue;
+        }
+        if (offset + length > capacity) {
+            /* The buffer is full, the remaining glyphs go into the next batch. */
+            break;
+        }
+
+        const uint8_t *source = bitmap->buffer;
+        uint8_t *target = buffer + offset;
+        for (jint row = 0; row < height; row++) {
+            memcpy(target + (row * width), source + (row * bitmap->pitch), width);
+        }
 
-    jobject glyphPath = m_typeface.getGlyphPathNoLock(bridge, glyphID);
+        glyphMetrics[MaskLeft] = glyphSlot->bitmap_left;
+        glyphMetrics[MaskTop] = glyphSlot->bitmap_top;
+        glyphMetrics[MaskWidth] = width;
+        glyphMetrics[MaskHeight] = height;
+
+        offset += length;
+    }
 
     m_typeface.unlock();
 
-    bridge.Glyph_ownPath(glyph, glyphPath);
+    return index;
 }
 
-jobject GlyphRasterizer::strokeGlyph(const JavaBridge bridge, jobject glyph, FT_Fixed lineRadius,
+static inline FT_Pos toF26Dot6(jfloat value)
+{
+    return static_cast<FT_Pos>(value * 64 + (value < 0 ? -0.5f : 0.5f));
+}
+
+static void appendPoint(FT_Outline *outline, const jfloat *point, char tag)
+{
+    FT_Vector &vector = outline->points[outline->n_points];
+    vector.x = toF26Dot6(point[0]);
+    vector.y = toF26Dot6(point[1]);
+
+    outline->tags[outline->n_points] = tag;
+    outline->n_points++;
+}
+
+static void closeContour(FT_Outline *outline)
+{
+    short first = (outline->n_contours > 0 ? outline->contours[outline->n_contours - 1] + 1 : 0);
+    short last = outline->n_points - 1;
+
+    if (last > first) {
+        /*
+         * NOTE:
+         *      A decomposed contour ends at its starting point, which is implied by the outline.
+         */
+        FT_Vector &start = outline->points[first];
+        FT_Vector &end = outline->points[last];
+        if (start.x == end.x && start.y == end.y) {
+            outline->n_points--;
+            last--;
+        }
+    }
+
+    if (last >= first) {
+        outline->contours[outline->n_contours] = last;
+        outline->n_contours++;
+    }
+}
+
+jobject GlyphRasterizer::strokeOutline(const JavaBridge bridge, jint glyphID,
+    const jbyte *verbs, jint verbCount, const jfloat *points, FT_Fixed lineRadius,
     FT_Stroker_LineCap lineCap, FT_Stroker_LineJoin lineJoin, FT_Fixed miterLimit)
 {
-    FT_UInt glyphID = static_cast<FT_UInt>(bridge.Glyph_getGlyphID(glyph));
-    FT_Glyph baseGlyph = reinterpret_cast<FT_Glyph>(bridge.Glyph_getNativeOutline(glyph));
+    FT_Library library = FreeType::library();
+    FT_UInt pointCount = 0;
+    FT_UInt contourCount = 0;
+
+    for (jint i = 0; i < verbCount; i++) {
+        switch (verbs[i]) {
+        case Typeface::OutlineMoveTo:
+            contourCount += 1;
+            pointCount += 1;
+            break;
+
+        case Typeface::OutlineLineTo:
+            pointCount += 1;
+            break;
+
+        case Typeface::OutlineQuadTo:
+            pointCount += 2;
+            break;
+
+        case Typeface::OutlineCubicTo:
+            pointCount += 3;
+            break;
+        }
+    }
 
-    if (baseGlyph) {
-        m_typeface.lock();
+    FT_Outline outline;
+    if (contourCount == 0
+            || FT_Outline_New(library, pointCount, contourCount, &outline) != FT_Err_Ok) {
+        return nullptr;
+    }
 
-        FT_Stroker stroker = m_typeface.ftStroker();
-        FT_Stroker_Set(stroker, lineRadius, lineCap, lineJoin, miterLimit);
-        FT_Error error = FT_Glyph_Stroke(&baseGlyph, stroker, 0);
+    outline.n_points = 0;
+    outline.n_contours = 0;
 
-        m_typeface.unlock();
+    const jfloat *point = points;
 
-        if (error == FT_Err_Ok) {
-            FT_Glyph_To_Bitmap(&baseGlyph, FT_RENDER_MODE_NORMAL, nullptr, 1);
+    for (jint i = 0; i < verbCount; i++) {
+        switch (verbs[i]) {
+        case Typeface::OutlineMoveTo:
+            if (outline.n_points > 0) {
+                closeContour(&outline);
+            }
+            appendPoint(&outline, point, FT_CURVE_TAG_ON);
+            point += 2;
+            break;
+
+        case Typeface::OutlineLineTo:
+            appendPoint(&outline, point, FT_CURVE_TAG_ON);
+            point += 2;
+            break;
+
+        case Typeface::OutlineQuadTo:
+            appendPoint(&outline, point, FT_CURVE_TAG_CONIC);
+            appendPoint(&outline, point + 2, FT_CURVE_TAG_ON);
+            point += 4;
+            break;
+
+        case Typeface::OutlineCubicTo:
+            appendPoint(&outline, point, FT_CURVE_TAG_CUBIC);
+            appendPoint(&outline, point + 2, FT_CURVE_TAG_CUBIC);
+            appendPoint(&outline, point + 4, FT_CURVE_TAG_ON);
+            point += 6;
+            break;
+        }
+    }
+    closeContour(&outline);
+
+    FT_Outline border;
+    bool stroked = false;
+
+    m_typeface.lock();
+
+    FT_Stroker stroker = m_typeface.ftStroker();
+    FT_Stroker_Set(stroker, lineRadius, lineCap, lineJoin, miterLimit);
 
-            FT_BitmapGlyph bitmapGlyph = reinterpret_cast<FT_BitmapGlyph>(baseGlyph);
-            jobject strokeBitmap = nullptr;
-            jint leftSideBearing = 0;
-            jint topSideBearing = 0;
+    FT_Error error = FT_Stroker_ParseOutline(stroker, &outline, 0);
+    if (error == FT_Err_Ok) {
+        FT_UInt borderPoints;
+        FT_UInt borderContours;
+
+        error = FT_Stroker_GetCounts(stroker, &borderPoints, &borderContours);
+        if (error == FT_Err_Ok) {
+            error = FT_Outline_New(library, borderPoints, borderContours, &border);
+            if (error == FT_Err_Ok) {
+                border.n_points = 0;
+                border.n_contours = 0;
 
-            strokeBitmap = unsafeCreateBitmap(bridge, &bitmapGlyph->bitmap);
-            if (strokeBitmap) {
-                leftSideBearing = bitmapGlyph->left;
-                topSideBearing = bitmapGlyph->top;
+                FT_Stroker_Export(stroker, &border);
+                stroked = true;
             }
+        }
+    }
 
-            jobject result = bridge.Glyph_construct(glyphID);
-            bridge.Glyph_ownBitmap(result, strokeBitmap, leftSideBearing, topSideBearing);
+    m_typeface.unlock();
 
-            /* Dispose the stroked / bitmap glyph. */
-            FT_Done_Glyph(baseGlyph);
+    FT_Outline_Done(library, &outline);
+
+    if (!stroked) {
+        return nullptr;
+    }
 
-            return result;
+    FT_BBox box;
+    FT_Outline_Get_CBox(&border, &box);
+
+    box.xMin &= ~63;
+    box.yMin &= ~63;
+    box.xMax = (box.xMax + 63) & ~63;
+    box.yMax = (box.yMax + 63) & ~63;
+
+    FT_Bitmap bitmap;
+    std::memset(&bitmap, 0, sizeof(bitmap));
+    bitmap.width = static_cast<unsigned int>((box.xMax - box.xMin) >> 6);
+    bitmap.rows = static_cast<unsigned int>((box.yMax - box.yMin) >> 6);
+    bitmap.pitch = static_cast<int>(bitmap.width);
+    bitmap.num_grays = 256;
+    bitmap.pixel_mode = FT_PIXEL_MODE_GRAY;
+
+    jobject strokeBitmap = nullptr;
+    jint leftSideBearing = 0;
+    jint topSideBearing = 0;
+
+    size_t bitmapLength = bitmap.width * bitmap.rows;
+    if (bitmapLength > 0) {
+        bitmap.buffer = static_cast<unsigned char *>(std::calloc(bitmapLength, 1));
+        if (bitmap.buffer) {
+            FT_Outline_Translate(&border, -box.xMin, -box.yMin);
+
+            if (FT_Outline_Get_Bitmap(library, &border, &bitmap) == FT_Err_Ok) {
+                strokeBitmap = unsafeCreateBitmap(bridge, &bitmap);
+                if (strokeBitmap) {
+                    leftSideBearing = static_cast<jint>(box.xMin >> 6);
+                    topSideBearing = static_cast<jint>(box.yMax >> 6);
+                }
+            }
+
+            std::free(bitmap.buffer);
         }
     }
 
-    return nullptr;
+    FT_Outline_Done(library, &border);
+
+    jobject result = bridge.Glyph_construct(glyphID);
+    bridge.Glyph_ownBitmap(result, strokeBitmap, leftSideBearing, topSideBearing);
+
+    return result;
 }
 
 static jlong create(JNIEnv *env, jobject obj, jlong typefaceHandle, jint pixelWidth, jint pixelHeight,
@@ -218,26 +455,49 @@ static void dispose(JNIEnv *env, jobject obj, jlong rasterizerHandle)
     delete glyphRasterizer;
 }
 
-static void loadBitmap(JNIEnv *env, jobject obj, jlong rasterizerHandle, jobject glyph)
+static void loadBitmap(JNIEnv *env, jobject obj, jlong rasterizerHandle, jobject glyph, jint offsetX)
 {
     GlyphRasterizer *glyphRasterizer = reinterpret_cast<GlyphRasterizer *>(rasterizerHandle);
-    glyphRasterizer->loadBitmap(JavaBridge(env), glyph);
+    glyphRasterizer->loadBitmap(JavaBridge(env), glyph, static_cast<FT_Pos>(offsetX));
 }
 
-static void loadOutline(JNIEnv *env, jobject obj, jlong rasterizerHandle, jobject glyph)
+static void loadCoverage(JNIEnv *env, jobject obj, jlong rasterizerHandle, jobject glyph, jint offsetX, jobject buffer, jint maxExtent)
 {
     GlyphRasterizer *glyphRasterizer = reinterpret_cast<GlyphRasterizer *>(rasterizerHandle);
-    glyphRasterizer->loadOutline(JavaBridge(env), glyph);
+    glyphRasterizer->loadCoverage(JavaBridge(env), glyph, static_cast<FT_Pos>(offsetX), buffer, maxExtent);
 }
 
-static void loadPath(JNIEnv *env, jobject obj, jlong rasterizerHandle, jobject glyph)
+static jint loadMasks(JNIEnv *env, jobject obj, jlong rasterizerHandle, jintArray glyphIDs,
+    jint start, jint count, jint offsetX, jobject buffer, jint maxExtent, jintArray metrics)
 {
     GlyphRasterizer *glyphRasterizer = reinterpret_cast<GlyphRasterizer *>(rasterizerHandle);
-    glyphRasterizer->loadPath(JavaBridge(env), glyph);
+    uint8_t *target = static_cast<uint8_t *>(env->GetDirectBufferAddress(buffer));
+    jlong capacity = env->GetDirectBufferCapacity(buffer);
+
+    if (!target || count <= 0) {
+        return 0;
+    }
+
+    /*
+     * NOTE:
+     *      The arrays are not accessed in a critical region because the typeface lock might block
+     *      the thread.
+     */
+    jint *idElements = env->GetIntArrayElements(glyphIDs, nullptr);
+    jint *metricElements = env->GetIntArrayElements(metrics, nullptr);
+
+    jint loadedCount = glyphRasterizer->loadMasks(idElements + start, count,
+                                                  static_cast<FT_Pos>(offsetX),
+                                                  target, capacity, maxExtent, metricElements);
+
+    env->ReleaseIntArrayElements(metrics, metricElements, 0);
+    env->ReleaseIntArrayElements(glyphIDs, idElements, JNI_ABORT);
+
+    return loadedCount;
 }
 
-static jobject strokeGlyph(JNIEnv *env, jobject obj, jlong rasterizerHandle, jobject glyph,
-    jint lineRadius, jint lineCap, jint lineJoin, jint miterLimit)
+static jobject strokeOutline(JNIEnv *env, jobject obj, jlong rasterizerHandle, jint glyphId,
+    jbyteArray verbs, jfloatArray points, jint lineRadius, jint lineCap, jint lineJoin, jint miterLimit)
 {
     GlyphRasterizer *glyphRasterizer = reinterpret_cast<GlyphRasterizer *>(rasterizerHandle);
     FT_Fixed strokeRadius = static_cast<FT_Fixed >(lineRadius);
@@ -245,17 +505,27 @@ static jobject strokeGlyph(JNIEnv *env, jobject obj, jlong rasterizerHandle, job
     FT_Stroker_LineJoin strokeJoin = static_cast<FT_Stroker_LineJoin>(lineJoin);
     FT_Fixed strokeMiter = static_cast<FT_Fixed>(miterLimit);
 
-    return glyphRasterizer->strokeGlyph(JavaBridge(env), glyph, strokeRadius,
-                                        strokeCap, strokeJoin, strokeMiter);
+    jint verbCount = env->GetArrayLength(verbs);
+    jbyte *verbElements = env->GetByteArrayElements(verbs, nullptr);
+    jfloat *pointElements = env->GetFloatArrayElements(points, nullptr);
+
+    jobject result = glyphRasterizer->strokeOutline(JavaBridge(env), glyphId,
+                                                    verbElements, verbCount, pointElements,
+                                                    strokeRadius, strokeCap, strokeJoin, strokeMiter);
+
+    env->ReleaseFloatArrayElements(points, pointElements, JNI_ABORT);
+    env->ReleaseByteArrayElements(verbs, verbElements, JNI_ABORT);
+
+    return result;
 }
 
 static JNINativeMethod JNI_METHODS[] = {
     { "nCreate", "(JIIIIII)J", (void *)create },
     { "nDispose", "(J)V", (void *)dispose },
-    { "nLoadBitmap", "(JLcom/mta/tehreer/graphics/Glyph;)V", (void *)loadBitmap },
-    { "nLoadOutline", "(JLcom/mta/tehreer/graphics/Glyph;)V", (void *)loadOutline },
-    { "nLoadPath", "(JLcom/mta/tehreer/graphics/Glyph;)V", (void *)loadPath },
-    { "nStrokeGlyph", "(JLcom/mta/tehreer/graphics/Glyph;IIII)Lcom/mta/tehreer/graphics/Glyph;", (void *)strokeGlyph },
+    { "nLoadBitmap", "(JLcom/mta/tehreer/graphics/Glyph;I)V", (void *)loadBitmap },
+    { "nLoadCoverage", "(JLcom/mta/tehreer/graphics/Glyph;ILjava/nio/ByteBuffer;I)V", (void *)loadCoverage },
+    { "nLoadMasks", "(J[IIIILjava/nio/ByteBuffer;I[I)I", (void *)loadMasks },
+    { "nStrokeOutline", "(JI[B[FIIII)Lcom/mta/tehreer/graphics/Glyph;", (void *)strokeOutline },
 };
 
 jint register_com_mta_tehreer_graphics_GlyphRasterizer(JNIEnv *env)
@@ -20,13 +20,14 @@
 extern "C" {
 #include <ft2build.h>
 #include FT_FREETYPE_H
+#include FT_STROKER_H
 #include FT_TYPES_H
 }
 
+#include <cstdint>
 #include <jni.h>
 
 #include "FreeType.h"
-#include "Glyph.h"
 #include "JavaBridge.h"
 #include "Typeface.h"
 
@@ -34,16 +35,31 @@ namespace Tehreer {
 
 class GlyphRasterizer {
 public:
+    /*
+     * The metrics written for each glyph by a batch load. A negative offset means that the mask
+     * could not be written into the buffer and has to be loaded on its own.
+     */
+    enum MaskMetric {
+        MaskLeft = 0,
+        MaskTop = 1,
+        MaskWidth = 2,
+        MaskHeight = 3,
+        MaskOffset = 4,
+        MaskMetricCount = 5,
+    };
+
     GlyphRasterizer(Typeface &typeface, FT_F26Dot6 pixelWidth, FT_F26Dot6 pixelHeight, FT_Matrix transform);
     ~GlyphRasterizer();
 
     Typeface &typeface() { return m_typeface; }
 
-    void loadBitmap(const JavaBridge bridge, jobject glyph);
-    void loadOutline(const JavaBridge bridge, jobject glyph);
-    void loadPath(const JavaBridge bridge, jobject glyph);
+    void loadBitmap(const JavaBridge bridge, jobject glyph, FT_Pos offsetX);
+    void loadCoverage(const JavaBridge bridge, jobject glyph, FT_Pos offsetX, jobject buffer, jint maxExtent);
+    jint loadMasks(const jint *glyphIDs, jint glyphCount, FT_Pos offsetX,
+        uint8_t *buffer, jlong capacity, jint maxExtent, jint *metrics);
 
-    jobject strokeGlyph(const JavaBridge bridge, jobject glyph, FT_Fixed lineRadius,
+    jobject strokeOutline(const JavaBridge bridge, jint glyphID,
+        const jbyte *verbs, jint verbCount, const jfloat *points, FT_Fixed lineRadius,
         FT_Stroker_LineCap lineCap, FT_Stroker_LineJoin lineJoin, FT_Fixed miterLimit);
 
 private:
@@ -51,7 +67,7 @@ private:
     FT_Size m_size;
     FT_Matrix m_transform;
 
-    void unsafeActivate(FT_Face ftFace);
+    void unsafeActivate(FT_Face ftFace, FT_Pos offsetX = 0);
     jobject unsafeCreateBitmap(const JavaBridge bridge, const FT_Bitmap *bitmap);
 };
 
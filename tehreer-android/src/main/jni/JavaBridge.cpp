@@ -36,10 +36,11 @@ static jmethodID BITMAP__CREATE_BITMAP;
 static jclass    GLYPH;
 static jmethodID GLYPH__CONSTRUCTOR;
 static jfieldID  GLYPH__GLYPH_ID;
-static jfieldID  GLYPH__NATIVE_OUTLINE;
 static jmethodID GLYPH__OWN_BITMAP;
-static jmethodID GLYPH__OWN_OUTLINE;
-static jmethodID GLYPH__OWN_PATH;
+static jmethodID GLYPH__OWN_COVERAGE;
+
+static jclass    GLYPH_OUTLINE;
+static jmethodID GLYPH_OUTLINE__CONSTRUCTOR;
 
 static jmethodID INPUT_STREAM__READ;
 
@@ -87,10 +88,12 @@ void JavaBridge::load(JNIEnv* env)
     GLYPH = (jclass)env->NewGlobalRef(clazz);
     GLYPH__CONSTRUCTOR = env->GetMethodID(clazz, "<init>", "(I)V");
     GLYPH__GLYPH_ID = env->GetFieldID(clazz, "glyphId", "I");
-    GLYPH__NATIVE_OUTLINE = env->GetFieldID(clazz, "nativeOutline", "J");
     GLYPH__OWN_BITMAP = env->GetMethodID(clazz, "ownBitmap", "(Landroid/graphics/Bitmap;II)V");
-    GLYPH__OWN_OUTLINE = env->GetMethodID(clazz, "ownOutline", "(J)V");
-    GLYPH__OWN_PATH = env->GetMethodID(clazz, "ownPath", "(Landroid/graphics/Path;)V");
+    GLYPH__OWN_COVERAGE = env->GetMethodID(clazz, "ownCoverage", "(IIII)V");
+
+    clazz = env->FindClass("com/mta/tehreer/graphics/GlyphOutline");
+    GLYPH_OUTLINE = (jclass)env->NewGlobalRef(clazz);
+    GLYPH_OUTLINE__CONSTRUCTOR = env->GetMethodID(clazz, "<init>", "([B[F)V");
 
     clazz = env->FindClass("java/io/InputStream");
     INPUT_STREAM__READ = env->GetMethodID(clazz, "read", "([BII)I");
@@ -179,24 +182,19 @@ jint JavaBridge::Glyph_getGlyphID(jobject glyph) const
     return m_env->GetIntField(glyph, GLYPH__GLYPH_ID);
 }
 
-jlong JavaBridge::Glyph_getNativeOutline(jobject glyph) const
-{
-    return m_env->GetLongField(glyph, GLYPH__NATIVE_OUTLINE);
-}
-
 void JavaBridge::Glyph_ownBitmap(jobject glyph, jobject bitmap, jint left, jint top) const
 {
     m_env->CallVoidMethod(glyph, GLYPH__OWN_BITMAP, bitmap, left, top);
 }
 
-void JavaBridge::Glyph_ownOutline(jobject glyph, jlong nativeOutline) const
+void JavaBridge::Glyph_ownCoverage(jobject glyph, jint left, jint top, jint width, jint height) const
 {
-    m_env->CallVoidMethod(glyph, GLYPH__OWN_OUTLINE, nativeOutline);
+    m_env->CallVoidMethod(glyph, GLYPH__OWN_COVERAGE, left, top, width, height);
 }
 
-void JavaBridge::Glyph_ownPath(jobject glyph, jobject path) const
+jobject JavaBridge::GlyphOutline_construct(jbyteArray verbs, jfloatArray points) const
 {
-    m_env->CallVoidMethod(glyph, GLYPH__OWN_PATH, path);
+    return m_env->NewObject(GLYPH_OUTLINE, GLYPH_OUTLINE__CONSTRUCTOR, verbs, points);
 }
 
 jint JavaBridge::InputStream_read(jobject inputStream, jbyteArray buffer, jint offset, jint length) const
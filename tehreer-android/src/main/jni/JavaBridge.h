@@ -44,10 +44,10 @@ public:
 
     jobject Glyph_construct(jint glyphID) const;
     jint Glyph_getGlyphID(jobject glyph) const;
-    jlong Glyph_getNativeOutline(jobject glyph) const;
     void Glyph_ownBitmap(jobject glyph, jobject bitmap, jint left, jint top) const;
-    void Glyph_ownOutline(jobject glyph, jlong nativeOutline) const;
-    void Glyph_ownPath(jobject glyph, jobject path) const;
+    void Glyph_ownCoverage(jobject glyph, jint left, jint top, jint width, jint height) const;
+
+    jobject GlyphOutline_construct(jbyteArray verbs, jfloatArray points) const;
 
     jint InputStream_read(jobject inputStream, jbyteArray buffer, jint offset, jint length) const;
 
@@ -23,7 +23,6 @@
 #include "BidiMirrorLocator.h"
 #include "BidiParagraph.h"
 #include "FreeType.h"
-#include "Glyph.h"
 #include "GlyphRasterizer.h"
 #include "Miscellaneous.h"
 #include "Raw.h"
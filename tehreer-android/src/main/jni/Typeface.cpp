@@ -18,6 +18,7 @@ extern "C" {
 #include <ft2build.h>
 #include FT_ADVANCES_H
 #include FT_FREETYPE_H
+#include FT_OUTLINE_H
 #include FT_SIZES_H
 #include FT_STROKER_H
 #include FT_SYSTEM_H
@@ -32,6 +33,7 @@ extern "C" {
 #include <cstdlib>
 #include <jni.h>
 #include <mutex>
+#include <vector>
 
 #include "FreeType.h"
 #include "JavaBridge.h"
@@ -133,6 +135,52 @@ static int processCubicTo(const FT_Vector *control1, const FT_Vector *control2,
     return 0;
 }
 
+struct OutlineContext {
+    std::vector<jbyte> verbs;
+    std::vector<jfloat> points;
+
+    void add(jbyte verb, const FT_Vector *first, const FT_Vector *second, const FT_Vector *third)
+    {
+        verbs.push_back(verb);
+
+        const FT_Vector *vectors[] = { first, second, third };
+        for (const FT_Vector *vector : vectors) {
+            if (vector) {
+                points.push_back(static_cast<jfloat>(vector->x));
+                points.push_back(static_cast<jfloat>(vector->y));
+            }
+        }
+    }
+};
+
+static int collectMoveTo(const FT_Vector *to, void *user)
+{
+    OutlineContext *context = reinterpret_cast<OutlineContext *>(user);
+    context->add(Typeface::OutlineMoveTo, to, nullptr, nullptr);
+    return 0;
+}
+
+static int collectLineTo(const FT_Vector *to, void *user)
+{
+    OutlineContext *context = reinterpret_cast<OutlineContext *>(user);
+    context->add(Typeface::OutlineLineTo, to, nullptr, nullptr);
+    return 0;
+}
+
+static int collectQuadTo(const FT_Vector *control1, const FT_Vector *to, void *user)
+{
+    OutlineContext *context = reinterpret_cast<OutlineContext *>(user);
+    context->add(Typeface::OutlineQuadTo, control1, to, nullptr);
+    return 0;
+}
+
+static int collectCubicTo(const FT_Vector *control1, const FT_Vector *control2, const FT_Vector *to, void *user)
+{
+    OutlineContext *context = reinterpret_cast<OutlineContext *>(user);
+    context->add(Typeface::OutlineCubicTo, control1, control2, to);
+    return 0;
+}
+
 static unsigned long assetStreamRead(FT_Stream assetStream,
     unsigned long offset, unsigned char *buffer, unsigned long count)
 {
@@ -431,6 +479,52 @@ jobject Typeface::getGlyphPath(JavaBridge bridge, FT_UInt glyphID, FT_F26Dot6 ty
     return glyphPath;
 }
 
+jobject Typeface::getGlyphOutline(JavaBridge bridge, FT_UInt glyphID)
+{
+    OutlineContext context;
+    bool decomposed = false;
+
+    m_mutex.lock();
+
+    /*
+     * NOTE:
+     *      The outline is loaded in font units so that it can be shared by all sizes. Any
+     *      transform left by a previous user of the face is reset as it is not meant for it.
+     */
+    FT_Set_Transform(m_ftFace, nullptr, nullptr);
+
+    FT_Error error = FT_Load_Glyph(m_ftFace, glyphID, FT_LOAD_NO_SCALE | FT_LOAD_NO_BITMAP);
+    if (error == FT_Err_Ok && m_ftFace->glyph->format == FT_GLYPH_FORMAT_OUTLINE) {
+        FT_Outline_Funcs funcs;
+        funcs.move_to = collectMoveTo;
+        funcs.line_to = collectLineTo;
+        funcs.conic_to = collectQuadTo;
+        funcs.cubic_to = collectCubicTo;
+        funcs.shift = 0;
+        funcs.delta = 0;
+
+        error = FT_Outline_Decompose(&m_ftFace->glyph->outline, &funcs, &context);
+        decomposed = (error == FT_Err_Ok);
+    }
+
+    m_mutex.unlock();
+
+    if (!decomposed) {
+        return nullptr;
+    }
+
+    JNIEnv *env = bridge.env();
+    jsize verbCount = static_cast<jsize>(context.verbs.size());
+    jsize pointCount = static_cast<jsize>(context.points.size());
+
+    jbyteArray verbArray = env->NewByteArray(verbCount);
+    jfloatArray pointArray = env->NewFloatArray(pointCount);
+    env->SetByteArrayRegion(verbArray, 0, verbCount, context.verbs.data());
+    env->SetFloatArrayRegion(pointArray, 0, pointCount, context.points.data());
+
+    return bridge.GlyphOutline_construct(verbArray, pointArray);
+}
+
 static jlong createWithAsset(JNIEnv *env, jobject obj, jobject assetManager, jstring path)
 {
     if (path) {
@@ -599,6 +693,14 @@ static jobject getGlyphPath(JNIEnv *env, jobject obj, jlong typefaceHandle, jint
     return typeface->getGlyphPath(JavaBridge(env), glyphIndex, fixedSize, &transform, &delta);
 }
 
+static jobject getGlyphOutline(JNIEnv *env, jobject obj, jlong typefaceHandle, jint glyphId)
+{
+    Typeface *typeface = reinterpret_cast<Typeface *>(typefaceHandle);
+    FT_UInt glyphIndex = static_cast<FT_UInt>(glyphId);
+
+    return typeface->getGlyphOutline(JavaBridge(env), glyphIndex);
+}
+
 static void getBoundingBox(JNIEnv *env, jobject obj, jlong typefaceHandle, jobject rect)
 {
     Typeface *typeface = reinterpret_cast<Typeface *>(typefaceHandle);
@@ -642,6 +744,7 @@ static JNINativeMethod JNI_METHODS[] = {
     { "nGetGlyphId", "(JI)I", (void *)getGlyphId },
     { "nGetGlyphAdvance", "(JIFZ)F", (void *)getGlyphAdvance },
     { "nGetGlyphPath", "(JIF[F)Landroid/graphics/Path;", (void *)getGlyphPath },
+    { "nGetGlyphOutline", "(JI)Lcom/mta/tehreer/graphics/GlyphOutline;", (void *)getGlyphOutline },
     { "nGetBoundingBox", "(JLandroid/graphics/Rect;)V", (void *)getBoundingBox },
     { "nGetUnderlinePosition", "(J)I", (void *)getUnderlinePosition },
     { "nGetUnderlineThickness", "(J)I", (void *)getUnderlineThickness },
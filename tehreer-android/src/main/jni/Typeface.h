@@ -29,6 +29,7 @@ extern "C" {
 #include <android/asset_manager.h>
 #include <jni.h>
 #include <mutex>
+#include <vector>
 
 #include "JavaBridge.h"
 #include "PatternCache.h"
@@ -37,6 +38,16 @@ namespace Tehreer {
 
 class Typeface {
 public:
+    /*
+     * The verbs of an unscaled glyph outline, matching the constants of the Java class.
+     */
+    enum OutlineVerb {
+        OutlineMoveTo = 0,
+        OutlineLineTo = 1,
+        OutlineQuadTo = 2,
+        OutlineCubicTo = 3,
+    };
+
     static Typeface *createWithAsset(AAssetManager *assetManager, const char *path);
     static Typeface *createWithFile(const char *path);
     static Typeface *createFromStream(const JavaBridge &bridge, jobject stream);
@@ -60,6 +71,7 @@ public:
 
     jobject getGlyphPathNoLock(JavaBridge bridge, FT_UInt glyphID);
     jobject getGlyphPath(JavaBridge bridge, FT_UInt glyphID, FT_F26Dot6 typeSize, FT_Matrix *matrix, FT_Vector *delta);
+    jobject getGlyphOutline(JavaBridge bridge, FT_UInt glyphID);
 
 private:
     std::mutex m_mutex;
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.graphics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DistanceFieldTest {
+
+    private static GlyphOutline square(float size) {
+        byte[] verbs = {
+            GlyphOutline.MOVE_TO, GlyphOutline.LINE_TO, GlyphOutline.LINE_TO, GlyphOutline.LINE_TO
+        };
+        float[] points = { 0, 0, 0, size, size, size, size, 0 };
+
+        return new GlyphOutline(verbs, points);
+    }
+
+    private static int valueAt(DistanceField field, float x, float y) {
+        int column = (int) Math.floor(x - field.left);
+        int row = (int) Math.floor(field.top - y);
+
+        return field.values[row * field.width + column] & 0xFF;
+    }
+
+    @Test
+    public void testEmptyOutline() {
+        assertNull(DistanceField.create(new GlyphOutline(new byte[0], new float[0]), 1.0f));
+    }
+
+    @Test
+    public void testBounds() {
+        DistanceField field = DistanceField.create(square(64), 0.5f);
+
+        assertEquals(-DistanceField.SPREAD, field.left);
+        assertEquals(32 + DistanceField.SPREAD, field.top);
+        assertEquals(32 + 2 * DistanceField.SPREAD, field.width);
+        assertEquals(32 + 2 * DistanceField.SPREAD, field.height);
+    }
+
+    @Test
+    public void testSignedDistances() {
+        DistanceField field = DistanceField.create(square(32), 1.0f);
+
+        assertEquals(255, valueAt(field, 16, 16));
+        assertEquals(0, valueAt(field, -7.5f, 39.5f));
+        assertTrue(valueAt(field, 0.5f, 16) > 128);
+        assertTrue(valueAt(field, -0.5f, 16) < 128);
+        // Half a pixel away from the edge on either side.
+        assertEquals(255 - valueAt(field, -0.5f, 16), valueAt(field, 0.5f, 16));
+    }
+
+    @Test
+    public void testCurvesAreFilled() {
+        byte[] verbs = { GlyphOutline.MOVE_TO, GlyphOutline.QUAD_TO, GlyphOutline.LINE_TO };
+        float[] points = { 0, 0, 16, 32, 32, 0, 16, 0 };
+        DistanceField field = DistanceField.create(new GlyphOutline(verbs, points), 1.0f);
+
+        assertTrue(valueAt(field, 16, 4) > 128);
+        assertTrue(valueAt(field, 16, 20) < 128);
+    }
+}
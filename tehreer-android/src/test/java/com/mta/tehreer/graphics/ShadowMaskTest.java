@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.graphics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShadowMaskTest {
+
+    private static byte[] square(int size) {
+        byte[] coverage = new byte[size * size];
+        Arrays.fill(coverage, (byte) 0xFF);
+
+        return coverage;
+    }
+
+    private static int valueAt(ShadowMask mask, int column, int row) {
+        return mask.values[row * mask.width + column] & 0xFF;
+    }
+
+    private static long total(byte[] values) {
+        long sum = 0;
+        for (byte value : values) {
+            sum += value & 0xFF;
+        }
+
+        return sum;
+    }
+
+    @Test
+    public void testEmptyCoverage() {
+        assertNull(ShadowMask.create(new byte[0], 0, 0, 0, 0, 2));
+    }
+
+    @Test
+    public void testBoxRadius() {
+        assertEquals(0, ShadowMask.boxRadius(0.0f));
+        assertTrue(ShadowMask.boxRadius(1.0f) >= 1);
+        assertTrue(ShadowMask.boxRadius(16.0f) > ShadowMask.boxRadius(4.0f));
+    }
+
+    @Test
+    public void testZeroRadiusKeepsCoverage() {
+        byte[] coverage = { 0, 10, 20, 30, 40, 50 };
+        ShadowMask mask = ShadowMask.create(coverage, 3, 7, 3, 2, 0);
+
+        assertEquals(3, mask.left);
+        assertEquals(7, mask.top);
+        assertEquals(3, mask.width);
+        assertEquals(2, mask.height);
+        assertArrayEquals(coverage, mask.values);
+    }
+
+    @Test
+    public void testBlurSpreadsCoverage() {
+        int radius = 2;
+        int padding = radius * 3;
+        ShadowMask mask = ShadowMask.create(square(16), 1, 20, 16, 16, radius);
+
+        assertEquals(1 - padding, mask.left);
+        assertEquals(20 + padding, mask.top);
+        assertEquals(16 + 2 * padding, mask.width);
+        assertEquals(16 + 2 * padding, mask.height);
+
+        // The center stays opaque, the edges become half covered and the corners fade out.
+        int center = padding + 8;
+        assertEquals(255, valueAt(mask, center, center));
+        assertEquals(0, valueAt(mask, 0, 0));
+        assertTrue(Math.abs(valueAt(mask, padding, center) - 128) < 32);
+
+        // The blur is symmetric and nearly preserves the total coverage.
+        assertEquals(valueAt(mask, padding, center), valueAt(mask, mask.width - padding - 1, center));
+        assertEquals(valueAt(mask, center, padding), valueAt(mask, center, mask.height - padding - 1));
+        assertTrue(Math.abs(total(mask.values) - 255L * 16 * 16) < 255L * 16);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class NativeReleaserTest {
+
+    private static class CountingAction implements Runnable {
+        final AtomicInteger runCount = new AtomicInteger();
+
+        @Override
+        public void run() {
+            runCount.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void testExplicitReleaseRunsOnce() {
+        Object owner = new Object();
+        CountingAction action = new CountingAction();
+        int pendingCount = NativeReleaser.pendingCount();
+
+        NativeReleaser.Registration registration = NativeReleaser.register(owner, action);
+        assertEquals(pendingCount + 1, NativeReleaser.pendingCount());
+
+        registration.release();
+        registration.release();
+        assertEquals(1, action.runCount.get());
+        assertEquals(pendingCount, NativeReleaser.pendingCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testUnreachableObjectIsReleased() throws InterruptedException {
+        CountingAction action = new CountingAction();
+        NativeReleaser.register(new Object(), action);
+
+        while (action.runCount.get() == 0) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, action.runCount.get());
+    }
+}
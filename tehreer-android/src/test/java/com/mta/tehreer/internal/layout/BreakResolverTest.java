@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.layout;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class BreakResolverTest {
+
+    @Test
+    public void testParagraphRangesMatchWholeText() {
+        String text = "First paragraph, with some words.\nSecond one\u2029Third\r\nThe last";
+        byte[] wholeBreaks = new byte[text.length()];
+        byte[] rangeBreaks = new byte[text.length()];
+
+        BreakResolver.fillBreaks(text, wholeBreaks);
+
+        int[] paragraphEnds = { 34, 45, 52, text.length() };
+        int paragraphStart = 0;
+
+        for (int paragraphEnd : paragraphEnds) {
+            BreakResolver.fillBreaks(text, paragraphStart, paragraphEnd, rangeBreaks);
+            paragraphStart = paragraphEnd;
+        }
+
+        assertArrayEquals(wholeBreaks, rangeBreaks);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.layout;
+
+import com.mta.tehreer.sfnt.WritingDirection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class IntrinsicRunTest {
+
+    private static IntrinsicRun createRun(int charStart) {
+        int[] glyphIds = { 1, 2, 3 };
+        float[] offsets = new float[6];
+        float[] advances = { 10.0f, 20.0f, 30.0f };
+        int[] clusterMap = { 0, 0, 1, 2 };
+
+        return new IntrinsicRun(charStart, charStart + 4, false, (byte) 0,
+                                WritingDirection.LEFT_TO_RIGHT, null, 16.0f, 12.0f, 4.0f, 0.0f,
+                                glyphIds, offsets, advances, clusterMap);
+    }
+
+    @Test
+    public void testShiftMovesIndices() {
+        IntrinsicRun run = createRun(5);
+        IntrinsicRun shifted = createRun(5);
+        int[] glyphIds = shifted.glyphIds;
+        shifted.shift(-3);
+
+        assertEquals(2, shifted.charStart);
+        assertEquals(6, shifted.charEnd);
+        assertEquals(run.clusterStart(6), shifted.clusterStart(3) + 3);
+        assertSame(glyphIds, shifted.glyphIds);
+    }
+
+    @Test
+    public void testShiftKeepsMeasurements() {
+        IntrinsicRun run = createRun(0);
+        IntrinsicRun shifted = createRun(0);
+        shifted.shift(100);
+
+        for (int start = 0; start < 4; start++) {
+            for (int end = start + 1; end <= 4; end++) {
+                assertEquals(run.measureChars(start, end), shifted.measureChars(start + 100, end + 100), 0.0f);
+            }
+        }
+    }
+}
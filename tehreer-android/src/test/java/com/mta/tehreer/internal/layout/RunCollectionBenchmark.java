@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.layout;
+
+import com.mta.tehreer.sfnt.WritingDirection;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the cost of <code>RunCollection.measureChars</code> over paragraphs of several
+ * thousand chars, comparing it with summing the advances of each range one by one. The results
+ * are printed to standard output when run through <code>main()</code>; the test only checks that
+ * both measurements agree.
+ * <p>
+ * Usage: <code>RunCollectionBenchmark</code>
+ */
+public class RunCollectionBenchmark {
+
+    private static final int RUN_LENGTH = 512;
+    private static final int REPEAT_COUNT = 8;
+
+    /**
+     * Creates a run whose clusters randomly span one or two chars and hold one or two glyphs.
+     */
+    private static IntrinsicRun createRun(Random random, int charStart, int charEnd, boolean isBackward) {
+        int length = charEnd - charStart;
+        int[] clusterSizes = new int[length];
+        int[] glyphSizes = new int[length];
+        int clusterCount = 0;
+        int glyphCount = 0;
+
+        for (int i = 0; i < length; ) {
+            int clusterSize = Math.min(length - i, 1 + random.nextInt(2));
+            int glyphSize = 1 + random.nextInt(2);
+
+            clusterSizes[clusterCount] = clusterSize;
+            glyphSizes[clusterCount] = glyphSize;
+            clusterCount++;
+            glyphCount += glyphSize;
+            i += clusterSize;
+        }
+
+        int[] glyphIds = new int[glyphCount];
+        float[] offsets = new float[glyphCount * 2];
+        float[] advances = new float[glyphCount];
+        int[] clusterMap = new int[length];
+
+        for (int i = 0; i < glyphCount; i++) {
+            glyphIds[i] = i;
+            advances[i] = 4 + random.nextInt(8);
+        }
+
+        int charIndex = 0;
+        int glyphIndex = (isBackward ? glyphCount : 0);
+
+        for (int i = 0; i < clusterCount; i++) {
+            if (isBackward) {
+                glyphIndex -= glyphSizes[i];
+            }
+            for (int j = 0; j < clusterSizes[i]; j++) {
+                clusterMap[charIndex++] = glyphIndex;
+            }
+            if (!isBackward) {
+                glyphIndex += glyphSizes[i];
+            }
+        }
+
+        WritingDirection direction = (isBackward ? WritingDirection.RIGHT_TO_LEFT : WritingDirection.LEFT_TO_RIGHT);
+
+        return new IntrinsicRun(charStart, charEnd, isBackward, (byte) (isBackward ? 1 : 0),
+                                direction, null, 16.0f, 12.0f, 4.0f, 0.0f,
+                                glyphIds, offsets, advances, clusterMap);
+    }
+
+    private static RunCollection createParagraph(int length) {
+        Random random = new Random(length);
+        RunCollection runs = new RunCollection();
+
+        for (int start = 0; start < length; start += RUN_LENGTH) {
+            int end = Math.min(start + RUN_LENGTH, length);
+            runs.add(createRun(random, start, end, runs.size() % 2 == 1));
+        }
+
+        return runs;
+    }
+
+    /**
+     * Measures the range by summing the advances of its glyphs, as done before the runs kept their
+     * cumulative advances.
+     */
+    private static float sumChars(RunCollection runs, int charStart, int charEnd) {
+        float extent = 0.0f;
+
+        if (charEnd > charStart) {
+            int runIndex = runs.binarySearch(charStart);
+            int[] glyphRange = new int[2];
+
+            do {
+                IntrinsicRun intrinsicRun = runs.get(runIndex);
+                int segmentEnd = Math.min(charEnd, intrinsicRun.charEnd);
+
+                intrinsicRun.loadGlyphRange(charStart, segmentEnd, glyphRange);
+                for (int i = glyphRange[0]; i < glyphRange[1]; i++) {
+                    extent += intrinsicRun.glyphAdvances[i];
+                }
+
+                charStart = segmentEnd;
+                runIndex++;
+            } while (charStart < charEnd);
+        }
+
+        return extent;
+    }
+
+    @Test
+    public void testMeasurementsMatch() {
+        RunCollection runs = createParagraph(4096);
+        Random random = new Random(0);
+
+        for (int i = 0; i < 10000; i++) {
+            int start = random.nextInt(4096);
+            int end = start + random.nextInt(4096 - start + 1);
+
+            assertEquals(sumChars(runs, start, end), runs.measureChars(start, end), 0.01f);
+        }
+    }
+
+    public static void main(String[] args) {
+        for (int length = 1024; length <= 16384; length *= 2) {
+            RunCollection runs = createParagraph(length);
+            float sink = 0.0f;
+
+            // Measure from the start of paragraph up to every char, as done while fitting a line
+            // into a wide extent.
+            long startTime = System.nanoTime();
+            for (int r = 0; r < REPEAT_COUNT; r++) {
+                for (int i = 1; i <= length; i++) {
+                    sink += sumChars(runs, 0, i);
+                }
+            }
+            long sumTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            for (int r = 0; r < REPEAT_COUNT; r++) {
+                for (int i = 1; i <= length; i++) {
+                    sink -= runs.measureChars(0, i);
+                }
+            }
+            long indexTime = System.nanoTime() - startTime;
+
+            long callCount = (long) length * REPEAT_COUNT;
+            System.out.println("RunCollection: " + length + " chars, "
+                               + (sumTime / callCount) + " ns/call summed, "
+                               + (indexTime / callCount) + " ns/call indexed, "
+                               + sink + " drift");
+        }
+    }
+}
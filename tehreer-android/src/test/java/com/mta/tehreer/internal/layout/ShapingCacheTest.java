@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.layout;
+
+import com.mta.tehreer.sfnt.WritingDirection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ShapingCacheTest {
+
+    private static ShapingCache.Entry entry(boolean isBackward, int[] glyphIds, int[] clusterMap) {
+        float[] offsets = new float[glyphIds.length * 2];
+        float[] advances = new float[glyphIds.length];
+        for (int i = 0; i < glyphIds.length; i++) {
+            offsets[i * 2] = glyphIds[i];
+            advances[i] = glyphIds[i] * 10;
+        }
+
+        return new ShapingCache.Entry(isBackward, glyphIds, offsets, advances, clusterMap);
+    }
+
+    @Test
+    public void testJoinForward() {
+        ShapingCache.Entry[] segments = {
+            entry(false, new int[] { 1, 2 }, new int[] { 0, 0, 1 }),
+            entry(false, new int[] { 3 }, new int[] { 0, 0 }),
+            entry(false, new int[] { 4, 5 }, new int[] { 0, 1 }),
+        };
+        ShapingCache.Entry joined = ShapingCache.join(segments, segments.length);
+
+        assertEquals(false, joined.isBackward);
+        assertArrayEquals(new int[] { 1, 2, 3, 4, 5 }, joined.glyphIds);
+        assertArrayEquals(new float[] { 10, 20, 30, 40, 50 }, joined.glyphAdvances, 0.0f);
+        assertArrayEquals(new float[] { 1, 0, 2, 0, 3, 0, 4, 0, 5, 0 }, joined.glyphOffsets, 0.0f);
+        assertArrayEquals(new int[] { 0, 0, 1, 2, 2, 3, 4 }, joined.clusterMap);
+    }
+
+    @Test
+    public void testJoinBackward() {
+        // The glyphs of each segment flow against the logical order of its chars.
+        ShapingCache.Entry[] segments = {
+            entry(true, new int[] { 2, 1 }, new int[] { 1, 0 }),
+            entry(true, new int[] { 4, 3 }, new int[] { 1, 1, 0 }),
+        };
+        ShapingCache.Entry joined = ShapingCache.join(segments, segments.length);
+
+        assertEquals(true, joined.isBackward);
+        assertArrayEquals(new int[] { 4, 3, 2, 1 }, joined.glyphIds);
+        assertArrayEquals(new int[] { 3, 2, 1, 1, 0 }, joined.clusterMap);
+    }
+
+    @Test
+    public void testJoinCopiesArrays() {
+        ShapingCache.Entry segment = entry(false, new int[] { 7 }, new int[] { 0 });
+        ShapingCache.Entry joined = ShapingCache.join(new ShapingCache.Entry[] { segment }, 1);
+
+        joined.glyphAdvances[0] = 0.0f;
+        assertEquals(70.0f, segment.glyphAdvances[0], 0.0f);
+    }
+
+    @Test
+    public void testLookupsAreCounted() {
+        ShapingCache cache = new ShapingCache(1024 * 1024);
+        String text = "one two one ";
+        ShapingCache.Entry segment = entry(false, new int[] { 1, 2, 3, 4 }, new int[] { 0, 1, 2, 3 });
+
+        assertNull(cache.get(text, 0, 4, null, 16.0f, 0, 0, WritingDirection.LEFT_TO_RIGHT));
+        cache.put(text, 0, 4, null, 16.0f, 0, 0, WritingDirection.LEFT_TO_RIGHT, segment);
+
+        // The same word at another index is found, but not with another size or direction.
+        assertSame(segment, cache.get(text, 8, 12, null, 16.0f, 0, 0, WritingDirection.LEFT_TO_RIGHT));
+        assertNull(cache.get(text, 0, 4, null, 12.0f, 0, 0, WritingDirection.LEFT_TO_RIGHT));
+        assertNull(cache.get(text, 0, 4, null, 16.0f, 0, 0, WritingDirection.RIGHT_TO_LEFT));
+
+        assertEquals(1, cache.hitCount());
+        assertEquals(3, cache.missCount());
+        assertEquals(0.25f, cache.hitRate(), 0.0f);
+
+        cache.resetStatistics();
+        assertEquals(0, cache.hitCount());
+        assertEquals(0, cache.missCount());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        ShapingCache cache = new ShapingCache(4096);
+        String text = "abcdefghijklmnopqrstuvwxyz";
+
+        for (int i = 0; i < text.length(); i++) {
+            int[] glyphIds = new int[16];
+            cache.put(text, i, i + 1, null, 16.0f, 0, 0, WritingDirection.LEFT_TO_RIGHT,
+                      entry(false, glyphIds, new int[1]));
+        }
+
+        assertTrue(cache.size() <= cache.capacity());
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.sfnt;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LayoutLookupsTest {
+
+    private static final int SPACE = 1;
+    private static final int LETTER = 2;
+    private static final int OTHER = 3;
+
+    // A pair adjustment of the letter followed by space.
+    private static final int[] PAIR_GLYPHS = {
+        1, 18, 0x0004, 0, 1, 12,
+        1, SPACE, -150,
+        1, 1, LETTER,
+    };
+
+    // A pair adjustment of the letter followed by glyphs of class 1, which contains space.
+    private static final int[] PAIR_CLASSES = {
+        2, 20, 0x0004, 0, 0, 26, 1, 2,
+        0, -100,
+        1, 1, LETTER,
+        1, SPACE, 1, 1,
+    };
+
+    private static SfntTable table(int... values) {
+        byte[] data = new byte[values.length * 2];
+        for (int i = 0; i < values.length; i++) {
+            data[i * 2] = (byte) (values[i] >>> 8);
+            data[(i * 2) + 1] = (byte) values[i];
+        }
+
+        return new DataTable(data);
+    }
+
+    /**
+     * Creates a layout table having a single lookup with a single subtable.
+     */
+    private static SfntTable layout(int lookupType, int lookupFlag, int... subtable) {
+        int[] header = { 1, 0, 0, 0, 10, 1, 4, lookupType, lookupFlag, 1, 8 };
+        int[] values = Arrays.copyOf(header, header.length + subtable.length);
+        System.arraycopy(subtable, 0, values, header.length, subtable.length);
+
+        return table(values);
+    }
+
+    private static SfntTable glyphClasses(int glyphId, int glyphClass) {
+        return table(1, 0, 6, 1, glyphId, 1, glyphClass);
+    }
+
+    @Test
+    public void testNoTables() {
+        assertTrue(LayoutLookups.isContextFree(null, null, null, null, SPACE));
+    }
+
+    @Test
+    public void testPairOfGlyphs() {
+        SfntTable gpos = layout(2, 0, PAIR_GLYPHS);
+
+        assertFalse(LayoutLookups.isContextFree(null, null, gpos, null, SPACE));
+        assertFalse(LayoutLookups.isContextFree(null, null, gpos, null, LETTER));
+        assertTrue(LayoutLookups.isContextFree(null, null, gpos, null, OTHER));
+    }
+
+    @Test
+    public void testPairOfClasses() {
+        SfntTable gpos = layout(2, 0, PAIR_CLASSES);
+
+        assertFalse(LayoutLookups.isContextFree(null, null, gpos, null, SPACE));
+        assertFalse(LayoutLookups.isContextFree(null, null, gpos, null, LETTER));
+        assertTrue(LayoutLookups.isContextFree(null, null, gpos, null, OTHER));
+    }
+
+    @Test
+    public void testPairInExtension() {
+        int[] extension = Arrays.copyOf(new int[] { 1, 2, 0, 8 }, 4 + PAIR_GLYPHS.length);
+        System.arraycopy(PAIR_GLYPHS, 0, extension, 4, PAIR_GLYPHS.length);
+        SfntTable gpos = layout(9, 0, extension);
+
+        assertFalse(LayoutLookups.isContextFree(null, null, gpos, null, SPACE));
+        assertTrue(LayoutLookups.isContextFree(null, null, gpos, null, OTHER));
+    }
+
+    @Test
+    public void testSingleAdjustment() {
+        // Adjusting the glyph on its own does not depend on its neighbours.
+        SfntTable gpos = layout(1, 0, 1, 8, 0x0004, -50, 1, 1, SPACE);
+
+        assertTrue(LayoutLookups.isContextFree(null, null, gpos, null, SPACE));
+    }
+
+    @Test
+    public void testChainContext() {
+        // A substitution of the letter followed by space.
+        SfntTable gsub = layout(6, 0, 3, 0, 1, 14, 1, 20, 0, 1, 1, LETTER, 1, 1, SPACE);
+
+        assertFalse(LayoutLookups.isContextFree(null, gsub, null, null, SPACE));
+        assertTrue(LayoutLookups.isContextFree(null, gsub, null, null, OTHER));
+    }
+
+    @Test
+    public void testSkippedGlyph() {
+        SfntTable gpos = layout(2, 0x0002, PAIR_GLYPHS);
+        SfntTable gdef = glyphClasses(OTHER, 1);
+
+        assertTrue(LayoutLookups.isContextFree(null, null, gpos, null, OTHER));
+        assertFalse(LayoutLookups.isContextFree(gdef, null, gpos, null, OTHER));
+    }
+
+    @Test
+    public void testMarkGlyph() {
+        assertFalse(LayoutLookups.isContextFree(glyphClasses(SPACE, 3), null, null, null, SPACE));
+    }
+
+    @Test
+    public void testKernPair() {
+        SfntTable kern = table(0, 1, 0, 20, 0x0001, 1, 6, 0, 0, LETTER, SPACE, -150);
+
+        assertFalse(LayoutLookups.isContextFree(null, null, null, kern, SPACE));
+        assertFalse(LayoutLookups.isContextFree(null, null, null, kern, LETTER));
+        assertTrue(LayoutLookups.isContextFree(null, null, null, kern, OTHER));
+    }
+
+    @Test
+    public void testMalformedTable() {
+        SfntTable gpos = layout(2, 0, Arrays.copyOf(PAIR_GLYPHS, 8));
+
+        assertFalse(LayoutLookups.isContextFree(null, null, gpos, null, OTHER));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.util;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Replays an access trace against <code>LruCache</code> with each eviction policy and reports the
+ * hit ratios.
+ * <p>
+ * A trace is a text file with one access per line in the form
+ * <code>&lt;strike&gt; &lt;glyph&gt; [&lt;size&gt;]</code>, where strike is any token naming
+ * the segment, glyph is an integer key and size is the number of bytes charged for the entry,
+ * defaulting to one. Empty lines and lines starting with '#' are ignored.
+ * <p>
+ * Usage: <code>CacheSimulator &lt;capacity&gt; &lt;trace-file&gt;...</code>
+ */
+public class CacheSimulator {
+
+    static class Trace {
+        final ArrayList<String> strikes = new ArrayList<>();
+        int[] strikeIndexes = new int[256];
+        int[] glyphIds = new int[256];
+        int[] sizes = new int[256];
+        int length;
+
+        void add(int strikeIndex, int glyphId, int size) {
+            if (length == glyphIds.length) {
+                int capacity = length * 2;
+                strikeIndexes = Arrays.copyOf(strikeIndexes, capacity);
+                glyphIds = Arrays.copyOf(glyphIds, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+            }
+
+            strikeIndexes[length] = strikeIndex;
+            glyphIds[length] = glyphId;
+            sizes[length] = size;
+            length++;
+        }
+    }
+
+    private static class SimulatedCache extends LruCache {
+        SimulatedCache(int capacity, EvictionPolicy policy) {
+            super(capacity, policy);
+        }
+    }
+
+    private static class SimulatedSegment extends LruCache.Segment<Integer, Integer> {
+        SimulatedSegment(LruCache cache) {
+            super(cache);
+        }
+
+        @Override
+        protected int sizeOf(Integer key, Integer value) {
+            return value;
+        }
+    }
+
+    static Trace readTrace(String path) throws IOException {
+        Trace trace = new Trace();
+        HashMap<String, Integer> strikeIndexes = new HashMap<>();
+
+        BufferedReader reader = new BufferedReader(new FileReader(path));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] tokens = line.split("\\s+");
+                Integer strikeIndex = strikeIndexes.get(tokens[0]);
+                if (strikeIndex == null) {
+                    strikeIndex = trace.strikes.size();
+                    strikeIndexes.put(tokens[0], strikeIndex);
+                    trace.strikes.add(tokens[0]);
+                }
+
+                int glyphId = Integer.parseInt(tokens[1]);
+                int size = (tokens.length > 2 ? Integer.parseInt(tokens[2]) : 1);
+
+                trace.add(strikeIndex, glyphId, size);
+            }
+        } finally {
+            reader.close();
+        }
+
+        return trace;
+    }
+
+    /**
+     * Replays the trace and returns the fraction of accesses which were hits.
+     */
+    static double hitRatio(Trace trace, int capacity, EvictionPolicy policy) {
+        SimulatedCache cache = new SimulatedCache(capacity, policy);
+        int strikeCount = 0;
+        for (int i = 0; i < trace.length; i++) {
+            strikeCount = Math.max(strikeCount, trace.strikeIndexes[i] + 1);
+        }
+
+        SimulatedSegment[] segments = new SimulatedSegment[strikeCount];
+        for (int i = 0; i < strikeCount; i++) {
+            segments[i] = new SimulatedSegment(cache);
+        }
+
+        int hitCount = 0;
+
+        for (int i = 0; i < trace.length; i++) {
+            SimulatedSegment segment = segments[trace.strikeIndexes[i]];
+            int glyphId = trace.glyphIds[i];
+
+            if (segment.get(glyphId) != null) {
+                hitCount++;
+            } else {
+                segment.put(glyphId, trace.sizes[i]);
+            }
+        }
+
+        return (trace.length > 0 ? (double) hitCount / trace.length : 0.0);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CacheSimulator <capacity> <trace-file>...");
+            System.exit(1);
+        }
+
+        int capacity = Integer.parseInt(args[0]);
+
+        for (int i = 1; i < args.length; i++) {
+            Trace trace = readTrace(args[i]);
+            double lruRatio = hitRatio(trace, capacity, EvictionPolicy.lru());
+            double tinyLfuRatio = hitRatio(trace, capacity, EvictionPolicy.tinyLfu());
+
+            System.out.println(args[i] + ": " + trace.length + " accesses, "
+                               + trace.strikes.size() + " strike(s)");
+            System.out.printf("  LRU      %6.2f%%%n", lruRatio * 100.0);
+            System.out.printf("  TinyLFU  %6.2f%%%n", tinyLfuRatio * 100.0);
+        }
+    }
+}
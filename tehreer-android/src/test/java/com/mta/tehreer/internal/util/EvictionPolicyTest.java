@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EvictionPolicyTest {
+
+    private static class SampleCache extends LruCache {
+        SampleCache(int capacity, EvictionPolicy policy) {
+            super(capacity, policy);
+        }
+    }
+
+    private static class SampleSegment extends LruCache.Segment<Integer, String> {
+        SampleSegment(LruCache cache) {
+            super(cache);
+        }
+
+        @Override
+        protected int sizeOf(Integer key, String value) {
+            return value.length();
+        }
+    }
+
+    /**
+     * Creates a trace of body text glyphs drawn repeatedly, interrupted by scrolling through a
+     * glyph table in which each glyph is seen only once.
+     */
+    private static CacheSimulator.Trace createScanTrace() {
+        CacheSimulator.Trace trace = new CacheSimulator.Trace();
+        Random random = new Random(7);
+        int scanGlyph = 1000;
+
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 5000; i++) {
+                // Skew the accesses towards the lower glyph ids like the letters of a language.
+                double value = random.nextDouble();
+                trace.add(0, (int) (value * value * 400), 1);
+            }
+            for (int i = 0; i < 2000; i++) {
+                trace.add(0, scanGlyph++, 1);
+            }
+        }
+
+        return trace;
+    }
+
+    @Test
+    public void testTinyLfuResistsScans() {
+        CacheSimulator.Trace trace = createScanTrace();
+        double lruRatio = CacheSimulator.hitRatio(trace, 300, EvictionPolicy.lru());
+        double tinyLfuRatio = CacheSimulator.hitRatio(trace, 300, EvictionPolicy.tinyLfu());
+
+        assertTrue("LRU: " + lruRatio + ", TinyLFU: " + tinyLfuRatio, tinyLfuRatio > lruRatio);
+    }
+
+    @Test
+    public void testTinyLfuEnforcesCapacity() {
+        SampleCache cache = new SampleCache(100, EvictionPolicy.tinyLfu());
+        SampleSegment segment = new SampleSegment(cache);
+        Random random = new Random(3);
+
+        for (int i = 0; i < 10000; i++) {
+            int key = random.nextInt(500);
+            if (segment.get(key) == null) {
+                segment.put(key, (key % 3 == 0 ? "aaa" : "a"));
+            }
+            assertTrue(cache.size() <= cache.capacity());
+        }
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(segment.get(0));
+    }
+
+    @Test
+    public void testPolicyCanBeReplaced() {
+        SampleCache cache = new SampleCache(10, EvictionPolicy.lru());
+        SampleSegment segment = new SampleSegment(cache);
+
+        for (int i = 0; i < 10; i++) {
+            segment.put(i, "a");
+        }
+
+        cache.setEvictionPolicy(EvictionPolicy.tinyLfu());
+        assertEquals(10, cache.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("a", segment.get(i));
+        }
+
+        segment.put(10, "a");
+        assertEquals(10, cache.size());
+    }
+}
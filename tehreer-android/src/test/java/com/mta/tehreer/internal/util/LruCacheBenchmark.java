@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mta.tehreer.internal.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the lookup throughput of <code>LruCache</code> while increasing the number of threads
+ * reading from it concurrently. The results are printed to standard output when run through
+ * <code>main()</code>; the test only checks that the cache stays consistent under contention.
+ * <p>
+ * Usage: <code>LruCacheBenchmark</code>
+ */
+public class LruCacheBenchmark {
+
+    private static final int GLYPH_COUNT = 2048;
+    private static final int STRIKE_COUNT = 4;
+    private static final long DURATION_MILLIS = 200;
+
+    private static class BenchmarkCache extends LruCache {
+        BenchmarkCache(int capacity) {
+            super(capacity);
+        }
+    }
+
+    private static class BenchmarkSegment extends LruCache.Segment<Integer, Object> {
+        BenchmarkSegment(LruCache cache) {
+            super(cache);
+        }
+
+        @Override
+        protected int sizeOf(Integer key, Object value) {
+            return 64;
+        }
+    }
+
+    private static long measure(final BenchmarkSegment[] segments, int threadCount,
+                                long durationMillis) throws InterruptedException {
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final CountDownLatch doneSignal = new CountDownLatch(threadCount);
+        final AtomicLong operations = new AtomicLong();
+        final long deadline = System.nanoTime() + (durationMillis * 1000000);
+
+        for (int t = 0; t < threadCount; t++) {
+            final int seed = t;
+
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    long count = 0;
+
+                    try {
+                        startSignal.await();
+
+                        while (System.nanoTime() < deadline) {
+                            for (int i = 0; i < 256; i++) {
+                                BenchmarkSegment segment = segments[random.nextInt(STRIKE_COUNT)];
+                                int glyphId = random.nextInt(GLYPH_COUNT);
+                                if (segment.get(glyphId) == null) {
+                                    segment.put(glyphId, segment);
+                                }
+                                count++;
+                            }
+                        }
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        operations.addAndGet(count);
+                        doneSignal.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        startSignal.countDown();
+        doneSignal.await();
+
+        return operations.get() / durationMillis;
+    }
+
+    private static BenchmarkSegment[] createSegments(BenchmarkCache cache) {
+        BenchmarkSegment[] segments = new BenchmarkSegment[STRIKE_COUNT];
+        for (int i = 0; i < STRIKE_COUNT; i++) {
+            segments[i] = new BenchmarkSegment(cache);
+        }
+
+        return segments;
+    }
+
+    private static BenchmarkCache createCache() {
+        // Keep three quarters of the working set in the cache so that both hits and evictions
+        // take place.
+        return new BenchmarkCache(GLYPH_COUNT * STRIKE_COUNT * 64 * 3 / 4);
+    }
+
+    @Test
+    public void testSizeStaysBounded() throws InterruptedException {
+        BenchmarkCache cache = createCache();
+        BenchmarkSegment[] segments = createSegments(cache);
+
+        measure(segments, 4, 20);
+
+        assertEquals(true, cache.size() <= cache.capacity());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        BenchmarkCache cache = createCache();
+        BenchmarkSegment[] segments = createSegments(cache);
+
+        int maxThreads = Math.max(8, Runtime.getRuntime().availableProcessors());
+
+        for (int threadCount = 1; threadCount <= maxThreads; threadCount *= 2) {
+            long throughput = measure(segments, threadCount, DURATION_MILLIS);
+            System.out.println("LruCache: " + threadCount + " thread(s), " + throughput + " ops/ms");
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mta.tehreer.internal.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LruCacheTest {
+
+    private static class SampleCache extends LruCache {
+        SampleCache(int capacity) {
+            super(capacity);
+        }
+    }
+
+    private static class SampleSegment extends LruCache.Segment<Integer, String> {
+        int evictionCount;
+
+        SampleSegment(LruCache cache) {
+            super(cache);
+        }
+
+        @Override
+        protected int sizeOf(Integer key, String value) {
+            return value.length();
+        }
+
+        @Override
+        protected void entryEvicted(Integer key, String value) {
+            evictionCount++;
+        }
+    }
+
+    private static class SampleIntSegment extends LruCache.IntSegment<String> {
+
+        SampleIntSegment(LruCache cache) {
+            super(cache);
+        }
+
+        @Override
+        protected int sizeOf(Integer key, String value) {
+            return value.length();
+        }
+    }
+
+    private SampleCache cache;
+    private SampleSegment first;
+    private SampleSegment second;
+
+    @Before
+    public void setUp() {
+        cache = new SampleCache(10);
+        first = new SampleSegment(cache);
+        second = new SampleSegment(cache);
+    }
+
+    @Test
+    public void testCapacityIsEnforced() {
+        for (int i = 0; i < 100; i++) {
+            first.put(i, "abc");
+            assertEquals(true, cache.size() <= cache.capacity());
+        }
+
+        assertEquals(9, cache.size());
+        assertEquals("abc", first.get(99));
+        assertNull(first.get(0));
+    }
+
+    @Test
+    public void testCapacityCanBeChanged() {
+        first.put(1, "aaa");
+        first.put(2, "bbb");
+        first.put(3, "ccc");
+
+        cache.setCapacity(4);
+        assertEquals(4, cache.capacity());
+        assertEquals(3, cache.size());
+        assertEquals("ccc", first.get(3));
+        assertNull(first.get(1));
+
+        cache.setCapacity(20);
+        first.put(4, "ddd");
+        first.put(5, "eee");
+        assertEquals(9, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        first.put(1, "aaa");
+        second.put(2, "bbb");
+        first.put(3, "ccc");
+
+        // Touch the oldest entry so that the second one becomes the eviction candidate.
+        assertEquals("aaa", first.get(1));
+        second.put(4, "ddd");
+
+        assertEquals("aaa", first.get(1));
+        assertNull(second.get(2));
+        assertEquals("ccc", first.get(3));
+        assertEquals("ddd", second.get(4));
+    }
+
+    @Test
+    public void testPutReplacesAndRemeasures() {
+        first.put(1, "a");
+        first.put(1, "abcde");
+
+        assertEquals(5, cache.size());
+        assertEquals("abcde", first.get(1));
+    }
+
+    @Test
+    public void testPutIfAbsent() {
+        assertNull(first.putIfAbsent(1, "aaa"));
+        assertEquals("aaa", first.putIfAbsent(1, "bbb"));
+        assertEquals("aaa", first.get(1));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        first.put(1, "aaa");
+        second.put(1, "bb");
+
+        first.remove(1);
+        assertNull(first.get(1));
+        assertTrue(first.isEmpty());
+        assertEquals(2, cache.size());
+
+        cache.clear();
+        assertNull(second.get(1));
+        assertTrue(second.isEmpty());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEvictionIsNotified() {
+        first.put(1, "aaaa");
+        second.put(2, "bbbb");
+        first.put(3, "cccc");
+        assertEquals(1, first.evictionCount);
+
+        first.remove(3);
+        assertEquals(1, first.evictionCount);
+
+        cache.clear();
+        assertEquals(1, first.evictionCount);
+        assertEquals(1, second.evictionCount);
+    }
+
+    @Test
+    public void testStatistics() {
+        first.put(1, "aaaa");
+        second.put(2, "bbbb");
+        assertEquals(4, first.size());
+        assertEquals(1, second.count());
+
+        first.put(3, "cccc");
+        assertEquals(1, cache.evictionCount());
+        assertEquals(4, first.size());
+        assertEquals(1, first.count());
+        assertEquals(4, second.size());
+
+        first.put(3, "cc");
+        assertEquals(2, first.size());
+
+        cache.resetStatistics();
+        assertEquals(0, cache.evictionCount());
+
+        cache.clear();
+        assertEquals(0, first.size());
+        assertEquals(0, second.size());
+    }
+
+    @Test
+    public void testIntSegmentGrowsAndRemoves() {
+        cache.setCapacity(10000);
+        SampleIntSegment segment = new SampleIntSegment(cache);
+
+        for (int i = 0; i < 1000; i++) {
+            segment.put(i * 65536, "a");
+        }
+        assertEquals(1000, segment.count());
+
+        for (int i = 0; i < 1000; i += 2) {
+            segment.remove(i * 65536);
+        }
+        assertEquals(500, segment.count());
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 2 == 0 ? null : "a", segment.get(i * 65536));
+        }
+
+        segment.put(65536, "bb");
+        assertEquals("bb", segment.get(65536));
+        assertEquals("a", segment.putIfAbsent(3 * 65536, "cc"));
+        assertEquals(501, cache.size());
+    }
+
+    @Test
+    public void testIntSegmentIsEvicted() {
+        SampleIntSegment segment = new SampleIntSegment(cache);
+
+        for (int i = 0; i < 100; i++) {
+            segment.put(i, "abc");
+        }
+        assertEquals(3, segment.count());
+        assertEquals("abc", segment.get(99));
+        assertNull(segment.get(0));
+
+        cache.clear();
+        assertEquals(true, segment.isEmpty());
+        assertNull(segment.get(99));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018 Muhammad Tayyab Akram
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mta.tehreer.internal.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ParallelTest {
+
+    private static Runnable[] countingTasks(final AtomicIntegerArray counts) {
+        Runnable[] tasks = new Runnable[counts.length()];
+        for (int i = 0; i < tasks.length; i++) {
+            final int index = i;
+            tasks[i] = new Runnable() {
+                @Override
+                public void run() {
+                    counts.incrementAndGet(index);
+                }
+            };
+        }
+
+        return tasks;
+    }
+
+    @Test
+    public void testEachTaskRunsOnce() {
+        AtomicIntegerArray counts = new AtomicIntegerArray(100);
+        Parallel.invokeAll(countingTasks(counts));
+
+        for (int i = 0; i < counts.length(); i++) {
+            assertEquals(1, counts.get(i));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testNestedCallsComplete() {
+        final AtomicIntegerArray counts = new AtomicIntegerArray(Parallel.threadCount() * 4);
+        Runnable[] tasks = new Runnable[Parallel.threadCount() * 2];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new Runnable() {
+                @Override
+                public void run() {
+                    Parallel.invokeAll(countingTasks(counts));
+                }
+            };
+        }
+
+        Parallel.invokeAll(tasks);
+
+        for (int i = 0; i < counts.length(); i++) {
+            assertEquals(tasks.length, counts.get(i));
+        }
+    }
+
+    @Test
+    public void testFailureIsRethrown() {
+        Runnable[] tasks = countingTasks(new AtomicIntegerArray(8));
+        tasks[5] = new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Failed");
+            }
+        };
+
+        try {
+            Parallel.invokeAll(tasks);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Failed", e.getMessage());
+        }
+    }
+}